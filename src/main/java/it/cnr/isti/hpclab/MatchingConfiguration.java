@@ -60,6 +60,23 @@ public class MatchingConfiguration
 
 		IGNORE_LOW_IDF_TERMS		("micro.ignore.low.idf", 	"true"),
 		TOP_K						("micro.topk",				"1000"),
+		DOCID_RANGES				("micro.docid.ranges",		"1"),
+		IMPACT_POSTINGS_BUDGET		("micro.impact.postings",	"0"),
+		IMPACT_TIME_BUDGET			("micro.impact.time",		"0"),
+		BLOCKMAX_LAYOUT				("micro.blockmax.layout",	"array"),
+		BLOCKMAX_STRUCTURE			("micro.blockmax.structure",	"blockmaxscore"),
+		
+		PARALLEL_EXECUTOR			("micro.parallel.executor",	"fixed"),
+		PARALLEL_THREADS			("micro.parallel.threads",	"0"),
+		
+		CACHE_MEMORY				("micro.cache.memory",		"0"),
+		CACHE_POLICY				("micro.cache.policy",		"lru"),
+		CACHE_STATIC_FILE			("micro.cache.static.file",	""),
+		CACHE_STATIC_FRACTION		("micro.cache.static.fraction",	"0.5"),
+		POSTING_CACHE_MEMORY		("micro.cache.postings.memory",	"0"),
+		POSTING_CACHE_MIN_DF		("micro.cache.postings.df",	"10000"),
+		POSTING_CACHE_MIN_REQUESTS	("micro.cache.postings.requests",	"1"),
+		POSTING_CACHE_OFFHEAP		("micro.cache.postings.offheap",	"false"),
 
 		RESULTS_OUTPUT_TYPE			("micro.results.output.type",	"null"),
 	 	RESULTS_FILENAME          	("micro.results.filename",		"results.gz"),
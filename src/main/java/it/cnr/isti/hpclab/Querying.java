@@ -21,6 +21,7 @@
 package it.cnr.isti.hpclab;
 
 import it.cnr.isti.hpclab.MatchingConfiguration.Property;
+import it.cnr.isti.hpclab.cache.ResultCache;
 import it.cnr.isti.hpclab.matching.MatchingAlgorithm;
 import it.cnr.isti.hpclab.matching.structures.QueryProperties.RuntimeProperty;
 import it.cnr.isti.hpclab.matching.structures.output.ResultOutput;
@@ -33,6 +34,7 @@ import it.cnr.isti.hpclab.util.StatsLine;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.function.Supplier;
 
 import org.apache.log4j.Logger;
 import org.terrier.structures.Index;
@@ -63,11 +65,14 @@ public class Querying implements Closeable
     protected QuerySource  mQuerySource;
     protected Manager      mManager;
     protected ResultOutput mResultOutput;
+    /** The result cache, or <code>null</code> if disabled */
+    protected ResultCache  mResultCache;
     
     public Querying() 
     {
         mIndex = createIndex();
         mManager = createManager(mIndex);
+        mResultCache = createResultCache(() -> mManager);
         
         mQuerySource = createQuerySource();
         mResultOutput = createResultOutput();
@@ -92,6 +97,24 @@ public class Querying implements Closeable
         }
     }
 
+    /**
+     * Creates the configured result cache, filling its static part with the supplied manager.
+     * 
+     * @param manager the supplier of the manager, invoked only if the cache is enabled
+     * @return the result cache, or <code>null</code> if disabled
+     */
+    public static ResultCache createResultCache(final Supplier<Manager> manager)
+    {
+        try {
+            ResultCache cache = ResultCache.newInstance();
+            if (cache != null)
+                cache.fill(manager.get());
+            return cache;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static QuerySource createQuerySource() 
     {
         try {
@@ -163,7 +186,7 @@ public class Querying implements Closeable
         if (LOGGER.isInfoEnabled())
             LOGGER.info("Processing query: " + queryId + ": '" + query + "'");
         mMatchingQueryCount++;
-        ResultSet rs = mManager.run(srq);
+        ResultSet rs = (mResultCache == null) ? mManager.run(srq) : mResultCache.run(mManager, srq);
         srq.setResultSet(rs); //TODO: shouldn't this be inside runMatching?
         PrintStats(srq);
         if (rs.size() != 0)
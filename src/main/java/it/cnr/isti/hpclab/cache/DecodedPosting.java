@@ -0,0 +1,151 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.cache;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.nio.IntBuffer;
+
+import org.terrier.structures.postings.BasicPostingImpl;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.WritablePosting;
+
+/**
+ * An iterator over a decoded posting list of a {@link PostingCache}, whose docids, frequencies and document lengths 
+ * are stored in integer buffers, on-heap or off-heap.
+ */
+public class DecodedPosting implements IterablePosting
+{
+	private final IntBuffer mDocids;
+	private final IntBuffer mFreqs;
+	private final IntBuffer mLens;
+	
+	private final int mEnd;
+	private int mPos;
+	private int mDocid;
+
+	public DecodedPosting(final IntBuffer docids, final IntBuffer freqs, final IntBuffer lens, final int size)
+	{
+		this.mDocids = docids;
+		this.mFreqs = freqs;
+		this.mLens = lens;
+		this.mEnd = size;
+		this.mPos = -1;
+		this.mDocid = -1;
+	}
+
+	@Override
+	public int next()
+	{
+		if (++mPos < mEnd)
+			return mDocid = mDocids.get(mPos);
+		mPos = mEnd;
+		return mDocid = END_OF_LIST;
+	}
+
+	/**
+	 * Moves to the first posting with docid greater than or equal to the target, galloping then binary searching from the current posting.
+	 */
+	@Override
+	public int next(final int target)
+	{
+		if (mDocid >= target)
+			return mDocid;
+
+		int lo = Math.max(mPos, 0);
+		int step = 1;
+		int hi = lo + step;
+		while (hi < mEnd && mDocids.get(hi) < target) {
+			lo = hi;
+			step <<= 1;
+			hi = lo + step;
+		}
+		hi = Math.min(hi, mEnd);
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (mDocids.get(mid) < target)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		mPos = lo;
+		return mDocid = (mPos < mEnd) ? mDocids.get(mPos) : END_OF_LIST;
+	}
+
+	@Override
+	public boolean endOfPostings()
+	{
+		return mPos >= mEnd;
+	}
+
+	@Override
+	public int getId()
+	{
+		return mDocid;
+	}
+
+	@Override
+	public int getFrequency()
+	{
+		return mFreqs.get(mPos);
+	}
+
+	@Override
+	public int getDocumentLength()
+	{
+		return mLens.get(mPos);
+	}
+
+	@Override
+	public void setId(final int id)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public WritablePosting asWritablePosting()
+	{
+		return new BasicPostingImpl(getId(), getFrequency());
+	}
+
+	@Override
+	public void write(final DataOutput out)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void readFields(final DataInput in)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close()
+	{
+	}
+
+	@Override
+	public String toString()
+	{
+		return "(" + getId() + "," + getFrequency() + "," + getDocumentLength() + ")";
+	}
+}
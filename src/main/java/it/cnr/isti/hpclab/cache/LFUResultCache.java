@@ -0,0 +1,105 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.cache;
+
+import java.util.TreeSet;
+
+import it.cnr.isti.hpclab.matching.structures.ResultSet;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+
+/**
+ * A result cache evicting the least frequently used entry, and the least recently used one among the least frequently used entries.
+ */
+public class LFUResultCache extends ResultCache
+{
+	private static final class Entry implements Comparable<Entry>
+	{
+		final String key;
+		final ResultSet results;
+		int frequency;
+		long tick;
+		
+		Entry(final String key, final ResultSet results, final long tick)
+		{
+			this.key = key;
+			this.results = results;
+			this.frequency = 1;
+			this.tick = tick;
+		}
+
+		@Override
+		public int compareTo(final Entry that) 
+		{
+			if (this.frequency != that.frequency)
+				return Integer.compare(this.frequency, that.frequency);
+			return Long.compare(this.tick, that.tick);
+		}
+	}
+	
+	private final Object2ObjectOpenHashMap<String, Entry> mEntries;
+	/** The entries, by increasing frequency and access time. */
+	private final TreeSet<Entry> mOrder;
+	/** The logical time of the last access. */
+	private long mTick;
+	
+	public LFUResultCache(final long budget, final long static_budget)
+	{
+		super(budget, static_budget);
+		this.mEntries = new Object2ObjectOpenHashMap<String, Entry>();
+		this.mOrder = new TreeSet<Entry>();
+		this.mTick = 0;
+	}
+
+	@Override
+	protected ResultSet lookup(final String key) 
+	{
+		Entry e = mEntries.get(key);
+		if (e == null)
+			return null;
+		mOrder.remove(e);
+		e.frequency++;
+		e.tick = ++mTick;
+		mOrder.add(e);
+		return e.results;
+	}
+
+	@Override
+	protected boolean contains(final String key) 
+	{
+		return mEntries.containsKey(key);
+	}
+
+	@Override
+	protected void insert(final String key, final ResultSet results) 
+	{
+		Entry e = new Entry(key, results, ++mTick);
+		mEntries.put(key, e);
+		mOrder.add(e);
+	}
+
+	@Override
+	protected long evict() 
+	{
+		Entry e = mOrder.pollFirst();
+		mEntries.remove(e.key);
+		return size(e.key, e.results);
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import it.cnr.isti.hpclab.matching.structures.ResultSet;
+
+/**
+ * A result cache evicting the least recently used entry.
+ */
+public class LRUResultCache extends ResultCache
+{
+	/** The entries, in access order. */
+	private final LinkedHashMap<String, ResultSet> mEntries;
+	
+	public LRUResultCache(final long budget, final long static_budget)
+	{
+		super(budget, static_budget);
+		this.mEntries = new LinkedHashMap<String, ResultSet>(16, 0.75f, true);
+	}
+
+	@Override
+	protected ResultSet lookup(final String key) 
+	{
+		return mEntries.get(key);
+	}
+
+	@Override
+	protected boolean contains(final String key) 
+	{
+		return mEntries.containsKey(key);
+	}
+
+	@Override
+	protected void insert(final String key, final ResultSet results) 
+	{
+		mEntries.put(key, results);
+	}
+
+	@Override
+	protected long evict() 
+	{
+		Iterator<Map.Entry<String, ResultSet>> it = mEntries.entrySet().iterator();
+		Map.Entry<String, ResultSet> eldest = it.next();
+		it.remove();
+		return size(eldest.getKey(), eldest.getValue());
+	}
+}
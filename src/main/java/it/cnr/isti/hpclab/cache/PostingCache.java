@@ -0,0 +1,196 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.terrier.structures.Index;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+
+import it.cnr.isti.hpclab.MatchingConfiguration;
+import it.cnr.isti.hpclab.MatchingConfiguration.Property;
+
+/**
+ * This class implements a cache of fully decoded posting lists, shared by all the managers of the same index.
+ * A posting list is decoded once, into docid, frequency and document length buffers (off-heap if <tt>micro.cache.postings.offheap</tt> is true), 
+ * if its term has a document frequency of at least <tt>micro.cache.postings.df</tt>, it has been requested at least <tt>micro.cache.postings.requests</tt> times, 
+ * and the memory budget of <tt>micro.cache.postings.memory</tt> megabytes is not exhausted. Cached posting lists are never evicted.
+ */
+public class PostingCache
+{
+	protected static final Logger LOGGER = Logger.getLogger(PostingCache.class);
+	
+	/** The caches of the open indexes. */
+	private static final Map<Index, PostingCache> sCaches = Collections.synchronizedMap(new WeakHashMap<Index, PostingCache>());
+	
+	private static final class Lists
+	{
+		final IntBuffer docids;
+		final IntBuffer freqs;
+		final IntBuffer lens;
+		final int size;
+		
+		Lists(final IntBuffer docids, final IntBuffer freqs, final IntBuffer lens, final int size)
+		{
+			this.docids = docids;
+			this.freqs = freqs;
+			this.lens = lens;
+			this.size = size;
+		}
+	}
+	
+	private final Index mIndex;
+	private final long mBudget;
+	private final int mMinDf;
+	private final int mMinRequests;
+	private final boolean mOffHeap;
+	
+	private final AtomicLong mUsed;
+	private final ConcurrentHashMap<Integer, Lists> mLists;
+	private final ConcurrentHashMap<Integer, AtomicInteger> mRequests;
+	
+	public PostingCache(final Index index, final long budget, final int min_df, final int min_requests, final boolean off_heap)
+	{
+		this.mIndex = index;
+		this.mBudget = budget;
+		this.mMinDf = min_df;
+		this.mMinRequests = min_requests;
+		this.mOffHeap = off_heap;
+		
+		this.mUsed = new AtomicLong(0);
+		this.mLists = new ConcurrentHashMap<Integer, Lists>();
+		this.mRequests = new ConcurrentHashMap<Integer, AtomicInteger>();
+	}
+	
+	/**
+	 * Returns the configured posting cache of an index, shared by all the managers of the index.
+	 * 
+	 * @param index the index
+	 * @return the posting cache, or <code>null</code> if the memory budget is zero
+	 */
+	public static PostingCache of(final Index index)
+	{
+		final long budget = (long) (MatchingConfiguration.getDouble(Property.POSTING_CACHE_MEMORY) * (1 << 20));
+		if (budget <= 0)
+			return null;
+		return sCaches.computeIfAbsent(index, i -> new PostingCache(i, budget, 
+																	MatchingConfiguration.getInt(Property.POSTING_CACHE_MIN_DF), 
+																	MatchingConfiguration.getInt(Property.POSTING_CACHE_MIN_REQUESTS),
+																	MatchingConfiguration.getBoolean(Property.POSTING_CACHE_OFFHEAP)));
+	}
+	
+	/**
+	 * Returns an iterator over the decoded posting list of a term, decoding and caching it if it is eligible.
+	 * 
+	 * @param le the lexicon entry of the term
+	 * @return the iterator over the decoded posting list, or <code>null</code> if the posting list is not cached
+	 * 
+	 * @throws IOException if the posting list can't be decoded
+	 */
+	public IterablePosting getPostings(final LexiconEntry le) throws IOException
+	{
+		if (le.getDocumentFrequency() < mMinDf)
+			return null;
+		
+		Lists lists = mLists.get(le.getTermId());
+		if (lists == null) {
+			if (mRequests.computeIfAbsent(le.getTermId(), t -> new AtomicInteger()).incrementAndGet() < mMinRequests)
+				return null;
+			lists = admit(le);
+			if (lists == null)
+				return null;
+		}
+		return new DecodedPosting(lists.docids, lists.freqs, lists.lens, lists.size);
+	}
+	
+	/**
+	 * Decodes and caches the posting list of a term, if the memory budget allows it. 
+	 * Two threads can decode the same posting list concurrently, but only the first one is cached.
+	 */
+	private Lists admit(final LexiconEntry le) throws IOException
+	{
+		final int df = le.getDocumentFrequency();
+		final long bytes = 3L * Integer.BYTES * df;
+		if (mUsed.addAndGet(bytes) > mBudget) {
+			mUsed.addAndGet(-bytes);
+			return null;
+		}
+		
+		final IterablePosting ip;
+		synchronized (mIndex) {
+			ip = mIndex.getInvertedIndex().getPostings(le);
+		}
+		IntBuffer docids = allocate(df);
+		IntBuffer freqs  = allocate(df);
+		IntBuffer lens   = allocate(df);
+		int size = 0;
+		while (ip.next() != IterablePosting.END_OF_LIST && size < df) {
+			docids.put(size, ip.getId());
+			freqs.put(size, ip.getFrequency());
+			lens.put(size, ip.getDocumentLength());
+			size++;
+		}
+		ip.close();
+		
+		final Lists decoded = new Lists(docids, freqs, lens, size);
+		final Lists previous = mLists.putIfAbsent(le.getTermId(), decoded);
+		if (previous != null) {
+			mUsed.addAndGet(-bytes);
+			return previous;
+		}
+		LOGGER.debug("Cached the decoded posting list of term " + le.getTermId() + " with " + size + " postings, " + mUsed.get() + " bytes used");
+		return decoded;
+	}
+	
+	private IntBuffer allocate(final int size)
+	{
+		if (mOffHeap)
+			return ByteBuffer.allocateDirect(size * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+		return IntBuffer.wrap(new int[size]);
+	}
+	
+	/**
+	 * @return the number of cached posting lists
+	 */
+	public int size()
+	{
+		return mLists.size();
+	}
+	
+	/**
+	 * @return the memory used by the cached posting lists, in bytes
+	 */
+	public long used()
+	{
+		return mUsed.get();
+	}
+}
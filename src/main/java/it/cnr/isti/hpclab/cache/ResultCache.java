@@ -0,0 +1,354 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.cache;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.log4j.Logger;
+
+import it.cnr.isti.hpclab.MatchingConfiguration;
+import it.cnr.isti.hpclab.MatchingConfiguration.Property;
+import it.cnr.isti.hpclab.manager.Manager;
+import it.cnr.isti.hpclab.matching.structures.QueryProperties.RuntimeProperty;
+import it.cnr.isti.hpclab.matching.structures.ResultSet;
+import it.cnr.isti.hpclab.matching.structures.SearchRequest;
+import it.cnr.isti.hpclab.matching.structures.query.QueryParserException;
+import it.cnr.isti.hpclab.matching.structures.query.QueryTerm;
+import it.cnr.isti.hpclab.matching.structures.resultset.EmptyResultSet;
+import it.cnr.isti.hpclab.matching.structures.resultset.ScoredResultSet;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+/**
+ * This class implements a cache of query results, shared by all the threads processing queries.
+ * The results are keyed by the processed query terms, with their frequencies, weights and required flags, together with the weighting model, 
+ * the matching algorithm and the number of results. Only ranked results are cached, as compact docid and score arrays.
+ * 
+ * The cache has a memory budget, split between a static part, filled once from a training query log with the results of its most frequent queries, 
+ * and a dynamic part, whose eviction policy is implemented by the subclasses. The hits and the misses are counted, and added to the statistics of every query.
+ */
+public abstract class ResultCache
+{
+	protected static final Logger LOGGER = Logger.getLogger(ResultCache.class);
+	
+	/** The estimated memory footprint of a cached entry, besides its key and its docids and scores. */
+	protected static final long ENTRY_OVERHEAD = 128;
+	
+	/** The memory budget of the dynamic part, in bytes. */
+	private final long mBudget;
+	/** The memory used by the dynamic part, in bytes. */
+	private long mUsed;
+	
+	/** The static part, never evicted. */
+	private final Object2ObjectOpenHashMap<String, ResultSet> mStatic;
+	/** The memory budget of the static part, in bytes. */
+	private final long mStaticBudget;
+	/** The memory used by the static part, in bytes. */
+	private long mStaticUsed;
+	
+	private long mHits;
+	private long mMisses;
+	
+	protected ResultCache(final long budget, final long static_budget)
+	{
+		this.mBudget = budget;
+		this.mUsed = 0;
+		this.mStatic = new Object2ObjectOpenHashMap<String, ResultSet>();
+		this.mStaticBudget = static_budget;
+		this.mStaticUsed = 0;
+		this.mHits = 0;
+		this.mMisses = 0;
+	}
+	
+	/**
+	 * Creates the result cache specified by the configuration, i.e., with a memory budget of <tt>micro.cache.memory</tt> megabytes 
+	 * and the <tt>micro.cache.policy</tt> eviction policy. If a training query log is specified by <tt>micro.cache.static.file</tt>, 
+	 * a <tt>micro.cache.static.fraction</tt> of the budget is reserved to the static part (all the budget, with the <tt>static</tt> policy).
+	 * 
+	 * @return the result cache, or <code>null</code> if the memory budget is zero
+	 */
+	public static ResultCache newInstance()
+	{
+		final long budget = (long) (MatchingConfiguration.getDouble(Property.CACHE_MEMORY) * (1 << 20));
+		if (budget <= 0)
+			return null;
+		
+		final String policy = MatchingConfiguration.get(Property.CACHE_POLICY).toLowerCase();
+		final boolean has_static = !MatchingConfiguration.get(Property.CACHE_STATIC_FILE).isEmpty();
+		final long static_budget = "static".equals(policy) ? budget 
+								 : has_static ? (long) (budget * MatchingConfiguration.getDouble(Property.CACHE_STATIC_FRACTION)) 
+								 : 0;
+		switch (policy) {
+		case "lru":
+			return new LRUResultCache(budget - static_budget, static_budget);
+		case "lfu":
+			return new LFUResultCache(budget - static_budget, static_budget);
+		case "static":
+			return new StaticResultCache(static_budget);
+		default:
+			throw new IllegalArgumentException("Unknown result cache policy " + policy);
+		}
+	}
+	
+	/**
+	 * Returns the cache key of a search request processed by the given manager.
+	 * 
+	 * @param manager the manager
+	 * @param srq the search request
+	 * @return the cache key
+	 */
+	public static String key(final Manager manager, final SearchRequest srq)
+	{
+		return key(manager.mWeightingModel.signature(), manager.getMatchingAlgorithm().getClass().getName(), manager.TOP_K(), srq);
+	}
+	
+	/**
+	 * Returns the cache key of a search request, normalised w.r.t. the order of its terms.
+	 * 
+	 * @param model the signature of the weighting model
+	 * @param algorithm the name of the matching algorithm
+	 * @param k the number of results
+	 * @param srq the search request
+	 * @return the cache key
+	 */
+	public static String key(final String model, final String algorithm, final int k, final SearchRequest srq)
+	{
+		QueryTerm[] terms = srq.getQueryTerms();
+		Arrays.sort(terms, Comparator.comparing(QueryTerm::getQueryTerm));
+		
+		StringBuilder buf = new StringBuilder();
+		buf.append(model).append('|').append(algorithm).append('|').append(k).append('|');
+		for (QueryTerm term: terms) {
+			if (term.isRequired())
+				buf.append('+');
+			buf.append(term.getQueryTerm())
+			   .append('^').append(term.getWeight())
+			   .append('*').append(srq.getQueryTermFrequency(term))
+			   .append(' ');
+		}
+		return buf.toString();
+	}
+	
+	/**
+	 * Returns the estimated memory footprint of a cached entry, in bytes.
+	 * 
+	 * @param key the key
+	 * @param results the results
+	 * @return the estimated memory footprint
+	 */
+	protected static long size(final String key, final ResultSet results)
+	{
+		return ENTRY_OVERHEAD + (long) Character.BYTES * key.length() + (long) (Integer.BYTES + Float.BYTES) * results.size();
+	}
+	
+	/**
+	 * Returns the results of the search request, processing it with the given manager only if they are not cached, 
+	 * and caching them afterwards. The number of hits and misses so far is added to the statistics of the query.
+	 * 
+	 * @param manager the manager
+	 * @param srq the search request
+	 * @return the results
+	 * 
+	 * @throws IOException if the query can not be processed
+	 */
+	public ResultSet run(final Manager manager, final SearchRequest srq) throws IOException
+	{
+		final long start_time = System.nanoTime();
+		final String key = key(manager, srq);
+		ResultSet results = get(key);
+		if (results != null) {
+			srq.getQuery().addMetadata(RuntimeProperty.PROCESSING_TIME, Double.toString((System.nanoTime() - start_time) / 1e6));
+			srq.getQuery().addMetadata(RuntimeProperty.NUM_RESULTS, Integer.toString(results.size()));
+		} else {
+			results = manager.run(srq);
+			put(key, results);
+		}
+		synchronized (this) {
+			srq.getQuery().addMetadata(RuntimeProperty.CACHE_HITS,   Long.toString(mHits));
+			srq.getQuery().addMetadata(RuntimeProperty.CACHE_MISSES, Long.toString(mMisses));
+		}
+		return results;
+	}
+	
+	/**
+	 * Returns the cached results of a key, counting a hit or a miss.
+	 * 
+	 * @param key the key
+	 * @return the cached results, or <code>null</code> if not cached
+	 */
+	public synchronized ResultSet get(final String key)
+	{
+		ResultSet results = mStatic.get(key);
+		if (results == null)
+			results = lookup(key);
+		if (results == null)
+			mMisses++;
+		else
+			mHits++;
+		return results;
+	}
+	
+	/**
+	 * Caches the results of a key in the dynamic part, evicting other entries if the memory budget is exceeded. 
+	 * Results with no scores and results larger than the whole budget are not cached.
+	 * 
+	 * @param key the key
+	 * @param results the results
+	 */
+	public synchronized void put(final String key, final ResultSet results)
+	{
+		final ResultSet compact = compact(results);
+		if (compact == null || mStatic.containsKey(key) || contains(key))
+			return;
+		final long size = size(key, compact);
+		if (size > mBudget)
+			return;
+		while (mUsed + size > mBudget)
+			mUsed -= evict();
+		insert(key, compact);
+		mUsed += size;
+	}
+	
+	/**
+	 * Fills the static part with the results of the most frequent queries of the training query log specified by <tt>micro.cache.static.file</tt>, 
+	 * if any, one query per line, until its memory budget is exhausted. The queries are processed with the given manager.
+	 * 
+	 * @param manager the manager
+	 * @throws IOException if the training query log can not be read, or a query can not be processed
+	 */
+	public void fill(final Manager manager) throws IOException
+	{
+		final String filename = MatchingConfiguration.get(Property.CACHE_STATIC_FILE);
+		if (filename.isEmpty() || mStaticBudget == 0)
+			return;
+		
+		Object2IntOpenHashMap<String> frequencies = new Object2IntOpenHashMap<String>();
+		Object2ObjectOpenHashMap<String, String> queries = new Object2ObjectOpenHashMap<String, String>();
+		try (BufferedReader br = Files.newBufferedReader(Paths.get(filename))) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				try {
+					final String key = key(manager, new SearchRequest("static", line));
+					frequencies.addTo(key, 1);
+					queries.putIfAbsent(key, line);
+				} catch (QueryParserException e) {
+					LOGGER.warn("Can't parse training query " + line);
+				}
+			}
+		}
+		
+		ObjectArrayList<String> keys = new ObjectArrayList<String>(frequencies.keySet());
+		keys.sort((k1, k2) -> Integer.compare(frequencies.getInt(k2), frequencies.getInt(k1)));
+		
+		synchronized (this) {
+			for (String key: keys) {
+				final ResultSet results;
+				try {
+					results = compact(manager.run(new SearchRequest("static", queries.get(key))));
+				} catch (QueryParserException e) {
+					continue;
+				}
+				if (results == null)
+					continue;
+				final long size = size(key, results);
+				if (mStaticUsed + size > mStaticBudget)
+					break;
+				mStatic.put(key, results);
+				mStaticUsed += size;
+			}
+			LOGGER.info("Cached the results of " + mStatic.size() + " training queries out of " + keys.size() + " in " + mStaticUsed + " bytes");
+		}
+	}
+	
+	/**
+	 * Returns a compact copy of the results, or <code>null</code> if they are not ranked.
+	 */
+	private static ResultSet compact(final ResultSet results)
+	{
+		if (results.size() == 0)
+			return new EmptyResultSet();
+		if (!(results instanceof ScoredResultSet))
+			return null;
+		return new ScoredResultSet(Arrays.copyOf(results.docids(), results.size()), Arrays.copyOf(results.scores(), results.size()));
+	}
+	
+	/**
+	 * @return the number of hits so far
+	 */
+	public synchronized long hits()
+	{
+		return mHits;
+	}
+
+	/**
+	 * @return the number of misses so far
+	 */
+	public synchronized long misses()
+	{
+		return mMisses;
+	}
+	
+	/**
+	 * @return the memory used by the dynamic part, in bytes
+	 */
+	public synchronized long used()
+	{
+		return mUsed;
+	}
+	
+	/**
+	 * Looks up a key in the dynamic part, updating the eviction policy.
+	 * 
+	 * @param key the key
+	 * @return the cached results, or <code>null</code> if not cached
+	 */
+	protected abstract ResultSet lookup(final String key);
+	
+	/**
+	 * @param key the key
+	 * @return <code>true</code> if the key is cached in the dynamic part
+	 */
+	protected abstract boolean contains(final String key);
+	
+	/**
+	 * Inserts the results of a key in the dynamic part.
+	 * 
+	 * @param key the key
+	 * @param results the results
+	 */
+	protected abstract void insert(final String key, final ResultSet results);
+	
+	/**
+	 * Evicts an entry from the dynamic part, according to the eviction policy.
+	 * 
+	 * @return the estimated memory footprint of the evicted entry, in bytes
+	 */
+	protected abstract long evict();
+}
@@ -0,0 +1,58 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.cache;
+
+import it.cnr.isti.hpclab.matching.structures.ResultSet;
+
+/**
+ * A result cache with the static part only, filled from a training query log.
+ */
+public class StaticResultCache extends ResultCache
+{
+	public StaticResultCache(final long static_budget)
+	{
+		super(0, static_budget);
+	}
+
+	@Override
+	protected ResultSet lookup(final String key) 
+	{
+		return null;
+	}
+
+	@Override
+	protected boolean contains(final String key) 
+	{
+		return false;
+	}
+
+	@Override
+	protected void insert(final String key, final ResultSet results) 
+	{
+		throw new IllegalStateException("The static result cache has no dynamic part");
+	}
+
+	@Override
+	protected long evict() 
+	{
+		throw new IllegalStateException("The static result cache has no dynamic part");
+	}
+}
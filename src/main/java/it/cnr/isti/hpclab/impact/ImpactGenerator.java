@@ -0,0 +1,325 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.impact;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.commons.io.FilenameUtils;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.ParserProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.Lexicon;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.utility.ApplicationSetup;
+
+import it.cnr.isti.hpclab.ef.TermPartition;
+import it.cnr.isti.hpclab.impact.structures.ImpactIndex;
+import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+
+import me.tongfei.progressbar.ProgressBar;
+import me.tongfei.progressbar.ProgressBarBuilder;
+import me.tongfei.progressbar.ProgressBarStyle;
+
+/**
+ * Generates an impact-ordered index, used by score-at-a-time matching algorithms.
+ * The scores of all postings are computed with a weighting model and linearly quantized into impacts,
+ * after a first pass computing the maximum score in the index.
+ */
+public class ImpactGenerator
+{
+    protected static Logger LOGGER = LoggerFactory.getLogger(ImpactGenerator.class);
+    protected static ProgressBar pb_map;
+
+    public static final int DEFAULT_BITS = 8;
+
+    private final int num_terms;
+
+    public static final class ImpactArgs
+    {
+        // required arguments
+
+        @Option(name = "-index", metaVar = "[String]", required = true, usage = "Input Index")
+        public String index;
+
+        @Option(name = "-wm", metaVar = "[String]", required = true, usage = "Weighting Model")
+        public String wm_name;
+
+        // optional arguments
+
+        @Option(name = "-p", metaVar = "[Number]", required = false, usage = "Parallelism degree")
+        public String parallelism;
+
+        @Option(name = "-q", metaVar = "[Number]", required = false, usage = "Quantization bits (default: 8)")
+        public String bits;
+    }
+
+    public ImpactGenerator(final String src_index_path, final String src_index_prefix, final String wm_name) throws Exception
+    {
+        // Load input index
+        IndexOnDisk src_index = IndexOnDisk.createIndex(src_index_path, src_index_prefix);
+        if (IndexOnDisk.getLastIndexLoadError() != null) {
+            throw new IllegalArgumentException("Error loading index: " + IndexOnDisk.getLastIndexLoadError());
+        }
+        this.num_terms = src_index.getCollectionStatistics().getNumberOfUniqueTerms();
+        src_index.close();
+        LOGGER.info("Input index contains " + this.num_terms + " terms");
+
+        // check dst impact index does not exist
+        if (Files.exists(Paths.get(src_index_path + File.separator + src_index_prefix + ImpactIndex.USUAL_EXTENSION + ImpactIndex.DOCID_EXT))) {
+            throw new IllegalArgumentException("Index directory " + src_index_path + " already contains an impact index with prefix " + src_index_prefix);
+        }
+
+        // check wm exists
+        try {
+            @SuppressWarnings("unused")
+            WeightingModel mModel = WeightingModel.create(wm_name);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Problem loading weighting model (" + wm_name + ")");
+        }
+    }
+
+    public static class Command extends org.terrier.applications.CLITool.CLIParsedCLITool
+    {
+        protected Options getOptions()
+        {
+            Options options = super.getOptions();
+            options.addOption(org.apache.commons.cli.Option.builder("w").argName("wmodel").hasArgs()
+                    .desc("weighting model").required().build());
+            options.addOption(
+                    org.apache.commons.cli.Option.builder("p").argName("parallel").desc("Parallelism degree").build());
+            options.addOption(
+                    org.apache.commons.cli.Option.builder("q").argName("bits").hasArgs().desc("Quantization bits").build());
+            return options;
+        }
+
+        @Override
+        public int run(CommandLine line) throws Exception
+        {
+            ImpactArgs args = new ImpactArgs();
+            if (line.hasOption("w"))
+                args.wm_name = line.getOptionValue("w");
+            args.index = ApplicationSetup.TERRIER_INDEX_PATH + "/" + ApplicationSetup.TERRIER_INDEX_PREFIX;
+            if (line.hasOption("p"))
+                args.parallelism = line.getOptionValue("p");
+            if (line.hasOption("q"))
+                args.bits = line.getOptionValue("q");
+            execute(args);
+            return 0;
+        }
+
+        @Override
+        public String commandname()
+        {
+            return "micro-impact-generator";
+        }
+
+        @Override
+        public String helpsummary()
+        {
+            return "generates an impact-ordered index";
+        }
+    }
+
+    public static void main(String[] argv)
+    {
+        ImpactArgs args = new ImpactArgs();
+        CmdLineParser parser = new CmdLineParser(args, ParserProperties.defaults().withUsageWidth(90));
+        try {
+            parser.parseArgument(argv);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.err);
+            return;
+        }
+        execute(args);
+    }
+
+    @SuppressWarnings("deprecation")
+    public static void execute(ImpactArgs args)
+    {
+        IndexOnDisk.setIndexLoadingProfileAsRetrieval(false);
+        final String src_index_path = FilenameUtils.getFullPath(args.index);
+        final String src_index_prefix = FilenameUtils.getBaseName(args.index);
+
+        // the weighting model, with its parameters, e.g., BM25(k1=1.2,b=0.4)
+        final String wm_name = args.wm_name;
+
+        final int num_threads = ( (args.parallelism != null && Integer.parseInt(args.parallelism) > 1)
+                                        ? Math.min(ForkJoinPool.commonPool().getParallelism(), Integer.parseInt(args.parallelism))
+                                        : 1) ;
+
+        final int bits = (args.bits != null) ? Integer.parseInt(args.bits) : DEFAULT_BITS;
+        if (bits < 1 || bits > 16)
+            throw new IllegalArgumentException("The number of quantization bits must be between 1 and 16, found " + bits);
+
+        LOGGER.info("Started " + ImpactGenerator.class.getSimpleName() + " with parallelism " + num_threads + " (out of " + ForkJoinPool.commonPool().getParallelism() + " max parallelism available), using " + bits + " quantization bits");
+        LOGGER.warn("Multi-threaded impact generation is experimental - caution advised due to threads competing for available memory! YMMV.");
+
+        long starttime = System.currentTimeMillis();
+
+        try {
+            ImpactGenerator generator = new ImpactGenerator(src_index_path, src_index_prefix, wm_name);
+
+            TermPartition[] partitions = generator.partition(num_threads);
+
+            // First pass, the maximum score is mapped to the highest impact
+            final float max_score = (float) Arrays.stream(partitions).parallel().mapToDouble(tp -> max_score(src_index_path, src_index_prefix, wm_name, tp)).max().orElse(0.0);
+            long maxtime = System.currentTimeMillis();
+            LOGGER.info("Parallel max score computation completed after " + (maxtime - starttime)/1000 + " seconds, max score is " + max_score);
+
+            // Second pass, quantization and impact ordering
+            ImpactMapper mapper = new ImpactMapper(src_index_path, src_index_prefix, wm_name, max_score, bits);
+            pb_map = new ProgressBarBuilder()
+                    .setInitialMax(generator.num_terms)
+                    .setStyle(ProgressBarStyle.COLORFUL_UNICODE_BLOCK)
+                    .setTaskName("Impact computation")
+                    .setUpdateIntervalMillis(1000)
+                    .showSpeed(new DecimalFormat("#.###"))
+                    .build();
+            TermPartition[] tmp_partitions = Arrays.stream(partitions).parallel().map(mapper).sorted().toArray(TermPartition[]::new);
+            pb_map.stop();
+
+            long maptime = System.currentTimeMillis();
+            LOGGER.info("Parallel impact computation completed after " + (maptime - maxtime)/1000 + " seconds");
+
+            concatenate(src_index_path, src_index_prefix, tmp_partitions);
+
+            long writetime = System.currentTimeMillis();
+            LOGGER.info("Sequential writing completed after " + (writetime - maptime)/1000 + " seconds");
+
+            writeProperties(src_index_path, src_index_prefix, wm_name, bits, max_score / ((1 << bits) - 1));
+
+            long endtime = System.currentTimeMillis();
+
+            LOGGER.info("Multi-threaded impact generation completed after " + (endtime - starttime)/1000 + " seconds, using "  + num_threads + " threads");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    static float max_score(final String src_index_path, final String src_index_prefix, final String wm_name, final TermPartition terms)
+    {
+        float max_score = 0.0f;
+        try {
+            IndexOnDisk src_index = IndexOnDisk.createIndex(src_index_path, src_index_prefix);
+
+            WeightingModel wm_model = WeightingModel.create(wm_name);
+            wm_model.setup(src_index);
+
+            final Lexicon<String> lex = src_index.getLexicon();
+            for (int pos = terms.begin(); pos < terms.end(); ++pos) {
+                LexiconEntry le = lex.getIthLexiconEntry(pos).getValue();
+                IterablePosting p = src_index.getInvertedIndex().getPostings((BitIndexPointer) le);
+                while (p.next() != IterablePosting.END_OF_LIST)
+                    max_score = Math.max(max_score, (float) wm_model.score(1, p.getFrequency(), p.getDocumentLength(), le.getDocumentFrequency(), le.getFrequency()));
+                p.close();
+            }
+            src_index.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return max_score;
+    }
+
+    private static void concatenate(final String src_index_path, final String src_index_prefix, final TermPartition[] partitions) throws IOException
+    {
+        final String dst = src_index_path + File.separator + src_index_prefix + ImpactIndex.USUAL_EXTENSION;
+
+        long written_docids = 0;
+        long written_segments = 0;
+        try (DataOutputStream offsetsOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dst + ImpactIndex.OFFSET_EXT)));
+             FileChannel docidsOutput   = FileChannel.open(Paths.get(dst + ImpactIndex.DOCID_EXT),   StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+             FileChannel segmentsOutput = FileChannel.open(Paths.get(dst + ImpactIndex.SEGMENT_EXT), StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+            for (TermPartition tp: partitions) {
+                final String src = src_index_path + File.separator + tp.prefix() + ImpactIndex.USUAL_EXTENSION;
+
+                // offsets are relative to the partition
+                try (DataInputStream offsetsInput = new DataInputStream(new BufferedInputStream(new FileInputStream(src + ImpactIndex.OFFSET_EXT)))) {
+                    for (int i = tp.begin(); i < tp.end(); ++i) {
+                        offsetsOutput.writeLong(offsetsInput.readLong() + written_docids);
+                        offsetsOutput.writeLong(offsetsInput.readLong() + written_segments);
+                    }
+                }
+                Files.delete(Paths.get(src + ImpactIndex.OFFSET_EXT));
+
+                written_docids   += append(Paths.get(src + ImpactIndex.DOCID_EXT),   docidsOutput)   / Integer.BYTES;
+                written_segments += append(Paths.get(src + ImpactIndex.SEGMENT_EXT), segmentsOutput) / (2 * Integer.BYTES);
+            }
+            // important, last elements are the total number of docids and segments
+            offsetsOutput.writeLong(written_docids);
+            offsetsOutput.writeLong(written_segments);
+        }
+    }
+
+    static long append(final Path src, final FileChannel out) throws IOException
+    {
+        long l;
+        try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ)) {
+            l = in.size();
+            for (long p = 0; p < l; )
+                p += in.transferTo(p, l - p, out);
+        }
+        Files.delete(src);
+        return l;
+    }
+
+    private static void writeProperties(String indexPath, String indexPrefix, final String wm_name, final int bits, final float scale) throws IOException
+    {
+        final WeightingModel model = WeightingModel.create(wm_name);
+        IndexOnDisk index = IndexOnDisk.createIndex(indexPath, indexPrefix);
+        index.setIndexProperty("index.impact.class","it.cnr.isti.hpclab.impact.structures.ImpactIndex");
+        index.setIndexProperty("index.impact.parameter_types","org.terrier.structures.Index");
+        index.setIndexProperty("index.impact.parameter_values","index");
+        index.setIndexProperty("index.impact.weighting_model", model.getClass().getName());
+        index.setIndexProperty("index.impact.signature", model.signature());
+        index.setIndexProperty("index.impact.quantization_bits", Integer.toString(bits));
+        index.setIndexProperty("index.impact.scale", Float.toString(scale));
+
+        index.close();
+    }
+
+    public TermPartition[] partition(final int num_threads)
+    {
+        return TermPartition.split(num_terms, num_threads);
+    }
+}
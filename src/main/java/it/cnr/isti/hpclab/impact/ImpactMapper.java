@@ -0,0 +1,169 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.impact;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.Lexicon;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+
+import it.cnr.isti.hpclab.ef.TermPartition;
+
+import it.cnr.isti.hpclab.impact.structures.ImpactIndex;
+import it.cnr.isti.hpclab.impact.structures.Quantizer;
+import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+// This is a function object so it must be stateless
+class ImpactMapper implements Function<TermPartition,TermPartition>
+{
+    protected static final Logger LOGGER = LoggerFactory.getLogger(ImpactMapper.class);
+
+    private final String src_index_path;
+    private final String src_index_prefix;
+    private final String wm_name;
+    private final Quantizer quantizer;
+    private final int levels;
+
+    /**
+     * @param max_score the maximum score of any posting in the index, mapped to the highest impact
+     * @param bits the number of bits of the quantized impacts
+     */
+    public ImpactMapper(final String src_index_path, final String src_index_prefix, final String wm_name, final float max_score, final int bits)
+    {
+        this.src_index_path = src_index_path;
+        this.src_index_prefix = src_index_prefix;
+        this.wm_name = wm_name;
+        this.quantizer = new Quantizer(max_score, bits);
+        this.levels = quantizer.levels();
+    }
+
+    @Override
+    public TermPartition apply(TermPartition terms)
+    {
+        try {
+            IndexOnDisk src_index = IndexOnDisk.createIndex(src_index_path, src_index_prefix);
+            String this_prefix = src_index.getPrefix() + "_partition_" + terms.id();
+            terms.prefix(this_prefix);
+
+            if (terms.begin() >= terms.end() || terms.begin() < 0 || terms.end() > src_index.getCollectionStatistics().getNumberOfUniqueTerms()) {
+                LOGGER.error("Something wrong with term positions, begin = " + terms.begin() + ", end = " + terms.end());
+                return null;
+            }
+
+            WeightingModel wm_model = WeightingModel.create(wm_name);
+            wm_model.setup(src_index);
+
+            // Writers
+            final String filename_prefix = src_index.getPath() + File.separator + terms.prefix() + ImpactIndex.USUAL_EXTENSION;
+            DataOutputStream docidsOutput   = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename_prefix + ImpactIndex.DOCID_EXT)));
+            DataOutputStream segmentsOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename_prefix + ImpactIndex.SEGMENT_EXT)));
+            DataOutputStream offsetsOutput  = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename_prefix + ImpactIndex.OFFSET_EXT)));
+            long written_docids = 0;
+            long written_segments = 0;
+
+            final Lexicon<String> lex = src_index.getLexicon();
+
+            LexiconEntry le = null;
+            IterablePosting p = null;
+
+            IntArrayList docidsList  = new IntArrayList();
+            IntArrayList impactsList = new IntArrayList();
+            int[] counts = new int[levels + 1];
+            int[] starts = new int[levels + 1];
+            int[] sorted = new int[0];
+
+            for (int termid = terms.begin(); termid < terms.end(); ++termid) {
+                le = lex.getIthLexiconEntry(termid).getValue();
+                p = src_index.getInvertedIndex().getPostings((BitIndexPointer) le);
+                docidsList.clear();
+                impactsList.clear();
+                Arrays.fill(counts, 0);
+
+                while (p.next() != IterablePosting.END_OF_LIST) {
+                    final int impact = quantizer.quantize((float) wm_model.score(1, p.getFrequency(), p.getDocumentLength(), le.getDocumentFrequency(), le.getFrequency()));
+                    docidsList.add(p.getId());
+                    impactsList.add(impact);
+                    counts[impact]++;
+                }
+                p.close();
+
+                // Counting sort by decreasing impact, stable, hence docids are still increasing within a segment
+                final int n = docidsList.size();
+                if (sorted.length < n)
+                    sorted = new int[n];
+                int num_segments = 0;
+                for (int impact = levels, pos = 0; impact > 0; --impact) {
+                    starts[impact] = pos;
+                    pos += counts[impact];
+                    if (counts[impact] > 0)
+                        num_segments++;
+                }
+                for (int i = 0; i < n; ++i)
+                    sorted[starts[impactsList.getInt(i)]++] = docidsList.getInt(i);
+
+                // Writing
+
+                // offsets
+                offsetsOutput.writeLong(written_docids);
+                offsetsOutput.writeLong(written_segments);
+                written_docids += n;
+                written_segments += num_segments;
+
+                // Segments
+                for (int impact = levels; impact > 0; --impact) {
+                    if (counts[impact] > 0) {
+                        segmentsOutput.writeInt(impact);
+                        segmentsOutput.writeInt(counts[impact]);
+                    }
+                }
+
+                // Docids
+                for (int i = 0; i < n; ++i)
+                    docidsOutput.writeInt(sorted[i]);
+
+                ImpactGenerator.pb_map.step();
+            }
+
+            src_index.close();
+
+            offsetsOutput.close();
+            segmentsOutput.close();
+            docidsOutput.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return terms;
+    }
+}
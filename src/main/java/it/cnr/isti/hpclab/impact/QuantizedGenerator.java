@@ -0,0 +1,268 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.impact;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.commons.io.FilenameUtils;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.ParserProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.utility.ApplicationSetup;
+
+import it.cnr.isti.hpclab.ef.TermPartition;
+import it.cnr.isti.hpclab.impact.structures.QuantizedIndex;
+import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+
+import me.tongfei.progressbar.ProgressBar;
+import me.tongfei.progressbar.ProgressBarBuilder;
+import me.tongfei.progressbar.ProgressBarStyle;
+
+/**
+ * Generates a quantized index, i.e., docid-ordered posting lists storing the 8-bit quantized impacts of a weighting model
+ * in place of term frequencies and document lengths, used with the {@link it.cnr.isti.hpclab.matching.structures.model.Quantized} weighting model.
+ * The scores of all postings are linearly quantized, after a first pass computing the maximum score in the index.
+ */
+public class QuantizedGenerator
+{
+    protected static Logger LOGGER = LoggerFactory.getLogger(QuantizedGenerator.class);
+    protected static ProgressBar pb_map;
+
+    private final int num_terms;
+
+    public static final class QuantizedArgs
+    {
+        // required arguments
+
+        @Option(name = "-index", metaVar = "[String]", required = true, usage = "Input Index")
+        public String index;
+
+        @Option(name = "-wm", metaVar = "[String]", required = true, usage = "Weighting Model")
+        public String wm_name;
+
+        // optional arguments
+
+        @Option(name = "-p", metaVar = "[Number]", required = false, usage = "Parallelism degree")
+        public String parallelism;
+    }
+
+    public QuantizedGenerator(final String src_index_path, final String src_index_prefix, final String wm_name) throws Exception
+    {
+        // Load input index
+        IndexOnDisk src_index = IndexOnDisk.createIndex(src_index_path, src_index_prefix);
+        if (IndexOnDisk.getLastIndexLoadError() != null) {
+            throw new IllegalArgumentException("Error loading index: " + IndexOnDisk.getLastIndexLoadError());
+        }
+        this.num_terms = src_index.getCollectionStatistics().getNumberOfUniqueTerms();
+        src_index.close();
+        LOGGER.info("Input index contains " + this.num_terms + " terms");
+
+        // check dst quantized index does not exist
+        if (Files.exists(Paths.get(src_index_path + File.separator + src_index_prefix + QuantizedIndex.USUAL_EXTENSION + QuantizedIndex.DOCID_EXT))) {
+            throw new IllegalArgumentException("Index directory " + src_index_path + " already contains a quantized index with prefix " + src_index_prefix);
+        }
+
+        // check wm exists
+        try {
+            @SuppressWarnings("unused")
+            WeightingModel mModel = WeightingModel.create(wm_name);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Problem loading weighting model (" + wm_name + ")");
+        }
+    }
+
+    public static class Command extends org.terrier.applications.CLITool.CLIParsedCLITool
+    {
+        protected Options getOptions()
+        {
+            Options options = super.getOptions();
+            options.addOption(org.apache.commons.cli.Option.builder("w").argName("wmodel").hasArgs()
+                    .desc("weighting model").required().build());
+            options.addOption(
+                    org.apache.commons.cli.Option.builder("p").argName("parallel").desc("Parallelism degree").build());
+            return options;
+        }
+
+        @Override
+        public int run(CommandLine line) throws Exception
+        {
+            QuantizedArgs args = new QuantizedArgs();
+            if (line.hasOption("w"))
+                args.wm_name = line.getOptionValue("w");
+            args.index = ApplicationSetup.TERRIER_INDEX_PATH + "/" + ApplicationSetup.TERRIER_INDEX_PREFIX;
+            if (line.hasOption("p"))
+                args.parallelism = line.getOptionValue("p");
+            execute(args);
+            return 0;
+        }
+
+        @Override
+        public String commandname()
+        {
+            return "micro-quantized-generator";
+        }
+
+        @Override
+        public String helpsummary()
+        {
+            return "generates a docid-ordered quantized impact index";
+        }
+    }
+
+    public static void main(String[] argv)
+    {
+        QuantizedArgs args = new QuantizedArgs();
+        CmdLineParser parser = new CmdLineParser(args, ParserProperties.defaults().withUsageWidth(90));
+        try {
+            parser.parseArgument(argv);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.err);
+            return;
+        }
+        execute(args);
+    }
+
+    @SuppressWarnings("deprecation")
+    public static void execute(QuantizedArgs args)
+    {
+        IndexOnDisk.setIndexLoadingProfileAsRetrieval(false);
+        final String src_index_path = FilenameUtils.getFullPath(args.index);
+        final String src_index_prefix = FilenameUtils.getBaseName(args.index);
+
+        // the weighting model, with its parameters, e.g., BM25(k1=1.2,b=0.4)
+        final String wm_name = args.wm_name;
+
+        final int num_threads = ( (args.parallelism != null && Integer.parseInt(args.parallelism) > 1)
+                                        ? Math.min(ForkJoinPool.commonPool().getParallelism(), Integer.parseInt(args.parallelism))
+                                        : 1) ;
+
+        LOGGER.info("Started " + QuantizedGenerator.class.getSimpleName() + " with parallelism " + num_threads + " (out of " + ForkJoinPool.commonPool().getParallelism() + " max parallelism available)");
+        LOGGER.warn("Multi-threaded quantized index generation is experimental - caution advised due to threads competing for available memory! YMMV.");
+
+        long starttime = System.currentTimeMillis();
+
+        try {
+            QuantizedGenerator generator = new QuantizedGenerator(src_index_path, src_index_prefix, wm_name);
+
+            TermPartition[] partitions = generator.partition(num_threads);
+
+            // First pass, the maximum score is mapped to the highest impact
+            final float max_score = (float) Arrays.stream(partitions).parallel().mapToDouble(tp -> ImpactGenerator.max_score(src_index_path, src_index_prefix, wm_name, tp)).max().orElse(0.0);
+            long maxtime = System.currentTimeMillis();
+            LOGGER.info("Parallel max score computation completed after " + (maxtime - starttime)/1000 + " seconds, max score is " + max_score);
+
+            // Second pass, quantization
+            QuantizedMapper mapper = new QuantizedMapper(src_index_path, src_index_prefix, wm_name, max_score);
+            pb_map = new ProgressBarBuilder()
+                    .setInitialMax(generator.num_terms)
+                    .setStyle(ProgressBarStyle.COLORFUL_UNICODE_BLOCK)
+                    .setTaskName("Quantized impact computation")
+                    .setUpdateIntervalMillis(1000)
+                    .showSpeed(new DecimalFormat("#.###"))
+                    .build();
+            TermPartition[] tmp_partitions = Arrays.stream(partitions).parallel().map(mapper).sorted().toArray(TermPartition[]::new);
+            pb_map.stop();
+
+            long maptime = System.currentTimeMillis();
+            LOGGER.info("Parallel quantized impact computation completed after " + (maptime - maxtime)/1000 + " seconds");
+
+            concatenate(src_index_path, src_index_prefix, tmp_partitions);
+
+            long writetime = System.currentTimeMillis();
+            LOGGER.info("Sequential writing completed after " + (writetime - maptime)/1000 + " seconds");
+
+            writeProperties(src_index_path, src_index_prefix, wm_name, max_score);
+
+            long endtime = System.currentTimeMillis();
+
+            LOGGER.info("Multi-threaded quantized index generation completed after " + (endtime - starttime)/1000 + " seconds, using "  + num_threads + " threads");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void concatenate(final String src_index_path, final String src_index_prefix, final TermPartition[] partitions) throws IOException
+    {
+        final String dst = src_index_path + File.separator + src_index_prefix + QuantizedIndex.USUAL_EXTENSION;
+
+        long written_postings = 0;
+        try (DataOutputStream offsetsOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dst + QuantizedIndex.OFFSET_EXT)));
+             FileChannel docidsOutput  = FileChannel.open(Paths.get(dst + QuantizedIndex.DOCID_EXT),  StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+             FileChannel impactsOutput = FileChannel.open(Paths.get(dst + QuantizedIndex.IMPACT_EXT), StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+            for (TermPartition tp: partitions) {
+                final String src = src_index_path + File.separator + tp.prefix() + QuantizedIndex.USUAL_EXTENSION;
+
+                // offsets are relative to the partition
+                try (DataInputStream offsetsInput = new DataInputStream(new BufferedInputStream(new FileInputStream(src + QuantizedIndex.OFFSET_EXT)))) {
+                    for (int i = tp.begin(); i < tp.end(); ++i)
+                        offsetsOutput.writeLong(offsetsInput.readLong() + written_postings);
+                }
+                Files.delete(Paths.get(src + QuantizedIndex.OFFSET_EXT));
+
+                written_postings += ImpactGenerator.append(Paths.get(src + QuantizedIndex.DOCID_EXT), docidsOutput) / Integer.BYTES;
+                ImpactGenerator.append(Paths.get(src + QuantizedIndex.IMPACT_EXT), impactsOutput);
+            }
+            // important, last element is the total number of postings
+            offsetsOutput.writeLong(written_postings);
+        }
+    }
+
+    private static void writeProperties(String indexPath, String indexPrefix, final String wm_name, final float max_score) throws IOException
+    {
+        final WeightingModel model = WeightingModel.create(wm_name);
+        IndexOnDisk index = IndexOnDisk.createIndex(indexPath, indexPrefix);
+        index.setIndexProperty("index.quantized.class","it.cnr.isti.hpclab.impact.structures.QuantizedIndex");
+        index.setIndexProperty("index.quantized.parameter_types","org.terrier.structures.Index");
+        index.setIndexProperty("index.quantized.parameter_values","index");
+        index.setIndexProperty("index.quantized.weighting_model", model.getClass().getName());
+        index.setIndexProperty("index.quantized.signature", model.signature());
+        index.setIndexProperty("index.quantized.quantization_bits", Integer.toString(QuantizedIndex.BITS));
+        index.setIndexProperty("index.quantized.max_score", Float.toString(max_score));
+        index.setIndexProperty("index.quantized.scale", Float.toString(max_score / ((1 << QuantizedIndex.BITS) - 1)));
+
+        index.close();
+    }
+
+    public TermPartition[] partition(final int num_threads)
+    {
+        return TermPartition.split(num_terms, num_threads);
+    }
+}
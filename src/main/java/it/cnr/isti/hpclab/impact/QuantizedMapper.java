@@ -0,0 +1,123 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.impact;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.Lexicon;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+
+import it.cnr.isti.hpclab.ef.TermPartition;
+
+import it.cnr.isti.hpclab.impact.structures.QuantizedIndex;
+import it.cnr.isti.hpclab.impact.structures.Quantizer;
+import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+
+// This is a function object so it must be stateless
+class QuantizedMapper implements Function<TermPartition,TermPartition>
+{
+    protected static final Logger LOGGER = LoggerFactory.getLogger(QuantizedMapper.class);
+
+    private final String src_index_path;
+    private final String src_index_prefix;
+    private final String wm_name;
+    private final Quantizer quantizer;
+
+    /**
+     * @param max_score the maximum score of any posting in the index, mapped to the highest impact
+     */
+    public QuantizedMapper(final String src_index_path, final String src_index_prefix, final String wm_name, final float max_score)
+    {
+        this.src_index_path = src_index_path;
+        this.src_index_prefix = src_index_prefix;
+        this.wm_name = wm_name;
+        this.quantizer = new Quantizer(max_score, QuantizedIndex.BITS);
+    }
+
+    @Override
+    public TermPartition apply(TermPartition terms)
+    {
+        try {
+            IndexOnDisk src_index = IndexOnDisk.createIndex(src_index_path, src_index_prefix);
+            String this_prefix = src_index.getPrefix() + "_partition_" + terms.id();
+            terms.prefix(this_prefix);
+
+            if (terms.begin() >= terms.end() || terms.begin() < 0 || terms.end() > src_index.getCollectionStatistics().getNumberOfUniqueTerms()) {
+                LOGGER.error("Something wrong with term positions, begin = " + terms.begin() + ", end = " + terms.end());
+                return null;
+            }
+
+            WeightingModel wm_model = WeightingModel.create(wm_name);
+            wm_model.setup(src_index);
+
+            // Writers
+            final String filename_prefix = src_index.getPath() + File.separator + terms.prefix() + QuantizedIndex.USUAL_EXTENSION;
+            DataOutputStream docidsOutput  = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename_prefix + QuantizedIndex.DOCID_EXT)));
+            DataOutputStream impactsOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename_prefix + QuantizedIndex.IMPACT_EXT)));
+            DataOutputStream offsetsOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename_prefix + QuantizedIndex.OFFSET_EXT)));
+            long written_postings = 0;
+
+            final Lexicon<String> lex = src_index.getLexicon();
+
+            LexiconEntry le = null;
+            IterablePosting p = null;
+
+            for (int pos = terms.begin(); pos < terms.end(); ++pos) {
+                le = lex.getIthLexiconEntry(pos).getValue();
+                p = src_index.getInvertedIndex().getPostings((BitIndexPointer) le);
+
+                // offsets
+                offsetsOutput.writeLong(written_postings);
+
+                // Docids and impacts
+                while (p.next() != IterablePosting.END_OF_LIST) {
+                    docidsOutput.writeInt(p.getId());
+                    impactsOutput.writeByte(quantizer.quantize(wm_model.score(1, p.getFrequency(), p.getDocumentLength(), le.getDocumentFrequency(), le.getFrequency())));
+                    written_postings++;
+                }
+                p.close();
+
+                QuantizedGenerator.pb_map.step();
+            }
+
+            src_index.close();
+
+            offsetsOutput.close();
+            impactsOutput.close();
+            docidsOutput.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        return terms;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.impact.structures;
+
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+
+/**
+ * Enumerates the segments of an impact-ordered posting list, in decreasing order of impact.
+ * The docids of the current segment are stored in the docids of the index, returned by {@link #docid(long)},
+ * from position {@link #begin()} (inclusive) to position {@link #end()} (exclusive), in increasing order.
+ */
+public class ImpactEnumerator
+{
+	private final ByteBuffer[] mDocids;
+	private final ByteBuffer[] mSegments;
+
+	private final long mDocidBegin;
+	private final long mSegmentBegin;
+	private final int mNumSegments;
+
+	private int mPos;
+	private long mBegin;
+	private long mEnd;
+
+	ImpactEnumerator(final long docidBegin, final long segmentBegin, final int numSegments, final ByteBuffer[] docids, final ByteBuffer[] segments)
+	{
+		this.mDocids = docids;
+		this.mSegments = segments;
+
+		this.mDocidBegin = docidBegin;
+		this.mSegmentBegin = segmentBegin;
+		this.mNumSegments = numSegments;
+
+		reset();
+	}
+
+	public boolean hasNext()
+	{
+		return (mPos + 1 < mNumSegments);
+	}
+
+	public void next()
+	{
+		if (!hasNext())
+			throw new NoSuchElementException("the impact enumerator has no more elements");
+		mPos++;
+		mBegin = mEnd;
+		mEnd = mBegin + length();
+	}
+
+	/**
+	 * Return the impact of the postings in the current segment.
+	 *
+	 * @return the impact of the current segment
+	 */
+	public int impact()
+	{
+		return MappedChunks.getInt(mSegments, 2 * (mSegmentBegin + mPos));
+	}
+
+	/**
+	 * Return the number of postings in the current segment.
+	 *
+	 * @return the number of postings in the current segment
+	 */
+	public int length()
+	{
+		return MappedChunks.getInt(mSegments, 2 * (mSegmentBegin + mPos) + 1);
+	}
+
+	/**
+	 * Return the docid at a position of the docids of the index, shared by all enumerators of the same index.
+	 *
+	 * @param pos the position of the docid, e.g., in [{@link #begin()}, {@link #end()})
+	 * @return the docid at the given position
+	 */
+	public int docid(final long pos)
+	{
+		return MappedChunks.getInt(mDocids, pos);
+	}
+
+	public long begin()
+	{
+		return mBegin;
+	}
+
+	public long end()
+	{
+		return mEnd;
+	}
+
+	/**
+	 * Return the number of segments.
+	 *
+	 * @return the number of segments
+	 */
+	public int size()
+	{
+		return mNumSegments;
+	}
+
+	public void reset()
+	{
+		this.mPos = -1;
+		this.mBegin = mDocidBegin;
+		this.mEnd = mDocidBegin;
+	}
+
+	/**
+	 * Return a new enumerator over the same segments, positioned before the first segment.
+	 *
+	 * @return a copy of this enumerator
+	 */
+	public ImpactEnumerator copy()
+	{
+		return new ImpactEnumerator(mDocidBegin, mSegmentBegin, mNumSegments, mDocids, mSegments);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString()
+	{
+		if (mPos < 0 || mPos >= mNumSegments)
+			return "[]";
+		return "[" + impact() + "," + length() + "]";
+	}
+}
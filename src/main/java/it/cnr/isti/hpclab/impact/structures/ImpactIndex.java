@@ -0,0 +1,124 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.impact.structures;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.log4j.Logger;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+
+/**
+ * This class represents an additional data structure to a regular Terrier index, storing
+ * impact-ordered posting lists. The score of every posting, computed a-priori given a weighting model,
+ * is quantized into an integer impact, and the postings of a term are grouped into segments of postings with the same impact.
+ * The segments of a term are stored in decreasing order of impact, and the docids of a segment in increasing order.
+ *
+ * The structure is stored in three files:
+ * <ul>
+ * <li><tt>.impact.docids</tt>, the docids of all segments of all terms (ints);</li>
+ * <li><tt>.impact.segments</tt>, the impact and the number of postings of every segment of all terms (pairs of ints);</li>
+ * <li><tt>.impact.offsets</tt>, the offset of the first docid and of the first segment of every term (pairs of longs), followed by the total number of docids and segments.</li>
+ * </ul>
+ * The docids and segments files are memory-mapped in chunks, hence they are not copied on heap and they are not limited to 2^31 bytes.
+ *
+ * The quantized impacts are mapped back to scores by multiplying them by the scale factor stored in the index properties.
+ */
+public class ImpactIndex
+{
+	protected static final Logger logger = Logger.getLogger(ImpactIndex.class);
+
+	public static final String USUAL_EXTENSION = ".impact";
+
+	public static final String DOCID_EXT   = ".docids";
+	public static final String SEGMENT_EXT = ".segments";
+	public static final String OFFSET_EXT  = ".offsets";
+
+	/** The number of terms in lexicon. */
+	private int numEntries;
+	/** The factor mapping impacts back to scores. */
+	private final float scale;
+	/** The number of bits used to quantize the scores. */
+	private final int bits;
+
+	private long[] mOffsetsArray;
+	private ByteBuffer[] mDocids;
+	private ByteBuffer[] mSegments;
+
+	public ImpactIndex(final Index index) throws IOException
+	{
+		this.scale = Float.parseFloat(((IndexOnDisk)index).getIndexProperty("index.impact.scale", "1.0"));
+		this.bits  = Integer.parseInt(((IndexOnDisk)index).getIndexProperty("index.impact.quantization_bits", "8"));
+
+		createImpactIndex(((IndexOnDisk)index).getPath() + File.separator + ((IndexOnDisk)index).getPrefix() + USUAL_EXTENSION);
+	}
+
+	private void createImpactIndex(String filenamePrefix) throws IOException
+	{
+		ByteBuffer[] offsets = MappedChunks.map(filenamePrefix + OFFSET_EXT);
+		mOffsetsArray = new long[(int) (MappedChunks.size(offsets) / Long.BYTES)];
+		for (int i = 0; i < mOffsetsArray.length; ++i)
+			mOffsetsArray[i] = MappedChunks.getLong(offsets, i);
+
+		mDocids = MappedChunks.map(filenamePrefix + DOCID_EXT);
+		mSegments = MappedChunks.map(filenamePrefix + SEGMENT_EXT);
+
+		this.numEntries = mOffsetsArray.length / 2 - 1;
+		logger.info("Loaded impact index with " + numEntries + " terms, " + mOffsetsArray[2 * numEntries] + " postings and " + mOffsetsArray[2 * numEntries + 1] + " segments");
+	}
+
+	/**
+	 * Returns the segments of the impact-ordered posting list of a term.
+	 *
+	 * @param termid the term id
+	 * @return an enumerator over the segments of the term, positioned before the first segment
+	 */
+	public ImpactEnumerator get(final int termid)
+	{
+		final long docid_offset   = mOffsetsArray[2 * termid];
+		final long segment_offset = mOffsetsArray[2 * termid + 1];
+		final int num_segments = (int) (mOffsetsArray[2 * termid + 3] - segment_offset);
+
+		return new ImpactEnumerator(docid_offset, segment_offset, num_segments, mDocids, mSegments);
+	}
+
+	/**
+	 * Returns the factor mapping impacts back to (approximated) scores.
+	 *
+	 * @return the scale factor
+	 */
+	public float getScale()
+	{
+		return this.scale;
+	}
+
+	/**
+	 * Returns the number of bits used to quantize the scores, i.e., impacts are in [1, 2^bits - 1].
+	 *
+	 * @return the number of quantization bits
+	 */
+	public int getQuantizationBits()
+	{
+		return this.bits;
+	}
+}
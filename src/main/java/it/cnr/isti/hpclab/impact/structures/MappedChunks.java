@@ -0,0 +1,81 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.impact.structures;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A file memory-mapped in chunks of {@link #CHUNK_BYTES} bytes, hence not limited to 2^31 bytes, read as an array of ints, longs or bytes 
+ * addressed by long positions. The chunk size is a multiple of the size of all entries, hence no entry spans two chunks.
+ */
+final class MappedChunks
+{
+	private static final int CHUNK_SHIFT = 30;
+	/** The size of a mapped chunk, a multiple of the size of all entries. */
+	static final long CHUNK_BYTES = 1L << CHUNK_SHIFT;
+	private static final long CHUNK_MASK = CHUNK_BYTES - 1;
+	
+	private MappedChunks()
+	{
+	}
+	
+	static ByteBuffer[] map(final String filename) throws IOException
+	{
+		try (FileChannel fc = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+			final long size = fc.size();
+			ByteBuffer[] chunks = new ByteBuffer[(int) ((size + CHUNK_BYTES - 1) >>> CHUNK_SHIFT)];
+			for (int i = 0; i < chunks.length; ++i) {
+				final long begin = (long) i << CHUNK_SHIFT;
+				chunks[i] = fc.map(FileChannel.MapMode.READ_ONLY, begin, Math.min(CHUNK_BYTES, size - begin));
+			}
+			return chunks;
+		}
+	}
+	
+	/**
+	 * @return the number of bytes of the mapped file
+	 */
+	static long size(final ByteBuffer[] chunks)
+	{
+		return (chunks.length == 0) ? 0 : ((long) (chunks.length - 1) << CHUNK_SHIFT) + chunks[chunks.length - 1].capacity();
+	}
+	
+	static int getInt(final ByteBuffer[] chunks, final long pos)
+	{
+		final long b = pos * Integer.BYTES;
+		return chunks[(int) (b >>> CHUNK_SHIFT)].getInt((int) (b & CHUNK_MASK));
+	}
+
+	static long getLong(final ByteBuffer[] chunks, final long pos)
+	{
+		final long b = pos * Long.BYTES;
+		return chunks[(int) (b >>> CHUNK_SHIFT)].getLong((int) (b & CHUNK_MASK));
+	}
+
+	static byte getByte(final ByteBuffer[] chunks, final long pos)
+	{
+		return chunks[(int) (pos >>> CHUNK_SHIFT)].get((int) (pos & CHUNK_MASK));
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.impact.structures;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.log4j.Logger;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.postings.IterablePosting;
+
+/**
+ * This class represents an additional data structure to a regular Terrier index, storing
+ * docid-ordered posting lists with quantized impacts in place of term frequencies and document lengths.
+ * The score of every posting, computed a-priori given a weighting model, is linearly quantized into an 8-bit impact
+ * by a {@link Quantizer}, whose parameters are stored in the index properties.
+ *
+ * The structure is stored in three files:
+ * <ul>
+ * <li><tt>.quantized.docids</tt>, the docids of all postings of all terms (ints);</li>
+ * <li><tt>.quantized.impacts</tt>, the impacts of all postings of all terms (unsigned bytes);</li>
+ * <li><tt>.quantized.offsets</tt>, the offset of the first posting of every term (longs), followed by the total number of postings.</li>
+ * </ul>
+ * The docids and impacts files are memory-mapped in chunks, hence they are not copied on heap and they are not limited to 2^31 bytes.
+ */
+public class QuantizedIndex
+{
+	protected static final Logger logger = Logger.getLogger(QuantizedIndex.class);
+
+	public static final String USUAL_EXTENSION = ".quantized";
+
+	public static final String DOCID_EXT  = ".docids";
+	public static final String IMPACT_EXT = ".impacts";
+	public static final String OFFSET_EXT = ".offsets";
+
+	/** The number of bits of the quantized impacts. */
+	public static final int BITS = 8;
+
+	/** The signature of the weighting model used to compute the scores, or its class name for the indexes generated before the signatures were stored. */
+	private final String weightingModel;
+	/** The maximum score of any posting in the index, mapped to the highest impact. */
+	private final float maxScore;
+
+	private long[] mOffsetsArray;
+	private ByteBuffer[] mDocids;
+	private ByteBuffer[] mImpacts;
+
+	public QuantizedIndex(final Index index) throws IOException
+	{
+		this.weightingModel = ((IndexOnDisk)index).getIndexProperty("index.quantized.signature", ((IndexOnDisk)index).getIndexProperty("index.quantized.weighting_model", ""));
+		this.maxScore = Float.parseFloat(((IndexOnDisk)index).getIndexProperty("index.quantized.max_score", "0.0"));
+
+		createQuantizedIndex(((IndexOnDisk)index).getPath() + File.separator + ((IndexOnDisk)index).getPrefix() + USUAL_EXTENSION);
+	}
+
+	private void createQuantizedIndex(String filenamePrefix) throws IOException
+	{
+		ByteBuffer[] offsets = MappedChunks.map(filenamePrefix + OFFSET_EXT);
+		mOffsetsArray = new long[(int) (MappedChunks.size(offsets) / Long.BYTES)];
+		for (int i = 0; i < mOffsetsArray.length; ++i)
+			mOffsetsArray[i] = MappedChunks.getLong(offsets, i);
+
+		mDocids = MappedChunks.map(filenamePrefix + DOCID_EXT);
+		mImpacts = MappedChunks.map(filenamePrefix + IMPACT_EXT);
+
+		logger.info("Loaded quantized index with " + (mOffsetsArray.length - 1) + " terms and " + mOffsetsArray[mOffsetsArray.length - 1] + " postings");
+	}
+
+	/**
+	 * Returns the quantized posting list of a term.
+	 *
+	 * @param termid the term id
+	 * @return a new posting list iterator, not yet positioned on the first posting
+	 */
+	public IterablePosting getPostings(final int termid)
+	{
+		return new QuantizedPosting(mDocids, mImpacts, mOffsetsArray[termid], mOffsetsArray[termid + 1]);
+	}
+
+	/**
+	 * @return the quantizer used to compute the impacts
+	 */
+	public Quantizer getQuantizer()
+	{
+		return new Quantizer(maxScore, BITS);
+	}
+
+	public String getWeightingModel()
+	{
+		return weightingModel;
+	}
+}
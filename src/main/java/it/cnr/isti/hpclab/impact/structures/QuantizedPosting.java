@@ -0,0 +1,159 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.impact.structures;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.nio.ByteBuffer;
+
+import org.terrier.structures.postings.BasicPostingImpl;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.WritablePosting;
+
+/**
+ * An iterator over a docid-ordered posting list of a {@link QuantizedIndex}.
+ * The quantized impact of the current posting is returned as its frequency, and the document length is always 0.
+ */
+public class QuantizedPosting implements IterablePosting
+{
+	private final ByteBuffer[] mDocids;
+	private final ByteBuffer[] mImpacts;
+
+	private final long mBegin;
+	private final long mEnd;
+	private long mPos;
+	private int mDocid;
+
+	QuantizedPosting(final ByteBuffer[] docids, final ByteBuffer[] impacts, final long begin, final long end)
+	{
+		this.mDocids = docids;
+		this.mImpacts = impacts;
+		this.mBegin = begin;
+		this.mEnd = end;
+		this.mPos = begin - 1;
+		this.mDocid = -1;
+	}
+
+	private int docid(final long pos)
+	{
+		return MappedChunks.getInt(mDocids, pos);
+	}
+
+	@Override
+	public int next()
+	{
+		if (++mPos < mEnd)
+			return mDocid = docid(mPos);
+		mPos = mEnd;
+		return mDocid = END_OF_LIST;
+	}
+
+	/**
+	 * Moves to the first posting with docid greater than or equal to the target, galloping then binary searching from the current posting.
+	 */
+	@Override
+	public int next(final int target)
+	{
+		if (mDocid >= target)
+			return mDocid;
+
+		long lo = Math.max(mPos, mBegin);
+		long step = 1;
+		long hi = lo + step;
+		while (hi < mEnd && docid(hi) < target) {
+			lo = hi;
+			step <<= 1;
+			hi = lo + step;
+		}
+		hi = Math.min(hi, mEnd);
+		while (lo < hi) {
+			final long mid = (lo + hi) >>> 1;
+			if (docid(mid) < target)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		mPos = lo;
+		return mDocid = (mPos < mEnd) ? docid(mPos) : END_OF_LIST;
+	}
+
+	@Override
+	public boolean endOfPostings()
+	{
+		return mPos >= mEnd;
+	}
+
+	@Override
+	public int getId()
+	{
+		return mDocid;
+	}
+
+	/**
+	 * @return the quantized impact of the current posting
+	 */
+	@Override
+	public int getFrequency()
+	{
+		return MappedChunks.getByte(mImpacts, mPos) & 0xFF;
+	}
+
+	@Override
+	public int getDocumentLength()
+	{
+		return 0;
+	}
+
+	@Override
+	public void setId(final int id)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public WritablePosting asWritablePosting()
+	{
+		return new BasicPostingImpl(getId(), getFrequency());
+	}
+
+	@Override
+	public void write(final DataOutput out)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void readFields(final DataInput in)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close()
+	{
+	}
+
+	@Override
+	public String toString()
+	{
+		return "(" + getId() + "," + getFrequency() + ")";
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.impact.structures;
+
+/**
+ * Linear quantization of the scores of a weighting model into integer impacts in [1, 2^bits - 1],
+ * the maximum score being mapped to the highest impact.
+ */
+public class Quantizer
+{
+	private final float max_score;
+	private final int levels;
+
+	/**
+	 * @param max_score the maximum score of any posting in the index, mapped to the highest impact
+	 * @param bits the number of bits of the quantized impacts
+	 */
+	public Quantizer(final float max_score, final int bits)
+	{
+		this.max_score = max_score;
+		this.levels = (1 << bits) - 1;
+	}
+
+	/**
+	 * Linear quantization of a score in [1, levels]. Non-positive scores are mapped to the lowest impact,
+	 * so that every posting is kept.
+	 *
+	 * @param score the score to quantize
+	 * @return the impact
+	 */
+	public int quantize(final float score)
+	{
+		if (max_score <= 0.0f)
+			return 1;
+		return Math.min(levels, Math.max(1, Math.round(score / max_score * levels)));
+	}
+
+	/**
+	 * @return the highest impact
+	 */
+	public int levels()
+	{
+		return levels;
+	}
+
+	/**
+	 * Returns the factor mapping impacts back to (approximated) scores.
+	 *
+	 * @return the scale factor
+	 */
+	public float scale()
+	{
+		return max_score / levels;
+	}
+}
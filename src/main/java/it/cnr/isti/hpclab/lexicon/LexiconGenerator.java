@@ -0,0 +1,200 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.lexicon;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map.Entry;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.io.FilenameUtils;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.ParserProperties;
+import org.kohsuke.args4j.Option;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.seralization.FixedSizeWriteableFactory;
+import org.terrier.utility.ApplicationSetup;
+
+import it.cnr.isti.hpclab.lexicon.structures.MPHLexicon;
+import it.cnr.isti.hpclab.lexicon.structures.MinimalPerfectHash;
+
+public class LexiconGenerator
+{
+    protected static Logger LOGGER = LoggerFactory.getLogger(LexiconGenerator.class);
+
+    /** The number of seeds tried before giving up the construction of the hash function. */
+    private static final int MAX_SEEDS = 16;
+
+    public static final class LexiconArgs 
+    {
+        // required arguments
+
+        @Option(name = "-index", metaVar = "[String]", required = true, usage = "Input Index")
+        public String index;
+    }
+
+    public static class Command extends org.terrier.applications.CLITool.CLIParsedCLITool 
+    {
+        @Override
+        public int run(CommandLine line) throws Exception 
+        {
+            LexiconArgs args = new LexiconArgs();
+            args.index = ApplicationSetup.TERRIER_INDEX_PATH + "/" + ApplicationSetup.TERRIER_INDEX_PREFIX;
+            execute(args);
+            return 0;
+        }
+
+        @Override
+        public String commandname() 
+        {
+            return "micro-lexicon-generator";
+        }
+
+        @Override
+        public String helpsummary() 
+        {
+            return "generates a minimal perfect hash lexicon datastructure";
+        }
+    }
+
+    public static void main(String[] argv)
+    {
+        LexiconArgs args = new LexiconArgs();
+        CmdLineParser parser = new CmdLineParser(args, ParserProperties.defaults().withUsageWidth(90));
+        try {
+            parser.parseArgument(argv);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.err);
+            return;
+        }
+        execute(args);
+    }
+    
+    @SuppressWarnings({ "deprecation", "unchecked" })
+    public static void execute(LexiconArgs args) 
+    {
+        IndexOnDisk.setIndexLoadingProfileAsRetrieval(false);
+        final String src_index_path = FilenameUtils.getFullPath(args.index);
+        final String src_index_prefix = FilenameUtils.getBaseName(args.index);
+        final String dst_prefix = src_index_path + File.separator + src_index_prefix;
+
+        LOGGER.info("Started " + LexiconGenerator.class.getSimpleName());
+
+        long starttime = System.currentTimeMillis();
+
+        try {
+            // check dst lexicon does not exist
+            if (Files.exists(Paths.get(dst_prefix + MPHLexicon.HASH_EXT))) {
+                throw new IllegalArgumentException("Index directory " + src_index_path + " already contains a minimal perfect hash lexicon with prefix " + src_index_prefix);
+            }
+
+            IndexOnDisk src_index = IndexOnDisk.createIndex(src_index_path, src_index_prefix);
+            if (IndexOnDisk.getLastIndexLoadError() != null) {
+                throw new IllegalArgumentException("Error loading index: " + IndexOnDisk.getLastIndexLoadError());
+            }
+            final int num_terms = src_index.getLexicon().numberOfEntries();
+            final FixedSizeWriteableFactory<LexiconEntry> factory = (FixedSizeWriteableFactory<LexiconEntry>) src_index.getIndexStructure("lexicon-valuefactory");
+            final int entry_size = factory.getSize();
+            LOGGER.info("Input index contains " + num_terms + " terms, with lexicon entries of " + entry_size + " bytes");
+
+            // building the hash function, with a new seed if two terms collide
+            long seed = 0;
+            int[] displacements = null;
+            long[] hashes = new long[num_terms];
+            for (; displacements == null && seed < MAX_SEEDS; ++seed) {
+                Iterator<Entry<String, LexiconEntry>> lex_iter = src_index.getLexicon().iterator();
+                for (int i = 0; i < num_terms; ++i)
+                    hashes[i] = MinimalPerfectHash.hash(lex_iter.next().getKey(), seed);
+                displacements = MinimalPerfectHash.build(hashes);
+            }
+            if (displacements == null)
+                throw new IllegalStateException("Can't build a minimal perfect hash function after " + MAX_SEEDS + " seeds");
+            seed--;
+
+            long hashtime = System.currentTimeMillis();
+            LOGGER.info("Hash function construction completed after " + (hashtime - starttime)/1000 + " seconds, with seed " + seed);
+
+            try (FileChannel out = FileChannel.open(Paths.get(dst_prefix + MPHLexicon.HASH_EXT), StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+                ByteBuffer buf = ByteBuffer.allocate(displacements.length * Integer.BYTES);
+                buf.asIntBuffer().put(displacements);
+                out.write(buf);
+            }
+            
+            // writing the fingerprints and the entries at the position of their terms
+            final int num_buckets = MinimalPerfectHash.numBuckets(num_terms);
+            try (FileChannel fp_out = FileChannel.open(Paths.get(dst_prefix + MPHLexicon.FINGERPRINT_EXT), StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+                 FileChannel entry_out = FileChannel.open(Paths.get(dst_prefix + MPHLexicon.ENTRY_EXT), StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+                ByteBuffer fp_buf = ByteBuffer.allocate(Long.BYTES);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(entry_size);
+                DataOutputStream entry_buf = new DataOutputStream(bytes);
+                
+                Iterator<Entry<String, LexiconEntry>> lex_iter = src_index.getLexicon().iterator();
+                for (int i = 0; i < num_terms; ++i) {
+                    final LexiconEntry le = lex_iter.next().getValue();
+                    final int pos = MinimalPerfectHash.position(hashes[i], displacements[MinimalPerfectHash.bucket(hashes[i], num_buckets)], num_terms);
+
+                    fp_buf.clear();
+                    fp_buf.putLong(0, hashes[i]);
+                    fp_out.write(fp_buf, (long) pos * Long.BYTES);
+
+                    bytes.reset();
+                    le.write(entry_buf);
+                    entry_buf.flush();
+                    if (bytes.size() != entry_size)
+                        throw new IllegalStateException("Lexicon entry of " + bytes.size() + " bytes instead of " + entry_size);
+                    entry_out.write(ByteBuffer.wrap(bytes.toByteArray()), (long) pos * entry_size);
+                }
+            }
+            src_index.close();
+
+            writeProperties(src_index_path, src_index_prefix, seed, num_terms);
+
+            long endtime = System.currentTimeMillis();
+            LOGGER.info("Minimal perfect hash lexicon generation completed after " + (endtime - starttime)/1000 + " seconds");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+    
+    private static void writeProperties(String indexPath, String indexPrefix, final long seed, final int num_terms) throws IOException
+    {
+        IndexOnDisk index = IndexOnDisk.createIndex(indexPath, indexPrefix);
+        index.setIndexProperty("index.mphlexicon.class","it.cnr.isti.hpclab.lexicon.structures.MPHLexicon");
+        index.setIndexProperty("index.mphlexicon.parameter_types","org.terrier.structures.Index");
+        index.setIndexProperty("index.mphlexicon.parameter_values","index");        
+        index.setIndexProperty("index.mphlexicon.seed", Long.toString(seed));
+        index.setIndexProperty("index.mphlexicon.entries", Integer.toString(num_terms));
+
+        index.close();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.lexicon.structures;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A data input reading a byte buffer from a given position with absolute gets, 
+ * hence several inputs can read the same buffer concurrently.
+ */
+class BufferDataInput implements DataInput
+{
+	private final ByteBuffer mBuffer;
+	private int mPos;
+	
+	BufferDataInput(final ByteBuffer buffer, final int pos)
+	{
+		this.mBuffer = buffer;
+		this.mPos = pos;
+	}
+	
+	private int advance(final int n) throws EOFException
+	{
+		if (mPos + n > mBuffer.limit())
+			throw new EOFException();
+		final int pos = mPos;
+		mPos += n;
+		return pos;
+	}
+
+	@Override
+	public void readFully(final byte[] b) throws IOException
+	{
+		readFully(b, 0, b.length);
+	}
+
+	@Override
+	public void readFully(final byte[] b, final int off, final int len) throws IOException
+	{
+		final int pos = advance(len);
+		for (int i = 0; i < len; ++i)
+			b[off + i] = mBuffer.get(pos + i);
+	}
+
+	@Override
+	public int skipBytes(final int n)
+	{
+		final int skipped = Math.max(0, Math.min(n, mBuffer.limit() - mPos));
+		mPos += skipped;
+		return skipped;
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException
+	{
+		return readByte() != 0;
+	}
+
+	@Override
+	public byte readByte() throws IOException
+	{
+		return mBuffer.get(advance(Byte.BYTES));
+	}
+
+	@Override
+	public int readUnsignedByte() throws IOException
+	{
+		return readByte() & 0xFF;
+	}
+
+	@Override
+	public short readShort() throws IOException
+	{
+		return mBuffer.getShort(advance(Short.BYTES));
+	}
+
+	@Override
+	public int readUnsignedShort() throws IOException
+	{
+		return readShort() & 0xFFFF;
+	}
+
+	@Override
+	public char readChar() throws IOException
+	{
+		return mBuffer.getChar(advance(Character.BYTES));
+	}
+
+	@Override
+	public int readInt() throws IOException
+	{
+		return mBuffer.getInt(advance(Integer.BYTES));
+	}
+
+	@Override
+	public long readLong() throws IOException
+	{
+		return mBuffer.getLong(advance(Long.BYTES));
+	}
+
+	@Override
+	public float readFloat() throws IOException
+	{
+		return mBuffer.getFloat(advance(Float.BYTES));
+	}
+
+	@Override
+	public double readDouble() throws IOException
+	{
+		return mBuffer.getDouble(advance(Double.BYTES));
+	}
+
+	@Override
+	public String readLine()
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String readUTF() throws IOException
+	{
+		return DataInputStream.readUTF(this);
+	}
+}
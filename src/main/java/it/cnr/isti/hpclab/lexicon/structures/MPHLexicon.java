@@ -0,0 +1,181 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.lexicon.structures;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.Lexicon;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.seralization.FixedSizeWriteableFactory;
+
+/**
+ * This class represents an additional data structure to a regular Terrier index, replacing the lexicon for the term lookups.
+ * It is made of three memory-mapped files: the displacements of a {@link MinimalPerfectHash} over the terms (extension: <tt>.mph.hash</tt>),
+ * the 64-bit fingerprints of the terms, to reject the terms not in the lexicon (extension: <tt>.mph.fp</tt>), and the fixed-size serialised
+ * lexicon entries (extension: <tt>.mph.entries</tt>), both indexed by the position of the terms in the hash function.
+ * 
+ * A lookup allocates only the returned entry, takes no lock and does not read the heap, hence the lexicon can be shared by any number of threads.
+ * The lookups by termid and the iteration are delegated to the lexicon of the index.
+ */
+public class MPHLexicon extends Lexicon<String>
+{
+	protected static final Logger logger = Logger.getLogger(MPHLexicon.class);
+
+	public static final String HASH_EXT        = ".mph.hash";
+	public static final String FINGERPRINT_EXT = ".mph.fp";
+	public static final String ENTRY_EXT       = ".mph.entries";
+	
+	private static final int CHUNK_SHIFT = 30;
+	/** The size of a mapped chunk of the displacements and of the fingerprints. */
+	private static final long CHUNK_BYTES = 1L << CHUNK_SHIFT;
+	private static final long CHUNK_MASK = CHUNK_BYTES - 1;
+	
+	private final Index mIndex;
+	private final FixedSizeWriteableFactory<LexiconEntry> mFactory;
+	
+	private final long mSeed;
+	private final int mNumEntries;
+	private final int mNumBuckets;
+	private final int mEntrySize;
+	/** The number of entries in a mapped chunk of the entries, that never span two chunks. */
+	private final int mChunkEntries;
+	
+	private final ByteBuffer[] mHash;
+	private final ByteBuffer[] mFingerprints;
+	private final ByteBuffer[] mEntries;
+	
+	@SuppressWarnings("unchecked")
+	public MPHLexicon(final Index index) throws IOException
+	{
+		this.mIndex = index;
+		this.mFactory = (FixedSizeWriteableFactory<LexiconEntry>) index.getIndexStructure("lexicon-valuefactory");
+		
+		this.mSeed = Long.parseLong(((IndexOnDisk)index).getIndexProperty("index.mphlexicon.seed", "0"));
+		this.mNumEntries = Integer.parseInt(((IndexOnDisk)index).getIndexProperty("index.mphlexicon.entries", "0"));
+		this.mNumBuckets = MinimalPerfectHash.numBuckets(mNumEntries);
+		this.mEntrySize = mFactory.getSize();
+		this.mChunkEntries = (int) (CHUNK_BYTES / mEntrySize);
+		
+		final String prefix = ((IndexOnDisk)index).getPath() + File.separator + ((IndexOnDisk)index).getPrefix();
+		this.mHash         = map(prefix + HASH_EXT, CHUNK_BYTES);
+		this.mFingerprints = map(prefix + FINGERPRINT_EXT, CHUNK_BYTES);
+		this.mEntries      = map(prefix + ENTRY_EXT, (long) mChunkEntries * mEntrySize);
+		logger.info("Loaded the minimal perfect hash lexicon of " + mNumEntries + " terms");
+	}
+	
+	private static ByteBuffer[] map(final String filename, final long chunk_bytes) throws IOException
+	{
+		try (FileChannel fc = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+			final long size = fc.size();
+			ByteBuffer[] chunks = new ByteBuffer[(int) ((size + chunk_bytes - 1) / chunk_bytes)];
+			for (int i = 0; i < chunks.length; ++i) {
+				final long begin = i * chunk_bytes;
+				chunks[i] = fc.map(FileChannel.MapMode.READ_ONLY, begin, Math.min(chunk_bytes, size - begin));
+			}
+			return chunks;
+		}
+	}
+	
+	/**
+	 * @param term a term
+	 * @return the position of the term in the hash function, or <code>-1</code> if the term is not in the lexicon
+	 */
+	private int position(final String term)
+	{
+		if (mNumEntries == 0)
+			return -1;
+		final long hash = MinimalPerfectHash.hash(term, mSeed);
+		final long b = (long) MinimalPerfectHash.bucket(hash, mNumBuckets) * Integer.BYTES;
+		final int pos = MinimalPerfectHash.position(hash, mHash[(int) (b >>> CHUNK_SHIFT)].getInt((int) (b & CHUNK_MASK)), mNumEntries);
+		final long f = (long) pos * Long.BYTES;
+		if (mFingerprints[(int) (f >>> CHUNK_SHIFT)].getLong((int) (f & CHUNK_MASK)) != hash)
+			return -1;
+		return pos;
+	}
+
+	@Override
+	public LexiconEntry getLexiconEntry(final String term)
+	{
+		final int pos = position(term);
+		if (pos < 0)
+			return null;
+		LexiconEntry le = mFactory.newInstance();
+		try {
+			le.readFields(new BufferDataInput(mEntries[pos / mChunkEntries], (pos % mChunkEntries) * mEntrySize));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return le;
+	}
+
+	@Override
+	public int numberOfEntries()
+	{
+		return mNumEntries;
+	}
+
+	@Override
+	public Map.Entry<String, LexiconEntry> getLexiconEntry(final int termid)
+	{
+		synchronized (mIndex) {
+			return mIndex.getLexicon().getLexiconEntry(termid);
+		}
+	}
+
+	@Override
+	public Map.Entry<String, LexiconEntry> getIthLexiconEntry(final int index)
+	{
+		synchronized (mIndex) {
+			return mIndex.getLexicon().getIthLexiconEntry(index);
+		}
+	}
+	
+	public Iterator<Map.Entry<String, LexiconEntry>> getLexiconEntryRange(final String from, final String to)
+	{
+		synchronized (mIndex) {
+			return mIndex.getLexicon().getLexiconEntryRange(from, to);
+		}
+	}
+
+	@Override
+	public Iterator<Map.Entry<String, LexiconEntry>> iterator()
+	{
+		synchronized (mIndex) {
+			return mIndex.getLexicon().iterator();
+		}
+	}
+
+	@Override
+	public void close()
+	{
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.lexicon.structures;
+
+import java.util.Arrays;
+
+/**
+ * A minimal perfect hash function over 64-bit key hashes, built with the hash and displace technique.
+ * The keys are split into buckets of {@link #BUCKET_SIZE} keys on average, and the buckets are placed in decreasing size order: 
+ * the keys of a bucket are mapped to free positions by the first displacement placing all of them without collisions, 
+ * while the keys of the singleton buckets are directly assigned to the remaining free positions.
+ * A displacement <tt>d &gt;= 0</tt> maps a key to <tt>position(hash, d, n)</tt>, a negative one to position <tt>-d-1</tt>.
+ */
+public class MinimalPerfectHash
+{
+	/** The average number of keys per bucket. */
+	public static final int BUCKET_SIZE = 3;
+	/** The maximum number of displacements tried for a bucket, before giving up. */
+	private static final int MAX_DISPLACEMENT = 1 << 24;
+	
+	private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+	
+	/**
+	 * Hashes a term with a seed, without allocating.
+	 * 
+	 * @param term the term
+	 * @param seed the seed
+	 * @return the 64-bit hash of the term, also used as fingerprint
+	 */
+	public static long hash(final CharSequence term, final long seed)
+	{
+		long h = seed;
+		for (int i = 0; i < term.length(); ++i)
+			h = Long.rotateLeft((h ^ term.charAt(i)) * GOLDEN, 31);
+		return mix(h ^ term.length());
+	}
+	
+	private static long mix(long h)
+	{
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb93fe53b9a1aL;
+		h ^= h >>> 33;
+		return h;
+	}
+	
+	/**
+	 * @param n the number of keys
+	 * @return the number of buckets for the given number of keys
+	 */
+	public static int numBuckets(final int n)
+	{
+		return Math.max(1, (n + BUCKET_SIZE - 1) / BUCKET_SIZE);
+	}
+	
+	/**
+	 * @param hash the hash of a key
+	 * @param num_buckets the number of buckets
+	 * @return the bucket of the key
+	 */
+	public static int bucket(final long hash, final int num_buckets)
+	{
+		return (int) Long.remainderUnsigned(hash, num_buckets);
+	}
+	
+	/**
+	 * @param hash the hash of a key
+	 * @param displacement the displacement of the bucket of the key
+	 * @param n the number of keys
+	 * @return the position of the key
+	 */
+	public static int position(final long hash, final int displacement, final int n)
+	{
+		if (displacement < 0)
+			return -displacement - 1;
+		return (int) Long.remainderUnsigned(mix(hash + (displacement + 1) * GOLDEN), n);
+	}
+	
+	/**
+	 * Builds the displacements of a minimal perfect hash function over the given key hashes.
+	 * 
+	 * @param hashes the hashes of the keys
+	 * @return the displacements, one per bucket, or <code>null</code> if two keys have the same hash or a bucket can't be placed, 
+	 *         hence a different seed must be used
+	 */
+	public static int[] build(final long[] hashes)
+	{
+		final int n = hashes.length;
+		final int num_buckets = numBuckets(n);
+		
+		long[] sorted = hashes.clone();
+		Arrays.sort(sorted);
+		for (int i = 1; i < n; ++i)
+			if (sorted[i] == sorted[i - 1])
+				return null;
+		sorted = null;
+		
+		// the keys grouped by bucket
+		int[] starts = new int[num_buckets + 1];
+		for (long h: hashes)
+			starts[bucket(h, num_buckets) + 1]++;
+		int max_size = 0;
+		for (int b = 0; b < num_buckets; ++b) {
+			max_size = Math.max(max_size, starts[b + 1]);
+			starts[b + 1] += starts[b];
+		}
+		long[] keys = new long[n];
+		int[] fill = Arrays.copyOf(starts, num_buckets);
+		for (long h: hashes)
+			keys[fill[bucket(h, num_buckets)]++] = h;
+		fill = null;
+		
+		// the buckets in decreasing size order
+		int[] size_starts = new int[max_size + 2];
+		for (int b = 0; b < num_buckets; ++b)
+			size_starts[max_size - (starts[b + 1] - starts[b]) + 1]++;
+		for (int s = 0; s <= max_size; ++s)
+			size_starts[s + 1] += size_starts[s];
+		int[] order = new int[num_buckets];
+		for (int b = 0; b < num_buckets; ++b)
+			order[size_starts[max_size - (starts[b + 1] - starts[b])]++] = b;
+		
+		final int[] displacements = new int[num_buckets];
+		final long[] taken = new long[(n + 63) >>> 6];
+		final int[] positions = new int[max_size];
+		int free = 0;
+		for (int b: order) {
+			final int begin = starts[b];
+			final int size = starts[b + 1] - begin;
+			if (size == 0)
+				break;
+			if (size == 1) {
+				while ((taken[free >>> 6] & (1L << free)) != 0)
+					free++;
+				taken[free >>> 6] |= 1L << free;
+				displacements[b] = -free - 1;
+				continue;
+			}
+			int d = 0;
+			search: for (; d < MAX_DISPLACEMENT; ++d) {
+				for (int i = 0; i < size; ++i) {
+					final int p = position(keys[begin + i], d, n);
+					if ((taken[p >>> 6] & (1L << p)) != 0)
+						continue search;
+					for (int j = 0; j < i; ++j)
+						if (positions[j] == p)
+							continue search;
+					positions[i] = p;
+				}
+				break;
+			}
+			if (d == MAX_DISPLACEMENT)
+				return null;
+			for (int i = 0; i < size; ++i)
+				taken[positions[i] >>> 6] |= 1L << positions[i];
+			displacements[b] = d;
+		}
+		return displacements;
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.manager;
+
+import java.io.IOException;
+
+import org.terrier.structures.Index;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+
+import it.cnr.isti.hpclab.annotations.Managing;
+import it.cnr.isti.hpclab.matching.structures.query.QueryTerm;
+import it.cnr.isti.hpclab.maxscore.structures.BlockEnumerator;
+
+@Managing(algorithms = "it.cnr.isti.hpclab.matching.BlockMaxMaxScore")
+public class BlockMaxMaxScoreManager extends MaxScoreManager
+{
+	public BlockMaxMaxScoreManager(final Index index)
+	{
+		super(index);
+	}
+
+	@Override
+	protected MatchingEntry entryFrom(final int qtf, final QueryTerm term, final IterablePosting posting, final LexiconEntry entry) throws IOException
+	{
+		float ms = maxScoreIndex().getMaxScore(entry.getTermId());
+		
+		BlockEnumerator be = blockMaxScoreIndex().get(entry.getTermId(), term.getWeight());
+		return new MatchingEntry(qtf, term, posting, entry, ms, be);
+	}	
+	
+	@Override
+	public void reset_to(final int to) throws IOException
+	{
+		super.reset_to(to);
+		for (MatchingEntry t: enums) {
+			t.blockEnum.reset();
+			t.blockEnum.move(to);
+		}
+	}
+}
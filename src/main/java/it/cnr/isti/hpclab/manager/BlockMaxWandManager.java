@@ -29,18 +29,13 @@ import org.terrier.structures.LexiconEntry;
 import org.terrier.structures.postings.IterablePosting;
 
 import it.cnr.isti.hpclab.annotations.Managing;
-import it.cnr.isti.hpclab.matching.structures.ResultSet;
 import it.cnr.isti.hpclab.matching.structures.SearchRequest;
-import it.cnr.isti.hpclab.matching.structures.TopQueue;
+import it.cnr.isti.hpclab.matching.structures.SharedThreshold;
 import it.cnr.isti.hpclab.matching.structures.query.QueryTerm;
 import it.cnr.isti.hpclab.matching.structures.QueryProperties.RuntimeProperty;
-import it.cnr.isti.hpclab.matching.structures.resultset.EmptyResultSet;
-import it.cnr.isti.hpclab.matching.structures.resultset.ScoredResultSet;
 import it.cnr.isti.hpclab.maxscore.structures.BlockEnumerator;
-import it.cnr.isti.hpclab.maxscore.structures.BlockMaxScoreIndex;
-import it.cnr.isti.hpclab.maxscore.structures.MaxScoreIndex;
 
-@Managing(algorithms = "it.cnr.isti.hpclab.matching.And,it.cnr.isti.hpclab.matching.BlockMaxWand")
+@Managing(algorithms = "it.cnr.isti.hpclab.matching.And,it.cnr.isti.hpclab.matching.BlockMaxWand,it.cnr.isti.hpclab.matching.BlockMaxRankedAnd")
 public class BlockMaxWandManager extends WandManager 
 {
 	public MatchingEntry[] local_enums;
@@ -57,32 +52,6 @@ public class BlockMaxWandManager extends WandManager
 		super(index);
 	}
 
-	@Override
-	public ResultSet run(SearchRequest srq) throws IOException 
-	{
-		open_enums(srq);
-		
-		if (local_enums.length == 0)
-			return new EmptyResultSet();
-		
-		processedPostings = 0l;
-		partiallyProcessedDocuments = 0l;
-		numPivots = 0l;
-		
-		threshold = parseFloat(srq.getQuery().getMetadata(RuntimeProperty.INITIAL_THRESHOLD));
-		heap = new TopQueue(TOP_K(), threshold);
-		
-		processingTime = mMatchingAlgorithm.match();
-		
-		close_enums();
-		stats_enums(srq);
-		
-        if (heap.isEmpty())
-        	return new EmptyResultSet();
- 							
-       	return new ScoredResultSet(heap);
-	}
-
 	@Override
 	protected void stats_enums(final SearchRequest srq)
 	{
@@ -97,12 +66,9 @@ public class BlockMaxWandManager extends WandManager
 	@Override
 	protected MatchingEntry entryFrom(final int qtf, final QueryTerm term, final IterablePosting posting, final LexiconEntry entry) throws IOException
 	{
-		MaxScoreIndex maxScoreIndex = (MaxScoreIndex) mIndex.getIndexStructure("maxscore");
-		float ms = maxScoreIndex.getMaxScore(entry.getTermId());
-		maxScoreIndex.close();
+		float ms = maxScoreIndex().getMaxScore(entry.getTermId());
 		
-		BlockMaxScoreIndex blockMaxScoreIndex = (BlockMaxScoreIndex) mIndex.getIndexStructure("blockmaxscore");
-		BlockEnumerator be = blockMaxScoreIndex.get(entry.getTermId(), term.getWeight());
+		BlockEnumerator be = blockMaxScoreIndex().get(entry.getTermId(), term.getWeight());
 		return new MatchingEntry(qtf, term, posting, entry, ms, be);
 	}	
 
@@ -114,12 +80,21 @@ public class BlockMaxWandManager extends WandManager
 		local_enums = enums.toArray(new MatchingEntry[0]);
 	}
 
+	@Override
+	protected void fork_from(final RankedManager parent, final SharedThreshold shared)
+	{
+		super.fork_from(parent, shared);
+		
+		local_enums = enums.toArray(new MatchingEntry[0]);
+	}
+
 	@Override
 	public void reset_to(final int to) throws IOException
 	{
 		for (MatchingEntry t: local_enums) {
-			t.posting.close();
-			t.posting =  mIndex.getInvertedIndex().getPostings(t.entry);
+			if (t.posting != null)
+				t.posting.close();
+			t.posting = postings(t.entry);
 			t.posting.next();
 			t.posting.next(to);
 
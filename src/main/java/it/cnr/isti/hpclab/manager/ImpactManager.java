@@ -0,0 +1,86 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.manager;
+
+import java.io.IOException;
+
+import org.terrier.structures.Index;
+
+import it.cnr.isti.hpclab.annotations.Managing;
+import it.cnr.isti.hpclab.impact.structures.ImpactEnumerator;
+import it.cnr.isti.hpclab.impact.structures.ImpactIndex;
+
+/**
+ * Manager of the score-at-a-time algorithms over the impact-ordered index.
+ * The accumulators are allocated once, one per document, and are split into pages:
+ * a page is cleared only when first touched by a query.
+ * The queries are never split into docid ranges, hence the postings and time budgets bound the whole query.
+ */
+@Managing(algorithms = "it.cnr.isti.hpclab.matching.ScoreAtATime")
+public class ImpactManager extends RankedManager
+{
+	/** Log2 of the number of accumulators in a page. */
+	public static final int PAGE_BITS = 12;
+
+	/** The impact-ordered posting lists of the current query, in the same order of enums. */
+	public ImpactEnumerator[] impact_enums;
+	/** The factor mapping the accumulated impacts back to scores. */
+	public float scale;
+
+	public float[] accumulators;
+	public boolean[] dirty_pages;
+
+	public ImpactManager(final Index index)
+	{
+		super(index);
+
+		final int num_pages = (mIndex.getCollectionStatistics().getNumberOfDocuments() >> PAGE_BITS) + 1;
+		accumulators = new float[num_pages << PAGE_BITS];
+		dirty_pages  = new boolean[num_pages];
+	}
+
+	@Override
+	protected void prepare_enums()
+	{
+		final ImpactIndex impactIndex = (ImpactIndex) mIndex.getIndexStructure("impact");
+		scale = impactIndex.getScale();
+		impact_enums = enums.stream().map(e -> impactIndex.get(e.entry.getTermId())).toArray(ImpactEnumerator[]::new);
+	}
+
+	/**
+	 * The k-th scores are not valid thresholds for the quantized scores of the impact index.
+	 */
+	@Override
+	protected float estimate_threshold()
+	{
+		return 0.0f;
+	}
+
+	/**
+	 * The queries are processed as a single range, since every range would enforce its own budgets
+	 * and would allocate its own accumulators for the whole collection.
+	 */
+	@Override
+	protected long match_ranges(final int num_ranges) throws IOException
+	{
+		return mMatchingAlgorithm.match();
+	}
+}
@@ -30,12 +30,15 @@ import org.terrier.structures.Index;
 import org.terrier.structures.LexiconEntry;
 import org.terrier.structures.postings.IterablePosting;
 
+import it.cnr.isti.hpclab.cache.PostingCache;
+import it.cnr.isti.hpclab.lexicon.structures.MPHLexicon;
 import it.cnr.isti.hpclab.MatchingConfiguration;
 import it.cnr.isti.hpclab.MatchingConfiguration.Property;
 import it.cnr.isti.hpclab.matching.MatchingAlgorithm;
 import it.cnr.isti.hpclab.matching.structures.ResultSet;
 import it.cnr.isti.hpclab.matching.structures.SearchRequest;
 import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+import it.cnr.isti.hpclab.matching.structures.model.Quantized;
 import it.cnr.isti.hpclab.matching.structures.query.QueryTerm;
 import it.cnr.isti.hpclab.matching.structures.QueryProperties.RuntimeProperty;
 
@@ -57,6 +60,10 @@ public abstract class Manager // implements Closeable
 	public int numRequired = 0;
 	
 	protected Index mIndex = null;
+	/** The cache of the decoded posting lists of the index, or <code>null</code> if disabled. */
+	protected PostingCache mPostingCache = null;
+	/** The minimal perfect hash lexicon of the index, or <code>null</code> if the index has none. */
+	protected MPHLexicon mLexicon = null;
 	protected MatchingAlgorithm mMatchingAlgorithm = null;
 	
 	
@@ -104,6 +111,16 @@ public abstract class Manager // implements Closeable
 		loadIndex(index);
 	}
 
+	/**
+	 * Return the matching algorithm used by this manager.
+	 * 
+	 * @return the matching algorithm
+	 */
+	public MatchingAlgorithm getMatchingAlgorithm()
+	{
+		return mMatchingAlgorithm;
+	}
+
 	public void setModel(final WeightingModel wm)
 	{
 		this.mWeightingModel = wm;
@@ -115,6 +132,9 @@ public abstract class Manager // implements Closeable
 		if (index == null)
 			LOGGER.fatal("Can't create manager with null index");
 		mIndex = index;
+		mPostingCache = PostingCache.of(mIndex);
+		if (mIndex.hasIndexStructure("mphlexicon"))
+			mLexicon = (MPHLexicon) mIndex.getIndexStructure("mphlexicon");
 
 		mWeightingModel.setup(mIndex);
 		mMatchingAlgorithm.setup(this);
@@ -124,10 +144,12 @@ public abstract class Manager // implements Closeable
 	{
 		checkNotNull(weightingModelClassName);
 		try {
-			if (weightingModelClassName.indexOf('.') == -1)
-				mWeightingModel = (WeightingModel) (Class.forName(MatchingConfiguration.get(Property.DEFAULT_NAMESPACE) + "structures.model." + weightingModelClassName).asSubclass(WeightingModel.class).getConstructor().newInstance());
+			// the weighting model can have parameters, e.g., BM25(k1=1.2,b=0.4)
+			final int open = weightingModelClassName.indexOf('(');
+			if (((open == -1) ? weightingModelClassName : weightingModelClassName.substring(0, open)).indexOf('.') == -1)
+				mWeightingModel = WeightingModel.create(MatchingConfiguration.get(Property.DEFAULT_NAMESPACE) + "structures.model." + weightingModelClassName);
 			else
-				mWeightingModel = (WeightingModel) (Class.forName(weightingModelClassName).asSubclass(WeightingModel.class).getConstructor().newInstance());
+				mWeightingModel = WeightingModel.create(weightingModelClassName);
 		} catch (Exception e) {
 			LOGGER.error("Problem loading weighting model (" + weightingModelClassName + "): ", e);
 		}
@@ -164,34 +186,80 @@ public abstract class Manager // implements Closeable
 	public void reset_to(final int to) throws IOException
 	{
 		for (MatchingEntry t: enums) {
-			t.posting.close();
-			t.posting =  mIndex.getInvertedIndex().getPostings(t.entry);
+			if (t.posting != null)
+				t.posting.close();
+			t.posting = postings(t.entry);
 			t.posting.next();
 			t.posting.next(to);
 		}
 	}
 	
+	/**
+	 * Opens a new posting list iterator for the given lexicon entry.
+	 * Posting lists of the same query can be opened concurrently by the docid range workers
+	 * of a ranked manager, hence the access to the index is serialized.
+	 * With the {@link Quantized} weighting model, the posting lists of the quantized index are returned instead,
+	 * otherwise the decoded posting lists of the {@link PostingCache} are returned, if cached.
+	 * 
+	 * @param le the lexicon entry of the term
+	 * @return a new posting list iterator, not yet positioned on the first posting
+	 * 
+	 * @throws IOException if the posting list can't be opened
+	 */
+	protected IterablePosting postings(final LexiconEntry le) throws IOException
+	{
+		if (mWeightingModel instanceof Quantized)
+			return ((Quantized) mWeightingModel).getPostings(le);
+		if (mPostingCache != null) {
+			IterablePosting ip = mPostingCache.getPostings(le);
+			if (ip != null)
+				return ip;
+		}
+		synchronized (mIndex) {
+			return mIndex.getInvertedIndex().getPostings(le);
+		}
+	}
+	
+	/**
+	 * Looks up a term in the lexicon. The lookup is synchronized on the index, since the lexicon can be shared by several managers
+	 * running in different threads, as with the parallel query processing, unless the index has a {@link MPHLexicon}.
+	 * 
+	 * @param term the term
+	 * @return the lexicon entry of the term, or <code>null</code> if the term is not in the lexicon
+	 */
+	protected LexiconEntry lexicon_entry(final String term)
+	{
+		if (mLexicon != null)
+			return mLexicon.getLexiconEntry(term);
+		synchronized (mIndex) {
+			return mIndex.getLexicon().getLexiconEntry(term);
+		}
+	}
+	
 	protected abstract MatchingEntry entryFrom(final int qtf, final QueryTerm term, final IterablePosting posting, final LexiconEntry entry) throws IOException;
 	
 	protected void open_enums(final SearchRequest searchRequest) throws IOException
 	{	
 		enums = new ObjectArrayList<MatchingEntry>();
+		numRequired = 0;
 		
 		final int num_docs = mIndex.getCollectionStatistics().getNumberOfDocuments();
 		
 		// We look in the index and filter out common terms
 		for (QueryTerm queryTerm: searchRequest.getQueryTerms()) {
-			LexiconEntry le = mIndex.getLexicon().getLexiconEntry(queryTerm.getQueryTerm());
+			LexiconEntry le = lexicon_entry(queryTerm.getQueryTerm());
 			if (le == null) {
 				LOGGER.warn("Term not found in index: " + queryTerm.getQueryTerm());
 			} else if (IGNORE_LOW_IDF_TERMS && le.getFrequency() > num_docs) {
 				LOGGER.warn("Term " + queryTerm.getQueryTerm() + " has low idf - ignored from scoring.");
 			} else {
-				IterablePosting ip = mIndex.getInvertedIndex().getPostings(le);
+				IterablePosting ip = postings(le);
 				ip.next();
 				// enums.add(new MatchingEntry(term, ip, le));
 				int qtf = searchRequest.getQueryTermFrequency(queryTerm);
-				enums.add(entryFrom(qtf, queryTerm, ip, le));
+				MatchingEntry e = entryFrom(qtf, queryTerm, ip, le);
+				e.scorer = mWeightingModel.scorer(qtf, e.weight, le);
+				enums.add(e);
 				if (queryTerm.isRequired())
 					numRequired++;
 			}
@@ -201,7 +269,8 @@ public abstract class Manager // implements Closeable
 	protected void close_enums() throws IOException
 	{
 		for (MatchingEntry pair: enums)
-        	pair.posting.close();
+			if (pair.posting != null)
+				pair.posting.close();
 	}
 	
 	public final int min_docid() 
@@ -212,7 +281,7 @@ public abstract class Manager // implements Closeable
 				docid = enums.get(i).posting.getId();
 		return docid;
 	}
-	
+
 	protected void stats_enums(final SearchRequest srq)
 	{
 		srq.getQuery().addMetadata(RuntimeProperty.QUERY_TERMS, Arrays.toString(enums.stream().map(x -> "\"" + x.term + "\"").collect(Collectors.toList()).toArray()));
@@ -27,6 +27,7 @@ import java.util.List;
 import org.terrier.structures.LexiconEntry;
 import org.terrier.structures.postings.IterablePosting;
 
+import it.cnr.isti.hpclab.matching.structures.TermScorer;
 import it.cnr.isti.hpclab.matching.structures.query.QueryTerm;
 import it.cnr.isti.hpclab.maxscore.structures.BlockEnumerator;
 
@@ -34,6 +35,7 @@ public class MatchingEntry
 {
 	public static final Comparator<MatchingEntry> SORT_BY_DOCID    = (o1, o2) -> {return Integer.compare(o1.posting.getId(), o2.posting.getId()); };
 	public static final Comparator<MatchingEntry> SORT_BY_MAXSCORE = (o1, o2) -> {return Float.compare(o1.maxscore, o2.maxscore); };	
+	public static final Comparator<MatchingEntry> SORT_BY_DF       = (o1, o2) -> {return Integer.compare(o1.entry.getDocumentFrequency(), o2.entry.getDocumentFrequency()); };
 
 	// These members are public to avoid getter/setter boilerplate
 	public final int qtf;
@@ -44,6 +46,8 @@ public class MatchingEntry
 	public final float weight;
 	
 	public IterablePosting posting;
+	/** The scorer of the term, created by {@link Manager#open_enums(it.cnr.isti.hpclab.matching.structures.SearchRequest)} with the query-constant parts of the weighting model precomputed */
+	public TermScorer scorer = null;
 	
 	public MatchingEntry(final int qtf, final QueryTerm term, final IterablePosting posting, final LexiconEntry entry)
 	{
@@ -65,6 +69,24 @@ public class MatchingEntry
 		this.blockEnum = blockEnum;
 		this.weight = term.getWeight();	
 	}
+
+	/**
+	 * Creates a copy of the given entry, with its own block enumerator, if any, and without any posting list iterator.
+	 * Used to process the same query term on different docid ranges at the same time.
+	 * 
+	 * @param that the entry to copy
+	 */
+	public MatchingEntry(final MatchingEntry that)
+	{
+		this.qtf = that.qtf;
+		this.term = that.term;
+		this.posting = null;
+		this.entry = that.entry;
+		this.maxscore = that.maxscore;
+		this.blockEnum = (that.blockEnum == null) ? null : that.blockEnum.copy();
+		this.weight = that.weight;
+		this.scorer = that.scorer;
+	}
 		
 	@Override
 	public String toString()
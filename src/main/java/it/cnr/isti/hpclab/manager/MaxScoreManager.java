@@ -28,14 +28,10 @@ import org.terrier.structures.LexiconEntry;
 import org.terrier.structures.postings.IterablePosting;
 
 import it.cnr.isti.hpclab.annotations.Managing;
-import it.cnr.isti.hpclab.matching.structures.ResultSet;
 import it.cnr.isti.hpclab.matching.structures.SearchRequest;
-import it.cnr.isti.hpclab.matching.structures.TopQueue;
+import it.cnr.isti.hpclab.matching.structures.SharedThreshold;
 import it.cnr.isti.hpclab.matching.structures.query.QueryTerm;
 import it.cnr.isti.hpclab.matching.structures.QueryProperties.RuntimeProperty;
-import it.cnr.isti.hpclab.matching.structures.resultset.EmptyResultSet;
-import it.cnr.isti.hpclab.matching.structures.resultset.ScoredResultSet;
-import it.cnr.isti.hpclab.maxscore.structures.MaxScoreIndex;
 
 @Managing(algorithms = "it.cnr.isti.hpclab.matching.And,it.cnr.isti.hpclab.matching.MaxScore")
 public class MaxScoreManager extends RankedManager
@@ -55,13 +51,8 @@ public class MaxScoreManager extends RankedManager
 	}
 
 	@Override
-	public ResultSet run(final SearchRequest srq) throws IOException 
-	{	
-		open_enums(srq);
-		
-		if (enums.size() == 0)
-			return new EmptyResultSet();
-		
+	protected void prepare_enums()
+	{
 		Collections.sort(enums, MatchingEntry.SORT_BY_MAXSCORE);
 	
 		// We calculate the upper bounds of the posting lists sorted by max score
@@ -69,23 +60,13 @@ public class MaxScoreManager extends RankedManager
 		upper_bounds[0] = enums.get(0).qtf * enums.get(0).maxscore;
 		for (int i = 1; i < enums.size(); ++i)
 			upper_bounds[i] = upper_bounds[i - 1] + enums.get(i).qtf * enums.get(i).maxscore;
+	}
 
-		processedPostings = 0l;
-		partiallyProcessedDocuments = 0l;
-		numPivots = 0l;
-
-		threshold = parseFloat(srq.getQuery().getMetadata(RuntimeProperty.INITIAL_THRESHOLD));
-		heap = new TopQueue(TOP_K(), threshold);
-		
-		processingTime = mMatchingAlgorithm.match();
-		
-		close_enums();
-		stats_enums(srq);
-		
-        if (heap.isEmpty())
-        	return new EmptyResultSet();
- 							
-       	return new ScoredResultSet(heap);
+	@Override
+	protected void fork_from(final RankedManager parent, final SharedThreshold shared)
+	{
+		super.fork_from(parent, shared);
+		upper_bounds = ((MaxScoreManager) parent).upper_bounds;
 	}
 
 	@Override
@@ -100,9 +81,7 @@ public class MaxScoreManager extends RankedManager
 	@Override
 	protected MatchingEntry entryFrom(final int qtf, final QueryTerm term, final IterablePosting posting, final LexiconEntry entry) throws IOException
 	{
-		MaxScoreIndex maxScoreIndex = (MaxScoreIndex) mIndex.getIndexStructure("maxscore");
-		float ms = maxScoreIndex.getMaxScore(entry.getTermId());
-		maxScoreIndex.close();
+		float ms = maxScoreIndex().getMaxScore(entry.getTermId());
 		
 		return new MatchingEntry(qtf, term, posting, entry, ms);
 	}	
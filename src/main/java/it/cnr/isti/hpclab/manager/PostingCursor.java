@@ -0,0 +1,206 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.manager;
+
+import java.io.IOException;
+
+import org.terrier.structures.postings.IterablePosting;
+
+/**
+ * A cursor over a posting list, copying the postings in blocks of {@link #BLOCK_SIZE} into reusable arrays of docids, term frequencies and document lengths.
+ * The algorithms access the current posting through plain array reads, and the underlying posting list iterator is advanced only when a block is refilled.
+ * 
+ * The blocks are filled only by the sequential traversals with {@link #next()}. After a skip with {@link #nextGEQ(int)} beyond the current block,
+ * or after opening the cursor, the cursor stays on the current posting of the underlying iterator, without copying any posting, 
+ * and the term frequency and document length are read from the iterator only if requested. Hence, probing a posting list with skips,
+ * as MaxScore does on its non-essential posting lists, decodes the same postings as the underlying iterator.
+ * 
+ * Note that the postings are still read through the {@link IterablePosting} interface, one at a time: the blocks save the repeated
+ * interface calls of the matching algorithms, but not the decoding of the underlying iterator.
+ * Since copying the postings costs more than reading them from the iterator, the matching algorithms do not use the cursor,
+ * until the blocks are decoded in bulk from the Elias-Fano posting lists and a benchmark shows the cursor is faster.
+ *
+ * Once a cursor is opened on a posting list iterator, the iterator must not be used anymore, since it is moved by the cursor.
+ * When the posting list is exhausted, the current docid is {@link IterablePosting#END_OF_LIST}.
+ */
+public class PostingCursor
+{
+	public static final int BLOCK_SIZE = 128;
+	
+	private final int[] docids   = new int[BLOCK_SIZE];
+	private final int[] tfs      = new int[BLOCK_SIZE];
+	private final int[] doc_lens = new int[BLOCK_SIZE];
+	
+	private IterablePosting posting;
+	/** True if the document lengths must be decoded */
+	private boolean with_doc_lens;
+	/** True if the current posting is in the block, and the underlying iterator is on the first posting after the block, otherwise the current posting is the one of the underlying iterator */
+	private boolean buffered;
+	/** The docid of the current posting of the underlying iterator, if not buffered */
+	private int docid;
+	/** The number of postings in the current block */
+	private int size;
+	/** The position of the current posting in the current block */
+	private int pos;
+	
+	/**
+	 * Opens this cursor on a posting list iterator, reusing the block arrays.
+	 * 
+	 * @param posting the posting list iterator, already positioned on the first posting to return
+	 * 
+	 * @throws IOException if the posting list can't be read
+	 */
+	public void reset(final IterablePosting posting) throws IOException
+	{
+		reset(posting, true);
+	}
+
+	/**
+	 * Opens this cursor on a posting list iterator, reusing the block arrays.
+	 * 
+	 * @param posting the posting list iterator, already positioned on the first posting to return
+	 * @param with_doc_lens true if the document lengths must be decoded, otherwise they are all 0
+	 * 
+	 * @throws IOException if the posting list can't be read
+	 */
+	public void reset(final IterablePosting posting, final boolean with_doc_lens) throws IOException
+	{
+		this.posting = posting;
+		this.with_doc_lens = with_doc_lens;
+		this.buffered = false;
+		this.docid = posting.getId();
+	}
+	
+	public int docid()
+	{
+		return buffered ? docids[pos] : docid;
+	}
+
+	public int tf()
+	{
+		if (buffered)
+			return tfs[pos];
+		return (docid == IterablePosting.END_OF_LIST) ? 0 : posting.getFrequency();
+	}
+
+	public int doclen()
+	{
+		if (buffered)
+			return doc_lens[pos];
+		return (docid == IterablePosting.END_OF_LIST || !with_doc_lens) ? 0 : posting.getDocumentLength();
+	}
+	
+	/**
+	 * Moves to the next posting.
+	 * 
+	 * @return the docid of the next posting, or {@link IterablePosting#END_OF_LIST}
+	 * 
+	 * @throws IOException if the posting list can't be read
+	 */
+	public int next() throws IOException
+	{
+		if (buffered) {
+			if (++pos < size)
+				return docids[pos];
+		} else {
+			if (docid == IterablePosting.END_OF_LIST)
+				return docid;
+			// the current posting is the one of the underlying iterator
+			posting.next();
+		}
+		return fill();
+	}
+	
+	/**
+	 * Moves to the first posting with docid greater than or equal to the target, if the current docid is smaller than the target.
+	 * If the target is in the current block, the block is binary-searched, otherwise the underlying iterator skips to the target,
+	 * and the block is not filled until the next call to {@link #next()}.
+	 * 
+	 * @param target the docid to reach
+	 * @return the docid of the current posting, or {@link IterablePosting#END_OF_LIST}
+	 * 
+	 * @throws IOException if the posting list can't be read
+	 */
+	public int nextGEQ(final int target) throws IOException
+	{
+		if (!buffered) {
+			if (docid < target)
+				docid = posting.next(target);
+			return docid;
+		}
+		
+		if (docids[pos] >= target)
+			return docids[pos];
+		
+		if (docids[size - 1] < target) {
+			// the target is beyond the current block, the underlying iterator skips to it
+			buffered = false;
+			docid = posting.getId();
+			if (docid < target)
+				docid = posting.next(target);
+			return docid;
+		}
+		
+		// the target is in the current block
+		int lo = pos + 1;
+		int hi = size - 1;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (docids[mid] < target)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		pos = lo;
+		return docids[pos];
+	}
+	
+	/**
+	 * Copies the next block of postings from the underlying iterator, starting from its current posting.
+	 * If the posting list is exhausted, the block contains only {@link IterablePosting#END_OF_LIST}.
+	 */
+	private int fill() throws IOException
+	{
+		buffered = true;
+		size = 0;
+		pos = 0;
+		while (size < BLOCK_SIZE && posting.getId() != IterablePosting.END_OF_LIST) {
+			docids[size]   = posting.getId();
+			tfs[size]      = posting.getFrequency();
+			doc_lens[size] = with_doc_lens ? posting.getDocumentLength() : 0;
+			size++;
+			posting.next();
+		}
+		if (size == 0) {
+			docids[0]   = IterablePosting.END_OF_LIST;
+			tfs[0]      = 0;
+			doc_lens[0] = 0;
+			size = 1;
+		}
+		return docids[0];
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "[" + docid() + "," + tf() + "," + doclen() + "]";
+	}
+}
@@ -21,20 +21,34 @@
 package it.cnr.isti.hpclab.manager;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
 
 import org.terrier.structures.Index;
 import org.terrier.structures.LexiconEntry;
 import org.terrier.structures.postings.IterablePosting;
 
+import it.cnr.isti.hpclab.MatchingConfiguration;
+import it.cnr.isti.hpclab.MatchingConfiguration.Property;
 import it.cnr.isti.hpclab.annotations.Managing;
 import it.cnr.isti.hpclab.matching.structures.ResultSet;
 import it.cnr.isti.hpclab.matching.structures.SearchRequest;
+import it.cnr.isti.hpclab.matching.structures.SharedThreshold;
 import it.cnr.isti.hpclab.matching.structures.TopQueue;
+import it.cnr.isti.hpclab.matching.structures.WeightingModel;
 import it.cnr.isti.hpclab.matching.structures.query.QueryTerm;
 import it.cnr.isti.hpclab.matching.structures.QueryProperties.RuntimeProperty;
 import it.cnr.isti.hpclab.matching.structures.resultset.EmptyResultSet;
 import it.cnr.isti.hpclab.matching.structures.resultset.ScoredResultSet;
+import it.cnr.isti.hpclab.maxscore.structures.BlockMaxScoreIndex;
+import it.cnr.isti.hpclab.maxscore.structures.KthScoreIndex;
+import it.cnr.isti.hpclab.maxscore.structures.MaxScoreIndex;
+import it.cnr.isti.hpclab.maxscore.structures.ModelStructures;
+import it.cnr.isti.hpclab.maxscore.structures.PairScoreIndex;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 
 @Managing(algorithms = "it.cnr.isti.hpclab.matching.RankedAnd,it.cnr.isti.hpclab.matching.RankedOr")
 public class RankedManager extends Manager 
@@ -42,6 +56,15 @@ public class RankedManager extends Manager
 	public TopQueue heap;
 	public float threshold;
 	
+	/** The managers processing the docid ranges of a query in parallel, created on first use */
+	protected RankedManager[] range_managers = null;
+	/** The max score index, looked up on first use rather than for every query term */
+	private MaxScoreIndex max_score_index = null;
+	private WeightingModel max_score_model = null;
+	/** The names of the structures generated for the weighting model, selected on first use, and again if the weighting model changes */
+	private Map<String,String> model_structures = null;
+	private WeightingModel model_structures_model = null;
+	
 	/*
 	public RankedManager()
 	{
@@ -62,13 +85,20 @@ public class RankedManager extends Manager
 		if (enums.size() == 0)
 			return new EmptyResultSet();
 		
-		Collections.sort(enums, MatchingEntry.SORT_BY_DOCID);
+		prepare_enums();
 	
 		processedPostings = 0l;	
-		threshold = parseFloat(srq.getQuery().getMetadata(RuntimeProperty.INITIAL_THRESHOLD));
+		partiallyProcessedDocuments = 0l;
+		numPivots = 0l;
+
+		threshold = Math.max(parseFloat(srq.getQuery().getMetadata(RuntimeProperty.INITIAL_THRESHOLD)), estimate_threshold());
 		heap = new TopQueue(TOP_K(), threshold);
 		
-		processingTime = mMatchingAlgorithm.match();
+		final int num_ranges = MatchingConfiguration.getInt(Property.DOCID_RANGES);
+		if (num_ranges > 1)
+			processingTime = match_ranges(num_ranges);
+		else
+			processingTime = mMatchingAlgorithm.match();
 
 		close_enums();
 		stats_enums(srq);
@@ -89,6 +119,218 @@ public class RankedManager extends Manager
         srq.getQuery().addMetadata(RuntimeProperty.NUM_RESULTS, 	   Integer.toString(heap.size()));
 	}
 
+	/**
+	 * Prepares the posting lists of the current query before matching, e.g., sorting them.
+	 */
+	protected void prepare_enums()
+	{
+		Collections.sort(enums, MatchingEntry.SORT_BY_DOCID);
+	}
+	
+	/**
+	 * Estimates a safe initial threshold for the current query from the k-th score and the pair score indexes, if available.
+	 * Every document containing a query term scores at least the term contribution, provided that no other term contributes a negative score (negative scores or weights),
+	 * so the k-th highest score of any single query term, or of the conjunction of any two query terms, is a lower bound of the k-th highest score of the query.
+	 * The estimate is slightly lowered, to keep in the top queue the documents scoring exactly the k-th score, despite rounding errors.
+	 * 
+	 * @return the initial threshold, or 0 if it can not be safely estimated
+	 */
+	protected float estimate_threshold()
+	{
+		if (!mMatchingAlgorithm.isDisjunctive() || numRequired > 0)
+			return 0.0f;
+		final int rank = KthScoreIndex.rank(TOP_K());
+		if (rank < 0)
+			return 0.0f;
+		for (MatchingEntry t: enums)
+			if (t.weight < 0 && enums.size() > 1)
+				return 0.0f;
+
+		// only the structures generated for the weighting model give a safe estimate, the others are ignored
+		double estimate = 0.0;
+		final String kth_structure = ModelStructures.find(mIndex, "kthscore", mWeightingModel);
+		if (kth_structure != null)
+			estimate = Math.max(estimate, kth_estimate((KthScoreIndex) mIndex.getIndexStructure(kth_structure), rank));
+		final String pair_structure = (enums.size() > 1) ? ModelStructures.find(mIndex, "pairscore", mWeightingModel) : null;
+		if (pair_structure != null)
+			estimate = Math.max(estimate, pair_estimate((PairScoreIndex) mIndex.getIndexStructure(pair_structure), rank));
+		return (estimate > 0.0) ? Math.nextDown((float) (estimate * (1.0 - 1e-6))) : 0.0f;
+	}
+
+	/**
+	 * Returns the max score index generated for the weighting model, shared by all the managers of the index.
+	 * 
+	 * @return the max score index
+	 * @throws IllegalStateException if the max score index has been generated only for other weighting models
+	 */
+	protected MaxScoreIndex maxScoreIndex()
+	{
+		if (max_score_index == null || max_score_model != mWeightingModel) {
+			max_score_index = (MaxScoreIndex) mIndex.getIndexStructure(modelStructure("maxscore"));
+			max_score_model = mWeightingModel;
+		}
+		return max_score_index;
+	}
+
+	/**
+	 * Returns the block max score index used by this manager, i.e., the <tt>micro.blockmax.structure</tt> index structure
+	 * generated for the weighting model.
+	 * 
+	 * @return the block max score index
+	 */
+	protected BlockMaxScoreIndex blockMaxScoreIndex()
+	{
+		return (BlockMaxScoreIndex) mIndex.getIndexStructure(modelStructure(MatchingConfiguration.get(Property.BLOCKMAX_STRUCTURE)));
+	}
+
+	/**
+	 * Returns the name of a structure storing scores computed a-priori (e.g., "maxscore" or "blockmaxscore") generated for the weighting model,
+	 * among the structures of all the weighting models stored in the index (see {@link ModelStructures}).
+	 * The structures generated for other weighting models are refused, since their scores are not safe upper bounds.
+	 * 
+	 * @param structure the name of the structure of the first weighting model
+	 * @return the name of the structure generated for the weighting model, or the given name if the index has no such structure
+	 * @throws IllegalStateException if the structure has been generated only for other weighting models
+	 */
+	protected String modelStructure(final String structure)
+	{
+		if (model_structures == null || model_structures_model != mWeightingModel) {
+			model_structures = new HashMap<>();
+			model_structures_model = mWeightingModel;
+		}
+		String name = model_structures.get(structure);
+		if (name == null) {
+			name = ModelStructures.select(mIndex, structure, mWeightingModel);
+			if (name == null)
+				name = structure;
+			model_structures.put(structure, name);
+		}
+		return name;
+	}
+
+	private double kth_estimate(final KthScoreIndex kthScoreIndex, final int rank)
+	{
+		if (kthScoreIndex.getMinScore() < 0.0f && enums.size() > 1)
+			return 0.0;
+
+		double estimate = 0.0;
+		for (MatchingEntry t: enums)
+			estimate = Math.max(estimate, (double) t.qtf * t.weight * kthScoreIndex.getKthScore(t.entry.getTermId(), rank));
+		return estimate;
+	}
+
+	// The conjunction scores are computed with unit weights, the smallest weight of the pair is a safe scaling factor
+	private double pair_estimate(final PairScoreIndex pairScoreIndex, final int rank)
+	{
+		if (pairScoreIndex.getMinScore() < 0.0f && enums.size() > 2)
+			return 0.0;
+
+		double estimate = 0.0;
+		for (int i = 0; i < enums.size(); ++i) {
+			final MatchingEntry t1 = enums.get(i);
+			for (int j = i + 1; j < enums.size(); ++j) {
+				final MatchingEntry t2 = enums.get(j);
+				final int pos = pairScoreIndex.find(t1.entry.getTermId(), t2.entry.getTermId());
+				if (pos >= 0)
+					estimate = Math.max(estimate, Math.min((double) t1.qtf * t1.weight, (double) t2.qtf * t2.weight) * pairScoreIndex.getKthScore(pos, rank));
+			}
+		}
+		return estimate;
+	}
+
+	/**
+	 * Prepares this manager to process a docid range of the current query of the parent manager.
+	 * Every posting list is copied, to be reopened by the matching algorithm on its range, and
+	 * the top queue shares its threshold with the top queues of the other ranges.
+	 * 
+	 * @param parent the manager processing the whole query
+	 * @param shared the threshold shared among all ranges
+	 */
+	protected void fork_from(final RankedManager parent, final SharedThreshold shared)
+	{
+		enums = new ObjectArrayList<MatchingEntry>(parent.enums.size());
+		for (MatchingEntry e: parent.enums)
+			enums.add(new MatchingEntry(e));
+		numRequired = parent.numRequired;
+		
+		processedPostings = 0l;
+		partiallyProcessedDocuments = 0l;
+		numPivots = 0l;
+
+		threshold = parent.threshold;
+		heap = new TopQueue(TOP_K(), threshold, shared);
+	}
+	
+	/**
+	 * Splits the docid space in equally sized ranges, and processes every range on a different fork-join worker, 
+	 * of the pool running the current query if any (e.g., the work-stealing pool of the parallel retrieval), or of the common pool.
+	 * The top queues of all ranges are merged into the top queue of this manager.
+	 * 
+	 * @param num_ranges the number of docid ranges
+	 * @return the elapsed processing time, in nanoseconds
+	 * 
+	 * @throws IOException if any range fails
+	 */
+	protected long match_ranges(final int num_ranges) throws IOException
+	{
+		if (range_managers == null || range_managers.length != num_ranges)
+			range_managers = create_range_managers(num_ranges);
+		
+		final SharedThreshold shared = new SharedThreshold(threshold);
+		for (RankedManager range_manager: range_managers)
+			range_manager.fork_from(this, shared);
+
+		final int num_docs = mIndex.getCollectionStatistics().getNumberOfDocuments();
+		final int range_size = (num_docs + num_ranges - 1) / num_ranges;
+		
+		long start_time = System.nanoTime();
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[num_ranges];
+		for (int i = 0; i < num_ranges; ++i) {
+			final RankedManager range_manager = range_managers[i];
+			final int from = i * range_size;
+			final int to   = (i == num_ranges - 1) ? Integer.MAX_VALUE : (i + 1) * range_size;
+			tasks[i] = ForkJoinTask.adapt(() -> {
+				try {
+					range_manager.mMatchingAlgorithm.match(from, to);
+					range_manager.close_enums();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}).fork();
+		}
+		
+		try {
+			for (ForkJoinTask<?> task: tasks)
+				task.join();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		
+		for (RankedManager range_manager: range_managers) {
+			heap.insertAll(range_manager.heap);
+			processedPostings += range_manager.processedPostings;
+			partiallyProcessedDocuments += range_manager.partiallyProcessedDocuments;
+			numPivots += range_manager.numPivots;
+		}
+		return System.nanoTime() - start_time;
+	}
+	
+	private RankedManager[] create_range_managers(final int num_ranges)
+	{
+		RankedManager[] managers = new RankedManager[num_ranges];
+		try {
+			for (int i = 0; i < num_ranges; ++i) {
+				managers[i] = getClass().getConstructor(Index.class).newInstance(mIndex);
+				managers[i].mWeightingModel = mWeightingModel;
+				managers[i].mMatchingAlgorithm = mMatchingAlgorithm.getClass().getConstructor().newInstance();
+				managers[i].mMatchingAlgorithm.setup(managers[i]);
+			}
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Can't create the docid range managers for " + getClass().getName(), e);
+		}
+		return managers;
+	}
+
 	public static float parseFloat(String s)
 	{
 		if (s == null)
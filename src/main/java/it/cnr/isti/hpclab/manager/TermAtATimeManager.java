@@ -0,0 +1,113 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.manager;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+
+import org.terrier.structures.Index;
+
+import it.cnr.isti.hpclab.annotations.Managing;
+
+/**
+ * Manager of the term-at-a-time algorithms.
+ * The dense accumulators, one per document, are allocated once and reused across queries:
+ * the documents touched by a query are recorded in a list, and only their accumulators are cleared before the next query.
+ * The queries are never split into docid ranges, since every range would allocate its own accumulators for the whole collection.
+ */
+@Managing(algorithms = "it.cnr.isti.hpclab.matching.TermAtATime")
+public class TermAtATimeManager extends RankedManager
+{
+	/** Required terms first, then shortest posting lists first. */
+	private static final Comparator<MatchingEntry> SORT_BY_REQUIRED_DF = Comparator.<MatchingEntry, Boolean>comparing(x -> !x.term.isRequired()).thenComparing(MatchingEntry.SORT_BY_DF);
+
+	public float[] accumulators;
+	/** One bit per document, set if the document has been touched by the current query. */
+	public long[] touched_bits;
+	/** The number of required terms of the current query appearing in every document, allocated on the first query with required terms. */
+	public short[] required_counts = null;
+
+	public int[] touched;
+	public int num_touched = 0;
+
+	public TermAtATimeManager(final Index index)
+	{
+		super(index);
+
+		final int num_docs = mIndex.getCollectionStatistics().getNumberOfDocuments();
+		accumulators = new float[num_docs];
+		touched_bits = new long[(num_docs + Long.SIZE - 1) / Long.SIZE];
+		touched      = new int[1024];
+	}
+
+	@Override
+	protected void prepare_enums()
+	{
+		Collections.sort(enums, SORT_BY_REQUIRED_DF);
+	}
+
+	/**
+	 * The queries are processed as a single range, with the accumulators of this manager.
+	 */
+	@Override
+	protected long match_ranges(final int num_ranges) throws IOException
+	{
+		return mMatchingAlgorithm.match();
+	}
+
+	/**
+	 * Marks a document as touched by the current query.
+	 *
+	 * @param docid the document id
+	 */
+	public void touch(final int docid)
+	{
+		if (num_touched == touched.length)
+			touched = Arrays.copyOf(touched, 2 * touched.length);
+		touched[num_touched++] = docid;
+		touched_bits[docid >>> 6] |= 1L << docid;
+	}
+
+	public boolean isTouched(final int docid)
+	{
+		return (touched_bits[docid >>> 6] & (1L << docid)) != 0;
+	}
+
+	/**
+	 * Clears the accumulators touched by the previous query.
+	 */
+	public void clear_accumulators()
+	{
+		for (int i = 0; i < num_touched; ++i) {
+			final int docid = touched[i];
+			accumulators[docid] = 0.0f;
+			touched_bits[docid >>> 6] = 0l;
+			if (required_counts != null)
+				required_counts[docid] = 0;
+		}
+		num_touched = 0;
+
+		if (numRequired > 0 && required_counts == null)
+			required_counts = new short[accumulators.length];
+	}
+}
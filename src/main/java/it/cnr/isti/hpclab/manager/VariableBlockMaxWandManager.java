@@ -0,0 +1,40 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.manager;
+
+import org.terrier.structures.Index;
+
+import it.cnr.isti.hpclab.annotations.Managing;
+import it.cnr.isti.hpclab.maxscore.structures.BlockMaxScoreIndex;
+
+@Managing(algorithms = "it.cnr.isti.hpclab.matching.VariableBlockMaxWand")
+public class VariableBlockMaxWandManager extends BlockMaxWandManager 
+{
+	public VariableBlockMaxWandManager(final Index index)
+	{
+		super(index);
+	}
+
+	@Override
+	protected BlockMaxScoreIndex blockMaxScoreIndex()
+	{
+		return (BlockMaxScoreIndex) mIndex.getIndexStructure(modelStructure("vblockmaxscore"));
+	}
+}
@@ -27,14 +27,9 @@ import org.terrier.structures.LexiconEntry;
 import org.terrier.structures.postings.IterablePosting;
 
 import it.cnr.isti.hpclab.annotations.Managing;
-import it.cnr.isti.hpclab.matching.structures.ResultSet;
 import it.cnr.isti.hpclab.matching.structures.SearchRequest;
-import it.cnr.isti.hpclab.matching.structures.TopQueue;
 import it.cnr.isti.hpclab.matching.structures.query.QueryTerm;
 import it.cnr.isti.hpclab.matching.structures.QueryProperties.RuntimeProperty;
-import it.cnr.isti.hpclab.matching.structures.resultset.EmptyResultSet;
-import it.cnr.isti.hpclab.matching.structures.resultset.ScoredResultSet;
-import it.cnr.isti.hpclab.maxscore.structures.MaxScoreIndex;
 
 @Managing(algorithms = "it.cnr.isti.hpclab.matching.And,it.cnr.isti.hpclab.matching.Wand")
 public class WandManager extends RankedManager
@@ -52,29 +47,9 @@ public class WandManager extends RankedManager
 	}
 
 	@Override
-	public ResultSet run(final SearchRequest srq) throws IOException 
-	{	
-		open_enums(srq);		
-		
-		if (enums.size() == 0)
-			return new EmptyResultSet();
-		
-		processedPostings = 0l;
-		partiallyProcessedDocuments = 0l;
-		numPivots = 0l;
-		
-		threshold = parseFloat(srq.getQuery().getMetadata(RuntimeProperty.INITIAL_THRESHOLD));
-		heap = new TopQueue(TOP_K(), threshold);
-		
-		processingTime = mMatchingAlgorithm.match();
-		
-		close_enums();
-		stats_enums(srq);
-		
-        if (heap.isEmpty())
-        	return new EmptyResultSet();
- 							
-       	return new ScoredResultSet(heap);
+	protected void prepare_enums()
+	{
+		// Posting lists are sorted by the matching algorithm
 	}
 
 	@Override
@@ -89,21 +64,8 @@ public class WandManager extends RankedManager
 	@Override
 	protected MatchingEntry entryFrom(final int qtf, final QueryTerm term, final IterablePosting posting, final LexiconEntry entry) throws IOException
 	{
-		MaxScoreIndex maxScoreIndex = (MaxScoreIndex) mIndex.getIndexStructure("maxscore");
-		float ms = maxScoreIndex.getMaxScore(entry.getTermId());
-		maxScoreIndex.close();
+		float ms = maxScoreIndex().getMaxScore(entry.getTermId());
 		
 		return new MatchingEntry(qtf, term, posting, entry, ms);
 	}	
-	
-	@Override
-	public void reset_to(final int to) throws IOException
-	{
-		for (MatchingEntry t: enums) {
-			t.posting.close();
-			t.posting =  mIndex.getInvertedIndex().getPostings(t.entry);
-			t.posting.next();
-			t.posting.next(to);
-		}
-	}
 }
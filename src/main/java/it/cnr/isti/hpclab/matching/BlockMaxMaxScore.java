@@ -0,0 +1,139 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.matching;
+
+import it.cnr.isti.hpclab.annotations.Managed;
+import it.cnr.isti.hpclab.manager.BlockMaxMaxScoreManager;
+import it.cnr.isti.hpclab.manager.Manager;
+import it.cnr.isti.hpclab.manager.MatchingEntry;
+
+import it.cnr.isti.hpclab.matching.structures.TopQueue;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.terrier.structures.postings.IterablePosting;
+
+/**
+ * The MaxScore algorithm, where the upper bound of the non-essential lists of a candidate document 
+ * is tightened with the block max scores of the blocks containing the document (Block-Max MaxScore). 
+ */
+@Managed(by = "it.cnr.isti.hpclab.manager.BlockMaxMaxScoreManager")
+public class BlockMaxMaxScore implements MatchingAlgorithm
+{
+	private BlockMaxMaxScoreManager manager;
+	
+	@Override
+	public void setup(final Manager manager) 
+	{		
+		this.manager = (BlockMaxMaxScoreManager) manager;
+	}
+
+	@Override
+	public long match(final int from, final int to) throws IOException 
+	{
+		final List<MatchingEntry> ordered_enums = manager.enums;
+		final float upper_bounds[] = manager.upper_bounds;
+		final TopQueue heap = manager.heap;
+		
+		manager.reset_to(from);
+		
+		int non_essential_lists = 0;
+		
+		// The following cycle is run only if initial threshold is greater than 0.
+		while (non_essential_lists < ordered_enums.size() && !heap.wouldEnter(upper_bounds[non_essential_lists]))
+			non_essential_lists += 1;
+		
+		long start_time = System.nanoTime();
+		int currentDocid = manager.min_docid();
+		int nextDocid;
+		
+		IterablePosting p;
+		MatchingEntry e;
+        while (non_essential_lists < ordered_enums.size() && currentDocid < to) 
+        {
+        	float score = 0.0f;
+        	nextDocid = Integer.MAX_VALUE;
+
+        	int numRequired = 0;
+        	// We compute the score of the essential lists
+        	for (int i = non_essential_lists; i < ordered_enums.size(); ++i) {
+        		e = ordered_enums.get(i);
+        		p = e.posting;
+        		if (p.getId() == currentDocid) {
+        			score += e.scorer.score(p);
+        			if (e.term.isRequired())
+        				numRequired++;
+        			manager.processedPostings += 1;
+        			p.next();
+        		}
+        		
+        		if (p.getId() < nextDocid) {
+        			nextDocid = p.getId();
+        		}	
+        	}
+
+        	manager.partiallyProcessedDocuments++;
+        	
+        	// We replace the max scores of the non-essential lists with their block max scores
+        	float block_upper_bound = (non_essential_lists > 0) ? upper_bounds[non_essential_lists - 1] : 0.0f;
+        	for (int i = non_essential_lists - 1; i + 1 > 0; --i) {
+        		e = ordered_enums.get(i);
+        		e.blockEnum.move(currentDocid);
+        		block_upper_bound -= e.qtf * e.maxscore - e.qtf * e.blockEnum.score();
+        		if (!heap.wouldEnter(score + block_upper_bound))
+        			break;
+        	}
+        	
+        	if (heap.wouldEnter(score + block_upper_bound)) {
+        		// We try to complete evaluation with non-essential lists
+        		for (int i = non_essential_lists - 1; i + 1 > 0; --i) {
+        			e = ordered_enums.get(i);
+        			p = e.posting;
+        			p.next(currentDocid);
+
+        			if (p.getId() == currentDocid) {
+        				score += e.scorer.score(p);
+        				if (e.term.isRequired())
+        					numRequired++;
+        				manager.processedPostings += 1;
+        			}
+        			block_upper_bound -= e.qtf * e.blockEnum.score();
+        			if (!heap.wouldEnter(score + block_upper_bound))
+        				break;
+        		}
+
+        		if (numRequired == manager.numRequired) {
+        			if (heap.insert(currentDocid, score)) {
+        				int old = non_essential_lists;
+        				// update non-essential lists
+        				while (non_essential_lists < ordered_enums.size() && !heap.wouldEnter(upper_bounds[non_essential_lists])) {
+        					non_essential_lists += 1;
+        				}
+        				if (old != non_essential_lists)
+        					manager.numPivots++;
+        			}
+        		}
+        	}
+        	currentDocid = nextDocid;
+        }
+        return System.nanoTime() - start_time;
+	}	
+}
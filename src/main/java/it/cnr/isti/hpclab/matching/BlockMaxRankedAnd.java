@@ -0,0 +1,133 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.matching;
+
+import it.cnr.isti.hpclab.annotations.Managed;
+import it.cnr.isti.hpclab.manager.BlockMaxWandManager;
+import it.cnr.isti.hpclab.manager.Manager;
+import it.cnr.isti.hpclab.manager.MatchingEntry;
+import it.cnr.isti.hpclab.matching.structures.TopQueue;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Block-max conjunctive processing.
+ *
+ * If the query contains required terms (i.e., <tt>+term</tt>), a document must contain all of them,
+ * and the remaining terms contribute to its score only if present. Otherwise, a document must contain all query terms.
+ * Before aligning the required posting lists on a candidate, the block max scores of all query terms are summed up,
+ * and if the sum cannot beat the current threshold of the top queue, the whole region up to the closest block boundary is skipped.
+ */
+@Managed(by = "it.cnr.isti.hpclab.manager.BlockMaxWandManager")
+public class BlockMaxRankedAnd implements MatchingAlgorithm
+{
+	private BlockMaxWandManager manager;
+
+	@Override
+	public void setup(final Manager manager)
+	{
+		this.manager = (BlockMaxWandManager) manager;
+	}
+
+	@Override
+	public boolean isDisjunctive()
+	{
+		return false;
+	}
+
+	@Override
+	public long match(final int from, final int to) throws IOException
+	{
+		final MatchingEntry[] enums = manager.local_enums;
+		final TopQueue heap = manager.heap;
+
+		manager.reset_to(from);
+
+		// Required posting lists, shortest first, and optional posting lists
+		final MatchingEntry[] required = Arrays.stream(enums).filter(x -> manager.numRequired == 0 || x.term.isRequired()).sorted(MatchingEntry.SORT_BY_DF).toArray(MatchingEntry[]::new);
+		final MatchingEntry[] optional = Arrays.stream(enums).filter(x -> manager.numRequired != 0 && !x.term.isRequired()).toArray(MatchingEntry[]::new);
+
+		long start_time = System.nanoTime();
+		int currentDocid = required[0].posting.getId();
+		while (currentDocid < to) {
+			// shallow move
+			float blockMaxScore = 0.0f;
+			for (MatchingEntry e: required) {
+				e.blockEnum.move(currentDocid);
+				blockMaxScore += e.qtf * e.blockEnum.score();
+			}
+			// optional terms may be missing, so they can not lower the upper bound
+			float optionalBlockMaxScore = 0.0f;
+			for (MatchingEntry e: optional) {
+				e.blockEnum.move(currentDocid);
+				optionalBlockMaxScore += Math.max(0.0f, e.qtf * e.blockEnum.score());
+			}
+
+			if (!heap.wouldEnter(blockMaxScore + optionalBlockMaxScore)) {
+				// no document can enter the top queue before the closest block boundary
+				int next_b = Integer.MAX_VALUE;
+				for (MatchingEntry e: enums)
+					if (e.blockEnum.last() < next_b)
+						next_b = e.blockEnum.last();
+				if (next_b == Integer.MAX_VALUE)
+					break;
+				currentDocid = required[0].posting.next(next_b + 1);
+				continue;
+			}
+
+			// align the required posting lists on the candidate
+			int i = 1;
+			for (; i < required.length; ++i) {
+				required[i].posting.next(currentDocid);
+				if (required[i].posting.getId() != currentDocid)
+					break;
+			}
+			if (i < required.length) {
+				currentDocid = required[0].posting.next(required[i].posting.getId());
+				continue;
+			}
+
+			manager.partiallyProcessedDocuments++;
+			float score = 0.0f;
+			for (MatchingEntry e: required) {
+				score += e.scorer.score(e.posting);
+				manager.processedPostings++;
+			}
+
+			// Early termination on the optional terms
+			int j = 0;
+			for (; j < optional.length && heap.wouldEnter(score + optionalBlockMaxScore); ++j) {
+				MatchingEntry e = optional[j];
+				optionalBlockMaxScore -= Math.max(0.0f, e.qtf * e.blockEnum.score());
+				e.posting.next(currentDocid);
+				if (e.posting.getId() == currentDocid) {
+					score += e.scorer.score(e.posting);
+					manager.processedPostings++;
+				}
+			}
+			if (j == optional.length)
+				heap.insert(currentDocid, score);
+
+			currentDocid = required[0].posting.next();
+		}
+		return System.nanoTime() - start_time;
+	}
+}
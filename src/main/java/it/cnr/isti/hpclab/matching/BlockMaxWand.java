@@ -23,9 +23,7 @@ import it.cnr.isti.hpclab.annotations.Managed;
 import it.cnr.isti.hpclab.manager.BlockMaxWandManager;
 import it.cnr.isti.hpclab.manager.Manager;
 import it.cnr.isti.hpclab.manager.MatchingEntry;
-import it.cnr.isti.hpclab.matching.structures.Result;
 import it.cnr.isti.hpclab.matching.structures.TopQueue;
-import it.cnr.isti.hpclab.matching.structures.WeightingModel;
 
 import it.cnr.isti.hpclab.maxscore.structures.BlockEnumerator;
 
@@ -50,7 +48,6 @@ public class BlockMaxWand implements MatchingAlgorithm
 	{		
 		MatchingEntry[] enums = manager.local_enums;
 		final TopQueue heap = manager.heap;
-		final WeightingModel wm = manager.mWeightingModel;
 
 		manager.reset_to(from);
 		Arrays.sort(enums, MatchingEntry.SORT_BY_DOCID);
@@ -85,11 +82,20 @@ public class BlockMaxWand implements MatchingAlgorithm
             while (pivot < enums.length - 1 && enums[pivot + 1].posting.getId() == pivot_id)
             	pivot++;
             
+            // super-block shallow move: if the super-block max scores can not enter, skip all the super-blocks up to the pivot
+            float superMaxScore = 0.0f;
+            for (int i = 0; i <= pivot; ++i) {
+            	BlockEnumerator b = enums[i].blockEnum;
+            	b.moveSuper(pivot_id);
+            	superMaxScore += enums[i].qtf * b.superScore();
+            }
+            final boolean coarse = !heap.wouldEnter(superMaxScore);
+            
             float blockMaxScore = 0.0f;
             // long next_b = Long.MAX_VALUE;
             
             // shallow move
-            for (int i = 0; i <= pivot; ++i) {
+            for (int i = 0; !coarse && i <= pivot; ++i) {
             	BlockEnumerator b = enums[i].blockEnum;
             	b.move(pivot_id);
             	blockMaxScore += enums[i].qtf * b.score();
@@ -101,14 +107,14 @@ public class BlockMaxWand implements MatchingAlgorithm
             	//
             }
             
-            if (heap.wouldEnter(blockMaxScore)) {
+            if (!coarse && heap.wouldEnter(blockMaxScore)) {
             	if (pivot_id == enums[0].posting.getId()) {
             		manager.partiallyProcessedDocuments++;
             		float score = 0.0f;
             		float p_score = 0.0f;
             		int numRequired = 0;
             		for (int i = 0; i <= pivot; ++i) {
-            			score += (p_score = wm.score(enums[i].qtf, enums[i].posting, enums[i].entry) * enums[i].weight);
+            			score += (p_score = enums[i].scorer.score(enums[i].posting));
             			manager.processedPostings++;
             			if (enums[i].term.isRequired())
             				numRequired++;
@@ -121,7 +127,7 @@ public class BlockMaxWand implements MatchingAlgorithm
             		for (int i = 0; i <= pivot; ++i) 
             			enums[i].posting.next();
             		if (numRequired == manager.numRequired) 
-            			heap.insert(new Result(pivot_id, score));
+            			heap.insert(pivot_id, score);
             		Arrays.sort(enums, MatchingEntry.SORT_BY_DOCID);
             	} else {
                     // no match, move farthest list up to the pivot
@@ -144,8 +150,9 @@ public class BlockMaxWand implements MatchingAlgorithm
             	long next_b = Long.MAX_VALUE;
                 for (int i = 0; i <= pivot; ++i) {
                 	BlockEnumerator b = enums[i].blockEnum;
-                	if (b.last() < next_b)
-                		next_b = b.last();
+                	final int last = coarse ? b.superLast() : b.last();
+                	if (last < next_b)
+                		next_b = last;
                 }
 
             	if (pivot < enums.length - 1 && next_b > enums[pivot + 1].posting.getId())
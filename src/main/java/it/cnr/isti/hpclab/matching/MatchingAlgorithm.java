@@ -43,6 +43,15 @@ public interface MatchingAlgorithm
 		return this.match(from, IterablePosting.END_OF_LIST);
 	}
 
+	/**
+	 * Returns true if every document containing at least one of the query terms can be retrieved.
+	 * Only for disjunctive algorithms the top queue can be safely seeded with the k-th score of a single query term.
+	 */
+	default boolean isDisjunctive()
+	{
+		return true;
+	}
+
 	// Take care to correctly sort the manager's enums
 	long match(final int from, final int to) throws IOException;
 }
@@ -24,10 +24,8 @@ import it.cnr.isti.hpclab.annotations.Managed;
 import it.cnr.isti.hpclab.manager.Manager;
 import it.cnr.isti.hpclab.manager.MaxScoreManager;
 import it.cnr.isti.hpclab.manager.MatchingEntry;
-import it.cnr.isti.hpclab.matching.structures.Result;
 
 import it.cnr.isti.hpclab.matching.structures.TopQueue;
-import it.cnr.isti.hpclab.matching.structures.WeightingModel;
 
 import java.io.IOException;
 import java.util.List;
@@ -51,7 +49,6 @@ public class MaxScore implements MatchingAlgorithm
 		final List<MatchingEntry> ordered_enums = manager.enums;
 		final float upper_bounds[] = manager.upper_bounds;
 		final TopQueue heap = manager.heap;
-		final WeightingModel wm = manager.mWeightingModel;
 		
 		manager.reset_to(from);
 		
@@ -65,19 +62,21 @@ public class MaxScore implements MatchingAlgorithm
 		int currentDocid = manager.min_docid();
 		int nextDocid;
 		
+		MatchingEntry e;
 		IterablePosting p;
         while (non_essential_lists < ordered_enums.size() && currentDocid < to) 
         {
-        	Result result = new Result(currentDocid);
+        	float score = 0.0f;
         	nextDocid = Integer.MAX_VALUE;
 
         	int numRequired = 0;
         	// We compute the score of the essential lists
         	for (int i = non_essential_lists; i < ordered_enums.size(); ++i) {
-        		p = ordered_enums.get(i).posting;
+        		e = ordered_enums.get(i);
+        		p = e.posting;
         		if (p.getId() == currentDocid) {
-        			result.updateScore(wm.score(ordered_enums.get(i).qtf, p, ordered_enums.get(i).entry) * ordered_enums.get(i).weight);
-        			if (ordered_enums.get(i).term.isRequired())
+        			score += e.scorer.score(p);
+        			if (e.term.isRequired())
         				numRequired++;
         			manager.processedPostings += 1;
         			p.next();
@@ -92,22 +91,23 @@ public class MaxScore implements MatchingAlgorithm
         	
         	// We try to complete evaluation with non-essential lists
         	for (int i = non_essential_lists - 1; i + 1 > 0; --i) {
-        		if (!heap.wouldEnter(result.getScore() + upper_bounds[i]))
+        		if (!heap.wouldEnter(score + upper_bounds[i]))
                     break;
 
-        		p = ordered_enums.get(i).posting;
+        		e = ordered_enums.get(i);
+        		p = e.posting;
         		p.next(currentDocid);
 
         		if (p.getId() == currentDocid) {
-        			result.updateScore(wm.score(ordered_enums.get(i).qtf, p, ordered_enums.get(i).entry) * ordered_enums.get(i).weight);
-        			if (ordered_enums.get(i).term.isRequired())
+        			score += e.scorer.score(p);
+        			if (e.term.isRequired())
         				numRequired++;
         			manager.processedPostings += 1;
         		}
         	}
        	
         	if (numRequired == manager.numRequired) {
-        		if (heap.insert(result)) {
+        		if (heap.insert(currentDocid, score)) {
         			int old = non_essential_lists;
         			// update non-essential lists
         			while (non_essential_lists < ordered_enums.size() && !heap.wouldEnter(upper_bounds[non_essential_lists])) {
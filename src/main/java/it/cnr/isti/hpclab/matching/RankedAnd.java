@@ -24,9 +24,7 @@ import it.cnr.isti.hpclab.annotations.Managed;
 import it.cnr.isti.hpclab.manager.Manager;
 import it.cnr.isti.hpclab.manager.MatchingEntry;
 import it.cnr.isti.hpclab.manager.RankedManager;
-import it.cnr.isti.hpclab.matching.structures.Result;
 import it.cnr.isti.hpclab.matching.structures.TopQueue;
-import it.cnr.isti.hpclab.matching.structures.WeightingModel;
 
 import java.io.IOException;
 import java.util.List;
@@ -41,13 +39,18 @@ public class RankedAnd implements MatchingAlgorithm
 	{		
 		this.manager = (RankedManager) manager;
 	}
+
+	@Override
+	public boolean isDisjunctive()
+	{
+		return false;
+	}
 	
 	@Override
 	public long match(int from, int to) throws IOException 
 	{
 		final List<MatchingEntry> enums = manager.enums;
 		final TopQueue heap = manager.heap;
-		final WeightingModel wm = manager.mWeightingModel;
 		
 		manager.reset_to(from);
 		
@@ -68,10 +71,10 @@ public class RankedAnd implements MatchingAlgorithm
         	if (i == enums.size()) {
         		currentScore = 0.0f;
         		for (int j = 0; j < enums.size(); j++) {
-        			currentScore += wm.score(enums.get(j).qtf, enums.get(j).posting, enums.get(j).entry) * enums.get(j).weight;
+        			currentScore += enums.get(j).scorer.score(enums.get(j).posting);
         		}
         		manager.processedPostings += enums.size();
-        		heap.insert(new Result(currentDocid, currentScore));
+        		heap.insert(currentDocid, currentScore);
 
         		currentDocid = enums.get(0).posting.next();
         		i = 1;
@@ -24,9 +24,7 @@ import it.cnr.isti.hpclab.annotations.Managed;
 import it.cnr.isti.hpclab.manager.Manager;
 import it.cnr.isti.hpclab.manager.MatchingEntry;
 import it.cnr.isti.hpclab.manager.RankedManager;
-import it.cnr.isti.hpclab.matching.structures.Result;
 import it.cnr.isti.hpclab.matching.structures.TopQueue;
-import it.cnr.isti.hpclab.matching.structures.WeightingModel;
 
 import java.io.IOException;
 import java.util.List;
@@ -49,7 +47,6 @@ public class RankedOr implements MatchingAlgorithm
 	{
 		final List<MatchingEntry> enums = manager.enums;
 		final TopQueue heap = manager.heap;
-		final WeightingModel wm = manager.mWeightingModel;
 
 		manager.reset_to(from);
 
@@ -60,19 +57,20 @@ public class RankedOr implements MatchingAlgorithm
         	int nextDocid = Integer.MAX_VALUE;
         	int numRequired = 0;
         	for (int i = 0; i < enums.size(); i++) {
-        		IterablePosting p = enums.get(i).posting;
+        		final MatchingEntry e = enums.get(i);
+        		final IterablePosting p = e.posting;
         		if (p.getId() == currentDocid) {
-        			currentScore += wm.score(enums.get(i).qtf, p, enums.get(i).entry) * enums.get(i).weight;
+        			currentScore += e.scorer.score(p);
         			manager.processedPostings += 1;
         			p.next();
-        			if (enums.get(i).term.isRequired())
+        			if (e.term.isRequired())
         				numRequired++;
         		}
         		if (p.getId() < nextDocid)
         			nextDocid = p.getId();
         	}
         	if (numRequired == manager.numRequired)
-        		heap.insert(new Result(currentDocid, currentScore));
+        		heap.insert(currentDocid, currentScore);
         	
         	currentDocid = nextDocid;
         	currentScore = 0.0f;
@@ -0,0 +1,152 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.matching;
+
+import it.cnr.isti.hpclab.MatchingConfiguration;
+import it.cnr.isti.hpclab.MatchingConfiguration.Property;
+import it.cnr.isti.hpclab.annotations.Managed;
+import it.cnr.isti.hpclab.impact.structures.ImpactEnumerator;
+import it.cnr.isti.hpclab.manager.ImpactManager;
+import it.cnr.isti.hpclab.manager.Manager;
+import it.cnr.isti.hpclab.manager.MatchingEntry;
+import it.cnr.isti.hpclab.matching.structures.TopQueue;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.terrier.structures.postings.IterablePosting;
+
+/**
+ * Score-at-a-time processing over the impact-ordered index (JASS).
+ *
+ * The segments of all query terms are processed in decreasing order of impact, adding the impacts to the accumulators.
+ * Processing stops when all segments have been processed, or when the budget of postings (<tt>micro.impact.postings</tt>)
+ * or of milliseconds (<tt>micro.impact.time</tt>) is exhausted, if any. The top documents are then selected among the touched accumulators.
+ * Scores are the accumulated impacts mapped back to scores, and required terms are not enforced.
+ */
+@Managed(by = "it.cnr.isti.hpclab.manager.ImpactManager")
+public class ScoreAtATime implements MatchingAlgorithm
+{
+	private ImpactManager manager;
+
+	@Override
+	public void setup(final Manager manager)
+	{
+		this.manager = (ImpactManager) manager;
+	}
+
+	@Override
+	public long match(final int from, final int to) throws IOException
+	{
+		final ImpactEnumerator[] enums = manager.impact_enums;
+		final TopQueue heap = manager.heap;
+		final float[] acc = manager.accumulators;
+		final boolean[] dirty = manager.dirty_pages;
+
+		final long postings_budget = MatchingConfiguration.getInt(Property.IMPACT_POSTINGS_BUDGET);
+		final long time_budget = (long) (MatchingConfiguration.getDouble(Property.IMPACT_TIME_BUDGET) * 1e6);
+
+		long start_time = System.nanoTime();
+		Arrays.fill(dirty, false);
+
+		// All segments of all query terms, sorted by increasing weighted impact (as positive float bits) and processed backwards
+		int num_segments = 0;
+		for (ImpactEnumerator e: enums)
+			num_segments += e.size();
+		final float[] impacts = new float[num_segments];
+		final long[] begins = new long[num_segments];
+		final long[] ends = new long[num_segments];
+		final long[] order = new long[num_segments];
+		for (int i = 0, s = 0; i < enums.length; ++i) {
+			final MatchingEntry t = manager.enums.get(i);
+			final ImpactEnumerator e = enums[i];
+			e.reset();
+			while (e.hasNext()) {
+				e.next();
+				impacts[s] = t.qtf * t.weight * e.impact();
+				begins[s] = e.begin();
+				ends[s] = e.end();
+				order[s] = ((long) Float.floatToIntBits(Math.max(0.0f, impacts[s])) << 32) | s;
+				s++;
+			}
+		}
+		Arrays.sort(order);
+
+		long processed = 0;
+		for (int i = num_segments - 1; i >= 0; --i) {
+			if (postings_budget > 0 && processed >= postings_budget)
+				break;
+			if (time_budget > 0 && System.nanoTime() - start_time >= time_budget)
+				break;
+
+			final int s = (int) order[i];
+			final ImpactEnumerator docids = enums[0];
+			long lo = begins[s];
+			long hi = ends[s];
+			if (from > 0)
+				lo = lower_bound(docids, lo, hi, from);
+			if (to != IterablePosting.END_OF_LIST)
+				hi = lower_bound(docids, lo, hi, to);
+			if (postings_budget > 0)
+				hi = Math.min(hi, lo + postings_budget - processed);
+
+			final float impact = impacts[s];
+			for (long p = lo; p < hi; ++p) {
+				final int docid = docids.docid(p);
+				final int page = docid >>> ImpactManager.PAGE_BITS;
+				if (!dirty[page]) {
+					Arrays.fill(acc, page << ImpactManager.PAGE_BITS, (page + 1) << ImpactManager.PAGE_BITS, 0.0f);
+					dirty[page] = true;
+				}
+				acc[docid] += impact;
+			}
+			processed += hi - lo;
+		}
+		manager.processedPostings += processed;
+
+		// Top k selection among the touched accumulators
+		final float scale = manager.scale;
+		for (int page = 0; page < dirty.length; ++page) {
+			if (!dirty[page])
+				continue;
+			for (int docid = page << ImpactManager.PAGE_BITS; docid < (page + 1) << ImpactManager.PAGE_BITS; ++docid) {
+				final float score = acc[docid] * scale;
+				if (acc[docid] != 0.0f && heap.wouldEnter(score))
+					heap.insert(docid, score);
+			}
+		}
+		return System.nanoTime() - start_time;
+	}
+
+	/**
+	 * Returns the position of the first docid not smaller than the target in a sorted range of the docids of an impact index.
+	 */
+	private static long lower_bound(final ImpactEnumerator docids, long lo, long hi, final int target)
+	{
+		while (lo < hi) {
+			final long mid = (lo + hi) >>> 1;
+			if (docids.docid(mid) < target)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+}
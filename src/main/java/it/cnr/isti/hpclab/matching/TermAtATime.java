@@ -0,0 +1,95 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.matching;
+
+import it.cnr.isti.hpclab.annotations.Managed;
+import it.cnr.isti.hpclab.manager.Manager;
+import it.cnr.isti.hpclab.manager.MatchingEntry;
+import it.cnr.isti.hpclab.manager.TermAtATimeManager;
+import it.cnr.isti.hpclab.matching.structures.TopQueue;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.terrier.structures.postings.IterablePosting;
+
+/**
+ * Exhaustive term-at-a-time processing, with the same results of {@link RankedOr}.
+ *
+ * The posting lists are fully traversed one after the other, adding the scores to the dense accumulators of the manager,
+ * and the top documents are selected among the touched accumulators at the end.
+ * The required terms are processed first: after the first required term, the documents not yet touched can not match anymore,
+ * and the postings of the remaining terms are scored only for the touched documents.
+ */
+@Managed(by = "it.cnr.isti.hpclab.manager.TermAtATimeManager")
+public class TermAtATime implements MatchingAlgorithm
+{
+	private TermAtATimeManager manager;
+
+	@Override
+	public void setup(final Manager manager)
+	{
+		this.manager = (TermAtATimeManager) manager;
+	}
+
+	@Override
+	public long match(final int from, final int to) throws IOException
+	{
+		final List<MatchingEntry> enums = manager.enums;
+		final TopQueue heap = manager.heap;
+		final int num_required = manager.numRequired;
+
+		manager.reset_to(from);
+		manager.clear_accumulators();
+		final float[] acc = manager.accumulators;
+		final short[] counts = manager.required_counts;
+
+		long start_time = System.nanoTime();
+		for (int i = 0; i < enums.size(); ++i) {
+			final MatchingEntry t = enums.get(i);
+			final IterablePosting p = t.posting;
+			final boolean required = t.term.isRequired();
+			final boolean restricted = num_required > 0 && i > 0;
+
+			for (int docid = p.getId(); docid < to; docid = p.next()) {
+				if (!manager.isTouched(docid)) {
+					if (restricted)
+						continue;
+					manager.touch(docid);
+				}
+				acc[docid] += t.scorer.score(p);
+				manager.processedPostings++;
+				if (required)
+					counts[docid]++;
+			}
+		}
+
+		// Top k selection among the touched accumulators
+		final int[] touched = manager.touched;
+		for (int i = 0; i < manager.num_touched; ++i) {
+			final int docid = touched[i];
+			if (num_required > 0 && counts[docid] != num_required)
+				continue;
+			if (heap.wouldEnter(acc[docid]))
+				heap.insert(docid, acc[docid]);
+		}
+		return System.nanoTime() - start_time;
+	}
+}
@@ -0,0 +1,31 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.matching;
+
+import it.cnr.isti.hpclab.annotations.Managed;
+
+/**
+ * The BlockMaxWand algorithm (VBMW) processing the variable-sized blocks generated by the <code>-v</code> option
+ * of the block max score generator, whose boundaries are chosen to minimise the block max score errors.
+ */
+@Managed(by = "it.cnr.isti.hpclab.manager.VariableBlockMaxWandManager")
+public class VariableBlockMaxWand extends BlockMaxWand
+{		
+}
@@ -24,9 +24,7 @@ import it.cnr.isti.hpclab.annotations.Managed;
 import it.cnr.isti.hpclab.manager.Manager;
 import it.cnr.isti.hpclab.manager.MatchingEntry;
 import it.cnr.isti.hpclab.manager.WandManager;
-import it.cnr.isti.hpclab.matching.structures.Result;
 import it.cnr.isti.hpclab.matching.structures.TopQueue;
-import it.cnr.isti.hpclab.matching.structures.WeightingModel;
 
 import java.io.IOException;
 import java.util.Collections;
@@ -50,7 +48,6 @@ public class Wand implements MatchingAlgorithm
 	{
 		final List<MatchingEntry> enums = manager.enums;
 		final TopQueue heap = manager.heap;
-		final WeightingModel wm = manager.mWeightingModel;
 
 		manager.reset_to(from);
 		Collections.sort(enums, MatchingEntry.SORT_BY_DOCID);
@@ -91,7 +88,7 @@ public class Wand implements MatchingAlgorithm
                 	if (p.getId() != pivot_id) {
                 		break;
                 	}
-        			score += wm.score(enums.get(i).qtf, p, enums.get(i).entry) * enums.get(i).weight;
+        			score += enums.get(i).scorer.score(p);
         			if (enums.get(i).term.isRequired())
         				numRequired++;
 
@@ -99,7 +96,7 @@ public class Wand implements MatchingAlgorithm
         			p.next();
                 }
                 if (numRequired == manager.numRequired) 
-                	heap.insert(new Result(pivot_id, score));
+                	heap.insert(pivot_id, score);
                 // resort by docid
                 Collections.sort(enums, MatchingEntry.SORT_BY_DOCID);
             } else {
@@ -104,6 +104,26 @@ public class Query extends QueryProperties
         applyTermPipeline();
     }
     
+    /**
+     * Creates a new query object from terms already processed by the term pipeline, e.g., the terms of the lexicon.
+     * The term pipeline is not applied again, since it is not idempotent (e.g., stemming a stemmed term can change it).
+     * 
+     * @param terms the processed query terms (must be not null)
+     */
+    public Query(final QueryTerm... terms)
+    {
+        checkNotNull(terms);
+        this.mTerms = new Object2IntArrayMap<QueryTerm>();
+        
+        StringBuffer buf = new StringBuffer();
+        for (QueryTerm qt: terms) {
+            addTerm(qt);
+            buf.append(qt).append(' ');
+        }
+        this.mOriginalQuery = buf.toString().trim();
+        this.mProcessed = true;
+    }
+    
     /**
      * Adds a term to the query object.
      * 
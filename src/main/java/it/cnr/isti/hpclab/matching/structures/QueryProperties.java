@@ -45,6 +45,9 @@ public class QueryProperties
 		FINAL_THRESHOLD 	("final.threshold"),
 	
 		QUERY_TERMS			("query.terms"),
+		
+		CACHE_HITS			("cache.hits"),
+		CACHE_MISSES		("cache.misses"),
 				
 		NULL                ("");
 		  
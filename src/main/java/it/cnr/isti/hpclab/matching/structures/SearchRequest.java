@@ -62,6 +62,21 @@ public class SearchRequest
         this.mQueryObject = new Query(queryText);
     }
     
+    /**
+     * Creates a new search request object from terms already processed by the term pipeline, which is not applied again.
+     * 
+     * @param queryId the query id, used by <tt>trec_eval</tt> inputs (must be not negative)
+     * @param queryTerms the processed query terms, e.g., the terms of the lexicon (must be not null)
+     */
+    public SearchRequest(final String queryId, final QueryTerm... queryTerms)
+    {
+        checkNotNull(queryTerms);
+        checkNotNull(queryId);
+        
+        this.mQueryId = queryId;    
+        this.mQueryObject = new Query(queryTerms);
+    }
+    
     /**
      * Return the result set associated with the query, if the query has been processed.
      * 
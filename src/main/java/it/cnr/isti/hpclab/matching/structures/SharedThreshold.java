@@ -0,0 +1,77 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.matching.structures;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This is a lock-free threshold score shared by the top queues of the docid ranges of a single query.
+ * The threshold can only increase, and it is stored as the raw bits of a float in an atomic integer.
+ * 
+ * @author Nicola Tonellotto
+ */
+public class SharedThreshold 
+{
+	private final AtomicInteger bits;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param th the initial value of the threshold
+	 */
+	public SharedThreshold(final float th)
+	{
+		this.bits = new AtomicInteger(Float.floatToIntBits(th));
+	}
+	
+	/**
+	 * Returns the current threshold.
+	 * 
+	 * @return the current threshold
+	 */
+	public float get()
+	{
+		return Float.intBitsToFloat(bits.get());
+	}
+	
+	/**
+	 * Raises the threshold to the given score, if it is greater than the current threshold.
+	 * 
+	 * @param th the candidate new threshold
+	 * @return the threshold after the update
+	 */
+	public float raise(final float th)
+	{
+		int current = bits.get();
+		while (th > Float.intBitsToFloat(current)) {
+			if (bits.compareAndSet(current, Float.floatToIntBits(th)))
+				return th;
+			current = bits.get();
+		}
+		return Float.intBitsToFloat(current);
+	}
+	
+	@Override
+	public String toString()
+	{
+		return Float.toString(get());
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.matching.structures;
+
+import org.terrier.structures.postings.Posting;
+
+/**
+ * The score contribution of a single query term, created once per query by {@link WeightingModel#scorer(int, float, org.terrier.structures.LexiconEntry)}.
+ * The query-constant parts of the weighting model (term frequency in query, term weight, collection statistics of the term)
+ * are computed when the scorer is created, and only the document-dependent parts are computed for every posting.
+ */
+@FunctionalInterface
+public interface TermScorer
+{
+	/**
+	 * Compute the weighted score of a document w.r.t. the term of this scorer.
+	 * 
+	 * @param term_freq_in_doc the term frequency (in document)
+	 * @param doc_len the length of the document to score, in tokens
+	 * 
+	 * @return the score of the document for the term, multiplied by the term weight
+	 */
+	float score(int term_freq_in_doc, int doc_len);
+
+	/**
+	 * Compute the weighted score of a document w.r.t. the term of this scorer.
+	 * Scorers reading per-document data of their own, indexed by docid, may ignore the document length.
+	 * 
+	 * @param docid the id of the document to score
+	 * @param term_freq_in_doc the term frequency (in document)
+	 * @param doc_len the length of the document to score, in tokens, or 0 if not {@link #needsDocumentLength() needed}
+	 * 
+	 * @return the score of the document for the term, multiplied by the term weight
+	 */
+	default float score(final int docid, final int term_freq_in_doc, final int doc_len)
+	{
+		return score(term_freq_in_doc, doc_len);
+	}
+
+	/**
+	 * Compute the weighted score of the current posting w.r.t. the term of this scorer.
+	 * The document length is read from the posting only if {@link #needsDocumentLength() needed}.
+	 * 
+	 * @param p the current posting
+	 * 
+	 * @return the score of the document for the term, multiplied by the term weight
+	 */
+	default float score(final Posting p)
+	{
+		return score(p.getFrequency(), p.getDocumentLength());
+	}
+
+	/**
+	 * @return true if the document length must be passed to {@link #score(int, int, int)}
+	 */
+	default boolean needsDocumentLength()
+	{
+		return true;
+	}
+}
@@ -20,33 +20,33 @@
 
 package it.cnr.isti.hpclab.matching.structures;
 
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-
-import it.unimi.dsi.fastutil.PriorityQueue;
-import it.unimi.dsi.fastutil.io.FastByteArrayInputStream;
-import it.unimi.dsi.fastutil.io.FastByteArrayOutputStream;
-import it.unimi.dsi.fastutil.objects.ObjectArrayPriorityQueue;
-import it.unimi.dsi.fastutil.objects.ObjectHeapPriorityQueue;
+import java.util.Arrays;
 
 /**
  * This is a priority queue with a fixed capacity to store candidate results in increasing order of score,
  * such as the head of the queue is the last top k candidate, the one with the lowest score (called threshold score) and the next to
  * be removed once a new candidate is inserted in a full queue.
  * 
+ * The queue is a binary min-heap over two parallel arrays of docids and scores, so no object is allocated
+ * when inserting a candidate. The arrays grow up to the capacity of the queue.
+ * 
  * @author Nicola Tonellotto
  */
 @SuppressWarnings("serial")
 public class TopQueue implements java.io.Serializable
 {
-	private static final int INTERNAL_MIN_QUEUE_SIZE = 20;
-	private PriorityQueue<Result> queue = null;
+	private static final int INTERNAL_MIN_QUEUE_SIZE = 1024;
+	private int[] docids;
+	private float[] scores;
+	private int size = 0;
 	private int k;	
 	
 	/* The minimum score for insertion in a queue that is not yet full */
 	private float threshold;
 	
+	/* The threshold shared with the queues of the other docid ranges of the same query, if any */
+	private transient SharedThreshold shared = null;
+	
 	/**
 	 * Constructor.
 	 * 
@@ -66,36 +66,86 @@ public class TopQueue implements java.io.Serializable
 	public TopQueue(final int k, final float th)
 	{
 		this.k = k > 0 ? k : 1;
-		this.queue = this.k <= INTERNAL_MIN_QUEUE_SIZE ? new ObjectArrayPriorityQueue<Result>(this.k) : new ObjectHeapPriorityQueue<Result>(this.k);
+		this.docids = new int[Math.min(this.k, INTERNAL_MIN_QUEUE_SIZE)];
+		this.scores = new float[this.docids.length];
 		this.threshold = th;		
 	}
 
+	/**
+	 * Constructor. 
+	 * 
+	 * @param k the size of the max heap, i.e., the number of elements to store in the queue
+	 * @param th the initial value of the max heap threshold score
+	 * @param shared the threshold shared with other queues, raised every time this queue threshold is updated
+	 */
+	public TopQueue(final int k, final float th, final SharedThreshold shared)
+	{
+		this(k, th);
+		this.shared = shared;
+	}
+
 	/**
 	 * Insert a new result in the queue, if there is space left or if it beats the current threshold
 	 * 
-	 * @param c the result to try to add to the max heap.
+	 * @param docid the docid of the candidate to try to add to the max heap.
+	 * @param score the score of the candidate to try to add to the max heap.
 	 * @return true if the candidate beats the current threshold, false otherwise.
 	 */
-	public boolean insert(Result c)
+	public boolean insert(final int docid, final float score)
 	{
-		if (c.getScore() > threshold) { // if c must enter
-			if (queue.size() >= k) // if we have no space
-				queue.dequeue();
-			queue.enqueue(c); // c enters
-			if (queue.size() >= k)
-				threshold = Math.max(threshold, queue.first().getScore()); // threshold is updated if queue is full
+		if (score > threshold()) { // if c must enter
+			if (size >= k) { // if we have no space, c replaces the head
+				docids[0] = docid;
+				scores[0] = score;
+				down(0);
+			} else {
+				if (size == docids.length)
+					grow();
+				docids[size] = docid;
+				scores[size] = score;
+				up(size++);
+			}
+			if (size >= k) {
+				threshold = Math.max(threshold, scores[0]); // threshold is updated if queue is full
+				if (shared != null)
+					shared.raise(threshold);
+			}
 			return true;
 		}
 		return false;
 	}
+
+	/**
+	 * Insert a new result in the queue, if there is space left or if it beats the current threshold
+	 * 
+	 * @param c the result to try to add to the max heap.
+	 * @return true if the candidate beats the current threshold, false otherwise.
+	 */
+	public boolean insert(final Result c)
+	{
+		return insert(c.getDocId(), c.getScore());
+	}
+	
+	/**
+	 * Insert all the results of another queue in this queue, leaving the other queue unchanged.
+	 * 
+	 * @param that the queue whose results are inserted
+	 */
+	public void insertAll(final TopQueue that)
+	{
+		for (int i = 0; i < that.size; ++i)
+			insert(that.docids[i], that.scores[i]);
+	}
 	
 	/**
-	 * Returns the current threshold.
+	 * Returns the current threshold, i.e., the maximum between the local threshold and the shared one, if any.
 	 * @return
 	 */
 	public float threshold()
 	{
-		return threshold;
+		if (shared == null)
+			return threshold;
+		return Math.max(threshold, shared.get());
 	}
 	
 	/**
@@ -108,7 +158,7 @@ public class TopQueue implements java.io.Serializable
 	 */
 	public boolean wouldEnter(Result c)
 	{
-		return c.getScore() > threshold;
+		return c.getScore() > threshold();
 	}
 
 	/**
@@ -119,27 +169,69 @@ public class TopQueue implements java.io.Serializable
 	 */
 	public boolean wouldEnter(float score)
 	{
-		return score > threshold;
+		return score > threshold();
 	}
 
 	/**
-	 * Return the max heap.
-	 * Note: any modification will impact any running algorithm, since no deep copy is performed.
+	 * Return the docid of the head of the max heap, i.e., of the result with the lowest score.
 	 * 
-	 * @return the current heap.
+	 * @return the docid of the head of the max heap.
 	 */
-	public PriorityQueue<Result> top()
+	public int firstDocid()
 	{
-		return this.queue;
+		if (size == 0)
+			throw new IllegalStateException("Empty top queue");
+		return docids[0];
 	}
-	
+
+	/**
+	 * Return the score of the head of the max heap, i.e., the lowest score.
+	 * 
+	 * @return the score of the head of the max heap.
+	 */
+	public float firstScore()
+	{
+		if (size == 0)
+			throw new IllegalStateException("Empty top queue");
+		return scores[0];
+	}
+
+	/**
+	 * Removes the head of the max heap, i.e., the result with the lowest score. The threshold is unchanged.
+	 */
+	public void dequeue()
+	{
+		if (size == 0)
+			throw new IllegalStateException("Empty top queue");
+		if (--size > 0) {
+			docids[0] = docids[size];
+			scores[0] = scores[size];
+			down(0);
+		}
+	}
+
+	/**
+	 * Empties the max heap, storing its results in decreasing order of score. The threshold is unchanged.
+	 * 
+	 * @param dst_docids the array where the docids are stored, at least as large as the max heap.
+	 * @param dst_scores the array where the scores are stored, at least as large as the max heap.
+	 */
+	public void drain(final int[] dst_docids, final float[] dst_scores)
+	{
+		while (size > 0) {
+			dst_docids[size - 1] = docids[0];
+			dst_scores[size - 1] = scores[0];
+			dequeue();
+		}
+	}
+
 	/**
 	 * Return the number of results in the max heap.
 	 * @return the number of results in the max heap.
 	 */
 	public int size()
 	{
-		return queue.size();
+		return size;
 	}
 	
 	/**
@@ -148,7 +240,7 @@ public class TopQueue implements java.io.Serializable
 	 */
 	public boolean isEmpty()
 	{
-		return queue.isEmpty();
+		return size == 0;
 	}
 	
 	/**
@@ -156,7 +248,7 @@ public class TopQueue implements java.io.Serializable
 	 */
 	public void clear()
 	{
-		queue.clear();
+		size = 0;
 	}
 
 	/**
@@ -166,65 +258,72 @@ public class TopQueue implements java.io.Serializable
 	 */
 	public void clear(final float new_threshold)
 	{
-		queue.clear();
+		size = 0;
 		this.threshold = new_threshold;
 	}
 
-	@Override
-	public String toString()
+	private void grow()
 	{
-		StringBuffer buf = new StringBuffer("< " + queue.size() + " items, " + threshold + ">");
-		return buf.toString();
+		final int capacity = (int) Math.min(k, 2l * docids.length);
+		docids = Arrays.copyOf(docids, capacity);
+		scores = Arrays.copyOf(scores, capacity);
 	}
 	
-	private void writeObject(ObjectOutputStream s) throws IOException 
+	private void up(int i)
 	{
-		s.defaultWriteObject();
-		s.writeInt(k);
-		s.writeFloat(threshold);
-		s.writeObject(queue);
+		final int docid = docids[i];
+		final float score = scores[i];
+		while (i > 0) {
+			final int parent = (i - 1) >>> 1;
+			if (scores[parent] <= score)
+				break;
+			docids[i] = docids[parent];
+			scores[i] = scores[parent];
+			i = parent;
+		}
+		docids[i] = docid;
+		scores[i] = score;
 	}
-	
-	@SuppressWarnings("unchecked")
-	private void readObject(ObjectInputStream s) throws IOException, ClassNotFoundException 
+
+	private void down(int i)
+	{
+		final int docid = docids[i];
+		final float score = scores[i];
+		for (int child = 2 * i + 1; child < size; child = 2 * i + 1) {
+			if (child + 1 < size && scores[child + 1] < scores[child])
+				child++;
+			if (score <= scores[child])
+				break;
+			docids[i] = docids[child];
+			scores[i] = scores[child];
+			i = child;
+		}
+		docids[i] = docid;
+		scores[i] = score;
+	}
+
+	@Override
+	public String toString()
 	{
-		s.defaultReadObject();
-		k = s.readInt();
-		threshold = s.readFloat();
-		if (k <= INTERNAL_MIN_QUEUE_SIZE)
-			queue = (ObjectArrayPriorityQueue<Result>)s.readObject();
-		else 
-			queue = (ObjectHeapPriorityQueue<Result>)s.readObject();
+		StringBuffer buf = new StringBuffer("< " + size + " items, " + threshold + ">");
+		return buf.toString();
 	}
 	
 	/**
-	 * Performs a deep copy of the top queue using in-memory serialization.
+	 * Performs a deep copy of the top queue, copying the arrays of the max heap. 
+	 * The copy does not share the threshold of this queue with other queues.
 	 * 
 	 * @return A new top queue identical to this one.
-	 * 
-	 * @throws IOException
-	 * @throws ClassNotFoundException
 	 */
-	public TopQueue copy() throws IOException, ClassNotFoundException
+	public TopQueue copy()
 	{
-		TopQueue copy = null;
-		
-		FastByteArrayOutputStream fbos = new FastByteArrayOutputStream();
-        try (ObjectOutputStream out = new ObjectOutputStream(fbos)) {
-        	out.writeObject(this);
-        }
-
-        FastByteArrayInputStream fbis = new FastByteArrayInputStream(fbos.array);
-        try (ObjectInputStream in = new ObjectInputStream(fbis)) {
-        	copy = (TopQueue) in.readObject();
-        }
-        
+		TopQueue copy = new TopQueue(k, threshold);
+		copy.docids = Arrays.copyOf(docids, docids.length);
+		copy.scores = Arrays.copyOf(scores, scores.length);
+		copy.size = size;
 		return copy;
 	}
 
-	/**
-	 * Highly inefficient, use with care.
-	 */
 	@Override
 	public int hashCode() 
 	{
@@ -232,21 +331,14 @@ public class TopQueue implements java.io.Serializable
 		int result = 1;
 		result = prime * result + k;
 		result = prime * result + Float.floatToIntBits(threshold);
-		TopQueue copy;
-		try {
-			copy = copy();
-			while (!copy.isEmpty())
-				result = prime * result + copy.top().dequeue().hashCode();
-		} catch (ClassNotFoundException | IOException e) {
-			e.printStackTrace();
+		TopQueue copy = copy();
+		while (!copy.isEmpty()) {
+			result = prime * result + new Result(copy.firstDocid(), copy.firstScore()).hashCode();
+			copy.dequeue();
 		}
 		return result;
 	}
 
-	/**
-	 * Highly inefficient, use with care.
-	 */
-
 	@Override
 	public boolean equals(Object obj) {
 		if (this == obj)
@@ -258,33 +350,17 @@ public class TopQueue implements java.io.Serializable
 		TopQueue that = (TopQueue) obj;
 		if (k != that.k)
 			return false;
-		if (queue == null) {
-			/*
-			if (that.queue != null)
-				return false;
-			return true;
-			*/
-			return that.queue == null;
-		}
-		try {
-			if (!TopQueue.compare(this.copy(), that.copy()))
-				return false;
-		} catch (ClassNotFoundException | IOException e) {
-			e.printStackTrace();
-		}
-		return true;
+		return TopQueue.compare(this.copy(), that.copy());
 	}
 
 	private static boolean compare(TopQueue tq1, TopQueue tq2) 
 	{
-		while (!tq1.top().isEmpty() && ! tq2.top().isEmpty())
-			if (!tq1.top().dequeue().equals(tq2.top().dequeue()))
+		while (!tq1.isEmpty() && !tq2.isEmpty()) {
+			if (tq1.firstDocid() != tq2.firstDocid() || Float.floatToIntBits(tq1.firstScore()) != Float.floatToIntBits(tq2.firstScore()))
 				return false;
-		/*
-		if (tq1.top().isEmpty() && tq2.top().isEmpty())
-			return true;
-		return false;
-		*/
-		return tq1.top().isEmpty() && tq2.top().isEmpty();
+			tq1.dequeue();
+			tq2.dequeue();
+		}
+		return tq1.isEmpty() && tq2.isEmpty();
 	}
-}
\ No newline at end of file
+}
@@ -20,6 +20,11 @@
 
 package it.cnr.isti.hpclab.matching.structures;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.terrier.structures.Index;
 import org.terrier.structures.LexiconEntry;
 import org.terrier.structures.postings.Posting;
@@ -59,4 +64,129 @@ public interface WeightingModel
 	{
 		return score(term_freq_in_query, p.getFrequency(), p.getDocumentLength(), le.getDocumentFrequency(), le.getFrequency());
 	}
+
+	/**
+	 * Create the scorer of a query term, to be used in place of the score methods when processing its posting list.
+	 * The scores of the returned scorer are equal to the scores of this model multiplied by the term weight.
+	 * Models should override this method to compute the query-constant parts of their scores only once.
+	 * 
+	 * @param term_freq_in_query the term frequency (in query)
+	 * @param weight the term weight
+	 * @param le the lexicon entry of the term
+	 * 
+	 * @return the scorer of the term
+	 */
+	default TermScorer scorer(final int term_freq_in_query, final float weight, final LexiconEntry le)
+	{
+		final int doc_freq_in_coll = le.getDocumentFrequency();
+		final int term_freq_in_coll = le.getFrequency();
+		return (x, y) -> score(term_freq_in_query, x, y, doc_freq_in_coll, term_freq_in_coll) * weight;
+	}
+
+	/**
+	 * Return the signature of this model, i.e., its class name followed by the values of its parameters, if any, 
+	 * e.g., <tt>it.cnr.isti.hpclab.matching.structures.model.BM25(k1=1.2,b=0.75)</tt>.
+	 * Two models with the same signature compute the same scores, hence the score upper bounds computed a-priori
+	 * with a model (max scores, block max scores, k-th scores) can be safely used only with models with the same signature.
+	 * Models with parameters must override this method.
+	 * 
+	 * @return the signature of this model
+	 */
+	default String signature()
+	{
+		return getClass().getName();
+	}
+	
+	/**
+	 * Create a model from its signature, e.g., <tt>BM25(k1=1.2,b=0.4)</tt>. The class name can be a simple name of the 
+	 * <tt>it.cnr.isti.hpclab.matching.structures.model</tt> package, and the parameters not specified keep their default values.
+	 * Every parameter is the instance field with the same name of the model class, or of one of its superclasses.
+	 * Static fields are not parameters, since setting them would change all the instances of the model.
+	 * 
+	 * @param signature the signature of the model, with or without parameters
+	 * @return the model
+	 * 
+	 * @throws IllegalArgumentException if the model can not be created, or a parameter does not exist
+	 */
+	static WeightingModel create(final String signature)
+	{
+		final int open = signature.indexOf('(');
+		String class_name = ((open == -1) ? signature : signature.substring(0, open)).trim();
+		if (class_name.indexOf('.') == -1)
+			class_name = "it.cnr.isti.hpclab.matching.structures.model." + class_name;
+		
+		final WeightingModel model;
+		try {
+			model = (WeightingModel) (Class.forName(class_name).asSubclass(WeightingModel.class).getConstructor().newInstance());
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Problem loading weighting model (" + class_name + ")", e);
+		}
+		if (open == -1)
+			return model;
+		if (!signature.trim().endsWith(")"))
+			throw new IllegalArgumentException("Malformed weighting model signature (" + signature + ")");
+		
+		for (String parameter: signature.substring(open + 1, signature.lastIndexOf(')')).split(",")) {
+			if (parameter.trim().isEmpty())
+				continue;
+			final String[] kv = parameter.split("=");
+			if (kv.length != 2)
+				throw new IllegalArgumentException("Malformed parameter (" + parameter + ") in weighting model signature (" + signature + ")");
+			set(model, kv[0].trim(), kv[1].trim());
+		}
+		return model;
+	}
+	
+	/**
+	 * Split a comma-separated list of model signatures, ignoring the commas separating the parameters of a model.
+	 * 
+	 * @param signatures the list of signatures, e.g., <tt>BM25(k1=1.2,b=0.75),BM25(k1=1.2,b=0.4),DLH13</tt>
+	 * @return the signatures
+	 */
+	static String[] split(final String signatures)
+	{
+		List<String> list = new ArrayList<>();
+		int depth = 0;
+		int begin = 0;
+		for (int i = 0; i < signatures.length(); ++i) {
+			final char c = signatures.charAt(i);
+			if (c == '(')
+				depth++;
+			else if (c == ')')
+				depth--;
+			else if (c == ',' && depth == 0) {
+				list.add(signatures.substring(begin, i).trim());
+				begin = i + 1;
+			}
+		}
+		list.add(signatures.substring(begin).trim());
+		list.removeIf(String::isEmpty);
+		return list.toArray(new String[0]);
+	}
+	
+	private static void set(final WeightingModel model, final String name, final String value)
+	{
+		for (Class<?> c = model.getClass(); c != null; c = c.getSuperclass()) {
+			try {
+				final Field field = c.getDeclaredField(name);
+				if (Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers()))
+					throw new IllegalArgumentException("Parameter " + name + " of weighting model " + model.getClass().getName() + " is static or final");
+				field.setAccessible(true);
+				if (field.getType() == double.class)
+					field.setDouble(model, Double.parseDouble(value));
+				else if (field.getType() == float.class)
+					field.setFloat(model, Float.parseFloat(value));
+				else if (field.getType() == int.class)
+					field.setInt(model, Integer.parseInt(value));
+				else
+					throw new IllegalArgumentException("Parameter " + name + " of weighting model " + model.getClass().getName() + " is not numeric");
+				return;
+			} catch (NoSuchFieldException e) {
+				continue;
+			} catch (IllegalAccessException | NumberFormatException e) {
+				throw new IllegalArgumentException("Can't set parameter " + name + " of weighting model " + model.getClass().getName() + " to " + value, e);
+			}
+		}
+		throw new IllegalArgumentException("Weighting model " + model.getClass().getName() + " has no parameter " + name);
+	}
 }
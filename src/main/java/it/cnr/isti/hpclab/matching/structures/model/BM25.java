@@ -21,9 +21,12 @@
 package it.cnr.isti.hpclab.matching.structures.model;
 
 import org.terrier.structures.Index;
+import org.terrier.structures.LexiconEntry;
 import org.terrier.utility.ApplicationSetup;
 
 import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+import it.cnr.isti.hpclab.norm.structures.DocNormIndex;
+import it.cnr.isti.hpclab.matching.structures.TermScorer;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -49,6 +52,8 @@ public class BM25 implements WeightingModel
 	
 	protected double avg_doc_len;
 	protected int num_docs;
+	/** The precomputed document length normalisers, if any */
+	protected DocNormIndex norms = null;
 	
 	public BM25()
 	{
@@ -68,6 +73,7 @@ public class BM25 implements WeightingModel
 		
 		this.avg_doc_len = index.getCollectionStatistics().getAverageDocumentLength();
 		this.num_docs = index.getCollectionStatistics().getNumberOfDocuments();
+		this.norms = index.hasIndexStructure("docnorm") ? (DocNormIndex) index.getIndexStructure("docnorm") : null;
 	}
 
 	/** {@inheritDoc} */
@@ -110,6 +116,37 @@ public class BM25 implements WeightingModel
 	{
 		return score(term_freq_in_query, x, y, df);
 	}
+
+	/** {@inheritDoc} */
+	@Override
+	public TermScorer scorer(final int term_freq_in_query, final float weight, final LexiconEntry le)
+	{
+		final double idf = IDF(le.getDocumentFrequency());
+		final double k1 = this.k1;
+		final double b = this.b;
+		final double one_minus_b = 1.0d - b;
+		final double avg_doc_len = this.avg_doc_len;
+		final TermScorer scorer = (x, y) -> {
+			final double dtf = (double)x;
+			return (float) (term_freq_in_query * (dtf / (dtf + k1 * (one_minus_b + b * (double)y/avg_doc_len))) * idf) * weight;
+		};
+		if (norms == null || !norms.matches(k1, b))
+			return scorer;
+		return new DocNormScorer(norms) {
+			@Override
+			public float score(final int x, final int y)
+			{
+				return scorer.score(x, y);
+			}
+
+			@Override
+			protected float normalised_score(final int x, final double norm)
+			{
+				final double dtf = (double)x;
+				return (float) (term_freq_in_query * (dtf / (dtf + norm)) * idf) * weight;
+			}
+		};
+	}
 	
 	@Override
 	public String toString()
@@ -117,6 +154,12 @@ public class BM25 implements WeightingModel
 		return "BM25" + " k1 = " + k1 + " b = " + b;
 	}
 	
+	@Override
+	public String signature()
+	{
+		return getClass().getName() + "(k1=" + k1 + ",b=" + b + ")";
+	}
+	
 	public static void main(String[] args)  throws IOException 
 	{
 		ApplicationSetup.setProperty("terrier.index.retrievalLoadingProfile.default","false");
@@ -2,8 +2,11 @@ package it.cnr.isti.hpclab.matching.structures.model;
 
 import org.terrier.matching.models.WeightingModelLibrary;
 import org.terrier.structures.Index;
+import org.terrier.structures.LexiconEntry;
 
 import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+import it.cnr.isti.hpclab.norm.structures.DocNormIndex;
+import it.cnr.isti.hpclab.matching.structures.TermScorer;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -17,6 +20,8 @@ public class CraigBM25 implements WeightingModel
 	
 	private double avg_doc_len;
 	private int num_docs;
+	/** The precomputed document length normalisers, if any */
+	private DocNormIndex norms = null;
 
 	public CraigBM25()
 	{
@@ -34,6 +39,12 @@ public class CraigBM25 implements WeightingModel
 		return "Terrier BM25" + " k1 = " + k1 + " b = " + b;
 	}
 
+	@Override
+	public String signature()
+	{
+		return getClass().getName() + "(k1=" + k1 + ",b=" + b + ",k3=" + k3 + ")";
+	}
+
 
 	/** {@inheritDoc} */
 	@Override
@@ -43,6 +54,7 @@ public class CraigBM25 implements WeightingModel
 		
 		this.avg_doc_len = index.getCollectionStatistics().getAverageDocumentLength();
 		this.num_docs = index.getCollectionStatistics().getNumberOfDocuments();
+		this.norms = index.hasIndexStructure("docnorm") ? (DocNormIndex) index.getIndexStructure("docnorm") : null;
 	}
 
 	/** {@inheritDoc} */
@@ -61,4 +73,37 @@ public class CraigBM25 implements WeightingModel
 	{
 		return score(term_freq_in_query, x, y, df);
 	}
+
+	/** {@inheritDoc} */
+	@Override
+	public final TermScorer scorer(final int term_freq_in_query, final float weight, final LexiconEntry le)
+	{
+		final int df = le.getDocumentFrequency();
+		final double idf = WeightingModelLibrary.log((num_docs - df + 0.5d) / (df + 0.5d));
+		final double qtf = (k3 + 1d) * 1 / (k3 + 1d);
+		final double k1 = this.k1;
+		final double k1_plus_1 = k1 + 1d;
+		final double b = this.b;
+		final double one_minus_b = 1d - b;
+		final double avg_doc_len = this.avg_doc_len;
+		final TermScorer scorer = (x, y) -> {
+			final double K = k1 * (one_minus_b + b * y / avg_doc_len);
+			return (float) (idf * (k1_plus_1 * x / (K + x)) * qtf) * weight;
+		};
+		if (norms == null || !norms.matches(k1, b))
+			return scorer;
+		return new DocNormScorer(norms) {
+			@Override
+			public float score(final int x, final int y)
+			{
+				return scorer.score(x, y);
+			}
+
+			@Override
+			protected float normalised_score(final int x, final double K)
+			{
+				return (float) (idf * (k1_plus_1 * x / (K + x)) * qtf) * weight;
+			}
+		};
+	}
 }
\ No newline at end of file
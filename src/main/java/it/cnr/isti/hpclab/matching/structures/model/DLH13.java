@@ -21,8 +21,10 @@
 package it.cnr.isti.hpclab.matching.structures.model;
 
 import org.terrier.structures.Index;
+import org.terrier.structures.LexiconEntry;
 
 import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+import it.cnr.isti.hpclab.matching.structures.TermScorer;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -78,5 +80,20 @@ public class DLH13 implements WeightingModel
 			)
 		));
 		*/
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public final TermScorer scorer(final int tf_q, final float weight, final LexiconEntry le)
+	{
+		final double avg_l = this.avg_l;
+		final double N_over_F_t = N / ((double)le.getFrequency());
+		return (x, y) -> (float) Math.max(EPSILON_SCORE, (
+				(tf_q/(x + 0.5d)) * INV_LOG_2_OF_E *
+				(
+					x * Math.log(x * (avg_l/y) * N_over_F_t) +
+					0.5d * Math.log(2.0d * Math.PI * x * (1.0d - ((double)x/y)))
+				)
+			)) * weight;
 	}	
 }
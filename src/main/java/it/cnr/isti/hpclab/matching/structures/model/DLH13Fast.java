@@ -23,8 +23,10 @@ package it.cnr.isti.hpclab.matching.structures.model;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import org.terrier.structures.Index;
+import org.terrier.structures.LexiconEntry;
 
 import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+import it.cnr.isti.hpclab.matching.structures.TermScorer;
 import it.cnr.isti.hpclab.util.FastLog;
 
 public class DLH13Fast implements WeightingModel
@@ -68,4 +70,24 @@ public class DLH13Fast implements WeightingModel
 			)
 		));
 	}
+
+	/** {@inheritDoc} */
+	@Override
+	public final TermScorer scorer(final int tf_q, final float weight, final LexiconEntry le)
+	{
+		final float d_tf_q = (float)tf_q;
+		final float avg_l = this.avg_l;
+		final float N_over_F_t = N / ((float)le.getFrequency());
+		return (x, y) -> {
+			final float d_x = (float)x;
+			final float d_y = (float)y;
+			return Math.max(EPSILON_SCORE, (
+				(d_tf_q/(d_x + 0.5f)) *
+				(
+					d_x * flog.log(d_x * (avg_l/d_y) * N_over_F_t) +
+					0.5f * flog.log(2.0f * (float)Math.PI * d_x * (1.0f - d_x/d_y))
+				)
+			)) * weight;
+		};
+	}
 }
@@ -0,0 +1,68 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.matching.structures.model;
+
+import org.terrier.structures.postings.Posting;
+
+import it.cnr.isti.hpclab.matching.structures.TermScorer;
+import it.cnr.isti.hpclab.norm.structures.DocNormIndex;
+
+/**
+ * A scorer of the BM25 family reading the document length normalisers of a {@link DocNormIndex}, indexed by docid,
+ * in place of normalising the document lengths. The scores computed from the document lengths are the exact ones.
+ */
+abstract class DocNormScorer implements TermScorer
+{
+	private final float[] norms;
+
+	DocNormScorer(final DocNormIndex index)
+	{
+		this.norms = index.getNorms();
+	}
+
+	/**
+	 * Compute the weighted score of a document given its length normaliser.
+	 * 
+	 * @param term_freq_in_doc the term frequency (in document)
+	 * @param norm the document length normaliser
+	 * 
+	 * @return the score of the document for the term, multiplied by the term weight
+	 */
+	protected abstract float normalised_score(int term_freq_in_doc, double norm);
+
+	@Override
+	public final float score(final int docid, final int term_freq_in_doc, final int __)
+	{
+		return normalised_score(term_freq_in_doc, norms[docid]);
+	}
+
+	@Override
+	public final float score(final Posting p)
+	{
+		return normalised_score(p.getFrequency(), norms[p.getId()]);
+	}
+
+	@Override
+	public final boolean needsDocumentLength()
+	{
+		return false;
+	}
+}
@@ -20,8 +20,12 @@
 package it.cnr.isti.hpclab.matching.structures.model;
 
 import org.terrier.structures.Index;
+import org.terrier.structures.LexiconEntry;
 
 import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+import it.cnr.isti.hpclab.matching.structures.TermScorer;
+import lombok.Getter;
+import lombok.Setter;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -36,7 +40,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 public class LM implements WeightingModel
 {
-	public static double mu = 2500.0d;
+	@Getter @Setter protected double mu = 2500.0d;
 	
 	protected long num_tokens_in_coll;
 
@@ -66,4 +70,19 @@ public class LM implements WeightingModel
 		// return (float) Math.max(EPSILON_SCORE, term_freq_in_query * (Math.log(1 + (d_x/(mu * (d_F_t/num_tokens_in_coll)))) + Math.log(mu/(mu+d_y))));
 		return (float) Math.max(EPSILON_SCORE, term_freq_in_query * Math.log( (d_x + mu * d_F_t / num_tokens_in_coll)) / (d_y + mu));
 	}
+
+	/** {@inheritDoc} */
+	@Override
+	public TermScorer scorer(final int term_freq_in_query, final float weight, final LexiconEntry le)
+	{
+		final double mu = this.mu;
+		final double smoothing = mu * (double)le.getFrequency() / num_tokens_in_coll;
+		return (x, y) -> (float) Math.max(EPSILON_SCORE, term_freq_in_query * Math.log( ((double)x + smoothing)) / ((double)y + mu)) * weight;
+	}
+
+	@Override
+	public String signature()
+	{
+		return getClass().getName() + "(mu=" + mu + ")";
+	}
 }
@@ -23,14 +23,18 @@ package it.cnr.isti.hpclab.matching.structures.model;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import org.terrier.structures.Index;
+import org.terrier.structures.LexiconEntry;
 
 import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+import it.cnr.isti.hpclab.matching.structures.TermScorer;
 import it.cnr.isti.hpclab.util.FastLog;
+import lombok.Getter;
+import lombok.Setter;
 
 public class LMFast implements WeightingModel
 {
 	public static final FastLog flog = new FastLog(Math.E, 11);
-	public static float mu = 2500.0f;
+	@Getter @Setter protected float mu = 2500.0f;
 	
 	private long num_tokens_in_coll;
 
@@ -60,4 +64,19 @@ public class LMFast implements WeightingModel
 		// return (float) Math.max(EPSILON_SCORE, (Math.log(1 + (d_x/(mu * (d_F_t/num_tokens_in_coll)))) + Math.log(mu/(mu+d_y))));
 		return Math.max(EPSILON_SCORE, (flog.log(1 + (d_x/(mu * (d_F_t/num_tokens_in_coll)))) + flog.log(mu/(mu+d_y))));
 	}
+
+	/** {@inheritDoc} */
+	@Override
+	public final TermScorer scorer(final int __, final float weight, final LexiconEntry le)
+	{
+		final float mu = this.mu;
+		final float smoothing = mu * ((float)le.getFrequency()/num_tokens_in_coll);
+		return (x, y) -> Math.max(EPSILON_SCORE, (flog.log(1 + ((float)x/smoothing)) + flog.log(mu/(mu+(float)y)))) * weight;
+	}
+
+	@Override
+	public String signature()
+	{
+		return getClass().getName() + "(mu=" + mu + ")";
+	}
 }
@@ -21,8 +21,11 @@
 package it.cnr.isti.hpclab.matching.structures.model;
 
 import org.terrier.structures.Index;
+import org.terrier.structures.LexiconEntry;
 
 import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+import it.cnr.isti.hpclab.norm.structures.DocNormIndex;
+import it.cnr.isti.hpclab.matching.structures.TermScorer;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -38,11 +41,13 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 public class LuceneBM25 implements WeightingModel
 {
-	@Getter @Setter private static double b = Double.parseDouble(System.getProperty("bm25.b", "0.75"));
-	@Getter @Setter private static double k1 = Double.parseDouble(System.getProperty("bm25.k1", "1.2"));
+	@Getter @Setter protected double b = Double.parseDouble(System.getProperty("bm25.b", "0.75"));
+	@Getter @Setter protected double k1 = Double.parseDouble(System.getProperty("bm25.k1", "1.2"));
 	
 	private double avg_doc_len;
 	private int num_docs;
+	/** The precomputed document length normalisers, if any */
+	private DocNormIndex norms = null;
 	
 	/** {@inheritDoc} */
 	@Override
@@ -52,6 +57,7 @@ public class LuceneBM25 implements WeightingModel
 		
 		this.avg_doc_len = index.getCollectionStatistics().getAverageDocumentLength();
 		this.num_docs = index.getCollectionStatistics().getNumberOfDocuments();
+		this.norms = index.hasIndexStructure("docnorm") ? (DocNormIndex) index.getIndexStructure("docnorm") : null;
 	}
 
 	/** {@inheritDoc} */
@@ -93,5 +99,42 @@ public class LuceneBM25 implements WeightingModel
 	public final float score(int term_freq_in_query, int x, int y, int df, int __)
 	{
 		return score(term_freq_in_query, x, y, df);
-	}	
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public TermScorer scorer(final int term_freq_in_query, final float weight, final LexiconEntry le)
+	{
+		final double idf = IDF(le.getDocumentFrequency());
+		final double k1 = this.k1;
+		final double b = this.b;
+		final double one_minus_b = 1.0d - b;
+		final double avg_doc_len = this.avg_doc_len;
+		final TermScorer scorer = (x, y) -> {
+			final double dtf = (double)x;
+			return (float) (term_freq_in_query * (dtf / (dtf + k1 * (one_minus_b + b * (double)y/avg_doc_len))) * idf) * weight;
+		};
+		if (norms == null || !norms.matches(k1, b))
+			return scorer;
+		return new DocNormScorer(norms) {
+			@Override
+			public float score(final int x, final int y)
+			{
+				return scorer.score(x, y);
+			}
+
+			@Override
+			protected float normalised_score(final int x, final double norm)
+			{
+				final double dtf = (double)x;
+				return (float) (term_freq_in_query * (dtf / (dtf + norm)) * idf) * weight;
+			}
+		};
+	}
+
+	@Override
+	public String signature()
+	{
+		return getClass().getName() + "(k1=" + k1 + ",b=" + b + ")";
+	}
 }
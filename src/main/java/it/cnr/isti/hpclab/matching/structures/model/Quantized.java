@@ -0,0 +1,137 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.matching.structures.model;
+
+import org.terrier.structures.Index;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.structures.postings.Posting;
+
+import it.cnr.isti.hpclab.impact.structures.QuantizedIndex;
+import it.cnr.isti.hpclab.impact.structures.Quantizer;
+import it.cnr.isti.hpclab.matching.structures.TermScorer;
+import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * This class implements the dequantization of the impacts stored in a {@link QuantizedIndex}.
+ * The managers read the postings of the quantized index in place of the inverted index when using this model, 
+ * and the impact of every posting is mapped back to a score by a table lookup.
+ * 
+ * The score methods quantize and dequantize the score of the weighting model used to generate the quantized index, 
+ * hence the max scores and block max scores computed with this model on the inverted index are exactly the dequantized impacts.
+ */
+public class Quantized implements WeightingModel
+{
+	private QuantizedIndex quantizedIndex;
+	/** The weighting model used to generate the impacts */
+	private WeightingModel model;
+	private Quantizer quantizer;
+	/** The scores of the impacts */
+	private float[] scores;
+
+	/** {@inheritDoc} */
+	@Override
+	public void setup(Index index) 
+	{
+		checkNotNull(index);
+		if (!index.hasIndexStructure("quantized"))
+			throw new IllegalArgumentException("The index does not contain a quantized index, generate it with quantized-generate");
+
+		this.quantizedIndex = (QuantizedIndex) index.getIndexStructure("quantized");
+		try {
+			this.model = WeightingModel.create(quantizedIndex.getWeightingModel());
+		} catch (Exception e) {
+			throw new IllegalArgumentException("Problem loading weighting model (" + quantizedIndex.getWeightingModel() + ")", e);
+		}
+		this.model.setup(index);
+
+		this.quantizer = quantizedIndex.getQuantizer();
+		this.scores = new float[quantizer.levels() + 1];
+		for (int impact = 0; impact < scores.length; ++impact)
+			scores[impact] = impact * quantizer.scale();
+	}
+
+	/**
+	 * Returns the quantized posting list of a term, whose frequencies are the impacts.
+	 * 
+	 * @param le the lexicon entry of the term
+	 * @return a new posting list iterator, not yet positioned on the first posting
+	 */
+	public IterablePosting getPostings(final LexiconEntry le)
+	{
+		return quantizedIndex.getPostings(le.getTermId());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public float score(int query_freq, int x, int y, int df) 
+	{
+		return query_freq * scores[quantizer.quantize(model.score(1, x, y, df))];
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public float score(int term_freq_in_query, int x, int y, int df, int F_t)
+	{
+		return term_freq_in_query * scores[quantizer.quantize(model.score(1, x, y, df, F_t))];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * The returned scorer expects the impacts of the quantized postings as term frequencies.
+	 */
+	@Override
+	public TermScorer scorer(final int term_freq_in_query, final float weight, final LexiconEntry le)
+	{
+		final float[] table = new float[scores.length];
+		for (int impact = 0; impact < table.length; ++impact)
+			table[impact] = term_freq_in_query * scores[impact] * weight;
+
+		return new TermScorer() {
+			@Override
+			public float score(final int impact, final int __)
+			{
+				return table[impact];
+			}
+
+			@Override
+			public float score(final Posting p)
+			{
+				return table[p.getFrequency()];
+			}
+
+			@Override
+			public boolean needsDocumentLength()
+			{
+				return false;
+			}
+		};
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "Quantized " + model;
+	}
+}
@@ -35,11 +35,9 @@ import java.util.zip.GZIPOutputStream;
 public class DocidResultOutput extends ResultOutput
 {
 	private PrintWriter mWriter;
- 	private StringBuilder mBuilder;
 
  	public DocidResultOutput() 
  	{	
- 		mBuilder = new StringBuilder();
 		String resultsFilename = MatchingConfiguration.get(Property.RESULTS_FILENAME);
 
 		try {
@@ -54,21 +52,21 @@ public class DocidResultOutput extends ResultOutput
 	}
  	
 	@Override
-	public void print(final SearchRequest rq) throws IOException 
+	protected void append(final SearchRequest rq, final StringBuilder buf) throws IOException 
 	{
-		mBuilder.setLength(0); // reset the StringBuilder
-
 		ResultSet resultSet = rq.getResultSet();
-		if (resultSet.size() > 0) {
-			// TODO : check that results are always ordered by score
-			for (int id: resultSet.docids())
-				mBuilder.append(rq.getQueryId())
-						.append('\t')
-				        .append(id)
-				        .append('\n');
-				        
-			mWriter.print(mBuilder.toString());
-		}
+		// TODO : check that results are always ordered by score
+		for (int id: resultSet.docids())
+			buf.append(rq.getQueryId())
+			   .append('\t')
+			   .append(id)
+			   .append('\n');
+	}
+
+	@Override
+	public void write(final String results) throws IOException 
+	{
+		mWriter.print(results);
 	}
 
 	@Override
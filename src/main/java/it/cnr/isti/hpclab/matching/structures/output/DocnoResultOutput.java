@@ -21,6 +21,7 @@
 package it.cnr.isti.hpclab.matching.structures.output;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.terrier.structures.Index;
 import org.terrier.structures.MetaIndex;
@@ -40,23 +41,32 @@ public class DocnoResultOutput extends ScoredResultOutput
 	}
  	
 	@Override
-	public void print(final SearchRequest rq) throws IOException 
+	protected void append(final SearchRequest rq, final StringBuilder buf) throws IOException 
 	{
-		mBuilder.setLength(0); // reset the StringBuilder
-
 		ResultSet resultSet = rq.getResultSet();
-		if (resultSet.size() > 0) {
-			// TODO : check that results are always ordered by score
-			
-			for (int i = 0; i < resultSet.size(); ++i)
-				mBuilder.append(rq.getQueryId())
-					 	.append('\t')
-				        .append(mMetaIndex.getItem("docno", resultSet.docids()[i]))
-				        .append('\t')
-				        .append(Format.toString(resultSet.scores()[i], 5))
-						.append('\n');
-				        
-			mWriter.print(mBuilder.toString());
+		// TODO : check that results are always ordered by score
+		
+		final String[] docnos = docnos(mMetaIndex, resultSet);
+		for (int i = 0; i < resultSet.size(); ++i)
+			buf.append(rq.getQueryId())
+			   .append('\t')
+			   .append(docnos[i])
+			   .append('\t')
+			   .append(Format.toString(resultSet.scores()[i], 5))
+			   .append('\n');
+	}
+	
+	/**
+	 * Looks up the docnos of the results, synchronizing on the meta index that is not thread-safe.
+	 * 
+	 * @param metaIndex the meta index
+	 * @param resultSet the results
+	 * @return the docnos of the results
+	 */
+	static String[] docnos(final MetaIndex metaIndex, final ResultSet resultSet) throws IOException
+	{
+		synchronized (metaIndex) {
+			return metaIndex.getItems("docno", Arrays.copyOf(resultSet.docids(), resultSet.size()));
 		}
 	}
 }
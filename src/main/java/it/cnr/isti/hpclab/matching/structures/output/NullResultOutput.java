@@ -28,7 +28,21 @@ public class NullResultOutput extends ResultOutput
 {
 	/** {@inheritDoc} */
 	@Override
-	public void print(final SearchRequest rq) throws IOException 
+	public String format(final SearchRequest rq) throws IOException 
+	{
+		return "";
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void append(final SearchRequest rq, final StringBuilder buf) throws IOException 
+	{
+		// Empty method
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void write(final String results) throws IOException 
 	{
 		// Empty method
 	}
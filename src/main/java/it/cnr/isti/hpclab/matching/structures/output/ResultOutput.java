@@ -54,5 +54,38 @@ public abstract class ResultOutput implements Closeable
 	 * 
 	 * @param re the search request
 	 */
-	public abstract void print(final SearchRequest rq) throws IOException;
+	public void print(final SearchRequest rq) throws IOException
+	{
+		write(format(rq));
+	}
+	
+	/**
+	 * Formats the results of search request rq, without writing them. 
+	 * This method can be called concurrently by several threads, e.g., by the query processing threads of the parallel retrieval.
+	 * 
+	 * @param rq the search request
+	 * @return the formatted results
+	 */
+	public String format(final SearchRequest rq) throws IOException
+	{
+		StringBuilder buf = new StringBuilder();
+		if (rq.getResultSet().size() > 0)
+			append(rq, buf);
+		return buf.toString();
+	}
+	
+	/**
+	 * Appends the formatted results of search request rq to the given buffer. Implementations must be thread-safe.
+	 * 
+	 * @param rq the search request, with a non empty result set
+	 * @param buf the buffer
+	 */
+	protected abstract void append(final SearchRequest rq, final StringBuilder buf) throws IOException;
+	
+	/**
+	 * Writes the results formatted by {@link #format(SearchRequest)}.
+	 * 
+	 * @param results the formatted results
+	 */
+	public abstract void write(final String results) throws IOException;
 }
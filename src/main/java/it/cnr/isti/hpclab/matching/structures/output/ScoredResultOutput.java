@@ -36,11 +36,9 @@ import java.util.zip.GZIPOutputStream;
 public class ScoredResultOutput extends ResultOutput
 {
 	protected PrintWriter mWriter;
- 	protected StringBuilder mBuilder;
 
  	public ScoredResultOutput() 
  	{	
- 		mBuilder = new StringBuilder();
 		String resultsFilename = MatchingConfiguration.get(Property.RESULTS_FILENAME);
 
 		try {
@@ -58,23 +56,23 @@ public class ScoredResultOutput extends ResultOutput
 	}
  	
 	@Override
-	public void print(final SearchRequest rq) throws IOException 
+	protected void append(final SearchRequest rq, final StringBuilder buf) throws IOException 
 	{
-		mBuilder.setLength(0); // reset the StringBuilder
-
 		ResultSet resultSet = rq.getResultSet();
-		if (resultSet.size() > 0) {
-			// TODO : check that results are always ordered by score
-			for (int i = 0; i < resultSet.size(); ++i)
-				mBuilder.append(rq.getQueryId())
-					 	.append('\t')
-				        .append(resultSet.docids()[i])
-				        .append('\t')
-				        .append(Format.toString(resultSet.scores()[i], 5))
-						.append('\n');
-				        
-			mWriter.print(mBuilder.toString());
-		}
+		// TODO : check that results are always ordered by score
+		for (int i = 0; i < resultSet.size(); ++i)
+			buf.append(rq.getQueryId())
+			   .append('\t')
+			   .append(resultSet.docids()[i])
+			   .append('\t')
+			   .append(Format.toString(resultSet.scores()[i], 5))
+			   .append('\n');
+	}
+
+	@Override
+	public void write(final String results) throws IOException 
+	{
+		mWriter.print(results);
 	}
 
 	@Override
@@ -40,29 +40,24 @@ public class TrecResultOutput extends ScoredResultOutput
 	}
  	
 	@Override
-	public void print(final SearchRequest rq) throws IOException 
+	protected void append(final SearchRequest rq, final StringBuilder buf) throws IOException 
 	{
-		mBuilder.setLength(0); // reset the StringBuilder
-
 		ResultSet resultSet = rq.getResultSet();
-		if (resultSet.size() > 0) {
-			// TODO : check that results are always ordered by score
-			
-			for (int i = 0; i < resultSet.size(); ++i)
-				mBuilder.append(rq.getQueryId())
-					 	.append(' ')
-					 	.append("Q0")
-					 	.append(' ')
-				        .append(mMetaIndex.getItem("docno", resultSet.docids()[i]))
-				        .append(' ')
-				        .append(Integer.toString(i))
-				        .append(' ')
-				        .append(Format.toString(resultSet.scores()[i], 5))
-				        .append(' ')
-				        .append("ISTI")
-						.append('\n');
-				        
-			mWriter.print(mBuilder.toString());
-		}
+		// TODO : check that results are always ordered by score
+		
+		final String[] docnos = DocnoResultOutput.docnos(mMetaIndex, resultSet);
+		for (int i = 0; i < resultSet.size(); ++i)
+			buf.append(rq.getQueryId())
+			   .append(' ')
+			   .append("Q0")
+			   .append(' ')
+			   .append(docnos[i])
+			   .append(' ')
+			   .append(Integer.toString(i))
+			   .append(' ')
+			   .append(Format.toString(resultSet.scores()[i], 5))
+			   .append(' ')
+			   .append("ISTI")
+			   .append('\n');
 	}
 }
@@ -23,12 +23,9 @@ package it.cnr.isti.hpclab.matching.structures.resultset;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import it.cnr.isti.hpclab.matching.structures.Result;
 import it.cnr.isti.hpclab.matching.structures.ResultSet;
 import it.cnr.isti.hpclab.matching.structures.TopQueue;
-import it.unimi.dsi.fastutil.PriorityQueue;
 
-import java.io.IOException;
 import java.util.List;
 
 /**
@@ -91,25 +88,13 @@ public class ScoredResultSet implements ResultSet
      */
     public ScoredResultSet(final TopQueue queue, boolean preserve)
     {
-        try {
-            checkNotNull(queue);
+        checkNotNull(queue);
         
-            PriorityQueue<Result> q = preserve ? queue.copy().top() : queue.top();
-            int N = q.size();
-            this.mDocids = new int[N];
-            this.mScores = new float[N];
-        
-            int i = 0;
-            while (!q.isEmpty()) {
-                Result res = q.dequeue();
-                this.mDocids[N - 1 - i] = res.getDocId();
-                this.mScores[N - 1 - i] = res.getScore();
-                i++;
-            }
-
-        } catch (ClassNotFoundException | IOException e) {
-            e.printStackTrace();
-        }
+        TopQueue q = preserve ? queue.copy() : queue;
+        int N = q.size();
+        this.mDocids = new int[N];
+        this.mScores = new float[N];
+        q.drain(this.mDocids, this.mScores);
     }
 
     /** {@inheritDoc} */
@@ -0,0 +1,311 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.maxscore;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.commons.io.FilenameUtils;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.ParserProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.utility.ApplicationSetup;
+
+import it.cnr.isti.hpclab.ef.TermPartition;
+import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+import it.cnr.isti.hpclab.maxscore.structures.BlockMaxScoreIndex;
+import it.cnr.isti.hpclab.maxscore.structures.KthScoreIndex;
+import it.cnr.isti.hpclab.maxscore.structures.MaxScoreIndex;
+import it.cnr.isti.hpclab.maxscore.structures.ModelStructures;
+
+import me.tongfei.progressbar.ProgressBar;
+import me.tongfei.progressbar.ProgressBarBuilder;
+import me.tongfei.progressbar.ProgressBarStyle;
+
+/**
+ * Generates the max score index, the fixed-sized block max score indexes for several block sizes and the k-th score index 
+ * in a single pass over the inverted file, scoring every posting once.
+ * 
+ * The structures can be generated for several weighting models, or several parameters of a model, reading every posting once. 
+ * The structures of the first model have the usual names, the structures of the other models are stored side by side, 
+ * with the model suffix (see {@link ModelStructures}).
+ */
+public class AccelerationGenerator
+{
+    protected static Logger LOGGER = LoggerFactory.getLogger(AccelerationGenerator.class);
+    protected static ProgressBar pb_map;
+
+    private final int[] dfs;
+    private final String[] signatures;
+
+    public static final class AccelerationArgs 
+    {
+        // required arguments
+
+        @Option(name = "-index", metaVar = "[String]", required = true, usage = "Input Index")
+        public String index;
+
+        @Option(name = "-wm", metaVar = "[String,...]", required = true, usage = "Comma-separated weighting models, with optional parameters, e.g., BM25(k1=1.2,b=0.4)")
+        public String wm_name;
+
+        // optional arguments
+
+        @Option(name = "-b", metaVar = "[Number,...]", required = false, usage = "Comma-separated block sizes of the block max score indexes")
+        public String bs;
+
+        @Option(name = "-kth", required = false, usage = "Generate the k-th score index")
+        public boolean kth = false;
+
+        @Option(name = "-p", metaVar = "[Number]", required = false, usage = "Parallelism degree")
+        public String parallelism;
+    }
+
+    public AccelerationGenerator(final String src_index_path, final String src_index_prefix, final String[] wm_names, final int[] block_sizes, final boolean kth) throws Exception 
+    {
+        // check wms exist, and have different signatures
+        if (wm_names.length == 0)
+            throw new IllegalArgumentException("No weighting model specified");
+        WeightingModel[] models = new WeightingModel[wm_names.length];
+        for (int m = 0; m < wm_names.length; ++m)
+            models[m] = WeightingModel.create(wm_names[m]);
+        this.signatures = Arrays.stream(models).map(WeightingModel::signature).toArray(String[]::new);
+        if (Arrays.stream(signatures).distinct().count() != signatures.length)
+            throw new IllegalArgumentException("The weighting models " + Arrays.toString(signatures) + " are not all different");
+        
+
+        // Load input index
+        IndexOnDisk src_index = IndexOnDisk.createIndex(src_index_path, src_index_prefix);
+        if (IndexOnDisk.getLastIndexLoadError() != null) {
+            throw new IllegalArgumentException("Error loading index: " + IndexOnDisk.getLastIndexLoadError());
+        }
+        this.dfs = new int[src_index.getCollectionStatistics().getNumberOfUniqueTerms()];
+        Iterator<Entry<String, LexiconEntry>> lex_iter = src_index.getLexicon().iterator();
+        while (lex_iter.hasNext()) {
+            LexiconEntry le = lex_iter.next().getValue();
+            dfs[le.getTermId()] = le.getDocumentFrequency();
+        }
+        src_index.close();
+        LOGGER.info("Input index contains " + this.dfs.length + " terms");
+
+        // check dst indexes do not exist
+        final String dst_prefix = src_index_path + File.separator + src_index_prefix;
+        for (int m = 0; m < signatures.length; ++m) {
+            final String suffix = ModelStructures.suffix(ModelStructures.name("maxscore", m));
+            if (Files.exists(Paths.get(dst_prefix + MaxScoreIndex.USUAL_EXTENSION + suffix))) {
+                throw new IllegalArgumentException("Index directory " + src_index_path + " already contains a " + ModelStructures.name("maxscore", m) + " index with prefix " + src_index_prefix);
+            }
+            for (int i = 0; i < block_sizes.length; ++i) {
+                if (Files.exists(Paths.get(dst_prefix + BlockMaxScoreIndex.filenameInfix(structureName(m, i, block_sizes[i])) + BlockMaxScoreIndex.DOCID_EXT))) {
+                    throw new IllegalArgumentException("Index directory " + src_index_path + " already contains a " + structureName(m, i, block_sizes[i]) + " index with prefix " + src_index_prefix);
+                }
+            }
+            if (kth && Files.exists(Paths.get(dst_prefix + KthScoreIndex.USUAL_EXTENSION + suffix))) {
+                throw new IllegalArgumentException("Index directory " + src_index_path + " already contains a " + ModelStructures.name("kthscore", m) + " index with prefix " + src_index_prefix);
+            }
+        }
+    }
+
+    /**
+     * The first block size is stored as the default "blockmaxscore" structure, the others as "blockmaxscore-b" structures,
+     * followed by the suffix of the m-th weighting model.
+     */
+    private static String structureName(final int m, final int i, final int block_size)
+    {
+        return ModelStructures.name((i == 0) ? "blockmaxscore" : "blockmaxscore-" + block_size, m);
+    }
+
+    public static class Command extends org.terrier.applications.CLITool.CLIParsedCLITool 
+    {
+        protected Options getOptions() 
+        {
+            Options options = super.getOptions();
+            options.addOption(org.apache.commons.cli.Option.builder("w").argName("wmodel").hasArgs()
+                    .desc("Comma-separated weighting models").required().build());
+            options.addOption(org.apache.commons.cli.Option.builder("b").argName("blocks").hasArgs()
+                    .desc("Comma-separated block sizes").build());
+            options.addOption(
+                    org.apache.commons.cli.Option.builder("k").argName("kth").desc("Generate the k-th score index").build());
+            options.addOption(
+                    org.apache.commons.cli.Option.builder("p").argName("parallel").desc("Parallelism degree").build());
+            return options;
+        }
+
+        @Override
+        public int run(CommandLine line) throws Exception 
+        {
+            AccelerationArgs args = new AccelerationArgs();
+            if (line.hasOption("w"))
+                args.wm_name = line.getOptionValue("w");
+            if (line.hasOption("b"))
+                args.bs = line.getOptionValue("b");
+            args.kth = line.hasOption("k");
+            args.index = ApplicationSetup.TERRIER_INDEX_PATH + "/" + ApplicationSetup.TERRIER_INDEX_PREFIX;
+            if (line.hasOption("p"))
+                args.parallelism = line.getOptionValue("p");
+            execute(args);
+            return 0;
+        }
+
+        @Override
+        public String commandname() 
+        {
+            return "micro-accel-generator";
+        }
+
+        @Override
+        public String helpsummary() 
+        {
+            return "generates the maxscore, block max score and k-th score datastructures in a single pass";
+        }
+    }
+
+    public static void main(String[] argv)
+    {
+        AccelerationArgs args = new AccelerationArgs();
+        CmdLineParser parser = new CmdLineParser(args, ParserProperties.defaults().withUsageWidth(90));
+        try {
+            parser.parseArgument(argv);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.err);
+            return;
+        }
+        execute(args);
+    }
+    
+    @SuppressWarnings("deprecation")
+    public static void execute(AccelerationArgs args) 
+    {
+        IndexOnDisk.setIndexLoadingProfileAsRetrieval(false);
+        final String src_index_path = FilenameUtils.getFullPath(args.index);
+        final String src_index_prefix = FilenameUtils.getBaseName(args.index);
+        final String dst_prefix = src_index_path + File.separator + src_index_prefix;
+        
+        // the weighting models, with their parameters, e.g., BM25(k1=1.2,b=0.75),BM25(k1=1.2,b=0.4)
+        final String[] wm_names = WeightingModel.split(args.wm_name);
+        
+        final int num_threads = ( (args.parallelism != null && Integer.parseInt(args.parallelism) > 1) 
+                                        ? Math.min(ForkJoinPool.commonPool().getParallelism(), Integer.parseInt(args.parallelism)) 
+                                        : 1) ;
+        
+        final int[] block_sizes = (args.bs == null) ? new int[0] : Arrays.stream(args.bs.split(",")).mapToInt(b -> Math.max(2, Integer.parseInt(b.trim()))).distinct().toArray();
+                
+        LOGGER.info("Started " + AccelerationGenerator.class.getSimpleName() + " with parallelism " + num_threads + " (out of " + ForkJoinPool.commonPool().getParallelism() + " max parallelism available), using the weighting models " + Arrays.toString(wm_names) + ", posting blocks of sizes " + Arrays.toString(block_sizes) + (args.kth ? " and k-th scores" : ""));
+        LOGGER.warn("Multi-threaded MaxScore generation is experimental - caution advised due to threads competing for available memory! YMMV.");
+
+        long starttime = System.currentTimeMillis();
+
+        try {
+            AccelerationGenerator generator = new AccelerationGenerator(src_index_path, src_index_prefix, wm_names, block_sizes, args.kth);
+            final int num_terms = generator.dfs.length;
+            final int num_models = generator.signatures.length;
+            float[][] msa = new float[num_models][num_terms];
+            float[][] ksa = args.kth ? new float[num_models][num_terms * KthScoreIndex.RANKS.length] : null;
+            BlockMaxWriter[][] writers = new BlockMaxWriter[num_models][block_sizes.length];
+            for (int m = 0; m < num_models; ++m)
+                for (int i = 0; i < block_sizes.length; ++i)
+                    writers[m][i] = new BlockMaxWriter(dst_prefix + BlockMaxScoreIndex.filenameInfix(structureName(m, i, block_sizes[i])), generator.dfs, block_sizes[i]);
+            
+            TermPartition[] partitions = generator.partition(num_threads);
+            
+            LOGGER.info("Generated " + num_threads + " partitions");
+            for (TermPartition tp: partitions)
+                LOGGER.info(tp.toString());
+            
+            AccelerationMapper mapper = new AccelerationMapper(src_index_path, src_index_prefix, generator.signatures, msa, writers, ksa);
+
+            pb_map = new ProgressBarBuilder()
+                    .setInitialMax(num_terms)
+                    .setStyle(ProgressBarStyle.COLORFUL_UNICODE_BLOCK)
+                    .setTaskName("Acceleration structures computation")
+                    .setUpdateIntervalMillis(1000)
+                    .showSpeed(new DecimalFormat("#.###"))
+                    .build();
+            final float[][] partition_min_scores = Arrays.stream(partitions).parallel().map(mapper).toArray(float[][]::new);
+            pb_map.stop();
+            for (BlockMaxWriter[] model_writers: writers)
+                for (BlockMaxWriter writer: model_writers)
+                    writer.close();
+
+            final float[] min_scores = new float[num_models];
+            Arrays.fill(min_scores, Float.MAX_VALUE);
+            for (float[] partition_min_score: partition_min_scores)
+                for (int m = 0; m < num_models; ++m)
+                    min_scores[m] = Math.min(min_scores[m], partition_min_score[m]);
+
+            long compresstime = System.currentTimeMillis();
+            LOGGER.info("Parallel computation completed after " + (compresstime - starttime)/1000 + " seconds");
+            
+            for (int m = 0; m < num_models; ++m) {
+                final String suffix = ModelStructures.suffix(ModelStructures.name("maxscore", m));
+                ByteBuffer b_buf = ByteBuffer.allocate(num_terms * Float.BYTES);
+                b_buf.asFloatBuffer().put(msa[m]);
+                try (FileChannel out = FileChannel.open(Paths.get(dst_prefix + MaxScoreIndex.USUAL_EXTENSION + suffix), StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+                    out.write(b_buf);
+                }
+                if (args.kth) {
+                    b_buf = ByteBuffer.allocate(ksa[m].length * Float.BYTES);
+                    b_buf.asFloatBuffer().put(ksa[m]);
+                    try (FileChannel out = FileChannel.open(Paths.get(dst_prefix + KthScoreIndex.USUAL_EXTENSION + suffix), StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+                        out.write(b_buf);
+                    }
+                }
+            }
+            
+            long writetime = System.currentTimeMillis();
+            LOGGER.info("Sequential writing completed after " + (writetime - compresstime)/1000 + " seconds");
+            
+            for (int m = 0; m < num_models; ++m) {
+                MSGenerator.writeProperties(src_index_path, src_index_prefix, ModelStructures.name("maxscore", m), generator.signatures[m]);
+                for (int i = 0; i < block_sizes.length; ++i)
+                    BMWGenerator.writeProperties(src_index_path, src_index_prefix, structureName(m, i, block_sizes[i]), block_sizes[i], generator.signatures[m]);
+                if (args.kth)
+                    KthGenerator.writeProperties(src_index_path, src_index_prefix, ModelStructures.name("kthscore", m), generator.signatures[m], min_scores[m]);
+            }
+
+            long endtime = System.currentTimeMillis();
+            
+            LOGGER.info("Multi-threaded acceleration structures generation completed after " + (endtime - starttime)/1000 + " seconds, using "  + num_threads + " threads");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    public TermPartition[] partition(final int num_threads)
+    {
+        return TermPartition.split(dfs.length, num_threads);
+    }
+}
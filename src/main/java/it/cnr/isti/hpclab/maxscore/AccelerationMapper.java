@@ -0,0 +1,194 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.maxscore;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.Index;
+import org.terrier.structures.Lexicon;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+
+import it.cnr.isti.hpclab.ef.TermPartition;
+import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+
+// This is a function object so it must be stateless
+class AccelerationMapper implements Function<TermPartition,float[]>
+{
+    protected static final Logger LOGGER = LoggerFactory.getLogger(AccelerationMapper.class);
+    
+    private final String src_index_path;
+    private final String src_index_prefix;
+    private final String[] wm_names;
+    
+    // shared arrays, one per weighting model, with no access control necessary
+    private final float[][] msa;
+    private final float[][] ksa;
+    // shared writers, one per weighting model and block size, writing the terms at disjoint positions
+    private final BlockMaxWriter[][] writers;
+    
+    /**
+     * @param wm_names the signatures of the weighting models
+     * @param msa the max scores of all terms, one array per weighting model
+     * @param writers the writers of the block max score indexes, one per weighting model and block size, with the same block sizes for all models
+     * @param ksa the k-th scores of all terms, one array per weighting model, or <code>null</code> if not computed
+     */
+    public AccelerationMapper(final String src_index_path, final String src_index_prefix, final String[] wm_names, final float[][] msa, final BlockMaxWriter[][] writers, final float[][] ksa) 
+    {
+        this.src_index_path = src_index_path;
+        this.src_index_prefix = src_index_prefix;
+        this.wm_names = wm_names;
+        this.msa = msa;
+        this.writers = writers;
+        this.ksa = ksa;
+    }
+
+    /**
+     * Computes the max scores, the block max scores and the k-th scores of the terms in the partition for all the weighting models, 
+     * reading every posting once.
+     * 
+     * @return the minimum score of the postings in the partition, for every weighting model
+     */
+    @Override
+    public float[] apply(TermPartition terms) 
+    {
+        final int num_models = wm_names.length;
+        final float[] min_scores = new float[num_models];
+        Arrays.fill(min_scores, Float.MAX_VALUE);
+        try {
+            Index src_index = Index.createIndex(src_index_path, src_index_prefix);
+            
+            if (terms.begin() >= terms.end() || terms.begin() < 0 || terms.end() > src_index.getCollectionStatistics().getNumberOfUniqueTerms()) {
+                LOGGER.error("Something wrong with term positions, begin = " + terms.begin() + ", end = " + terms.end());
+                return null;
+            }
+
+            final WeightingModel[] wm_models = new WeightingModel[num_models];
+            for (int m = 0; m < num_models; ++m) {
+                wm_models[m] = WeightingModel.create(wm_names[m]);
+                wm_models[m].setup(src_index);
+            }
+            
+            // the lexicon entries are read directly at their position, with no need to iterate up to the begin term pos
+            final Lexicon<String> lex = src_index.getLexicon();
+            LexiconEntry le = null;
+            IterablePosting p = null;
+
+            // the current blocks, one per block size, with the same boundaries for all models
+            final int[] block_sizes = Arrays.stream(writers[0]).mapToInt(BlockMaxWriter::blockSize).toArray();
+            final int num_sizes = block_sizes.length;
+            final int[][] lasts = new int[num_sizes][0];
+            final int[] num_blocks = new int[num_sizes];
+            final float[][][] max_scores = new float[num_models][num_sizes][0];
+            final float[][] block_max_score = new float[num_models][num_sizes];
+            final float[] max_score = new float[num_models];
+            
+            // min-heaps of the highest scores of the current term, one per model
+            final float[][] heap = new float[num_models][KthMapper.MAX_RANK];
+            
+            for (int pos = terms.begin(); pos < terms.end(); ++pos) {
+                le = lex.getIthLexiconEntry(pos).getValue();
+                p = src_index.getInvertedIndex().getPostings((BitIndexPointer) le);
+                
+                for (int j = 0; j < num_sizes; ++j) {
+                    final int n = BlockMaxWriter.numBlocks(le.getDocumentFrequency(), block_sizes[j]);
+                    if (lasts[j].length < n) {
+                        lasts[j] = new int[n];
+                        for (int m = 0; m < num_models; ++m)
+                            max_scores[m][j] = new float[n];
+                    }
+                    num_blocks[j] = 0;
+                }
+                for (int m = 0; m < num_models; ++m) {
+                    Arrays.fill(block_max_score[m], 0.0f);
+                    max_score[m] = 0.0f;
+                }
+                
+                int counter = 0;
+                int size = 0;
+                int docid = Integer.MAX_VALUE;
+                while (p.next() != IterablePosting.END_OF_LIST) {
+                    docid = p.getId();
+                    for (int m = 0; m < num_models; ++m) {
+                        final float score = wm_models[m].score(1, p.getFrequency(), p.getDocumentLength(), le.getDocumentFrequency(), le.getFrequency());
+                        max_score[m] = Math.max(max_score[m], score);
+                        for (int j = 0; j < num_sizes; ++j)
+                            block_max_score[m][j] = Math.max(block_max_score[m][j], score);
+                        
+                        if (ksa != null) {
+                            if (score < min_scores[m])
+                                min_scores[m] = score;
+                            if (size < KthMapper.MAX_RANK) {
+                                heap[m][size] = score;
+                                KthMapper.up(heap[m], size);
+                            } else if (score > heap[m][0]) {
+                                heap[m][0] = score;
+                                KthMapper.down(heap[m], size);
+                            }
+                        }
+                    }
+                    if (size < KthMapper.MAX_RANK)
+                        size++;
+                    
+                    for (int j = 0; j < num_sizes; ++j) {
+                        if (counter % block_sizes[j] == block_sizes[j] - 1) {
+                            lasts[j][num_blocks[j]] = docid; // We save the last docid of the block, not the first
+                            for (int m = 0; m < num_models; ++m) {
+                                max_scores[m][j][num_blocks[j]] = block_max_score[m][j];
+                                block_max_score[m][j] = 0.0f;
+                            }
+                            num_blocks[j]++;
+                        }
+                    }
+                    counter++;
+                }
+                p.close();
+                
+                for (int m = 0; m < num_models; ++m)
+                    msa[m][le.getTermId()] = max_score[m];
+                for (int j = 0; j < num_sizes; ++j) {
+                    // Last defective block
+                    if (counter % block_sizes[j] != 0) {
+                        lasts[j][num_blocks[j]] = docid;
+                        for (int m = 0; m < num_models; ++m)
+                            max_scores[m][j][num_blocks[j]] = block_max_score[m][j];
+                        num_blocks[j]++;
+                    }
+                    for (int m = 0; m < num_models; ++m)
+                        writers[m][j].write(le.getTermId(), lasts[j], max_scores[m][j], num_blocks[j]);
+                }
+                if (ksa != null)
+                    for (int m = 0; m < num_models; ++m)
+                        KthMapper.store(heap[m], size, ksa[m], le.getTermId());
+                
+                AccelerationGenerator.pb_map.step();
+            }
+            src_index.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return min_scores;
+    }
+}
@@ -20,15 +20,14 @@
 
 package it.cnr.isti.hpclab.maxscore;
 
-import java.io.BufferedOutputStream;
-import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.text.DecimalFormat;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map.Entry;
 import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.cli.CommandLine;
@@ -41,12 +40,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
 import org.terrier.utility.ApplicationSetup;
 
 import it.cnr.isti.hpclab.ef.TermPartition;
 import it.cnr.isti.hpclab.matching.structures.WeightingModel;
 import it.cnr.isti.hpclab.maxscore.structures.BlockMaxScoreIndex;
 import it.cnr.isti.hpclab.maxscore.structures.MaxScoreIndex;
+import it.cnr.isti.hpclab.maxscore.structures.ModelStructures;
 
 import me.tongfei.progressbar.ProgressBar;
 import me.tongfei.progressbar.ProgressBarBuilder;
@@ -59,7 +60,9 @@ public class BMWGenerator
     protected static ProgressBar pb_map;
     
     private final int num_terms;
+    private final int[] dfs;
     private final String wm_name;
+    private final String signature;
     
     public static final class BMWArgs 
     {
@@ -75,6 +78,9 @@ public class BMWGenerator
         
         @Option(name = "-p", metaVar = "[Number]", required = false, usage = "Parallelism degree")
         public String parallelism;        
+
+        @Option(name = "-v", required = false, usage = "Variable-sized blocks, with the same number of blocks of the fixed-sized ones")
+        public boolean variable = false;
     }
 
     public static class Command extends org.terrier.applications.CLITool.CLIParsedCLITool {
@@ -92,6 +98,10 @@ public class BMWGenerator
                     .argName("parallel")
                     .desc("Parallelism degree")
                     .build());
+            options.addOption(org.apache.commons.cli.Option.builder("v")
+                    .argName("variable")
+                    .desc("Variable-sized blocks")
+                    .build());
             return options;
         }
         
@@ -103,6 +113,7 @@ public class BMWGenerator
             args.index = ApplicationSetup.TERRIER_INDEX_PATH + "/" + ApplicationSetup.TERRIER_INDEX_PREFIX;
             if (line.hasOption("p"))
                 args.parallelism = line.getOptionValue("p");
+            args.variable = line.hasOption("v");
             execute(args);
             return 0;
         }
@@ -119,6 +130,11 @@ public class BMWGenerator
     }
 
     public BMWGenerator(final String src_index_path, final String src_index_prefix) throws Exception 
+    {
+        this(src_index_path, src_index_prefix, BlockMaxScoreIndex.STRUCTURE_NAME);
+    }
+
+    public BMWGenerator(final String src_index_path, final String src_index_prefix, final String structure_name) throws Exception 
     {    
         // Load input index
     	IndexOnDisk src_index = IndexOnDisk.createIndex(src_index_path, src_index_prefix);
@@ -126,7 +142,16 @@ public class BMWGenerator
             throw new IllegalArgumentException("Error loading index: " + IndexOnDisk.getLastIndexLoadError());
         }
         this.num_terms = src_index.getCollectionStatistics().getNumberOfUniqueTerms();
-        this.wm_name = src_index.getIndexProperty("index.maxscore.weighting_model", "");
+        // the document frequencies, by termid, give the number of blocks, hence the offsets, of every term a-priori
+        this.dfs = new int[num_terms];
+        Iterator<Entry<String, LexiconEntry>> lex_iter = src_index.getLexicon().iterator();
+        while (lex_iter.hasNext()) {
+            LexiconEntry le = lex_iter.next().getValue();
+            dfs[le.getTermId()] = le.getDocumentFrequency();
+        }
+        // the blocks are scored with the weighting model of the max score index
+        this.wm_name = ModelStructures.signature(src_index, "maxscore");
+        this.signature = src_index.getIndexProperty("index.maxscore.signature", null);
 
         src_index.close();
         LOGGER.info("Input index contains " + this.num_terms + " terms");
@@ -137,13 +162,13 @@ public class BMWGenerator
         }
 
         // check dst blockindex index does not exist 
-        if (Files.exists(Paths.get(src_index_path + File.separator + src_index_prefix + BlockMaxScoreIndex.STRUCTURE_NAME + BlockMaxScoreIndex.DOCID_EXT))) {
+        if (Files.exists(Paths.get(src_index_path + File.separator + src_index_prefix + structure_name + BlockMaxScoreIndex.DOCID_EXT))) {
             throw new IllegalArgumentException("Index directory " + src_index_path + " already contains an index with prefix " + src_index_prefix);
         }
 
         // check wm exists
         try {
-            @SuppressWarnings("unused")    WeightingModel mModel = (WeightingModel) (Class.forName(wm_name).asSubclass(WeightingModel.class).getConstructor().newInstance());
+            @SuppressWarnings("unused")    WeightingModel mModel = WeightingModel.create(wm_name);
         } catch (Exception e) {
             throw new IllegalArgumentException("Problem loading weighting model (" + wm_name + ")");
         }
@@ -175,18 +200,20 @@ public class BMWGenerator
                                         : 1) ;
 
         final int block_size = ( (args.bs != null && Integer.parseInt(args.bs) >= 2) ? Integer.parseInt(args.bs) : 2) ;
+        
+        final String structure_name = args.variable ? BlockMaxScoreIndex.VARIABLE_STRUCTURE_NAME : BlockMaxScoreIndex.STRUCTURE_NAME;
 
-        LOGGER.info("Started " + BMWGenerator.class.getSimpleName() + " with parallelism " + num_threads + " (out of " + ForkJoinPool.commonPool().getParallelism() + " max parallelism available), using posting blocks of size " + block_size);
+        LOGGER.info("Started " + BMWGenerator.class.getSimpleName() + " with parallelism " + num_threads + " (out of " + ForkJoinPool.commonPool().getParallelism() + " max parallelism available), using " + (args.variable ? "variable-sized posting blocks of average size " : "posting blocks of size ") + block_size);
         LOGGER.warn("Multi-threaded MaxScore generation is experimental - caution advised due to threads competing for available memory! YMMV.");
 
         long starttime = System.currentTimeMillis();
 
         try {
-            BMWGenerator generator = new BMWGenerator(src_index_path, src_index_prefix);
+            BMWGenerator generator = new BMWGenerator(src_index_path, src_index_prefix, structure_name);
             
             TermPartition[] partitions = generator.partition(num_threads);
-            BMWMapper mapper = new BMWMapper(src_index_path, src_index_prefix, generator.wm_name, block_size);
-            BMWReducer merger = new BMWReducer(src_index_path, src_index_prefix);
+            BlockMaxWriter writer = new BlockMaxWriter(src_index_path + File.separator + src_index_prefix + structure_name, generator.dfs, block_size);
+            BMWMapper mapper = new BMWMapper(src_index_path, src_index_prefix, generator.wm_name, writer, args.variable);
 
             pb_map = new ProgressBarBuilder()
                     .setInitialMax(generator.num_terms)
@@ -195,27 +222,15 @@ public class BMWGenerator
                     .setUpdateIntervalMillis(1000)
                     .showSpeed(new DecimalFormat("#.###"))
                     .build();
-            TermPartition[] tmp_partitions = Arrays.stream(partitions).parallel().map(mapper).sorted().toArray(TermPartition[]::new);
+            // every mapper writes its terms directly at their final position in the block max score files
+            Arrays.stream(partitions).parallel().forEach(mapper::apply);
             pb_map.stop();
-            
-            TermPartition last_partition = Arrays.stream(tmp_partitions).reduce(merger).get();
-            
-            
-            // Eventually, we rename the last merge
-            Files.move(Paths.get(src_index_path, last_partition.prefix() + BlockMaxScoreIndex.STRUCTURE_NAME + BlockMaxScoreIndex.DOCID_EXT),
-                       Paths.get(src_index_path, src_index_prefix        + BlockMaxScoreIndex.STRUCTURE_NAME + BlockMaxScoreIndex.DOCID_EXT));
-            Files.move(Paths.get(src_index_path, last_partition.prefix() + BlockMaxScoreIndex.STRUCTURE_NAME + BlockMaxScoreIndex.SCORE_EXT),
-                       Paths.get(src_index_path, src_index_prefix        + BlockMaxScoreIndex.STRUCTURE_NAME + BlockMaxScoreIndex.SCORE_EXT));
-            Files.move(Paths.get(src_index_path, last_partition.prefix() + BlockMaxScoreIndex.STRUCTURE_NAME + BlockMaxScoreIndex.OFFSET_EXT),
-                       Paths.get(src_index_path, src_index_prefix        + BlockMaxScoreIndex.STRUCTURE_NAME + BlockMaxScoreIndex.OFFSET_EXT));
-
-            // important, last element is total number of blocks
-            String os = src_index_path + File.separator + src_index_prefix + BlockMaxScoreIndex.STRUCTURE_NAME + BlockMaxScoreIndex.OFFSET_EXT;
-            DataOutputStream offsetsOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(os, true)));
-            offsetsOutput.writeLong(Files.size(Paths.get(os)) / Long.BYTES);
-            offsetsOutput.close();
+            writer.close();
                         
-            writeProperties(src_index_path, src_index_prefix, block_size);
+            if (args.variable)
+                writeProperties(src_index_path, src_index_prefix, "vblockmaxscore", block_size, generator.signature);
+            else
+                writeProperties(src_index_path, src_index_prefix, "blockmaxscore", block_size, generator.signature);
 
             long endtime = System.currentTimeMillis();
             
@@ -225,13 +240,19 @@ public class BMWGenerator
         }
     }
     
-    private static void writeProperties(String indexPath, String indexPrefix, final int block_size) throws IOException
+    /**
+     * @param signature the signature of the weighting model, or <code>null</code> if unknown, i.e., if the max score index 
+     *                  records only the class name of its weighting model
+     */
+    static void writeProperties(String indexPath, String indexPrefix, final String structure, final int block_size, final String signature) throws IOException
     {
         IndexOnDisk index = IndexOnDisk.createIndex(indexPath, indexPrefix);
-        index.setIndexProperty("index.blockmaxscore.class","it.cnr.isti.hpclab.maxscore.structures.BlockMaxScoreIndex");
-        index.setIndexProperty("index.blockmaxscore.parameter_types","org.terrier.structures.Index");
-        index.setIndexProperty("index.blockmaxscore.parameter_values","index");
-        index.setIndexProperty("index.blockmaxscore.block_size",Integer.toString(block_size));
+        index.setIndexProperty("index." + structure + ".class","it.cnr.isti.hpclab.maxscore.structures.BlockMaxScoreIndex");
+        index.setIndexProperty("index." + structure + ".parameter_types","org.terrier.structures.Index,java.lang.String");
+        index.setIndexProperty("index." + structure + ".parameter_values","index,structureName");
+        index.setIndexProperty("index." + structure + ".block_size",Integer.toString(block_size));
+        if (signature != null)
+            index.setIndexProperty("index." + structure + ".signature", signature);
         index.close();        
     }
 
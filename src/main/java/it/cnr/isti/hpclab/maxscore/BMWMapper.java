@@ -20,13 +20,6 @@
 
 package it.cnr.isti.hpclab.maxscore;
 
-import java.io.BufferedOutputStream;
-import java.io.DataOutputStream;
-import java.io.File;
-import java.io.FileOutputStream;
-
-import java.util.Iterator;
-import java.util.Map.Entry;
 import java.util.function.Function;
 
 import org.slf4j.Logger;
@@ -34,17 +27,15 @@ import org.slf4j.LoggerFactory;
 
 import org.terrier.structures.BitIndexPointer;
 import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.Lexicon;
 import org.terrier.structures.LexiconEntry;
 import org.terrier.structures.postings.IterablePosting;
 
 import it.cnr.isti.hpclab.ef.TermPartition;
 
 import it.cnr.isti.hpclab.matching.structures.WeightingModel;
-import it.cnr.isti.hpclab.maxscore.structures.BlockMaxScoreIndex;
 import it.unimi.dsi.fastutil.floats.FloatArrayList;
-import it.unimi.dsi.fastutil.floats.FloatList;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.ints.IntList;
 
 //This is a function object so it must be stateless
 class BMWMapper implements Function<TermPartition,TermPartition>
@@ -54,60 +45,66 @@ class BMWMapper implements Function<TermPartition,TermPartition>
     private final String src_index_path;
     private final String src_index_prefix;
     private final String wm_name;
-    private final int block_size;
+    private final BlockMaxWriter writer;
+    private final boolean variable;
 
-    public BMWMapper(final String src_index_path, final String src_index_prefix, final String wm_name, final int block_size) 
+    public BMWMapper(final String src_index_path, final String src_index_prefix, final String wm_name, final BlockMaxWriter writer) 
+    {
+        this(src_index_path, src_index_prefix, wm_name, writer, false);
+    }
+
+    /**
+     * @param writer the shared writer of the block max score index, every term blocks are written at their final position
+     * @param variable if true, every posting list is partitioned into variable-sized blocks, with
+     *                 the same number of blocks of the fixed-sized partitioning with the given block size
+     */
+    public BMWMapper(final String src_index_path, final String src_index_prefix, final String wm_name, final BlockMaxWriter writer, final boolean variable) 
     {
         this.src_index_path = src_index_path;
         this.src_index_prefix = src_index_prefix;
         this.wm_name = wm_name;
-        this.block_size = block_size;
+        this.writer = writer;
+        this.variable = variable;
     }
 
     @Override
     public TermPartition apply(TermPartition terms) 
     {        
-        int written = 0;
         try {
             IndexOnDisk src_index = IndexOnDisk.createIndex(src_index_path, src_index_prefix);
-            String this_prefix = src_index.getPrefix() + "_partition_" + terms.id();
-            terms.prefix(this_prefix);
 
             if (terms.begin() >= terms.end() || terms.begin() < 0 || terms.end() > src_index.getCollectionStatistics().getNumberOfUniqueTerms()) {
                 LOGGER.error("Something wrong with term positions, begin = " + terms.begin() + ", end = " + terms.end());
                 return null;
             }
 
-            WeightingModel wm_model = (WeightingModel) (Class.forName(wm_name).asSubclass(WeightingModel.class).getConstructor().newInstance());
+            WeightingModel wm_model = WeightingModel.create(wm_name);
             wm_model.setup(src_index);
 
-            // Writers
-            DataOutputStream docidsOutput  = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(src_index.getPath() + File.separator + terms.prefix() + BlockMaxScoreIndex.STRUCTURE_NAME + BlockMaxScoreIndex.DOCID_EXT)));
-            DataOutputStream scoresOutput  = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(src_index.getPath() + File.separator + terms.prefix() + BlockMaxScoreIndex.STRUCTURE_NAME + BlockMaxScoreIndex.SCORE_EXT)));
-            DataOutputStream offsetsOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(src_index.getPath() + File.separator + terms.prefix() + BlockMaxScoreIndex.STRUCTURE_NAME + BlockMaxScoreIndex.OFFSET_EXT)));
-            long mWrittenItems = 0;
-
-            // opening src index lexicon iterator and moving to the begin termid
-            Iterator<Entry<String, LexiconEntry>> lex_iter = src_index.getLexicon().iterator();
-            Entry<String, LexiconEntry> lee = null;
-            for (int pos = -1; pos < terms.begin(); pos++)
-                lee = lex_iter.next();
-
-            // important, first element is block size (only in the first partition)
-            if (terms.id() == 0)
-                offsetsOutput.writeLong(block_size);
-
+            // the lexicon entries are read directly at their position, with no need to iterate up to the begin term pos
+            final Lexicon<String> lex = src_index.getLexicon();
+            final int block_size = writer.blockSize();
+            
             LexiconEntry le = null;
             IterablePosting p = null;
 
-            FloatList scoresList = new FloatArrayList();
-            IntList   docidsList = new IntArrayList();
+            int[]   lasts = new int[0];
+            float[] max_scores = new float[0];
+
+            // Used only with variable-sized blocks
+            FloatArrayList postingScoresList = new FloatArrayList();
+            IntArrayList   postingDocidsList = new IntArrayList();
+            VariableBlockPartitioner partitioner = new VariableBlockPartitioner();
 
-            while (lee != null && written < terms.end() - terms.begin()) {
-                le = lee.getValue();
-                p = src_index.getInvertedIndex().getPostings((BitIndexPointer)lee.getValue());
-                scoresList.clear();
-                docidsList.clear();
+            for (int pos = terms.begin(); pos < terms.end(); ++pos) {
+                le = lex.getIthLexiconEntry(pos).getValue();
+                p = src_index.getInvertedIndex().getPostings((BitIndexPointer) le);
+                
+                final int n = BlockMaxWriter.numBlocks(le.getDocumentFrequency(), block_size);
+                if (lasts.length < n) {
+                    lasts = new int[n];
+                    max_scores = new float[n];
+                }
 
                 int numBlocks = 0;
                 int counter = 0;
@@ -115,57 +112,60 @@ class BMWMapper implements Function<TermPartition,TermPartition>
                 float max_score = 0.0f;
                 int docid = Integer.MAX_VALUE;
 
-                while (p.next() != IterablePosting.END_OF_LIST) {
-                    docid = p.getId();
-                    score = wm_model.score(1, p.getFrequency(), p.getDocumentLength(), le.getDocumentFrequency(), le.getFrequency());    
-                    max_score = Math.max(max_score, (float)score);
-                    if ( counter % block_size == block_size - 1) {
-                        scoresList.add(max_score);
-                        docidsList.add(docid); // We save the last docid of the block, not the first
-                        numBlocks++;
+                if (variable) {
+                    postingScoresList.clear();
+                    postingDocidsList.clear();
+                    while (p.next() != IterablePosting.END_OF_LIST) {
+                        postingDocidsList.add(p.getId());
+                        postingScoresList.add((float) wm_model.score(1, p.getFrequency(), p.getDocumentLength(), le.getDocumentFrequency(), le.getFrequency()));
+                    }
+                    counter = postingDocidsList.size();
+                    
+                    // Same number of blocks of the fixed-sized partitioning, i.e., same space
+                    final float[] postingScores = postingScoresList.elements();
+                    final int[]   postingDocids = postingDocidsList.elements();
+                    int end = 0;
+                    for (int length: partitioner.partition(postingScores, counter, (counter + block_size - 1) / block_size)) {
                         max_score = 0.0f;
+                        for (int i = end; i < end + length; ++i)
+                            max_score = Math.max(max_score, postingScores[i]);
+                        end += length;
+                        lasts[numBlocks] = postingDocids[end - 1]; // We save the last docid of the block, not the first
+                        max_scores[numBlocks++] = max_score;
+                    }
+                } else {
+                    while (p.next() != IterablePosting.END_OF_LIST) {
+                        docid = p.getId();
+                        score = wm_model.score(1, p.getFrequency(), p.getDocumentLength(), le.getDocumentFrequency(), le.getFrequency());    
+                        max_score = Math.max(max_score, (float)score);
+                        if ( counter % block_size == block_size - 1) {
+                            lasts[numBlocks] = docid; // We save the last docid of the block, not the first
+                            max_scores[numBlocks++] = max_score;
+                            max_score = 0.0f;
+                        }
+                        counter++;
+                    }
+                    
+                    // Last defective block
+                    if (counter % block_size != 0) {
+                        lasts[numBlocks] = docid; // We save the last docid of the block, not the first
+                        max_scores[numBlocks++] = max_score;
                     }
-                    counter++;
-                }
-                
-                // Last defective block
-                if (counter % block_size != 0) {
-                    scoresList.add(max_score);
-                    docidsList.add(docid); // We save the last docid of the block, not the first
-                    numBlocks++;
                 }
                 
                 p.close();
                 
-                // Writing
-
-                // offset
-                offsetsOutput.writeLong(mWrittenItems);
-                mWrittenItems += numBlocks;
-                
-                // Docids
-                for (int d: docidsList)
-                    docidsOutput.writeInt(d);
+                // Writing, the max scores are slightly increased by the writer w.r.t. the actual ones
+                writer.write(le.getTermId(), lasts, max_scores, numBlocks);
                 
-                // Scores
-                for (float s: scoresList)
-                    // Fix to slightly increase w.r.t. actual max score
-                    scoresOutput.writeFloat(Math.nextAfter(s, Double.MAX_VALUE));
-                
-                lee = lex_iter.hasNext() ? lex_iter.next() : null;
                 BMWGenerator.pb_map.step();
-                written++;
             }
 
             src_index.close();
-
-            offsetsOutput.close();
-            scoresOutput.close();
-            docidsOutput.close();
         } catch (Exception e) {
             e.printStackTrace();
         }
 
         return terms;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,179 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.maxscore;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import it.cnr.isti.hpclab.maxscore.structures.BlockEnumerator;
+import it.cnr.isti.hpclab.maxscore.structures.BlockMaxScoreIndex;
+
+/**
+ * Writes a block max score index in place. A term with <tt>df</tt> postings has <tt>ceil(df / block_size)</tt> blocks,
+ * hence the offsets of all terms are computed and written a-priori from the document frequencies, and the docids and scores
+ * files are preallocated and memory-mapped: the blocks of every term are written directly at their final position, 
+ * by any number of mappers concurrently, in a single write pass with no temporary files.
+ * 
+ * The summary of the blocks of every term, storing the last docid and the max score of every {@link BlockEnumerator#SUPER_BLOCK_SIZE} 
+ * consecutive blocks, is written in the same way and format, in the files with the {@link BlockMaxScoreIndex#SUPER_EXT} infix,
+ * so that it is not computed from all the blocks when the index is loaded. The summary files are overwritten, if they exist.
+ */
+class BlockMaxWriter implements Closeable
+{
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_BYTES = 1L << CHUNK_SHIFT;
+    private static final long CHUNK_MASK = CHUNK_BYTES - 1;
+
+    private final int block_size;
+    /** The offset of the first block of every term, by termid, followed by the total number of blocks */
+    private final long[] offsets;
+    /** The offset of the first super-block of every term, by termid, followed by the total number of super-blocks */
+    private final long[] super_offsets;
+
+    private final MappedByteBuffer[] docids;
+    private final MappedByteBuffer[] scores;
+    private final MappedByteBuffer[] super_docids;
+    private final MappedByteBuffer[] super_scores;
+
+    /**
+     * @param filename_prefix the path and prefix of the files of the block max score index
+     * @param dfs the document frequencies of the terms, by termid
+     * @param block_size the (average) number of postings in a block
+     */
+    public BlockMaxWriter(final String filename_prefix, final int[] dfs, final int block_size) throws IOException
+    {
+        this.block_size = block_size;
+        this.offsets = new long[dfs.length + 1];
+        this.super_offsets = new long[dfs.length + 1];
+        for (int termid = 0; termid < dfs.length; ++termid) {
+            final int num_blocks = numBlocks(dfs[termid], block_size);
+            offsets[termid + 1] = offsets[termid] + num_blocks;
+            super_offsets[termid + 1] = super_offsets[termid] + numBlocks(num_blocks, BlockEnumerator.SUPER_BLOCK_SIZE);
+        }
+
+        writeOffsets(filename_prefix + BlockMaxScoreIndex.OFFSET_EXT, block_size, offsets);
+        this.docids = map(filename_prefix + BlockMaxScoreIndex.DOCID_EXT, offsets[dfs.length] * Integer.BYTES, false);
+        this.scores = map(filename_prefix + BlockMaxScoreIndex.SCORE_EXT, offsets[dfs.length] * Float.BYTES, false);
+
+        final String super_prefix = filename_prefix + BlockMaxScoreIndex.SUPER_EXT;
+        writeOffsets(super_prefix + BlockMaxScoreIndex.OFFSET_EXT, block_size * BlockEnumerator.SUPER_BLOCK_SIZE, super_offsets);
+        this.super_docids = map(super_prefix + BlockMaxScoreIndex.DOCID_EXT, super_offsets[dfs.length] * Integer.BYTES, true);
+        this.super_scores = map(super_prefix + BlockMaxScoreIndex.SCORE_EXT, super_offsets[dfs.length] * Float.BYTES, true);
+    }
+    
+    private static void writeOffsets(final String filename, final long block_size, final long[] offsets) throws IOException
+    {
+        // important, first element is block size, last element is total number of blocks
+        try (DataOutputStream offsetsOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+            offsetsOutput.writeLong(block_size);
+            for (long offset: offsets)
+                offsetsOutput.writeLong(offset);
+        }
+    }
+
+    /**
+     * @param df the number of postings of a term
+     * @param block_size the (average) number of postings in a block
+     * @return the number of blocks of the term
+     */
+    public static int numBlocks(final int df, final int block_size)
+    {
+        return (int) (((long) df + block_size - 1) / block_size);
+    }
+
+    private static MappedByteBuffer[] map(final String filename, final long size, final boolean overwrite) throws IOException
+    {
+        try (FileChannel fc = FileChannel.open(Paths.get(filename), StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE, overwrite ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.CREATE_NEW)) {
+            MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((size + CHUNK_BYTES - 1) >>> CHUNK_SHIFT)];
+            for (int i = 0; i < chunks.length; ++i) {
+                final long begin = (long) i << CHUNK_SHIFT;
+                chunks[i] = fc.map(FileChannel.MapMode.READ_WRITE, begin, Math.min(CHUNK_BYTES, size - begin));
+            }
+            return chunks;
+        }
+    }
+
+    public int blockSize()
+    {
+        return block_size;
+    }
+
+    /**
+     * Writes the blocks of a term, and their summary, at their position. The max scores are slightly increased w.r.t. the actual ones.
+     * 
+     * @param termid the termid of the term
+     * @param lasts the last docid of every block
+     * @param max_scores the max score of every block
+     * @param num_blocks the number of blocks of the term
+     */
+    public void write(final int termid, final int[] lasts, final float[] max_scores, final int num_blocks)
+    {
+        final long begin = offsets[termid];
+        if (begin + num_blocks != offsets[termid + 1])
+            throw new IllegalStateException("Term " + termid + " has " + num_blocks + " blocks instead of " + (offsets[termid + 1] - begin));
+
+        final long super_begin = super_offsets[termid];
+        float super_max = 0.0f;
+        for (int i = 0; i < num_blocks; ++i) {
+            final float max_score = Math.nextAfter(max_scores[i], Double.MAX_VALUE);
+            putInt(docids, begin + i, lasts[i]);
+            putFloat(scores, begin + i, max_score);
+            
+            super_max = (i % BlockEnumerator.SUPER_BLOCK_SIZE == 0) ? max_score : Math.max(super_max, max_score);
+            if (i % BlockEnumerator.SUPER_BLOCK_SIZE == BlockEnumerator.SUPER_BLOCK_SIZE - 1 || i == num_blocks - 1) {
+                putInt(super_docids, super_begin + i / BlockEnumerator.SUPER_BLOCK_SIZE, lasts[i]);
+                putFloat(super_scores, super_begin + i / BlockEnumerator.SUPER_BLOCK_SIZE, super_max);
+            }
+        }
+    }
+    
+    private static void putInt(final MappedByteBuffer[] chunks, final long pos, final int value)
+    {
+        final long b = pos * Integer.BYTES;
+        chunks[(int) (b >>> CHUNK_SHIFT)].putInt((int) (b & CHUNK_MASK), value);
+    }
+
+    private static void putFloat(final MappedByteBuffer[] chunks, final long pos, final float value)
+    {
+        final long b = pos * Float.BYTES;
+        chunks[(int) (b >>> CHUNK_SHIFT)].putFloat((int) (b & CHUNK_MASK), value);
+    }
+
+    @Override
+    public void close()
+    {
+        for (MappedByteBuffer chunk: docids)
+            chunk.force();
+        for (MappedByteBuffer chunk: scores)
+            chunk.force();
+        for (MappedByteBuffer chunk: super_docids)
+            chunk.force();
+        for (MappedByteBuffer chunk: super_scores)
+            chunk.force();
+    }
+}
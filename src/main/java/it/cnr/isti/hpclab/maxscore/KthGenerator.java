@@ -0,0 +1,235 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.maxscore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.commons.io.FilenameUtils;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.ParserProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.utility.ApplicationSetup;
+
+import it.cnr.isti.hpclab.ef.TermPartition;
+import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+import it.cnr.isti.hpclab.maxscore.structures.KthScoreIndex;
+
+import me.tongfei.progressbar.ProgressBar;
+import me.tongfei.progressbar.ProgressBarBuilder;
+import me.tongfei.progressbar.ProgressBarStyle;
+
+public class KthGenerator
+{
+    protected static Logger LOGGER = LoggerFactory.getLogger(KthGenerator.class);
+    protected static ProgressBar pb_map;
+
+    private final int num_terms;
+
+    public static final class KthArgs 
+    {
+        // required arguments
+
+        @Option(name = "-index", metaVar = "[String]", required = true, usage = "Input Index")
+        public String index;
+
+        @Option(name = "-wm", metaVar = "[String]", required = true, usage = "Weighting Model")
+        public String wm_name;
+
+        // optional arguments
+
+        @Option(name = "-p", metaVar = "[Number]", required = false, usage = "Parallelism degree")
+        public String parallelism;
+    }
+
+    public KthGenerator(final String src_index_path, final String src_index_prefix, final String wm_name) throws Exception 
+    {
+        // Load input index
+        IndexOnDisk src_index = IndexOnDisk.createIndex(src_index_path, src_index_prefix);
+        if (IndexOnDisk.getLastIndexLoadError() != null) {
+            throw new IllegalArgumentException("Error loading index: " + IndexOnDisk.getLastIndexLoadError());
+        }
+        this.num_terms = src_index.getCollectionStatistics().getNumberOfUniqueTerms();
+        src_index.close();
+        LOGGER.info("Input index contains " + this.num_terms + " terms");
+
+        // check dst kth score index does not exist
+        if (Files.exists(Paths.get(src_index_path + File.separator + src_index_prefix + KthScoreIndex.USUAL_EXTENSION))) {
+            throw new IllegalArgumentException("Index directory " + src_index_path + " already contains an index with prefix " + src_index_prefix);
+        }
+
+        // check wm exists
+        try {
+            @SuppressWarnings("unused")
+            WeightingModel mModel = WeightingModel.create(wm_name);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Problem loading weighting model (" + wm_name + ")");
+        }
+    }
+
+    public static class Command extends org.terrier.applications.CLITool.CLIParsedCLITool 
+    {
+        protected Options getOptions() 
+        {
+            Options options = super.getOptions();
+            options.addOption(org.apache.commons.cli.Option.builder("w").argName("wmodel").hasArgs()
+                    .desc("weighting model").required().build());
+            options.addOption(
+                    org.apache.commons.cli.Option.builder("p").argName("parallel").desc("Parallelism degree").build());
+            return options;
+        }
+
+        @Override
+        public int run(CommandLine line) throws Exception 
+        {
+            KthArgs args = new KthArgs();
+            if (line.hasOption("w"))
+                args.wm_name = line.getOptionValue("w");
+            args.index = ApplicationSetup.TERRIER_INDEX_PATH + "/" + ApplicationSetup.TERRIER_INDEX_PREFIX;
+            if (line.hasOption("p"))
+                args.parallelism = line.getOptionValue("p");
+            execute(args);
+            return 0;
+        }
+
+        @Override
+        public String commandname() 
+        {
+            return "micro-kth-generator";
+        }
+
+        @Override
+        public String helpsummary() 
+        {
+            return "generates a k-th score datastructure";
+        }
+    }
+
+    public static void main(String[] argv)
+    {
+        KthArgs args = new KthArgs();
+        CmdLineParser parser = new CmdLineParser(args, ParserProperties.defaults().withUsageWidth(90));
+        try {
+            parser.parseArgument(argv);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.err);
+            return;
+        }
+        execute(args);
+    }
+    
+    @SuppressWarnings("deprecation")
+    public static void execute(KthArgs args) 
+    {
+        IndexOnDisk.setIndexLoadingProfileAsRetrieval(false);
+        final String src_index_path = FilenameUtils.getFullPath(args.index);
+        final String src_index_prefix = FilenameUtils.getBaseName(args.index);
+        
+        // the weighting model, with its parameters, e.g., BM25(k1=1.2,b=0.4)
+        final String wm_name = args.wm_name;
+        
+        final int num_threads = ( (args.parallelism != null && Integer.parseInt(args.parallelism) > 1) 
+                                        ? Math.min(ForkJoinPool.commonPool().getParallelism(), Integer.parseInt(args.parallelism)) 
+                                        : 1) ;
+                
+        LOGGER.info("Started " + KthGenerator.class.getSimpleName() + " with parallelism " + num_threads + " (out of " + ForkJoinPool.commonPool().getParallelism() + " max parallelism available)");
+        LOGGER.warn("Multi-threaded k-th score generation is experimental - caution advised due to threads competing for available memory! YMMV.");
+
+        long starttime = System.currentTimeMillis();
+
+        try {
+            KthGenerator generator = new KthGenerator(src_index_path, src_index_prefix, wm_name);
+            float[] ksa = new float[generator.num_terms * KthScoreIndex.RANKS.length];
+            
+            TermPartition[] partitions = generator.partition(num_threads);
+            
+            LOGGER.info("Generated " + num_threads + " partitions");
+            for (TermPartition tp: partitions)
+                LOGGER.info(tp.toString());
+            
+            KthMapper mapper = new KthMapper(src_index_path, src_index_prefix, wm_name, ksa);
+
+            pb_map = new ProgressBarBuilder()
+                    .setInitialMax(generator.num_terms)
+                    .setStyle(ProgressBarStyle.COLORFUL_UNICODE_BLOCK)
+                    .setTaskName("K-th score computation")
+                    .setUpdateIntervalMillis(1000)
+                    .showSpeed(new DecimalFormat("#.###"))
+                    .build();
+            final float min_score = (float) Arrays.stream(partitions).parallel().map(mapper).mapToDouble(Float::doubleValue).min().orElse(0.0);
+            pb_map.stop();
+
+            long compresstime = System.currentTimeMillis();
+            LOGGER.info("Parallel k-th score computation completed after " + (compresstime - starttime)/1000 + " seconds");
+                                
+            ByteBuffer b_buf = ByteBuffer.allocate(ksa.length * Float.BYTES);
+            b_buf.asFloatBuffer().put(ksa);
+
+            try (FileChannel out = FileChannel.open(Paths.get(src_index_path + File.separator + src_index_prefix + KthScoreIndex.USUAL_EXTENSION), StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+                out.write(b_buf);
+            }
+            
+            long writetime = System.currentTimeMillis();
+            LOGGER.info("Sequential writing completed after " + (writetime - compresstime)/1000 + " seconds");
+                        
+            writeProperties(src_index_path, src_index_prefix, "kthscore", wm_name, min_score);
+
+            long endtime = System.currentTimeMillis();
+            
+            LOGGER.info("Multi-threaded k-th score generation completed after " + (endtime - starttime)/1000 + " seconds, using "  + num_threads + " threads");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+    
+    static void writeProperties(String indexPath, String indexPrefix, final String structure, final String wm_name, final float min_score) throws IOException
+    {
+        final WeightingModel model = WeightingModel.create(wm_name);
+        IndexOnDisk index = IndexOnDisk.createIndex(indexPath, indexPrefix);
+        index.setIndexProperty("index." + structure + ".class","it.cnr.isti.hpclab.maxscore.structures.KthScoreIndex");
+        index.setIndexProperty("index." + structure + ".parameter_types","org.terrier.structures.Index,java.lang.String");
+        index.setIndexProperty("index." + structure + ".parameter_values","index,structureName");        
+        index.setIndexProperty("index." + structure + ".weighting_model", model.getClass().getName());
+        index.setIndexProperty("index." + structure + ".signature", model.signature());
+        index.setIndexProperty("index." + structure + ".min_score", Float.toString(min_score));
+
+        index.close();
+    }
+
+    public TermPartition[] partition(final int num_threads)
+    {
+        return TermPartition.split(num_terms, num_threads);
+    }
+}
\ No newline at end of file
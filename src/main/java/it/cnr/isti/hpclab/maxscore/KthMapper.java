@@ -0,0 +1,171 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.maxscore;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.Index;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+
+import it.cnr.isti.hpclab.ef.TermPartition;
+
+import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+import it.cnr.isti.hpclab.maxscore.structures.KthScoreIndex;
+
+// This is a function object so it must be stateless
+class KthMapper implements Function<TermPartition,Float>
+{
+    protected static final Logger LOGGER = LoggerFactory.getLogger(KthMapper.class);
+    
+    static final int MAX_RANK = KthScoreIndex.RANKS[KthScoreIndex.RANKS.length - 1];
+
+    private final String src_index_path;
+    private final String src_index_prefix;
+    private final String wm_name;
+    
+    // shared array, with no access control necessary
+    private final float[] ksa;
+    
+    public KthMapper(final String src_index_path, final String src_index_prefix, final String wm_name, final float[] ksa) 
+    {
+        this.src_index_path = src_index_path;
+        this.src_index_prefix = src_index_prefix;
+        this.wm_name = wm_name;
+        this.ksa = ksa;
+    }
+
+    /**
+     * Computes the k-th scores of the terms in the partition.
+     * 
+     * @return the minimum score of the postings in the partition
+     */
+    @Override
+    public Float apply(TermPartition terms) 
+    {
+        int written = 0;
+        float min_score = Float.MAX_VALUE;
+        try {
+            Index src_index = Index.createIndex(src_index_path, src_index_prefix);
+            
+            if (terms.begin() >= terms.end() || terms.begin() < 0 || terms.end() > src_index.getCollectionStatistics().getNumberOfUniqueTerms()) {
+                LOGGER.error("Something wrong with term positions, begin = " + terms.begin() + ", end = " + terms.end());
+                return null;
+            }
+
+            WeightingModel wm_model = WeightingModel.create(wm_name);
+            wm_model.setup(src_index);
+            
+            // opening src index lexicon iterator and moving to the begin term pos
+            Iterator<Entry<String, LexiconEntry>> lex_iter = src_index.getLexicon().iterator();
+            Entry<String, LexiconEntry> lee = null;
+            for (int pos = -1; pos < terms.begin(); pos++)
+                lee = lex_iter.next();
+            LexiconEntry le = null;
+            IterablePosting p = null;
+
+            // min-heap of the highest scores of the current term
+            final float[] heap = new float[MAX_RANK];
+            
+            while (lee != null && written < terms.end() - terms.begin()) {
+                le = lee.getValue();
+                p = src_index.getInvertedIndex().getPostings((BitIndexPointer)lee.getValue());
+                
+                int size = 0;
+                while (p.next() != IterablePosting.END_OF_LIST) {
+                    float score = wm_model.score(1, p.getFrequency(), p.getDocumentLength(), le.getDocumentFrequency(), le.getFrequency());
+                    if (score < min_score)
+                        min_score = score;
+                    if (size < MAX_RANK) {
+                        heap[size] = score;
+                        up(heap, size++);
+                    } else if (score > heap[0]) {
+                        heap[0] = score;
+                        down(heap, size);
+                    }
+                }
+                p.close();
+                store(heap, size, ksa, le.getTermId());
+                
+                lee = lex_iter.hasNext() ? lex_iter.next() : null;
+                KthGenerator.pb_map.step();
+                written++;
+            }
+            src_index.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return min_score;
+    }
+    
+    /**
+     * Stores the k-th scores of a term, sorting the min-heap of its highest scores in decreasing order of score, hence destroying it.
+     * 
+     * @param heap the min-heap of the highest scores of the term
+     * @param size the number of scores in the heap
+     * @param ksa the k-th scores of all terms
+     * @param termid the termid of the term
+     */
+    static void store(final float[] heap, final int size, final float[] ksa, final int termid)
+    {
+        for (int n = size; n > 1; ) {
+            final float min = heap[0];
+            heap[0] = heap[--n];
+            heap[n] = min;
+            down(heap, n);
+        }
+        for (int r = 0; r < KthScoreIndex.RANKS.length; ++r)
+            ksa[termid * KthScoreIndex.RANKS.length + r] = (KthScoreIndex.RANKS[r] <= size) ? heap[KthScoreIndex.RANKS[r] - 1] : 0.0f;
+    }
+    
+    static void up(final float[] heap, int i)
+    {
+        final float e = heap[i];
+        while (i > 0) {
+            final int parent = (i - 1) >>> 1;
+            if (heap[parent] <= e)
+                break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = e;
+    }
+
+    static void down(final float[] heap, final int size)
+    {
+        final float e = heap[0];
+        int i = 0;
+        for (int child = 1; child < size; child = 2 * i + 1) {
+            if (child + 1 < size && heap[child + 1] < heap[child])
+                child++;
+            if (e <= heap[child])
+                break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = e;
+    }
+}
@@ -92,7 +92,7 @@ public class MSGenerator
         // check wm exists
         try {
             @SuppressWarnings("unused")
-            WeightingModel mModel = (WeightingModel) (Class.forName(wm_name).asSubclass(WeightingModel.class).getConstructor().newInstance());
+            WeightingModel mModel = WeightingModel.create(wm_name);
         } catch (Exception e) {
             throw new IllegalArgumentException("Problem loading weighting model (" + wm_name + ")");
         }
@@ -157,7 +157,8 @@ public class MSGenerator
         final String src_index_path = FilenameUtils.getFullPath(args.index);
         final String src_index_prefix = FilenameUtils.getBaseName(args.index);
         
-        final String wm_name = (args.wm_name.indexOf('.') == -1) ? "it.cnr.isti.hpclab.matching.structures.model." + args.wm_name : args.wm_name;
+        // the weighting model, with its parameters, e.g., BM25(k1=1.2,b=0.4)
+        final String wm_name = args.wm_name;
         
         final int num_threads = ( (args.parallelism != null && Integer.parseInt(args.parallelism) > 1) 
                                         ? Math.min(ForkJoinPool.commonPool().getParallelism(), Integer.parseInt(args.parallelism)) 
@@ -203,7 +204,7 @@ public class MSGenerator
             long writetime = System.currentTimeMillis();
             LOGGER.info("Sequential writing completed after " + (writetime - compresstime)/1000 + " seconds");
                         
-            writeProperties(src_index_path, src_index_prefix, wm_name);
+            writeProperties(src_index_path, src_index_prefix, "maxscore", wm_name);
 
             long endtime = System.currentTimeMillis();
             
@@ -213,13 +214,15 @@ public class MSGenerator
         }
     }
     
-    private static void writeProperties(String indexPath, String indexPrefix, String weightingModelClassName) throws IOException
+    static void writeProperties(String indexPath, String indexPrefix, final String structure, final String wm_name) throws IOException
     {
+        final WeightingModel model = WeightingModel.create(wm_name);
         IndexOnDisk index = IndexOnDisk.createIndex(indexPath, indexPrefix);
-        index.setIndexProperty("index.maxscore.class","it.cnr.isti.hpclab.maxscore.structures.MaxScoreIndex");
-        index.setIndexProperty("index.maxscore.parameter_types","org.terrier.structures.Index");
-        index.setIndexProperty("index.maxscore.parameter_values","index");        
-        index.setIndexProperty("index.maxscore.weighting_model", weightingModelClassName);
+        index.setIndexProperty("index." + structure + ".class","it.cnr.isti.hpclab.maxscore.structures.MaxScoreIndex");
+        index.setIndexProperty("index." + structure + ".parameter_types","org.terrier.structures.Index,java.lang.String");
+        index.setIndexProperty("index." + structure + ".parameter_values","index,structureName");        
+        index.setIndexProperty("index." + structure + ".weighting_model", model.getClass().getName());
+        index.setIndexProperty("index." + structure + ".signature", model.signature());
 
         index.close();
     }
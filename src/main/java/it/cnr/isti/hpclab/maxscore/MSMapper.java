@@ -67,7 +67,7 @@ class MSMapper implements Function<TermPartition,Object>
                 return null;
             }
 
-            WeightingModel wm_model = (WeightingModel) (Class.forName(wm_name).asSubclass(WeightingModel.class).getConstructor().newInstance());
+            WeightingModel wm_model = WeightingModel.create(wm_name);
             wm_model.setup(src_index);
             
             // opening src index lexicon iterator and moving to the begin term pos
@@ -0,0 +1,368 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.maxscore;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.commons.io.FilenameUtils;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.ParserProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+import org.terrier.utility.ApplicationSetup;
+
+import it.cnr.isti.hpclab.MatchingConfiguration;
+import it.cnr.isti.hpclab.MatchingConfiguration.Property;
+import it.cnr.isti.hpclab.ef.TermPartition;
+import it.cnr.isti.hpclab.matching.structures.SearchRequest;
+import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+import it.cnr.isti.hpclab.matching.structures.query.QueryParserException;
+import it.cnr.isti.hpclab.matching.structures.query.QuerySource;
+import it.cnr.isti.hpclab.matching.structures.query.QueryTerm;
+import it.cnr.isti.hpclab.matching.structures.query.TextQuerySource;
+import it.cnr.isti.hpclab.maxscore.structures.KthScoreIndex;
+import it.cnr.isti.hpclab.maxscore.structures.ModelStructures;
+import it.cnr.isti.hpclab.maxscore.structures.PairScoreIndex;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+import me.tongfei.progressbar.ProgressBar;
+import me.tongfei.progressbar.ProgressBarBuilder;
+import me.tongfei.progressbar.ProgressBarStyle;
+
+public class PairGenerator
+{
+    protected static Logger LOGGER = LoggerFactory.getLogger(PairGenerator.class);
+    protected static ProgressBar pb_map;
+
+    public static final class PairArgs 
+    {
+        // required arguments
+
+        @Option(name = "-index", metaVar = "[String]", required = true, usage = "Input Index")
+        public String index;
+
+        @Option(name = "-wm", metaVar = "[String]", required = true, usage = "Weighting Model")
+        public String wm_name;
+
+        @Option(name = "-queries", metaVar = "[String]", required = true, usage = "Query log")
+        public String queries;
+
+        // optional arguments
+
+        @Option(name = "-f", metaVar = "[Number]", required = false, usage = "Minimum number of queries containing a pair (default: 2)")
+        public int min_freq = 2;
+
+        @Option(name = "-n", metaVar = "[Number]", required = false, usage = "Maximum number of pairs, the most frequent ones (default: all)")
+        public int max_pairs = Integer.MAX_VALUE;
+
+        @Option(name = "-p", metaVar = "[Number]", required = false, usage = "Parallelism degree")
+        public String parallelism;
+    }
+
+    public static class Command extends org.terrier.applications.CLITool.CLIParsedCLITool 
+    {
+        protected Options getOptions() 
+        {
+            Options options = super.getOptions();
+            options.addOption(org.apache.commons.cli.Option.builder("w").argName("wmodel").hasArgs()
+                    .desc("weighting model").required().build());
+            options.addOption(org.apache.commons.cli.Option.builder("q").argName("queries").hasArgs()
+                    .desc("query log").required().build());
+            options.addOption(
+                    org.apache.commons.cli.Option.builder("f").argName("frequency").hasArgs().desc("Minimum number of queries containing a pair").build());
+            options.addOption(
+                    org.apache.commons.cli.Option.builder("n").argName("pairs").hasArgs().desc("Maximum number of pairs").build());
+            options.addOption(
+                    org.apache.commons.cli.Option.builder("p").argName("parallel").desc("Parallelism degree").build());
+            return options;
+        }
+
+        @Override
+        public int run(CommandLine line) throws Exception 
+        {
+            PairArgs args = new PairArgs();
+            if (line.hasOption("w"))
+                args.wm_name = line.getOptionValue("w");
+            if (line.hasOption("q"))
+                args.queries = line.getOptionValue("q");
+            if (line.hasOption("f"))
+                args.min_freq = Integer.parseInt(line.getOptionValue("f"));
+            if (line.hasOption("n"))
+                args.max_pairs = Integer.parseInt(line.getOptionValue("n"));
+            args.index = ApplicationSetup.TERRIER_INDEX_PATH + "/" + ApplicationSetup.TERRIER_INDEX_PREFIX;
+            if (line.hasOption("p"))
+                args.parallelism = line.getOptionValue("p");
+            execute(args);
+            return 0;
+        }
+
+        @Override
+        public String commandname() 
+        {
+            return "micro-pair-generator";
+        }
+
+        @Override
+        public String helpsummary() 
+        {
+            return "generates a term pair score datastructure from a query log";
+        }
+    }
+
+    public static void main(String[] argv)
+    {
+        PairArgs args = new PairArgs();
+        CmdLineParser parser = new CmdLineParser(args, ParserProperties.defaults().withUsageWidth(90));
+        try {
+            parser.parseArgument(argv);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.err);
+            return;
+        }
+        execute(args);
+    }
+    
+    @SuppressWarnings("deprecation")
+    public static void execute(PairArgs args) 
+    {
+        IndexOnDisk.setIndexLoadingProfileAsRetrieval(false);
+        final String src_index_path = FilenameUtils.getFullPath(args.index);
+        final String src_index_prefix = FilenameUtils.getBaseName(args.index);
+        
+        // the weighting model, with its parameters, e.g., BM25(k1=1.2,b=0.4)
+        final String wm_name = args.wm_name;
+        
+        final int num_threads = ( (args.parallelism != null && Integer.parseInt(args.parallelism) > 1) 
+                                        ? Math.min(ForkJoinPool.commonPool().getParallelism(), Integer.parseInt(args.parallelism)) 
+                                        : 1) ;
+                
+        LOGGER.info("Started " + PairGenerator.class.getSimpleName() + " with parallelism " + num_threads + " (out of " + ForkJoinPool.commonPool().getParallelism() + " max parallelism available)");
+
+        long starttime = System.currentTimeMillis();
+
+        try {
+            // check dst pair score index does not exist
+            if (Files.exists(Paths.get(src_index_path + File.separator + src_index_prefix + PairScoreIndex.USUAL_EXTENSION))) {
+                throw new IllegalArgumentException("Index directory " + src_index_path + " already contains an index with prefix " + src_index_prefix);
+            }
+            
+            IndexOnDisk src_index = IndexOnDisk.createIndex(src_index_path, src_index_prefix);
+            if (IndexOnDisk.getLastIndexLoadError() != null) {
+                throw new IllegalArgumentException("Error loading index: " + IndexOnDisk.getLastIndexLoadError());
+            }
+            
+            final WeightingModel wm_model;
+            try {
+                wm_model = WeightingModel.create(wm_name);
+                wm_model.setup(src_index);
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Problem loading weighting model (" + wm_name + ")");
+            }
+            
+            // Mining the frequent pairs
+            Int2ObjectOpenHashMap<String> terms = new Int2ObjectOpenHashMap<String>();
+            Long2IntOpenHashMap counts = mine(src_index, new TextQuerySource(args.queries), terms);
+            final long[] keys = Arrays.stream(counts.keySet().toLongArray())
+                                      .filter(key -> counts.get(key) >= args.min_freq)
+                                      .boxed()
+                                      .sorted(Comparator.comparingInt((Long key) -> counts.get(key.longValue())).reversed())
+                                      .limit(args.max_pairs)
+                                      .mapToLong(Long::longValue)
+                                      .sorted()
+                                      .toArray();
+            LOGGER.info("Mined " + keys.length + " frequent pairs out of " + counts.size() + " pairs");
+
+            final float min_score = min_score(src_index, src_index_path, src_index_prefix, wm_model, wm_name, num_threads);
+            src_index.close();
+            
+            long minetime = System.currentTimeMillis();
+            LOGGER.info("Sequential pair mining completed after " + (minetime - starttime)/1000 + " seconds");
+            
+            // Computing the k-th scores of the conjunctions 
+            final String[] first_terms = new String[keys.length];
+            final String[] second_terms = new String[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                first_terms[i] = terms.get((int) (keys[i] >>> 32));
+                second_terms[i] = terms.get((int) keys[i]);
+            }
+            float[] psa = new float[keys.length * KthScoreIndex.RANKS.length];
+
+            MatchingConfiguration.set(Property.IGNORE_LOW_IDF_TERMS, "false");
+            MatchingConfiguration.set(Property.MATCHING_ALGORITHM_CLASSNAME, "it.cnr.isti.hpclab.matching.RankedAnd");
+            MatchingConfiguration.set(Property.WEIGHTING_MODEL_CLASSNAME, wm_name);
+            MatchingConfiguration.set(Property.TOP_K, Integer.toString(KthScoreIndex.RANKS[KthScoreIndex.RANKS.length - 1]));
+            
+            if (keys.length > 0) {
+                TermPartition[] partitions = TermPartition.split(keys.length, Math.min(num_threads, keys.length));
+                PairMapper mapper = new PairMapper(src_index_path, src_index_prefix, keys, first_terms, second_terms, psa);
+
+                pb_map = new ProgressBarBuilder()
+                        .setInitialMax(keys.length)
+                        .setStyle(ProgressBarStyle.COLORFUL_UNICODE_BLOCK)
+                        .setTaskName("Pair score computation")
+                        .setUpdateIntervalMillis(1000)
+                        .showSpeed(new DecimalFormat("#.###"))
+                        .build();
+                Arrays.stream(partitions).parallel().map(mapper).count();
+                pb_map.stop();
+            }
+
+            long computetime = System.currentTimeMillis();
+            LOGGER.info("Parallel pair score computation completed after " + (computetime - minetime)/1000 + " seconds");
+                                
+            ByteBuffer b_buf = ByteBuffer.allocate(keys.length * (Long.BYTES + KthScoreIndex.RANKS.length * Float.BYTES));
+            b_buf.asLongBuffer().put(keys);
+            b_buf.position(keys.length * Long.BYTES);
+            b_buf.asFloatBuffer().put(psa);
+            b_buf.rewind();
+
+            try (FileChannel out = FileChannel.open(Paths.get(src_index_path + File.separator + src_index_prefix + PairScoreIndex.USUAL_EXTENSION), StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+                out.write(b_buf);
+            }
+            
+            writeProperties(src_index_path, src_index_prefix, wm_model.getClass().getName(), wm_model.signature(), min_score);
+
+            long endtime = System.currentTimeMillis();
+            
+            LOGGER.info("Pair score generation completed after " + (endtime - starttime)/1000 + " seconds, using "  + num_threads + " threads");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Counts the number of queries containing every pair of distinct query terms appearing in the index.
+     * 
+     * @param index the index
+     * @param source the query log
+     * @param terms filled with the lexicon terms, already processed by the term pipeline, of the term ids appearing in the query log
+     * @return the number of queries containing every pair, by pair key
+     */
+    private static Long2IntOpenHashMap mine(final IndexOnDisk index, final QuerySource source, final Int2ObjectOpenHashMap<String> terms) throws IOException
+    {
+        Long2IntOpenHashMap counts = new Long2IntOpenHashMap();
+        while (source.hasNext()) {
+            final String query = source.next();
+            final SearchRequest srq;
+            try {
+                srq = new SearchRequest(source.getQueryId(), query);
+            } catch (QueryParserException e) {
+                LOGGER.warn("Skipping query " + source.getQueryId() + ": " + e.getMessage());
+                continue;
+            }
+            
+            final int[] termids = Arrays.stream(srq.getQueryTerms())
+                                        .map(QueryTerm::getQueryTerm)
+                                        .mapToInt(term -> {
+                                            LexiconEntry le = index.getLexicon().getLexiconEntry(term);
+                                            if (le == null)
+                                                return -1;
+                                            terms.put(le.getTermId(), term);
+                                            return le.getTermId();
+                                        })
+                                        .filter(termid -> termid >= 0)
+                                        .distinct()
+                                        .toArray();
+            for (int i = 0; i < termids.length; i++)
+                for (int j = i + 1; j < termids.length; j++)
+                    counts.addTo(PairScoreIndex.key(termids[i], termids[j]), 1);
+        }
+        return counts;
+    }
+    
+    /**
+     * Returns the minimum score of any posting in the index. The minimum score computed by the {@link KthGenerator} 
+     * for the same weighting model is reused, if any, otherwise the postings are scored in parallel over term partitions.
+     */
+    private static float min_score(final IndexOnDisk index, final String src_index_path, final String src_index_prefix, final WeightingModel wm_model, final String wm_name, final int num_threads)
+    {
+        final String kth_structure = ModelStructures.find(index, "kthscore", wm_model);
+        if (kth_structure != null && index.getIndexProperty("index." + kth_structure + ".min_score", null) != null) {
+            LOGGER.info("Reusing the minimum score of the " + kth_structure + " index structure");
+            return Float.parseFloat(index.getIndexProperty("index." + kth_structure + ".min_score", null));
+        }
+        
+        final int num_terms = index.getCollectionStatistics().getNumberOfUniqueTerms();
+        if (num_terms == 0)
+            return 0.0f;
+        TermPartition[] partitions = TermPartition.split(num_terms, Math.min(num_threads, num_terms));
+        return (float) Arrays.stream(partitions).parallel().mapToDouble(terms -> min_score(src_index_path, src_index_prefix, wm_name, terms)).min().orElse(0.0);
+    }
+    
+    /**
+     * Computes the minimum score of the postings of the terms in a partition.
+     */
+    private static float min_score(final String src_index_path, final String src_index_prefix, final String wm_name, final TermPartition terms)
+    {
+        float min_score = Float.MAX_VALUE;
+        try {
+            Index src_index = Index.createIndex(src_index_path, src_index_prefix);
+            WeightingModel wm_model = WeightingModel.create(wm_name);
+            wm_model.setup(src_index);
+            
+            for (int pos = terms.begin(); pos < terms.end(); pos++) {
+                LexiconEntry le = src_index.getLexicon().getIthLexiconEntry(pos).getValue();
+                IterablePosting p = src_index.getInvertedIndex().getPostings((BitIndexPointer) le);
+                while (p.next() != IterablePosting.END_OF_LIST) 
+                    min_score = Math.min(min_score, wm_model.score(1, p.getFrequency(), p.getDocumentLength(), le.getDocumentFrequency(), le.getFrequency()));
+                p.close();
+            }
+            src_index.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return min_score;
+    }
+    
+    private static void writeProperties(String indexPath, String indexPrefix, String weightingModelClassName, final String signature, final float min_score) throws IOException
+    {
+        IndexOnDisk index = IndexOnDisk.createIndex(indexPath, indexPrefix);
+        index.setIndexProperty("index.pairscore.class","it.cnr.isti.hpclab.maxscore.structures.PairScoreIndex");
+        index.setIndexProperty("index.pairscore.parameter_types","org.terrier.structures.Index,java.lang.String");
+        index.setIndexProperty("index.pairscore.parameter_values","index,structureName");        
+        index.setIndexProperty("index.pairscore.weighting_model", weightingModelClassName);
+        index.setIndexProperty("index.pairscore.signature", signature);
+        index.setIndexProperty("index.pairscore.min_score", Float.toString(min_score));
+
+        index.close();
+    }
+}
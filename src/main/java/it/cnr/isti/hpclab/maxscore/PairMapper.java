@@ -0,0 +1,93 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.maxscore;
+
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.structures.Index;
+
+import it.cnr.isti.hpclab.ef.TermPartition;
+
+import it.cnr.isti.hpclab.manager.Manager;
+import it.cnr.isti.hpclab.manager.RankedManager;
+import it.cnr.isti.hpclab.matching.structures.ResultSet;
+import it.cnr.isti.hpclab.matching.structures.SearchRequest;
+import it.cnr.isti.hpclab.matching.structures.query.QueryTerm;
+import it.cnr.isti.hpclab.maxscore.structures.KthScoreIndex;
+
+// This is a function object so it must be stateless
+class PairMapper implements Function<TermPartition,Object>
+{
+    protected static final Logger LOGGER = LoggerFactory.getLogger(PairMapper.class);
+    
+    private final String src_index_path;
+    private final String src_index_prefix;
+    
+    // shared arrays, with no access control necessary
+    // the terms are the lexicon terms of the pairs, already processed by the term pipeline
+    private final long[] keys;
+    private final String[] first_terms;
+    private final String[] second_terms;
+    private final float[] psa;
+    
+    public PairMapper(final String src_index_path, final String src_index_prefix, final long[] keys, final String[] first_terms, final String[] second_terms, final float[] psa) 
+    {
+        this.src_index_path = src_index_path;
+        this.src_index_prefix = src_index_prefix;
+        this.keys = keys;
+        this.first_terms = first_terms;
+        this.second_terms = second_terms;
+        this.psa = psa;
+    }
+
+    /**
+     * Computes the k-th scores of the conjunctions of the pairs in the partition, 
+     * processing every pair as a two-term query with the matching algorithm and weighting model of the current configuration.
+     * The terms of the pairs are the lexicon terms, and they are not processed again by the term pipeline, 
+     * otherwise a term could change (e.g., stemming "agre", the stem of "agreed", gives "agr") and the k-th score would not be the one of the pair.
+     */
+    @Override
+    public Object apply(TermPartition pairs) 
+    {
+        try {
+            Index src_index = Index.createIndex(src_index_path, src_index_prefix);
+            
+            if (pairs.begin() >= pairs.end() || pairs.begin() < 0 || pairs.end() > keys.length) {
+                LOGGER.error("Something wrong with pair positions, begin = " + pairs.begin() + ", end = " + pairs.end());
+                return null;
+            }
+
+            Manager manager = new RankedManager(src_index);
+            
+            for (int pos = pairs.begin(); pos < pairs.end(); pos++) {
+                ResultSet rs = manager.run(new SearchRequest(Integer.toString(pos), new QueryTerm(first_terms[pos]), new QueryTerm(second_terms[pos])));
+                for (int r = 0; r < KthScoreIndex.RANKS.length; ++r)
+                    psa[pos * KthScoreIndex.RANKS.length + r] = (KthScoreIndex.RANKS[r] <= rs.size()) ? rs.scores()[KthScoreIndex.RANKS[r] - 1] : 0.0f;
+                PairGenerator.pb_map.step();
+            }
+            src_index.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.maxscore;
+
+import java.util.Arrays;
+
+/**
+ * This class partitions a posting list into variable-sized blocks, trying to minimise the sum of the block-max errors,
+ * i.e., the sum over all postings of the difference between the block max score and the posting score 
+ * (see the <a href="https://dl.acm.org/citation.cfm?id=3080780">Faster BlockMax WAND with Variable-sized Blocks</a> paper).
+ * 
+ * Starting from blocks of single postings, the two adjacent blocks whose merge increases the error the least are merged,
+ * until the requested number of blocks is reached. The error increase of a merge depends only on the lengths and the
+ * max scores of the two blocks, so every merge costs a logarithmic time.
+ */
+public class VariableBlockPartitioner 
+{
+    private int[]    len   = new int[0];
+    private float[]  max   = new float[0];
+    private int[]    prev  = new int[0];
+    private int[]    next  = new int[0];
+    
+    // indexed min heap of the blocks, keyed by the cost of merging a block with the following one
+    private double[] cost  = new double[0];
+    private int[]    heap  = new int[0];
+    private int[]    pos   = new int[0];
+    private int      size;
+    
+    /**
+     * Partitions the scores of a posting list into blocks.
+     * 
+     * @param scores the scores of the postings, in docid order
+     * @param n the number of postings
+     * @param num_blocks the number of blocks to generate
+     * @return the number of postings in each block, in docid order
+     */
+    public int[] partition(final float[] scores, final int n, final int num_blocks)
+    {
+        if (n <= num_blocks) {
+            int[] lengths = new int[n];
+            Arrays.fill(lengths, 1);
+            return lengths;
+        }
+        ensureCapacity(n);
+        
+        for (int i = 0; i < n; ++i) {
+            len[i]  = 1;
+            max[i]  = scores[i];
+            prev[i] = i - 1;
+            next[i] = (i == n - 1) ? -1 : i + 1;
+        }
+        size = 0;
+        for (int i = 0; i < n - 1; ++i) {
+            cost[i] = merge_cost(i, i + 1);
+            pos[i] = size;
+            heap[size++] = i;
+        }
+        pos[n - 1] = -1;
+        for (int i = size / 2 - 1; i >= 0; --i)
+            down(i);
+        
+        int blocks = n;
+        while (blocks > num_blocks) {
+            final int i = heap[0];
+            remove(i);
+            final int j = next[i];
+            
+            // block i absorbs block j
+            len[i] += len[j];
+            max[i] = Math.max(max[i], max[j]);
+            next[i] = next[j];
+            if (next[j] != -1)
+                prev[next[j]] = i;
+            if (pos[j] != -1)
+                remove(j);
+            blocks--;
+            
+            if (next[i] != -1)
+                insert(i, merge_cost(i, next[i]));
+            if (prev[i] != -1)
+                update(prev[i], merge_cost(prev[i], i));
+        }
+        
+        int[] lengths = new int[blocks];
+        for (int i = 0, b = 0; i != -1; i = next[i])
+            lengths[b++] = len[i];
+        return lengths;
+    }
+
+    /* The error increase when merging block i with block j: the postings sums do not change, and cancel out */
+    private double merge_cost(final int i, final int j)
+    {
+        return (double) (len[i] + len[j]) * Math.max(max[i], max[j]) - (double) len[i] * max[i] - (double) len[j] * max[j];
+    }
+    
+    private void ensureCapacity(final int n)
+    {
+        if (len.length < n) {
+            len  = new int[n];
+            max  = new float[n];
+            prev = new int[n];
+            next = new int[n];
+            cost = new double[n];
+            heap = new int[n];
+            pos  = new int[n];
+        }
+    }
+
+    private void insert(final int i, final double c)
+    {
+        cost[i] = c;
+        pos[i] = size;
+        heap[size++] = i;
+        up(pos[i]);
+    }
+    
+    private void update(final int i, final double c)
+    {
+        final double old = cost[i];
+        cost[i] = c;
+        if (c < old)
+            up(pos[i]);
+        else
+            down(pos[i]);
+    }
+    
+    private void remove(final int i)
+    {
+        final int p = pos[i];
+        final int last = heap[--size];
+        pos[i] = -1;
+        if (p == size)
+            return;
+        heap[p] = last;
+        pos[last] = p;
+        up(p);
+        down(pos[last]);
+    }
+    
+    private void up(int p)
+    {
+        final int e = heap[p];
+        while (p > 0) {
+            final int parent = (p - 1) >>> 1;
+            if (cost[heap[parent]] <= cost[e])
+                break;
+            heap[p] = heap[parent];
+            pos[heap[p]] = p;
+            p = parent;
+        }
+        heap[p] = e;
+        pos[e] = p;
+    }
+    
+    private void down(int p)
+    {
+        final int e = heap[p];
+        while (true) {
+            int child = 2 * p + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && cost[heap[child + 1]] < cost[heap[child]])
+                child++;
+            if (cost[e] <= cost[heap[child]])
+                break;
+            heap[p] = heap[child];
+            pos[heap[p]] = p;
+            p = child;
+        }
+        heap[p] = e;
+        pos[e] = p;
+    }
+}
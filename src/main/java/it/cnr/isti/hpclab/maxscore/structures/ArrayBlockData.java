@@ -0,0 +1,132 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.maxscore.structures;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The blocks copied into on-heap arrays, limited to 2^31 blocks. The handle of a term is the global position of its first block.
+ */
+class ArrayBlockData implements BlockData
+{
+	private final long[]  mOffsetsArray;
+	private final int[]   mDocidsArray;
+	private final float[] mScoresArray;
+	
+	ArrayBlockData(final long[] offsets, final int[] docids, final float[] scores)
+	{
+		this.mOffsetsArray = offsets;
+		this.mDocidsArray  = docids;
+		this.mScoresArray  = scores;
+	}
+
+	/**
+	 * Summarises the blocks of every term in super-blocks of {@link BlockEnumerator#SUPER_BLOCK_SIZE} consecutive blocks,
+	 * storing the last docid and the max score of every super-block.
+	 * 
+	 * @param data the blocks
+	 * @param numEntries the number of terms
+	 * @return the super-blocks
+	 */
+	static ArrayBlockData summarise(final BlockData data, final int numEntries)
+	{
+		final long[] offsets = new long[numEntries + 2];
+		offsets[0] = data.offset(0) * BlockEnumerator.SUPER_BLOCK_SIZE;
+		int num_supers = 0;
+		for (int t = 0; t < numEntries; ++t) {
+			offsets[t + 1] = num_supers;
+			num_supers += (int) ((data.offset(t + 2) - data.offset(t + 1) + BlockEnumerator.SUPER_BLOCK_SIZE - 1) >>> BlockEnumerator.SUPER_SHIFT);
+		}
+		offsets[numEntries + 1] = num_supers;
+		
+		final int[] docids = new int[num_supers];
+		final float[] scores = new float[num_supers];
+		int j = 0;
+		for (int t = 0; t < numEntries; ++t) {
+			final long handle = data.handle(t);
+			final int num_blocks = (int) (data.offset(t + 2) - data.offset(t + 1));
+			for (int b = 0; b < num_blocks; b += BlockEnumerator.SUPER_BLOCK_SIZE) {
+				final int end = Math.min(num_blocks, b + BlockEnumerator.SUPER_BLOCK_SIZE);
+				float max = data.score(handle, b);
+				for (int i = b + 1; i < end; ++i)
+					max = Math.max(max, data.score(handle, i));
+				docids[j] = data.last(handle, end - 1);
+				scores[j] = max;
+				j++;
+			}
+		}
+		return new ArrayBlockData(offsets, docids, scores);
+	}
+
+	@SuppressWarnings("resource")
+	static ArrayBlockData load(final String filenamePrefix) throws IOException
+	{
+		FileChannel offsetsFC = new FileInputStream(new File(filenamePrefix + BlockMaxScoreIndex.OFFSET_EXT)).getChannel();
+		LongBuffer offsetsBuffer = offsetsFC.map(FileChannel.MapMode.READ_ONLY, 0, offsetsFC.size()).asLongBuffer();
+		long[] offsets = new long[offsetsBuffer.remaining()];
+		offsetsBuffer.get(offsets);
+		offsetsFC.close();
+
+		FileChannel docidsFC = new FileInputStream(new File(filenamePrefix + BlockMaxScoreIndex.DOCID_EXT)).getChannel();
+		IntBuffer docidsBuffer = docidsFC.map(FileChannel.MapMode.READ_ONLY, 0, docidsFC.size()).asIntBuffer();
+		int[] docids = new int[docidsBuffer.remaining()];
+		docidsBuffer.get(docids);
+		docidsFC.close();
+
+		FileChannel scoresFC = new FileInputStream(new File(filenamePrefix + BlockMaxScoreIndex.SCORE_EXT)).getChannel();
+		FloatBuffer scoresBuffer = scoresFC.map(FileChannel.MapMode.READ_ONLY, 0, scoresFC.size()).asFloatBuffer();
+		float[] scores = new float[scoresBuffer.remaining()];
+		scoresBuffer.get(scores);
+		scoresFC.close();
+		
+		return new ArrayBlockData(offsets, docids, scores);
+	}
+
+	@Override
+	public long offset(final int i)
+	{
+		return mOffsetsArray[i];
+	}
+
+	@Override
+	public long handle(final int termid)
+	{
+		return mOffsetsArray[termid + 1];
+	}
+
+	@Override
+	public int last(final long handle, final int pos)
+	{
+		return mDocidsArray[(int) handle + pos];
+	}
+
+	@Override
+	public float score(final long handle, final int pos)
+	{
+		return mScoresArray[(int) handle + pos];
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.maxscore.structures;
+
+/**
+ * The storage of the blocks of a {@link BlockMaxScoreIndex}, i.e., the offsets of the terms, and the last docid and the max score of every block.
+ * The blocks of a term are accessed through an opaque handle, given by {@link #handle(int)}, and the position of the block in the term.
+ */
+interface BlockData
+{
+	/**
+	 * Returns an entry of the offsets file, i.e., the block size (entry 0), the global position of the first block of every term (entries 1 to number of terms)
+	 * and the total number of blocks (last entry).
+	 * 
+	 * @param i the entry
+	 * @return the value of the entry
+	 */
+	long offset(int i);
+	
+	/**
+	 * @param termid the term id
+	 * @return the handle of the blocks of the term
+	 */
+	long handle(int termid);
+	
+	/**
+	 * @param handle the handle of the blocks of a term
+	 * @param pos the position of the block in the term
+	 * @return the last docid of the block
+	 */
+	int last(long handle, int pos);
+
+	/**
+	 * @param handle the handle of the blocks of a term
+	 * @param pos the position of the block in the term
+	 * @return the max score of the block, or an upper bound of it
+	 */
+	float score(long handle, int pos);
+}
@@ -25,24 +25,42 @@ import java.util.NoSuchElementException;
 
 public class BlockEnumerator 
 {	
-	private final int[] mDocids;
-	private final float[] mScores;
+	static final int SUPER_SHIFT = 6;
+	/** The number of consecutive blocks summarised by a super-block. */
+	public static final int SUPER_BLOCK_SIZE = 1 << SUPER_SHIFT;
+	
+	private final BlockData mData;
+	private final BlockData mSuper;
 	private final float weight;
 	
-	private final int mBegin;
+	private final long mBegin;
+	private final long mSuperBegin;
 	private int mPos;
 	private final int mNumBlocks;
+	private final int mNumSupers;
 		
 	public BlockEnumerator(long offset, int numBlocks, final int[] docids, final float[] scores, final float weight) throws IOException
 	{
-		this.mDocids = docids;
-		this.mScores = scores;
+		this(new ArrayBlockData(new long[] {0, offset, offset + numBlocks}, docids, scores), offset, numBlocks, weight);
+	}
+	
+	private BlockEnumerator(final ArrayBlockData data, final long begin, final int numBlocks, final float weight)
+	{
+		this(data, begin, numBlocks, ArrayBlockData.summarise(data, 1), 0, weight);
+	}
+	
+	BlockEnumerator(final BlockData data, final long begin, final int numBlocks, final BlockData summary, final long superBegin, final float weight)
+	{
+		this.mData   = data;
+		this.mSuper  = summary;
 		this.weight  = weight;
 		
-		this.mBegin = (int) offset;
+		this.mBegin = begin;
+		this.mSuperBegin = superBegin;
 		// this.mPos = 0;
 		this.mPos = -1;
-		this.mNumBlocks = numBlocks;		
+		this.mNumBlocks = numBlocks;
+		this.mNumSupers = (numBlocks + SUPER_BLOCK_SIZE - 1) >>> SUPER_SHIFT;
 	}
 	
 	public boolean hasNext()
@@ -59,32 +77,99 @@ public class BlockEnumerator
 		}
 	}
 	
+    /**
+     * Moves to the first block, starting from the current one, whose last docid is not smaller than the given docid, 
+     * or beyond the last block if there is no such block. The block is found by exponential search followed by binary search.
+     * 
+     * @param docid the docid to move to
+     */
     public void move(long docid)
     {
     	if (mPos == -1)
     		mPos++;
-    	while (last() < docid) {
-    		if (mPos == mNumBlocks) { // We move beyond the last block, what we are looking for (docid) can't be found.
-    			return;
-    		}
+    	if (last() >= docid)
+    		return;
+    	mPos = gallop(mData, mBegin, mPos, mNumBlocks, docid);
+    }
+    
+    /**
+     * Moves to the first block of the first super-block, starting from the current one, whose last docid is not smaller than the given docid,
+     * or beyond the last block if there is no such super-block. The current block does not change if it belongs to that super-block already.
+     * 
+     * @param docid the docid to move to
+     */
+    public void moveSuper(long docid)
+    {
+    	if (mPos == -1)
     		mPos++;
-    	}    		
+    	if (superLast() >= docid)
+    		return;
+    	final int s = gallop(mSuper, mSuperBegin, mPos >>> SUPER_SHIFT, mNumSupers, docid);
+    	mPos = (s == mNumSupers) ? mNumBlocks : s << SUPER_SHIFT;
+    }
+    
+    /**
+     * Returns the first position after <code>from</code> whose last docid is not smaller than the given docid, or <code>end</code>.
+     * The last docid at <code>from</code> must be smaller than the given docid. 
+     */
+    private static int gallop(final BlockData data, final long begin, final int from, final int end, final long docid)
+    {
+    	int lo = from;
+    	int hi = from + 1;
+    	for (int step = 1; hi < end && data.last(begin, hi) < docid; step <<= 1) {
+    		lo = hi;
+    		hi = lo + (step << 1);
+    	}
+    	if (hi > end)
+    		hi = end;
+    	while (hi - lo > 1) {
+    		final int mid = (lo + hi) >>> 1;
+    		if (data.last(begin, mid) < docid)
+    			lo = mid;
+    		else
+    			hi = mid;
+    	}
+    	return hi;
     }
     
     public int last() 
     {
     	if (mPos < mNumBlocks)
-    		return mDocids[mBegin + mPos];
+    		return mData.last(mBegin, mPos);
     	return Integer.MAX_VALUE;
     }
 
     public float score()
     {
     	if (mPos < mNumBlocks)
-    		return weight * mScores[mBegin + mPos];
+    		return weight * mData.score(mBegin, mPos);
     	return 0.0f;
     	// throw new NoSuchElementException("Can't get score when END_OF_BLOCK has been reached");
     }
+
+    /**
+     * Return the last docid of the super-block containing the current block.
+     * 
+     * @return the last docid of the current super-block
+     */
+    public int superLast() 
+    {
+    	if (mPos < mNumBlocks)
+    		return mSuper.last(mSuperBegin, mPos >>> SUPER_SHIFT);
+    	return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Return the max score of the blocks in the super-block containing the current block.
+     * 
+     * @return the max score of the current super-block
+     */
+    public float superScore()
+    {
+    	if (mPos < mNumBlocks)
+    		return weight * mSuper.score(mSuperBegin, mPos >>> SUPER_SHIFT);
+    	return 0.0f;
+    }
 	
     /**
      * Return the number of blocks.
@@ -102,7 +187,8 @@ public class BlockEnumerator
 	{
 		if (this.mNumBlocks == 0)
 			return "[]";
-		return "[" + mDocids[mBegin + mPos] + "," + weight * mScores[mBegin + mPos] + "]";
+		final int pos = Math.max(mPos, 0);
+		return "[" + mData.last(mBegin, pos) + "," + weight * mData.score(mBegin, pos) + "]";
 		/*
 		StringBuffer buf = new StringBuffer();
 		buf.append("[");
@@ -125,4 +211,14 @@ public class BlockEnumerator
 	{
 		this.mPos = -1;
 	}
+	
+	/**
+	 * Return a new enumerator over the same blocks, positioned before the first block.
+	 * 
+	 * @return a copy of this enumerator
+	 */
+	public BlockEnumerator copy()
+	{
+		return new BlockEnumerator(mData, mBegin, mNumBlocks, mSuper, mSuperBegin, weight);
+	}
 }
\ No newline at end of file
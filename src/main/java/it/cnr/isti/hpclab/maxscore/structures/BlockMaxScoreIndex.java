@@ -21,17 +21,15 @@
 package it.cnr.isti.hpclab.maxscore.structures;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
-import java.nio.LongBuffer;
-import java.nio.channels.FileChannel;
 
 import org.apache.log4j.Logger;
 import org.terrier.structures.Index;
 import org.terrier.structures.IndexOnDisk;
 
+import it.cnr.isti.hpclab.MatchingConfiguration;
+import it.cnr.isti.hpclab.MatchingConfiguration.Property;
+
 public class BlockMaxScoreIndex
 {
 	protected static final Logger logger = Logger.getLogger(BlockMaxScoreIndex.class);
@@ -39,52 +37,110 @@ public class BlockMaxScoreIndex
 	public static final String DOCID_EXT  = ".docids";
 	public static final String SCORE_EXT  = ".scores";
 	public static final String OFFSET_EXT = ".offsets";
+	/** The infix of the files of the super-block summary, e.g., <tt>.bmw.super.docids</tt>. */
+	public static final String SUPER_EXT  = ".super";
 		
 	public static final String STRUCTURE_NAME = ".bmw";
+	public static final String VARIABLE_STRUCTURE_NAME = ".vbmw";
+	
+	/** How the blocks are kept in memory. */
+	public enum Layout
+	{
+		/** Copied into on-heap arrays, at most 2^31 blocks. */
+		ARRAY,
+		/** Read from the memory-mapped files, without any copy. */
+		MAPPED,
+		/** Compressed on-heap, with bit-packed docids and quantized upper bounds of the block max scores. */
+		COMPRESSED
+	}
 	
 	/** The number of entries in the offsets file minus 2, equal to the number of terms in lexicon.*/
 	private int numEntries;
-	/** The size of a block, in terms of postings. */
+	/** The size of a block, in terms of postings (the average size, with variable-sized blocks). */
 	private int blockSize;
-	/** The total number of blocks stored, i.e., the total number of docids and scores stored, i.e., the size of mDocids and mScores arrays. */
+	/** The total number of blocks stored, i.e., the total number of docids and scores stored. */
 	private long totalBlocks;
 		
-	private long[]  mOffsetsArray;
-	private int[]   mDocidsArray;
-	private float[] mScoresArray;
+	private BlockData mData;
+	/** The summary of the blocks, in super-blocks of {@link BlockEnumerator#SUPER_BLOCK_SIZE} blocks, stored in the files with the {@link #SUPER_EXT} infix. */
+	private BlockData mSuper;
 	
 	public BlockMaxScoreIndex(final Index index) throws IOException
 	{
-		createBlockMaxScoreIndex(((IndexOnDisk)index).getPath() + File.separator + ((IndexOnDisk)index).getPrefix() + STRUCTURE_NAME);
+		this(index, "blockmaxscore");
+	}
+
+	/**
+	 * Loads the fixed-sized ("blockmaxscore" or "blockmaxscore-b") or the variable-sized ("vblockmaxscore") block max score index, 
+	 * with the layout specified by the <tt>micro.blockmax.layout</tt> property.
+	 * 
+	 * @param index the index
+	 * @param structureName the name of the index structure
+	 * @throws IOException if the files can't be read
+	 */
+	public BlockMaxScoreIndex(final Index index, final String structureName) throws IOException
+	{
+		this(index, structureName, Layout.valueOf(MatchingConfiguration.get(Property.BLOCKMAX_LAYOUT).toUpperCase()));
 	}
 	
-	@SuppressWarnings("resource")
-	private void createBlockMaxScoreIndex(String filenamePrefix) throws IOException
+	/**
+	 * Loads the fixed-sized ("blockmaxscore" or "blockmaxscore-b") or the variable-sized ("vblockmaxscore") block max score index, with the given layout.
+	 * 
+	 * @param index the index
+	 * @param structureName the name of the index structure
+	 * @param layout the layout of the blocks in memory
+	 * @throws IOException if the files can't be read
+	 */
+	public BlockMaxScoreIndex(final Index index, final String structureName, final Layout layout) throws IOException
 	{
-		FileChannel offsetsFC = new FileInputStream(new File(filenamePrefix + OFFSET_EXT)).getChannel();
-		LongBuffer offsetsBuffer = offsetsFC.map(FileChannel.MapMode.READ_ONLY, 0, offsetsFC.size()).asLongBuffer();
-		mOffsetsArray = new long[offsetsBuffer.remaining()];
-		offsetsBuffer.get(mOffsetsArray);
-		offsetsFC.close();
-
-		FileChannel docidsFC = new FileInputStream(new File(filenamePrefix + DOCID_EXT)).getChannel();
-		IntBuffer docidsBuffer = docidsFC.map(FileChannel.MapMode.READ_ONLY, 0, docidsFC.size()).asIntBuffer();
-		mDocidsArray = new int[docidsBuffer.remaining()];
-		docidsBuffer.get(mDocidsArray);
-		docidsFC.close();
-
-		FileChannel scoresFC = new FileInputStream(new File(filenamePrefix + SCORE_EXT)).getChannel();
-		FloatBuffer scoresBuffer = scoresFC.map(FileChannel.MapMode.READ_ONLY, 0, scoresFC.size()).asFloatBuffer();
-		mScoresArray = new float[scoresBuffer.remaining()];
-		scoresBuffer.get(mScoresArray);
-		scoresFC.close();
-
-		// numEntries = (int) (mOffsetsFC.size() / (long)LONG_BYTES) - 2;
-		this.numEntries = mOffsetsArray.length - 2;
-		// blockSize = (int) mOffsetsBuffer.get();
-		this.blockSize = (int) mOffsetsArray[0];
-		// totalBlocks = mOffsetsBuffer.get(numEntries + 1);
-		this.totalBlocks = mOffsetsArray[numEntries + 1];
+		createBlockMaxScoreIndex(((IndexOnDisk)index).getPath() + File.separator + ((IndexOnDisk)index).getPrefix() + filenameInfix(structureName), layout);
+	}
+	
+	/**
+	 * Returns the infix of the files of a block max score index structure: <tt>.bmw</tt> for "blockmaxscore", <tt>.vbmw</tt> for "vblockmaxscore",
+	 * and <tt>.bmw-b</tt> for the "blockmaxscore-b" structures, storing the additional block sizes <tt>b</tt>.
+	 * The structures of the other weighting models (see {@link ModelStructures}) add their model suffix, e.g., <tt>.bmw-m1</tt> or <tt>.bmw-b-m1</tt>.
+	 * 
+	 * @param structureName the name of the index structure
+	 * @return the infix of the files of the structure
+	 */
+	public static String filenameInfix(final String structureName)
+	{
+		if (structureName.startsWith("vblockmaxscore"))
+			return VARIABLE_STRUCTURE_NAME + structureName.substring("vblockmaxscore".length());
+		if (structureName.startsWith("blockmaxscore-"))
+			return STRUCTURE_NAME + structureName.substring("blockmaxscore".length());
+		return STRUCTURE_NAME;
+	}
+	
+	private void createBlockMaxScoreIndex(final String filenamePrefix, final Layout layout) throws IOException
+	{
+		this.numEntries = (int) (new File(filenamePrefix + OFFSET_EXT).length() / Long.BYTES) - 2;
+		
+		switch (layout) {
+		case ARRAY:
+			mData = ArrayBlockData.load(filenamePrefix);
+			break;
+		case MAPPED:
+			mData = new MappedBlockData(filenamePrefix);
+			break;
+		case COMPRESSED:
+			mData = new CompressedBlockData(new MappedBlockData(filenamePrefix), numEntries);
+			break;
+		}
+		
+		final String superPrefix = filenamePrefix + SUPER_EXT;
+		if (new File(superPrefix + OFFSET_EXT).exists()) {
+			mSuper = (layout == Layout.ARRAY) ? ArrayBlockData.load(superPrefix) : new MappedBlockData(superPrefix);
+		} else {
+			// generated before the summary was stored
+			logger.warn("No super-block summary in " + superPrefix + ", summarising all blocks (regenerate the block max score index to avoid it)");
+			mSuper = ArrayBlockData.summarise(mData, numEntries);
+		}
+		
+		this.blockSize = (int) mData.offset(0);
+		this.totalBlocks = mData.offset(numEntries + 1);
+		logger.info("Loaded " + totalBlocks + " blocks with the " + layout.name().toLowerCase() + " layout");
 	}
 
 	public BlockEnumerator get(final int i) throws IOException
@@ -95,10 +151,10 @@ public class BlockMaxScoreIndex
 	public BlockEnumerator get(final int i, final float weight) throws IOException
 	{
 		int num_blocks = (int) (( i == numEntries - 1 )
-			  	   ? totalBlocks - mOffsetsArray[i + 1]
-		           : mOffsetsArray[i + 2] - mOffsetsArray[i + 1]);
+			  	   ? totalBlocks - mData.offset(i + 1)
+		           : mData.offset(i + 2) - mData.offset(i + 1));
 
-		return new BlockEnumerator(mOffsetsArray[i + 1], num_blocks, mDocidsArray, mScoresArray, weight);
+		return new BlockEnumerator(mData, mData.handle(i), num_blocks, mSuper, mSuper.handle(i), weight);
 	}
 	
 	public int getBlockSize()
@@ -0,0 +1,207 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.maxscore.structures;
+
+/**
+ * The blocks compressed on-heap at load time, from any other block data.
+ * The blocks of every term are split in groups of {@link #GROUP_SIZE} blocks.
+ * In a group, the last docids are stored as deltas from the first last docid of the group, bit packed with the smallest width fitting the largest delta,
+ * and the max scores are quantized on 8 bits w.r.t. the max score of the group. Quantization rounds up, hence the scores returned are upper bounds of the
+ * original max scores, and the block max algorithms remain safe.
+ * Every block is accessed in constant time by its position, as required by {@link BlockEnumerator#move(long)}.
+ * The handle of a term is the index of its first group.
+ */
+class CompressedBlockData implements BlockData
+{
+	private static final int GROUP_SHIFT = 6;
+	static final int GROUP_SIZE = 1 << GROUP_SHIFT;
+	private static final int GROUP_MASK = GROUP_SIZE - 1;
+	private static final int LEVELS = 255;
+
+	/** The offsets, as in the offsets file. */
+	private final long[]  mOffsets;
+	/** The index of the first group of every term. */
+	private final int[]   mTermGroups;
+
+	/** The first last docid of every group. */
+	private final int[]   mGroupBases;
+	/** The bit width of the docid deltas of every group. */
+	private final byte[]  mGroupWidths;
+	/** The bit offset of the docid deltas of every group in mBits. */
+	private final long[]  mGroupBitOffsets;
+	/** The index of the first block of every group in mScores. */
+	private final int[]   mGroupBlocks;
+	/** The dequantization scale of every group. */
+	private final float[] mGroupScales;
+	
+	private final long[]  mBits;
+	private final byte[]  mScores;
+
+	CompressedBlockData(final BlockData source, final int numEntries) 
+	{
+		final long totalBlocks = source.offset(numEntries + 1);
+		if (totalBlocks > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many blocks (" + totalBlocks + ") for the compressed layout, use the mapped layout");
+		
+		mOffsets = new long[numEntries + 2];
+		for (int i = 0; i < mOffsets.length; ++i)
+			mOffsets[i] = source.offset(i);
+		
+		// First pass: count the groups and the bits
+		mTermGroups = new int[numEntries];
+		int num_groups = 0;
+		long num_bits = 0;
+		for (int t = 0; t < numEntries; ++t) {
+			mTermGroups[t] = num_groups;
+			final long handle = source.handle(t);
+			final int num_blocks = numBlocks(t);
+			for (int g = 0; g < num_blocks; g += GROUP_SIZE) {
+				final int end = Math.min(num_blocks, g + GROUP_SIZE);
+				num_bits += (long) (end - g) * width(source.last(handle, g), source.last(handle, end - 1));
+				num_groups++;
+			}
+		}
+		
+		mGroupBases      = new int[num_groups];
+		mGroupWidths     = new byte[num_groups];
+		mGroupBitOffsets = new long[num_groups];
+		mGroupBlocks     = new int[num_groups];
+		mGroupScales     = new float[num_groups];
+		mBits   = new long[(int) ((num_bits + Long.SIZE - 1) / Long.SIZE) + 1];
+		mScores = new byte[(int) totalBlocks];
+		
+		// Second pass: pack the docids and quantize the scores
+		int group = 0;
+		int block = 0;
+		long bit = 0;
+		for (int t = 0; t < numEntries; ++t) {
+			final long handle = source.handle(t);
+			final int num_blocks = numBlocks(t);
+			for (int g = 0; g < num_blocks; g += GROUP_SIZE) {
+				final int end = Math.min(num_blocks, g + GROUP_SIZE);
+				final int base = source.last(handle, g);
+				final int width = width(base, source.last(handle, end - 1));
+				
+				float max = 0.0f;
+				for (int i = g; i < end; ++i)
+					max = Math.max(max, source.score(handle, i));
+				final float scale = scale(max);
+				
+				mGroupBases[group]      = base;
+				mGroupWidths[group]     = (byte) width;
+				mGroupBitOffsets[group] = bit;
+				mGroupBlocks[group]     = block;
+				mGroupScales[group]     = scale;
+				
+				for (int i = g; i < end; ++i) {
+					write(bit, width, source.last(handle, i) - base);
+					bit += width;
+					mScores[block++] = (byte) quantize(source.score(handle, i), scale);
+				}
+				group++;
+			}
+		}
+	}
+	
+	private int numBlocks(final int termid)
+	{
+		return (int) (mOffsets[termid + 2] - mOffsets[termid + 1]);
+	}
+	
+	private static int width(final int first, final int last)
+	{
+		return Integer.SIZE - Integer.numberOfLeadingZeros(last - first);
+	}
+	
+	/**
+	 * The smallest scale such that the max score is not greater than the dequantized highest level.
+	 */
+	private static float scale(final float max)
+	{
+		if (max <= 0.0f)
+			return 0.0f;
+		float scale = max / LEVELS;
+		while (LEVELS * scale < max)
+			scale = Math.nextUp(scale);
+		return scale;
+	}
+	
+	/**
+	 * The smallest level whose dequantized score is not smaller than the score.
+	 */
+	private static int quantize(final float score, final float scale)
+	{
+		if (score <= 0.0f || scale == 0.0f)
+			return 0;
+		int q = Math.min(LEVELS, (int) Math.ceil(score / scale));
+		while (q < LEVELS && q * scale < score)
+			q++;
+		return q;
+	}
+	
+	private void write(final long bit, final int width, final int value)
+	{
+		if (width == 0)
+			return;
+		final int word = (int) (bit >>> 6);
+		final int shift = (int) (bit & 63);
+		mBits[word] |= ((long) value) << shift;
+		if (shift + width > Long.SIZE)
+			mBits[word + 1] |= ((long) value) >>> (Long.SIZE - shift);
+	}
+	
+	private int read(final long bit, final int width)
+	{
+		final int word = (int) (bit >>> 6);
+		final int shift = (int) (bit & 63);
+		long value = mBits[word] >>> shift;
+		if (shift + width > Long.SIZE)
+			value |= mBits[word + 1] << (Long.SIZE - shift);
+		return (int) (value & ((1L << width) - 1));
+	}
+
+	@Override
+	public long offset(final int i)
+	{
+		return mOffsets[i];
+	}
+
+	@Override
+	public long handle(final int termid)
+	{
+		return mTermGroups[termid];
+	}
+
+	@Override
+	public int last(final long handle, final int pos)
+	{
+		final int group = (int) handle + (pos >>> GROUP_SHIFT);
+		final int width = mGroupWidths[group];
+		return mGroupBases[group] + read(mGroupBitOffsets[group] + (long) (pos & GROUP_MASK) * width, width);
+	}
+
+	@Override
+	public float score(final long handle, final int pos)
+	{
+		final int group = (int) handle + (pos >>> GROUP_SHIFT);
+		return (mScores[mGroupBlocks[group] + (pos & GROUP_MASK)] & 0xFF) * mGroupScales[group];
+	}
+}
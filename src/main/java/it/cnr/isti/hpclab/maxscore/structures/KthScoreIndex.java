@@ -0,0 +1,117 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.maxscore.structures;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.log4j.Logger;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+
+/**
+ * This class represents an additional data structure to a regular Terrier index.
+ * It is basically a disk-based array of float values, {@link #RANKS}.length per lexicon term, storing
+ * the k-th highest score of the term posting list, computed a-priori given a weighting model,
+ * for every k in {@link #RANKS}. If the posting list is shorter than k, the k-th score is 0.
+ *
+ * The whole array is loaded in main memory when the index is created.
+ */
+public class KthScoreIndex
+{
+	protected static final Logger logger = Logger.getLogger(KthScoreIndex.class);
+
+	public static final String USUAL_EXTENSION = ".kth";
+
+	/** The ranks whose scores are stored, in increasing order. */
+	public static final int[] RANKS = {10, 100, 1000};
+
+	private final float[] mScores;
+	/** The minimum score of any posting in the index. */
+	private final float minScore;
+	/** The class name of the weighting model used to compute the scores. */
+	private final String weightingModel;
+
+	public KthScoreIndex(final Index index) throws IOException
+	{
+		this(index, "kthscore");
+	}
+
+	/**
+	 * Loads the k-th score index of the first weighting model ("kthscore") or of another model ("kthscore-m<i>i</i>", see {@link ModelStructures}).
+	 * 
+	 * @param index the index
+	 * @param structureName the name of the index structure
+	 * @throws IOException if the file can't be read
+	 */
+	@SuppressWarnings("resource")
+	public KthScoreIndex(final Index index, final String structureName) throws IOException
+	{
+		this.minScore = Float.parseFloat(((IndexOnDisk)index).getIndexProperty("index." + structureName + ".min_score", "0.0"));
+		this.weightingModel = ((IndexOnDisk)index).getIndexProperty("index." + structureName + ".weighting_model", "");
+
+		FileChannel scoresFC = new FileInputStream(new File(((IndexOnDisk)index).getPath() + File.separator + ((IndexOnDisk)index).getPrefix() + USUAL_EXTENSION + ModelStructures.suffix(structureName))).getChannel();
+		FloatBuffer scoresBuffer = scoresFC.map(FileChannel.MapMode.READ_ONLY, 0, scoresFC.size()).asFloatBuffer();
+		mScores = new float[scoresBuffer.remaining()];
+		scoresBuffer.get(mScores);
+		scoresFC.close();
+		logger.info("Loaded k-th score index for " + (mScores.length / RANKS.length) + " terms");
+	}
+
+	/**
+	 * Returns the position in {@link #RANKS} of the smallest rank not smaller than k.
+	 *
+	 * @param k the number of results to retrieve
+	 * @return the position of the rank to use with k results, or -1 if k is greater than all ranks
+	 */
+	public static int rank(final int k)
+	{
+		for (int i = 0; i < RANKS.length; ++i)
+			if (RANKS[i] >= k)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Returns the k-th highest score of a term, with k = RANKS[rank].
+	 *
+	 * @param termid the term id
+	 * @param rank the position of k in {@link #RANKS}
+	 * @return the k-th highest score, or 0 if the term posting list is shorter than k
+	 */
+	public float getKthScore(final int termid, final int rank)
+	{
+		return mScores[termid * RANKS.length + rank];
+	}
+
+	public float getMinScore()
+	{
+		return minScore;
+	}
+
+	public String getWeightingModel()
+	{
+		return weightingModel;
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.maxscore.structures;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The blocks read from the memory-mapped files, without any copy. 
+ * The files are mapped in chunks of {@link #CHUNK_BYTES} bytes, hence the number of blocks is not limited to 2^31.
+ * The handle of a term is the global position of its first block.
+ */
+class MappedBlockData implements BlockData
+{
+	private static final int CHUNK_SHIFT = 30;
+	/** The size of a mapped chunk, a multiple of the size of all entries. */
+	static final long CHUNK_BYTES = 1L << CHUNK_SHIFT;
+	private static final long CHUNK_MASK = CHUNK_BYTES - 1;
+	
+	private final ByteBuffer[] mOffsets;
+	private final ByteBuffer[] mDocids;
+	private final ByteBuffer[] mScores;
+	
+	MappedBlockData(final String filenamePrefix) throws IOException
+	{
+		mOffsets = map(filenamePrefix + BlockMaxScoreIndex.OFFSET_EXT);
+		mDocids  = map(filenamePrefix + BlockMaxScoreIndex.DOCID_EXT);
+		mScores  = map(filenamePrefix + BlockMaxScoreIndex.SCORE_EXT);
+	}
+	
+	private static ByteBuffer[] map(final String filename) throws IOException
+	{
+		try (FileChannel fc = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+			final long size = fc.size();
+			ByteBuffer[] chunks = new ByteBuffer[(int) ((size + CHUNK_BYTES - 1) >>> CHUNK_SHIFT)];
+			for (int i = 0; i < chunks.length; ++i) {
+				final long begin = (long) i << CHUNK_SHIFT;
+				chunks[i] = fc.map(FileChannel.MapMode.READ_ONLY, begin, Math.min(CHUNK_BYTES, size - begin));
+			}
+			return chunks;
+		}
+	}
+
+	@Override
+	public long offset(final int i)
+	{
+		final long b = (long) i * Long.BYTES;
+		return mOffsets[(int) (b >>> CHUNK_SHIFT)].getLong((int) (b & CHUNK_MASK));
+	}
+
+	@Override
+	public long handle(final int termid)
+	{
+		return offset(termid + 1);
+	}
+
+	@Override
+	public int last(final long handle, final int pos)
+	{
+		final long b = (handle + pos) * Integer.BYTES;
+		return mDocids[(int) (b >>> CHUNK_SHIFT)].getInt((int) (b & CHUNK_MASK));
+	}
+
+	@Override
+	public float score(final long handle, final int pos)
+	{
+		final long b = (handle + pos) * Float.BYTES;
+		return mScores[(int) (b >>> CHUNK_SHIFT)].getFloat((int) (b & CHUNK_MASK));
+	}
+}
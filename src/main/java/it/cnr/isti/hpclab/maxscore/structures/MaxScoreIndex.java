@@ -23,19 +23,15 @@ package it.cnr.isti.hpclab.maxscore.structures;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.util.concurrent.ExecutionException;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 
 import org.apache.log4j.Logger;
 import org.terrier.structures.Index;
 import org.terrier.structures.IndexOnDisk;
 import org.terrier.utility.ApplicationSetup;
-import org.terrier.utility.Files;
-import org.terrier.utility.TerrierTimer;
-import org.terrier.utility.io.RandomDataInput;
-
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 
 /** 
  * This class represents an additional data structure to a regular Terrier index.
@@ -45,8 +41,8 @@ import com.google.common.cache.LoadingCache;
  * It simply provides, for a termid, the associated maxscore value.
  * 
  * If the property "preload.maxscore.index" is set to "true", the whole array of values is
- * preloaded in main memory when the index is created. Since it can occupy a lot of memory,
- * a simple LRU cache manages not-preloaded max-scores. Its size is configurable.
+ * preloaded in main memory when the index is created. Otherwise, the values are read from the memory-mapped file.
+ * In both cases, the lookups neither lock nor box, hence the structure can be shared by several threads.
  * 
  * To avoid changes to properties, this structure is managed externally from Terrier, and must be explicitely created.
  */
@@ -56,11 +52,8 @@ public class MaxScoreIndex implements Closeable
 	private int numberOfEntries;
 	
 	private float maxScores[] = null;
-	/** actual underlying data file */
-	private RandomDataInput dataFile = null;
-	
-	private LoadingCache<Integer, Float> msCache = null;
-	private static int CACHE_SIZE = 10 * 1024;
+	/** The memory-mapped underlying data file */
+	private FloatBuffer mappedScores = null;
 	
 	public static final String USUAL_EXTENSION = ".ms";
 		
@@ -68,42 +61,39 @@ public class MaxScoreIndex implements Closeable
 	
 	public MaxScoreIndex(final Index index) throws IOException
 	{
-		this( ((IndexOnDisk)index).getPath() + File.separator + ((IndexOnDisk)index).getPrefix() + MaxScoreIndex.USUAL_EXTENSION);
+		this(index, "maxscore");
+	}
+	
+	/**
+	 * Loads the max score index of the first weighting model ("maxscore") or of another model ("maxscore-m<i>i</i>", see {@link ModelStructures}).
+	 * 
+	 * @param index the index
+	 * @param structureName the name of the index structure
+	 * @throws IOException if the file can't be read
+	 */
+	public MaxScoreIndex(final Index index, final String structureName) throws IOException
+	{
+		this( ((IndexOnDisk)index).getPath() + File.separator + ((IndexOnDisk)index).getPrefix() + MaxScoreIndex.USUAL_EXTENSION + ModelStructures.suffix(structureName));
 	}
 		
 	public MaxScoreIndex(final String filename) throws IOException
-    {
-		this.dataFile = Files.openFileRandom(filename);
-        this.numberOfEntries = (int) (dataFile.length() / (long)(Float.SIZE >> 3));
-        initialise();
-    }
+	{
+		try (FileChannel fc = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+			this.mappedScores = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size()).asFloatBuffer();
+		}
+		this.numberOfEntries = mappedScores.remaining();
+		initialise();
+	}
 
 	protected void initialise() throws IOException
 	{
 		if (ApplicationSetup.getProperty("preload.maxscore.index", "false").equals("true")) {
 			logger.info("Loading max score values for maxscore structure into memory");
 			maxScores = new float[numberOfEntries];
-		
-			TerrierTimer tt = new TerrierTimer("Max Score Index loading", numberOfEntries);
-			tt.start();		
-			for (int i = 0; i < numberOfEntries; i++) {
-				maxScores[i] = dataFile.readFloat();
-				tt.increment();
-			}
-			tt.finished();
-			dataFile.close();
+			mappedScores.duplicate().get(maxScores);
+			mappedScores = null;
 		} else {
-			logger.info("Caching max score values for maxscore structure into memory");
-			msCache = CacheBuilder.newBuilder()
-					              .maximumSize(CACHE_SIZE)
-					              .<Integer, Float>build( new CacheLoader<Integer, Float>() {
-					            	  	  	  @Override
-					            	  	  	  public Float load(Integer key) throws IOException {
-					            	  	  		  dataFile.seek(key * (Float.SIZE >> 3));
-					            	  	  		  return dataFile.readFloat();
-					            	  	  	  }
-					              		  }
-					              );
+			logger.info("Mapping max score values for maxscore structure into memory");
 		}
 	}
 	
@@ -112,13 +102,7 @@ public class MaxScoreIndex implements Closeable
 		if (maxScores != null)
 			return maxScores[termid];
 		else
-			try {
-				return msCache.get(termid);
-			} catch (ExecutionException e) {
-				System.err.println("Exception while accessing max score for termid " + termid + " while using cache. Returning Float.MAX_VALUE...");
-				e.printStackTrace();
-				return Float.MAX_VALUE;
-			}
+			return mappedScores.get(termid);
 	}
 
 	/*
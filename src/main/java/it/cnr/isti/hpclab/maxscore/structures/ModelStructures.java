@@ -0,0 +1,152 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.maxscore.structures;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+
+import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+
+/**
+ * The max score, block max score and k-th score indexes store scores computed a-priori with a weighting model,
+ * hence they can be safely used only by query processing with the same weighting model, i.e., with the same model {@link WeightingModel#signature() signature}.
+ * 
+ * The structures of several models can be stored side by side in the same index. The structures of the first model have the usual 
+ * names (e.g., "maxscore", "blockmaxscore", "kthscore"), while the structures of the i-th model, with i &gt; 0, have the <tt>-m</tt>i suffix 
+ * (e.g., "maxscore-m1", "blockmaxscore-m1", "kthscore-m1"), as well as their files. The signature of the model of a structure 
+ * is stored in the <tt>index.</tt>structure<tt>.signature</tt> index property.
+ * 
+ * The structures generated before the signatures were stored only record the class name of their weighting model, 
+ * in the <tt>index.</tt>structure<tt>.weighting_model</tt> or, for the block max score indexes, in the <tt>index.maxscore.weighting_model</tt> index property.
+ * Such structures are selected by class name only.
+ */
+public final class ModelStructures 
+{
+	public static final String MODEL_SUFFIX = "-m";
+
+	private ModelStructures()
+	{
+	}
+	
+	/**
+	 * Returns the name of a structure of the i-th model stored in an index.
+	 * 
+	 * @param structure the name of the structure of the first model, e.g., "maxscore" or "blockmaxscore-32"
+	 * @param i the position of the model
+	 * @return the name of the structure of the i-th model
+	 */
+	public static String name(final String structure, final int i)
+	{
+		return (i == 0) ? structure : structure + MODEL_SUFFIX + i;
+	}
+	
+	/**
+	 * Returns the model suffix of a structure name, to be appended to the names of its files.
+	 * 
+	 * @param structureName the name of the structure, e.g., "maxscore" or "maxscore-m1"
+	 * @return the model suffix (e.g., "-m1"), or the empty string for the structures of the first model
+	 */
+	public static String suffix(final String structureName)
+	{
+		final int pos = structureName.lastIndexOf(MODEL_SUFFIX);
+		if (pos == -1 || pos + MODEL_SUFFIX.length() == structureName.length())
+			return "";
+		for (int i = pos + MODEL_SUFFIX.length(); i < structureName.length(); ++i)
+			if (!Character.isDigit(structureName.charAt(i)))
+				return "";
+		return structureName.substring(pos);
+	}
+	
+	/**
+	 * Returns the signature of the weighting model of a structure, or the class name of the model for the structures generated before the signatures were stored.
+	 * 
+	 * @param index the index
+	 * @param structureName the name of the structure
+	 * @return the signature of the weighting model of the structure
+	 */
+	public static String signature(final Index index, final String structureName)
+	{
+		final IndexOnDisk iod = (IndexOnDisk) index;
+		String signature = iod.getIndexProperty("index." + structureName + ".signature", null);
+		if (signature == null)
+			signature = iod.getIndexProperty("index." + structureName + ".weighting_model", null);
+		if (signature == null)
+			signature = iod.getIndexProperty("index.maxscore.weighting_model", "");
+		return signature;
+	}
+	
+	/**
+	 * Checks if a structure has been generated with a weighting model.
+	 * 
+	 * @param index the index
+	 * @param structureName the name of the structure
+	 * @param model the weighting model
+	 * @return true if the scores of the structure are computed with the weighting model
+	 */
+	public static boolean matches(final Index index, final String structureName, final WeightingModel model)
+	{
+		if (((IndexOnDisk) index).getIndexProperty("index." + structureName + ".signature", null) != null)
+			return signature(index, structureName).equals(model.signature());
+		return signature(index, structureName).equals(model.getClass().getName());
+	}
+	
+	/**
+	 * Returns the name of the structure generated with a weighting model, among the structures of all models stored in an index.
+	 * 
+	 * @param index the index
+	 * @param structure the name of the structure of the first model, e.g., "maxscore"
+	 * @param model the weighting model
+	 * @return the name of the structure generated with the weighting model, or <code>null</code> if none
+	 */
+	public static String find(final Index index, final String structure, final WeightingModel model)
+	{
+		for (int i = 0; index.hasIndexStructure(name(structure, i)); ++i)
+			if (matches(index, name(structure, i), model))
+				return name(structure, i);
+		return null;
+	}
+	
+	/**
+	 * Returns the name of the structure generated with a weighting model, refusing the structures generated with other models, 
+	 * whose scores are not safe upper bounds of the scores of the weighting model.
+	 * 
+	 * @param index the index
+	 * @param structure the name of the structure of the first model, e.g., "maxscore"
+	 * @param model the weighting model
+	 * @return the name of the structure generated with the weighting model, or <code>null</code> if the index has no such structure for any model
+	 * 
+	 * @throws IllegalStateException if the index has the structure only for other weighting models
+	 */
+	public static String select(final Index index, final String structure, final WeightingModel model)
+	{
+		final String name = find(index, structure, model);
+		if (name == null && index.hasIndexStructure(structure)) {
+			List<String> signatures = new ArrayList<>();
+			for (int i = 0; index.hasIndexStructure(name(structure, i)); ++i)
+				signatures.add(signature(index, name(structure, i)));
+			throw new IllegalStateException("The " + structure + " index structure has been generated for the weighting models " + signatures + ", not for " + model.signature());
+		}
+		return name;
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.maxscore.structures;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+
+/**
+ * This class represents an additional data structure to a regular Terrier index.
+ * It stores, for a set of term pairs mined from a query log, the k-th highest score of the conjunction of the two terms, 
+ * computed a-priori given a weighting model, for every k in {@link KthScoreIndex#RANKS}. 
+ * If the conjunction contains less than k documents, the k-th score is 0.
+ * 
+ * The file contains the sorted pair keys, as longs, followed by the {@link KthScoreIndex#RANKS}.length float scores of every pair.
+ * The whole file is loaded in main memory when the index is created.
+ */
+public class PairScoreIndex
+{
+	protected static final Logger logger = Logger.getLogger(PairScoreIndex.class);
+
+	public static final String USUAL_EXTENSION = ".pairs";
+
+	private final long[] mKeys;
+	private final float[] mScores;
+	/** The minimum score of any posting in the index. */
+	private final float minScore;
+	/** The class name of the weighting model used to compute the scores. */
+	private final String weightingModel;
+
+	public PairScoreIndex(final Index index) throws IOException
+	{
+		this(index, "pairscore");
+	}
+
+	/**
+	 * Loads the pair score index of the first weighting model ("pairscore") or of another model ("pairscore-m<i>i</i>", see {@link ModelStructures}).
+	 * 
+	 * @param index the index
+	 * @param structureName the name of the index structure
+	 * @throws IOException if the file can't be read
+	 */
+	@SuppressWarnings("resource")
+	public PairScoreIndex(final Index index, final String structureName) throws IOException
+	{
+		this.minScore = Float.parseFloat(((IndexOnDisk)index).getIndexProperty("index." + structureName + ".min_score", "0.0"));
+		this.weightingModel = ((IndexOnDisk)index).getIndexProperty("index." + structureName + ".weighting_model", "");
+
+		FileChannel pairsFC = new FileInputStream(new File(((IndexOnDisk)index).getPath() + File.separator + ((IndexOnDisk)index).getPrefix() + USUAL_EXTENSION + ModelStructures.suffix(structureName))).getChannel();
+		ByteBuffer pairsBuffer = pairsFC.map(FileChannel.MapMode.READ_ONLY, 0, pairsFC.size());
+		final int num_pairs = (int) (pairsFC.size() / (Long.BYTES + KthScoreIndex.RANKS.length * Float.BYTES));
+		mKeys = new long[num_pairs];
+		mScores = new float[num_pairs * KthScoreIndex.RANKS.length];
+		pairsBuffer.asLongBuffer().get(mKeys);
+		pairsBuffer.position(num_pairs * Long.BYTES);
+		pairsBuffer.asFloatBuffer().get(mScores);
+		pairsFC.close();
+		logger.info("Loaded pair score index for " + num_pairs + " term pairs");
+	}
+
+	/**
+	 * Returns the key of an unordered term pair.
+	 * 
+	 * @param termid1 the first term id
+	 * @param termid2 the second term id
+	 * @return the smallest term id in the high 32 bits, and the largest one in the low 32 bits
+	 */
+	public static long key(final int termid1, final int termid2)
+	{
+		return ((long) Math.min(termid1, termid2) << 32) | Math.max(termid1, termid2);
+	}
+
+	/**
+	 * Returns the position of a term pair in this index.
+	 * 
+	 * @param termid1 the first term id
+	 * @param termid2 the second term id
+	 * @return the position of the pair, or -1 if the pair is not stored
+	 */
+	public int find(final int termid1, final int termid2)
+	{
+		final int pos = Arrays.binarySearch(mKeys, key(termid1, termid2));
+		return (pos >= 0) ? pos : -1;
+	}
+
+	/**
+	 * Returns the k-th highest score of the conjunction of a term pair, with k = RANKS[rank].
+	 * 
+	 * @param pos the position of the pair, as returned by {@link #find(int, int)}
+	 * @param rank the position of k in {@link KthScoreIndex#RANKS}
+	 * @return the k-th highest score, or 0 if the conjunction contains less than k documents
+	 */
+	public float getKthScore(final int pos, final int rank)
+	{
+		return mScores[pos * KthScoreIndex.RANKS.length + rank];
+	}
+
+	public int size()
+	{
+		return mKeys.length;
+	}
+
+	public float getMinScore()
+	{
+		return minScore;
+	}
+
+	public String getWeightingModel()
+	{
+		return weightingModel;
+	}
+}
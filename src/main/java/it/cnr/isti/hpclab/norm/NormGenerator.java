@@ -0,0 +1,180 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.norm;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.commons.io.FilenameUtils;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.ParserProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terrier.structures.DocumentIndex;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.utility.ApplicationSetup;
+
+import it.cnr.isti.hpclab.norm.structures.DocNormIndex;
+
+public class NormGenerator
+{
+    protected static Logger LOGGER = LoggerFactory.getLogger(NormGenerator.class);
+
+    public static final class NormArgs 
+    {
+        // required arguments
+
+        @Option(name = "-index", metaVar = "[String]", required = true, usage = "Input Index")
+        public String index;
+
+        // optional arguments
+
+        @Option(name = "-k1", metaVar = "[Number]", required = false, usage = "BM25 k1 parameter (default: bm25.k1 property, or 1.2)")
+        public String k1;
+
+        @Option(name = "-b", metaVar = "[Number]", required = false, usage = "BM25 b parameter (default: bm25.b property, or 0.75)")
+        public String b;
+    }
+
+    public static class Command extends org.terrier.applications.CLITool.CLIParsedCLITool 
+    {
+        protected Options getOptions() 
+        {
+            Options options = super.getOptions();
+            options.addOption(
+                    org.apache.commons.cli.Option.builder("k").argName("k1").hasArg().desc("BM25 k1 parameter").build());
+            options.addOption(
+                    org.apache.commons.cli.Option.builder("b").argName("b").hasArg().desc("BM25 b parameter").build());
+            return options;
+        }
+
+        @Override
+        public int run(CommandLine line) throws Exception 
+        {
+            NormArgs args = new NormArgs();
+            args.index = ApplicationSetup.TERRIER_INDEX_PATH + "/" + ApplicationSetup.TERRIER_INDEX_PREFIX;
+            if (line.hasOption("k"))
+                args.k1 = line.getOptionValue("k");
+            if (line.hasOption("b"))
+                args.b = line.getOptionValue("b");
+            execute(args);
+            return 0;
+        }
+
+        @Override
+        public String commandname() 
+        {
+            return "micro-norm-generator";
+        }
+
+        @Override
+        public String helpsummary() 
+        {
+            return "generates a BM25 document length normaliser datastructure";
+        }
+    }
+
+    public static void main(String[] argv)
+    {
+        NormArgs args = new NormArgs();
+        CmdLineParser parser = new CmdLineParser(args, ParserProperties.defaults().withUsageWidth(90));
+        try {
+            parser.parseArgument(argv);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.err);
+            return;
+        }
+        execute(args);
+    }
+    
+    @SuppressWarnings("deprecation")
+    public static void execute(NormArgs args) 
+    {
+        IndexOnDisk.setIndexLoadingProfileAsRetrieval(false);
+        final String src_index_path = FilenameUtils.getFullPath(args.index);
+        final String src_index_prefix = FilenameUtils.getBaseName(args.index);
+
+        final double k1 = Double.parseDouble(args.k1 != null ? args.k1 : System.getProperty("bm25.k1", "1.2"));
+        final double b  = Double.parseDouble(args.b  != null ? args.b  : System.getProperty("bm25.b", "0.75"));
+
+        LOGGER.info("Started " + NormGenerator.class.getSimpleName() + " with k1 = " + k1 + " and b = " + b);
+
+        long starttime = System.currentTimeMillis();
+
+        try {
+            // check dst norm index does not exist
+            if (Files.exists(Paths.get(src_index_path + File.separator + src_index_prefix + DocNormIndex.USUAL_EXTENSION))) {
+                throw new IllegalArgumentException("Index directory " + src_index_path + " already contains an index with prefix " + src_index_prefix);
+            }
+
+            IndexOnDisk src_index = IndexOnDisk.createIndex(src_index_path, src_index_prefix);
+            if (IndexOnDisk.getLastIndexLoadError() != null) {
+                throw new IllegalArgumentException("Error loading index: " + IndexOnDisk.getLastIndexLoadError());
+            }
+            final int num_docs = src_index.getCollectionStatistics().getNumberOfDocuments();
+            final double avg_doc_len = src_index.getCollectionStatistics().getAverageDocumentLength();
+            LOGGER.info("Input index contains " + num_docs + " documents");
+
+            ByteBuffer b_buf = ByteBuffer.allocate(num_docs * Float.BYTES);
+            FloatBuffer f_buf = b_buf.asFloatBuffer();
+            final DocumentIndex doi = src_index.getDocumentIndex();
+            for (int docid = 0; docid < num_docs; ++docid)
+                f_buf.put(DocNormIndex.normaliser(k1, b, doi.getDocumentLength(docid), avg_doc_len));
+            src_index.close();
+
+            long computetime = System.currentTimeMillis();
+            LOGGER.info("Normaliser computation completed after " + (computetime - starttime)/1000 + " seconds");
+
+            try (FileChannel out = FileChannel.open(Paths.get(src_index_path + File.separator + src_index_prefix + DocNormIndex.USUAL_EXTENSION), StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+                out.write(b_buf);
+            }
+
+            writeProperties(src_index_path, src_index_prefix, k1, b);
+
+            long endtime = System.currentTimeMillis();
+            LOGGER.info("Document length normaliser generation completed after " + (endtime - starttime)/1000 + " seconds");
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+    
+    private static void writeProperties(String indexPath, String indexPrefix, final double k1, final double b) throws IOException
+    {
+        IndexOnDisk index = IndexOnDisk.createIndex(indexPath, indexPrefix);
+        index.setIndexProperty("index.docnorm.class","it.cnr.isti.hpclab.norm.structures.DocNormIndex");
+        index.setIndexProperty("index.docnorm.parameter_types","org.terrier.structures.Index");
+        index.setIndexProperty("index.docnorm.parameter_values","index");        
+        index.setIndexProperty("index.docnorm.k1", Double.toString(k1));
+        index.setIndexProperty("index.docnorm.b", Double.toString(b));
+
+        index.close();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.norm.structures;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.log4j.Logger;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+
+/**
+ * This class represents an additional data structure to a regular Terrier index.
+ * It is basically a disk-based array of float values, one per document, storing the BM25 document length normaliser
+ * <tt>k1 * (1 - b + b * dl / avgdl)</tt>, computed a-priori for given <tt>k1</tt> and <tt>b</tt> parameters.
+ * The normalisers are rounded up to the next float, so that the scores computed with them never exceed the exact ones.
+ *
+ * The whole array is loaded in main memory when the index is created.
+ */
+public class DocNormIndex
+{
+	protected static final Logger logger = Logger.getLogger(DocNormIndex.class);
+
+	public static final String USUAL_EXTENSION = ".norm";
+
+	private final float[] mNorms;
+	/** The BM25 parameters used to compute the normalisers. */
+	private final double k1;
+	private final double b;
+
+	@SuppressWarnings("resource")
+	public DocNormIndex(final Index index) throws IOException
+	{
+		this.k1 = Double.parseDouble(((IndexOnDisk)index).getIndexProperty("index.docnorm.k1", "NaN"));
+		this.b  = Double.parseDouble(((IndexOnDisk)index).getIndexProperty("index.docnorm.b", "NaN"));
+
+		FileChannel normsFC = new FileInputStream(new File(((IndexOnDisk)index).getPath() + File.separator + ((IndexOnDisk)index).getPrefix() + USUAL_EXTENSION)).getChannel();
+		FloatBuffer normsBuffer = normsFC.map(FileChannel.MapMode.READ_ONLY, 0, normsFC.size()).asFloatBuffer();
+		mNorms = new float[normsBuffer.remaining()];
+		normsBuffer.get(mNorms);
+		normsFC.close();
+		logger.info("Loaded document length normalisers for " + mNorms.length + " documents (k1 = " + k1 + ", b = " + b + ")");
+	}
+
+	/**
+	 * Computes the BM25 document length normaliser of a document, rounded up to the next float.
+	 *
+	 * @param k1 the BM25 k1 parameter
+	 * @param b the BM25 b parameter
+	 * @param doc_len the length of the document, in tokens
+	 * @param avg_doc_len the average document length in the collection
+	 * @return the document length normaliser
+	 */
+	public static float normaliser(final double k1, final double b, final int doc_len, final double avg_doc_len)
+	{
+		final double norm = k1 * (1.0d - b + b * (double)doc_len/avg_doc_len);
+		final float f = (float) norm;
+		return (f < norm) ? Math.nextUp(f) : f;
+	}
+
+	/**
+	 * @return the document length normalisers, indexed by docid
+	 */
+	public float[] getNorms()
+	{
+		return mNorms;
+	}
+
+	/**
+	 * @param k1 the BM25 k1 parameter
+	 * @param b the BM25 b parameter
+	 * @return true if the normalisers have been computed with the given parameters
+	 */
+	public boolean matches(final double k1, final double b)
+	{
+		return this.k1 == k1 && this.b == b;
+	}
+}
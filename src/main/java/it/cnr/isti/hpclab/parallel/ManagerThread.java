@@ -24,13 +24,15 @@ import java.util.concurrent.BlockingQueue;
 
 import org.apache.log4j.Logger;
 import org.terrier.structures.Index;
-import org.terrier.structures.IndexOnDisk;
 
 import it.cnr.isti.hpclab.MatchingConfiguration;
 import it.cnr.isti.hpclab.MatchingConfiguration.Property;
 import it.cnr.isti.hpclab.annotations.Managed;
+import it.cnr.isti.hpclab.cache.ResultCache;
 import it.cnr.isti.hpclab.manager.Manager;
 import it.cnr.isti.hpclab.matching.MatchingAlgorithm;
+import it.cnr.isti.hpclab.matching.structures.output.ResultOutput;
+import it.cnr.isti.hpclab.matching.structures.resultset.EmptyResultSet;
 
 public class ManagerThread extends Thread
 {
@@ -38,7 +40,8 @@ public class ManagerThread extends Thread
 	
 	// Private variables
 	private final Manager mManager;
-	private IndexOnDisk mIndex;
+	private final ResultOutput mResultOutput;
+	private final ResultCache mResultCache;
 
 	// Shared variables
 	protected final BlockingQueue<SearchRequestMessage> sSearchRequestQueue;
@@ -47,33 +50,50 @@ public class ManagerThread extends Thread
 	// Static variables
 	private static int staticId = 0;
 	
-	private Manager create_manager() 
+	/**
+	 * Creates a manager over the given index, for the configured matching algorithm.
+	 * 
+	 * @param index the index
+	 * @return the manager, or <code>null</code> if it can not be created
+	 */
+	static Manager create_manager(final Index index) 
 	{
 		try {
-			mIndex = IndexOnDisk.createIndex();
 			String matchingAlgorithmClassName =  MatchingConfiguration.get(Property.MATCHING_ALGORITHM_CLASSNAME);
 			if (matchingAlgorithmClassName.indexOf('.') == -1)
 				matchingAlgorithmClassName = MatchingConfiguration.get(Property.DEFAULT_NAMESPACE) + matchingAlgorithmClassName;
 			String mManagerClassName = Class.forName(matchingAlgorithmClassName).asSubclass(MatchingAlgorithm.class).getAnnotation(Managed.class).by();
 			
 			// return (Manager) (Class.forName(mManagerClassName).asSubclass(Manager.class).getConstructor().newInstance(mIndex));
-			return (Manager) Class.forName(mManagerClassName).asSubclass(Manager.class).getConstructor(Index.class).newInstance(mIndex);
+			return (Manager) Class.forName(mManagerClassName).asSubclass(Manager.class).getConstructor(Index.class).newInstance(index);
 		} catch (Exception e) {
 			e.printStackTrace();
 			return null;
 		}
 	}
 
-	public ManagerThread(final BlockingQueue<SearchRequestMessage> sreq_queue, final BlockingQueue<SearchRequestMessage> res_queue) 
+	/**
+	 * Creates a query processing thread with its own manager over the given index, shared among all threads and closed by the caller.
+	 * 
+	 * The results of every query are formatted by this thread with the given result output, and written in order by the result output thread.
+	 * 
+	 * @param index the shared index
+	 * @param cache the shared result cache, or <code>null</code>
+	 * @param output the shared result output
+	 * @param sreq_queue the shared queue of search requests
+	 * @param res_queue the shared queue of results
+	 */
+	public ManagerThread(final Index index, final ResultCache cache, final ResultOutput output, final BlockingQueue<SearchRequestMessage> sreq_queue, final BlockingQueue<SearchRequestMessage> res_queue) 
 	{
 		super.setName(this.getClass().getSimpleName() + "_" + (++staticId));
-		LOGGER.warn(super.getName() + " is going to build is own index copy");	
 		
 		// shared
 		this.sSearchRequestQueue = sreq_queue;
 		this.sResultQueue = res_queue;
+		this.mResultOutput = output;
+		this.mResultCache = cache;
 		// private
-		this.mManager = create_manager();
+		this.mManager = create_manager(index);
     }
 	
 	@Override
@@ -85,14 +105,10 @@ public class ManagerThread extends Thread
 				if (m.isPoison()) // poison pill received, no more queries to process
 					break;
 			
-				LOGGER.info(super.getName() + " processing query " + m.srq.getQueryId() + " : " + m.srq.getOriginalQuery());
-			
-				m.srq.setResultSet(mManager.run(m.srq));
-				
+				process(mManager, mResultCache, mResultOutput, m);
 				sResultQueue.put(m);
 			}
 			// mManager.close();
-			mIndex.close();
 			// notify I'm done to result writer with a poison pill
 			sResultQueue.put(new SearchRequestMessage(null));
 		} catch (Exception e) {
@@ -100,4 +116,26 @@ public class ManagerThread extends Thread
 		}
 		LOGGER.info(super.getName() + " terminating...");
 	}
+	
+	/**
+	 * Processes the query of a message with the given manager, unless its results are cached, and formats its results with the given result output.
+	 * If the query processing fails, the query gets an empty result set, so that the results of the following queries can be written anyway.
+	 * 
+	 * @param manager the manager
+	 * @param cache the result cache, or <code>null</code>
+	 * @param output the result output
+	 * @param m the message
+	 */
+	static void process(final Manager manager, final ResultCache cache, final ResultOutput output, final SearchRequestMessage m)
+	{
+		LOGGER.info(Thread.currentThread().getName() + " processing query " + m.srq.getQueryId() + " : " + m.srq.getOriginalQuery());
+		try {
+			m.srq.setResultSet((cache == null) ? manager.run(m.srq) : cache.run(manager, m.srq));
+			m.output = output.format(m.srq);
+		} catch (Exception e) {
+			LOGGER.error("Query " + m.srq.getQueryId() + " failed", e);
+			m.srq.setResultSet(new EmptyResultSet());
+			m.output = "";
+		}
+	}
 }
\ No newline at end of file
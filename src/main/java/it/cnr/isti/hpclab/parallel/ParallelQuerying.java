@@ -22,62 +22,159 @@ package it.cnr.isti.hpclab.parallel;
 
 import it.cnr.isti.hpclab.MatchingConfiguration;
 import it.cnr.isti.hpclab.MatchingConfiguration.Property;
+import it.cnr.isti.hpclab.Querying;
+import it.cnr.isti.hpclab.cache.ResultCache;
+import it.cnr.isti.hpclab.manager.Manager;
+import it.cnr.isti.hpclab.matching.structures.output.ResultOutput;
 import it.cnr.isti.hpclab.matching.structures.query.QueryParserException;
 import it.cnr.isti.hpclab.matching.structures.query.QuerySource;
 import it.cnr.isti.hpclab.matching.structures.query.ThresholdQuerySource;
+import it.cnr.isti.hpclab.maxscore.structures.ModelStructures;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectList;
 import it.cnr.isti.hpclab.matching.structures.SearchRequest;
+import it.cnr.isti.hpclab.matching.structures.QueryProperties.RuntimeProperty;
 
 import java.io.IOException;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
 
 public class ParallelQuerying
 {    
     private static final Logger LOGGER = Logger.getLogger(ParallelQuerying.class);    
     
-    /** The number of matched queries. */
+    /** The index structures loaded before starting the query processing threads, if present, so that the threads only read them. */
+    private static final String[] SHARED_STRUCTURES = {"lexicon", "inverted", "maxscore", "blockmaxscore", "vblockmaxscore", "kthscore", "pairscore", "impact", "docnorm", "quantized", "mphlexicon"};
+    
+    /** The maximum number of submitted queries whose results have not been written yet, bounding the reorder buffer of the results. */
+    private static final int WINDOW = 1 << 12;
+    
+    /** How the queries are processed in parallel. */
+    public enum Mode
+    {
+        /** A fixed number of query processing threads, pulling the queries from a shared queue. */
+        FIXED,
+        /** A work-stealing pool, running both the queries and their docid range tasks. */
+        WORKSTEALING,
+        /** A virtual thread per query, on JDKs supporting them, borrowing a manager from a pool (a work-stealing pool otherwise). */
+        VIRTUAL
+    }
+    
+    /** The number of matched queries, also used as sequence number of the next query. */
     protected int mMatchingQueryCount = 0;
 
     /** Data structures */
     private QuerySource  mQuerySource;
+    /** The index shared by all query processing threads */
+    private final Index  mIndex;
 
     // to be shared
     protected BlockingQueue<SearchRequestMessage> sSearchRequestQueue;
     protected BlockingQueue<SearchRequestMessage> sResultQueue;
+    protected ResultOutput sResultOutput;
+    protected ResultCache sResultCache;
+    protected Semaphore sWindow;
+    /** The managers borrowed by the query tasks, with the work-stealing and virtual modes. */
+    protected BlockingQueue<Manager> sManagers;
     
     // private
+    private final Mode mMode;
     private final int mNumThreads;
     private ObjectList<Thread> mThreads;
+    /** The executor running the query tasks, with the work-stealing and virtual modes. */
+    private ExecutorService mExecutor;
     
     public ParallelQuerying() 
     {    
         mQuerySource = createQuerySource();
+        mIndex = createSharedIndex();
 
         sSearchRequestQueue = new ArrayBlockingQueue<SearchRequestMessage>(1 << 10);
         sResultQueue = new ArrayBlockingQueue<SearchRequestMessage>(1 << 10);
+        sResultOutput = Querying.createResultOutput();
+        sWindow = new Semaphore(WINDOW);
+        sResultCache = Querying.createResultCache(() -> ManagerThread.create_manager(mIndex));
 
-        mNumThreads = Runtime.getRuntime().availableProcessors();
+        mMode = Mode.valueOf(MatchingConfiguration.get(Property.PARALLEL_EXECUTOR).toUpperCase());
+        final int num_threads = MatchingConfiguration.getInt(Property.PARALLEL_THREADS);
+        mNumThreads = (num_threads > 0) ? num_threads : Runtime.getRuntime().availableProcessors();
+        LOGGER.info("Processing queries with the " + mMode.name().toLowerCase() + " executor and " + mNumThreads + " threads");
         
         mThreads = new ObjectArrayList<Thread>(mNumThreads + 1);
         
         Thread th;
-        for (int i = 0; i < mNumThreads; i++) {
-            th = new ManagerThread(sSearchRequestQueue, sResultQueue);
-            mThreads.add(th);
-            th.start();
-            // (new QueryProcessThread(sSearchRequestQueue, sResultQueue)).start();
+        if (mMode == Mode.FIXED) {
+            for (int i = 0; i < mNumThreads; i++) {
+                th = new ManagerThread(mIndex, sResultCache, sResultOutput, sSearchRequestQueue, sResultQueue);
+                mThreads.add(th);
+                th.start();
+                // (new QueryProcessThread(sSearchRequestQueue, sResultQueue)).start();
+            }
+            th = new ResultOutputThread(sResultOutput, sResultQueue, mNumThreads, sWindow);
+        } else {
+            sManagers = new ArrayBlockingQueue<Manager>(mNumThreads);
+            for (int i = 0; i < mNumThreads; i++)
+                sManagers.add(ManagerThread.create_manager(mIndex));
+            mExecutor = createExecutor(mMode, mNumThreads);
+            th = new ResultOutputThread(sResultOutput, sResultQueue, 1, sWindow);
         }
 
-        th = new ResultOutputThread(sResultQueue, mNumThreads);
         mThreads.add(th);
         th.start();
         // (new ResultOutputThread(sResultQueue, mNumThreads)).start();
     }
     
+    /**
+     * Creates the executor for the work-stealing and virtual modes. Virtual threads are created by reflection, 
+     * falling back to the work-stealing pool on JDKs not supporting them.
+     * 
+     * @param mode the mode
+     * @param num_threads the parallelism of the work-stealing pool
+     * @return the executor
+     */
+    private static ExecutorService createExecutor(final Mode mode, final int num_threads)
+    {
+        if (mode == Mode.VIRTUAL) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                LOGGER.warn("Virtual threads are not supported by this JDK, falling back to the work-stealing executor");
+            }
+        }
+        return new ForkJoinPool(num_threads);
+    }
+    
+    /**
+     * Opens the index once for all query processing threads, loading the shared index structures in advance.
+     * The managers synchronize on the index to look up the lexicon and to open the posting lists, while the other structures are read-only.
+     * If the index has a minimal perfect hash lexicon, the managers look up the terms in it without synchronization, and the lexicon is not loaded.
+     * The structures generated for several weighting models are all loaded, the managers select the ones of their weighting model.
+     * 
+     * @return the shared index
+     */
+    private static Index createSharedIndex()
+    {
+        final long startTime = System.currentTimeMillis();
+        Index index = IndexOnDisk.createIndex();
+        for (String structure: SHARED_STRUCTURES)
+            if (!("lexicon".equals(structure) && index.hasIndexStructure("mphlexicon")))
+                for (int m = 0; index.hasIndexStructure(ModelStructures.name(structure, m)); ++m)
+                    index.getIndexStructure(ModelStructures.name(structure, m));
+        for (int m = 0; index.hasIndexStructure(ModelStructures.name(MatchingConfiguration.get(Property.BLOCKMAX_STRUCTURE), m)); ++m)
+            index.getIndexStructure(ModelStructures.name(MatchingConfiguration.get(Property.BLOCKMAX_STRUCTURE), m));
+        LOGGER.info("Loaded the shared index in " + ((System.currentTimeMillis() - startTime) / 1000.0d) + " seconds");
+        return index;
+    }
+    
     private static QuerySource createQuerySource() 
     {
         try {
@@ -108,16 +205,24 @@ public class ParallelQuerying
             
             processQuery(qid, query, qth);
         }
-        // notify processors that queries are over with a poison pill per processor
         try {
-            for (int i = 0; i < mNumThreads; ++i) {
-                sSearchRequestQueue.put(new SearchRequestMessage(null));
+            if (mExecutor == null) {
+                // notify processors that queries are over with a poison pill per processor
+                for (int i = 0; i < mNumThreads; ++i) {
+                    sSearchRequestQueue.put(new SearchRequestMessage(null));
+                }
+            } else {
+                // wait for the query tasks, and notify the result writer with a single poison pill
+                mExecutor.shutdown();
+                mExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+                sResultQueue.put(new SearchRequestMessage(null));
             }
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
         
         mThreads.forEach(t -> {    try { t.join();    } catch (InterruptedException e) { e.printStackTrace(); } } );
+        mIndex.close();
 
         LOGGER.info("Finished topics, executed " + mMatchingQueryCount +
                     " queries in " + ((System.currentTimeMillis() - startTime) / 1000.0d) +
@@ -126,8 +231,39 @@ public class ParallelQuerying
 
     public void processQuery(final String queryId, final String query, final float threshold) throws IOException, QueryParserException
     {
+        SearchRequest srq = new SearchRequest(queryId, query);
+        srq.getQuery().addMetadata(RuntimeProperty.INITIAL_THRESHOLD, Float.toString(threshold));
+        final SearchRequestMessage m = new SearchRequestMessage(mMatchingQueryCount++, srq);
         try {
-            sSearchRequestQueue.put(new SearchRequestMessage(new SearchRequest(queryId, query)));
+            sWindow.acquire();
+            if (mExecutor == null)
+                sSearchRequestQueue.put(m);
+            else
+                mExecutor.execute(() -> process(m));
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Processes a query with a manager borrowed from the pool, and sends its results to the result writer.
+     * A virtual thread waits for a free manager, while a work-stealing worker never blocks, creating a new manager if none is free 
+     * (e.g., when a worker waiting for the range tasks of its query runs another query), and dropping it if the pool is full.
+     * 
+     * @param m the message of the query
+     */
+    private void process(final SearchRequestMessage m)
+    {
+        try {
+            Manager manager = (mExecutor instanceof ForkJoinPool) ? sManagers.poll() : sManagers.take();
+            if (manager == null)
+                manager = ManagerThread.create_manager(mIndex);
+            try {
+                ManagerThread.process(manager, sResultCache, sResultOutput, m);
+            } finally {
+                sManagers.offer(manager);
+            }
+            sResultQueue.put(m);
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
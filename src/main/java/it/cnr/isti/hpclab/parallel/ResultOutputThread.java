@@ -20,16 +20,17 @@
 
 package it.cnr.isti.hpclab.parallel;
 
+import java.io.IOException;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
 
 import org.apache.log4j.Logger;
 
-import it.cnr.isti.hpclab.MatchingConfiguration;
-import it.cnr.isti.hpclab.MatchingConfiguration.Property;
 import it.cnr.isti.hpclab.matching.structures.SearchRequest;
 import it.cnr.isti.hpclab.matching.structures.QueryProperties.RuntimeProperty;
 import it.cnr.isti.hpclab.matching.structures.output.ResultOutput;
 import it.cnr.isti.hpclab.util.StatsLine;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 
 public class ResultOutputThread extends Thread
 {
@@ -37,21 +38,38 @@ public class ResultOutputThread extends Thread
     
     // shared
     private final BlockingQueue<SearchRequestMessage> sResultQueue;
+    private final ResultOutput sResultOutput;
+    private final Semaphore sWindow;
     
     // private
-    private final ResultOutput mResultOutput;
     private int mPoisonPills;
+    /** The reorder buffer, storing the processed queries until all the previous ones have been written. */
+    private final Int2ObjectOpenHashMap<SearchRequestMessage> mPending;
+    /** The sequence number of the next query to write. */
+    private int mNext;
     
-    public ResultOutputThread(final BlockingQueue<SearchRequestMessage> res_queue, final int numThreads) 
+    /**
+     * Creates the thread writing the results of the queries in the same order of the query source.
+     * The queries processed out of order wait in a reorder buffer, whose size is bounded by the window: 
+     * a permit is acquired before submitting a query, and it is released when its results have been written.
+     * 
+     * @param output the shared result output, used to write the results formatted by the query processing threads
+     * @param res_queue the shared queue of results
+     * @param numThreads the number of query processing threads
+     * @param window the shared window of submitted queries whose results have not been written yet
+     */
+    public ResultOutputThread(final ResultOutput output, final BlockingQueue<SearchRequestMessage> res_queue, final int numThreads, final Semaphore window) 
     {
         super.setName(this.getClass().getSimpleName());
-        LOGGER.warn(super.getName() + " is going to build is own index copy");    
         
         // shared
         this.sResultQueue = res_queue;
+        this.sResultOutput = output;
+        this.sWindow = window;
         // private
-        this.mResultOutput = ResultOutput.newInstance(MatchingConfiguration.get(Property.RESULTS_OUTPUT_TYPE));
         this.mPoisonPills = numThreads;
+        this.mPending = new Int2ObjectOpenHashMap<SearchRequestMessage>();
+        this.mNext = 0;
     }
 
     @Override
@@ -67,17 +85,29 @@ public class ResultOutputThread extends Thread
                     else
                         continue;
                 }
-                if (m.srq.getResultSet().size() != 0) {
-                    printStats(m.srq);
-                    mResultOutput.print(m.srq);
+                mPending.put(m.seq, m);
+                while ((m = mPending.remove(mNext)) != null) {
+                    write(m);
+                    mNext++;
                 }
             }
-            mResultOutput.close();
+            if (!mPending.isEmpty())
+                LOGGER.error(mPending.size() + " queries can not be written in order, query " + mNext + " is missing");
+            sResultOutput.close();
         } catch (Exception e) {
             e.printStackTrace();
         }
         LOGGER.info(super.getName() + " terminating...");
     }
+    
+    private void write(final SearchRequestMessage m) throws IOException
+    {
+        if (m.srq.getResultSet().size() != 0) {
+            printStats(m.srq);
+            sResultOutput.write(m.output);
+        }
+        sWindow.release();
+    }
 
     private static void printStats(SearchRequest srq) 
     {
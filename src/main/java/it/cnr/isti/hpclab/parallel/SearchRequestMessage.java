@@ -26,9 +26,19 @@ public class SearchRequestMessage
 {
 	// If srq is null, this message is a "poison pill", and the thread receiving it must terminate.
 	public final SearchRequest srq;
+	// The position of the query in the query source, used to output the results in order.
+	public final int seq;
+	// The results formatted by the query processing thread, written by the result output thread.
+	public String output = null;
 	
 	public SearchRequestMessage(final SearchRequest srq)
 	{
+		this(-1, srq);
+	}
+
+	public SearchRequestMessage(final int seq, final SearchRequest srq)
+	{
+		this.seq = seq;
 		this.srq = srq;
 	}
 	
@@ -0,0 +1,178 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Map.Entry;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+
+import it.cnr.isti.hpclab.MatchingConfiguration;
+import it.cnr.isti.hpclab.MatchingConfiguration.Property;
+import it.cnr.isti.hpclab.manager.Manager;
+import it.cnr.isti.hpclab.manager.RankedManager;
+import it.cnr.isti.hpclab.matching.MatchingSetupTest;
+import it.cnr.isti.hpclab.matching.structures.ResultSet;
+import it.cnr.isti.hpclab.matching.structures.SearchRequest;
+
+public class PostingCacheTest extends MatchingSetupTest
+{
+	private IndexOnDisk index = null;
+	
+	@BeforeClass public static void init() throws Exception
+	{
+		MatchingSetupTest.makeEnvironment();
+		MatchingSetupTest.doWT10GSampleIndexing();
+	}
+	
+	@AfterClass public static void clean() 
+	{
+		MatchingSetupTest.deleteTerrierEtc();
+	}
+	
+	@Before public void openIndex() throws IOException
+	{
+		index = IndexOnDisk.createIndex();
+		MatchingConfiguration.set(Property.IGNORE_LOW_IDF_TERMS, "false");
+		MatchingConfiguration.set(Property.MATCHING_ALGORITHM_CLASSNAME, "it.cnr.isti.hpclab.matching.RankedOr");
+		MatchingConfiguration.set(Property.WEIGHTING_MODEL_CLASSNAME, "BM25");
+		MatchingConfiguration.set(Property.TOP_K, "100");
+		MatchingConfiguration.set(Property.POSTING_CACHE_MIN_DF, "1");
+	}
+	
+	@After public void closeIndex() throws IOException
+	{
+		index.close();
+		MatchingConfiguration.set(Property.POSTING_CACHE_MEMORY, "0");
+		MatchingConfiguration.set(Property.POSTING_CACHE_MIN_DF, "10000");
+		MatchingConfiguration.set(Property.POSTING_CACHE_MIN_REQUESTS, "1");
+		MatchingConfiguration.set(Property.POSTING_CACHE_OFFHEAP, "false");
+	}
+	
+	@Test 
+	public void disabled()
+	{
+		MatchingConfiguration.set(Property.POSTING_CACHE_MEMORY, "0");
+		assertNull(PostingCache.of(index));
+	}
+
+	@Test 
+	public void shared()
+	{
+		MatchingConfiguration.set(Property.POSTING_CACHE_MEMORY, "1");
+		assertTrue(PostingCache.of(index) == PostingCache.of(index));
+	}
+	
+	private void checkPostings(final boolean off_heap) throws IOException
+	{
+		PostingCache cache = new PostingCache(index, Long.MAX_VALUE, 1, 1, off_heap);
+		
+		for (Entry<String, LexiconEntry> entry: index.getLexicon()) {
+			final LexiconEntry le = entry.getValue();
+			IterablePosting correct = index.getInvertedIndex().getPostings(le);
+			IterablePosting cached = cache.getPostings(le);
+			assertNotNull(cached);
+			while (correct.next() != IterablePosting.END_OF_LIST) {
+				assertEquals(correct.getId(), cached.next());
+				assertEquals(correct.getFrequency(), cached.getFrequency());
+				assertEquals(correct.getDocumentLength(), cached.getDocumentLength());
+			}
+			assertEquals(IterablePosting.END_OF_LIST, cached.next());
+			assertTrue(cached.endOfPostings());
+			correct.close();
+			
+			// skipping
+			correct = index.getInvertedIndex().getPostings(le);
+			cached = cache.getPostings(le);
+			int target = 0;
+			while (correct.next(target) != IterablePosting.END_OF_LIST) {
+				assertEquals(correct.getId(), cached.next(target));
+				assertEquals(correct.getFrequency(), cached.getFrequency());
+				target = correct.getId() + 1 + (target % 7) * 13;
+			}
+			assertEquals(IterablePosting.END_OF_LIST, cached.next(target));
+			correct.close();
+		}
+		assertEquals(index.getCollectionStatistics().getNumberOfUniqueTerms(), cache.size());
+		assertEquals(12L * index.getCollectionStatistics().getNumberOfPointers(), cache.used());
+	}
+	
+	@Test 
+	public void onHeapPostings() throws IOException
+	{
+		checkPostings(false);
+	}
+
+	@Test 
+	public void offHeapPostings() throws IOException
+	{
+		checkPostings(true);
+	}
+
+	@Test 
+	public void admission() throws IOException
+	{
+		final LexiconEntry le = index.getLexicon().getLexiconEntry("top");
+		
+		PostingCache cache = new PostingCache(index, Long.MAX_VALUE, le.getDocumentFrequency() + 1, 1, false);
+		assertNull(cache.getPostings(le));
+
+		cache = new PostingCache(index, Long.MAX_VALUE, 1, 2, false);
+		assertNull(cache.getPostings(le));
+		assertNotNull(cache.getPostings(le));
+
+		cache = new PostingCache(index, 12L * le.getDocumentFrequency() - 1, 1, 1, false);
+		assertNull(cache.getPostings(le));
+		assertEquals(0, cache.used());
+	}
+	
+	@Test 
+	public void cachedResults() throws Exception
+	{
+		final String[] queries = {"top view", "information retrieval", "view of the top", "top"};
+		
+		Manager manager = new RankedManager(index);
+		ResultSet[] correct = new ResultSet[queries.length];
+		for (int i = 0; i < queries.length; ++i)
+			correct[i] = manager.run(new SearchRequest(Integer.toString(i), queries[i]));
+
+		MatchingConfiguration.set(Property.POSTING_CACHE_MEMORY, "16");
+		manager = new RankedManager(index);
+		for (int i = 0; i < queries.length; ++i) {
+			ResultSet results = manager.run(new SearchRequest(Integer.toString(i), queries[i]));
+			assertEquals(correct[i].size(), results.size());
+			MatchingSetupTest.Compare(correct[i], results);
+		}
+		assertTrue(PostingCache.of(index).size() > 0);
+	}
+}
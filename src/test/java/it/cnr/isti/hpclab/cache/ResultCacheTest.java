@@ -0,0 +1,178 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.terrier.structures.IndexOnDisk;
+
+import it.cnr.isti.hpclab.MatchingConfiguration;
+import it.cnr.isti.hpclab.MatchingConfiguration.Property;
+import it.cnr.isti.hpclab.manager.Manager;
+import it.cnr.isti.hpclab.manager.RankedManager;
+import it.cnr.isti.hpclab.matching.MatchingSetupTest;
+import it.cnr.isti.hpclab.matching.structures.QueryProperties.RuntimeProperty;
+import it.cnr.isti.hpclab.matching.structures.ResultSet;
+import it.cnr.isti.hpclab.matching.structures.SearchRequest;
+import it.cnr.isti.hpclab.matching.structures.resultset.ScoredResultSet;
+
+public class ResultCacheTest extends MatchingSetupTest
+{
+	private IndexOnDisk index = null;
+	
+	@BeforeClass public static void init() throws Exception
+	{
+		MatchingSetupTest.makeEnvironment();
+		MatchingSetupTest.doWT10GSampleIndexing();
+	}
+	
+	@AfterClass public static void clean() 
+	{
+		MatchingSetupTest.deleteTerrierEtc();
+	}
+	
+	@Before public void openIndex() throws IOException
+	{
+		index = IndexOnDisk.createIndex();
+		MatchingConfiguration.set(Property.IGNORE_LOW_IDF_TERMS, "false");
+		MatchingConfiguration.set(Property.MATCHING_ALGORITHM_CLASSNAME, "it.cnr.isti.hpclab.matching.RankedOr");
+		MatchingConfiguration.set(Property.WEIGHTING_MODEL_CLASSNAME, "BM25");
+		MatchingConfiguration.set(Property.TOP_K, "100");
+	}
+	
+	@After public void closeIndex() throws IOException
+	{
+		index.close();
+		MatchingConfiguration.set(Property.CACHE_MEMORY, "0");
+		MatchingConfiguration.set(Property.CACHE_POLICY, "lru");
+	}
+	
+	private static ResultSet results(final int n)
+	{
+		int[] docids = new int[n];
+		float[] scores = new float[n];
+		for (int i = 0; i < n; ++i) {
+			docids[i] = i;
+			scores[i] = n - i;
+		}
+		return new ScoredResultSet(docids, scores);
+	}
+	
+	@Test 
+	public void disabled()
+	{
+		MatchingConfiguration.set(Property.CACHE_MEMORY, "0");
+		assertNull(ResultCache.newInstance());
+	}
+	
+	@Test 
+	public void cachedResults() throws Exception
+	{
+		MatchingConfiguration.set(Property.CACHE_MEMORY, "1");
+		ResultCache cache = ResultCache.newInstance();
+		Manager manager = new RankedManager(index);
+		
+		ResultSet correct = manager.run(new SearchRequest("1", "top view"));
+		
+		SearchRequest srq = new SearchRequest("1", "top view");
+		ResultSet first = cache.run(manager, srq);
+		assertEquals(0, cache.hits());
+		assertEquals(1, cache.misses());
+		assertEquals("1", srq.getQuery().getMetadata(RuntimeProperty.CACHE_MISSES));
+		
+		// the terms order does not matter
+		srq = new SearchRequest("2", "view top");
+		ResultSet second = cache.run(manager, srq);
+		assertEquals(1, cache.hits());
+		assertEquals(1, cache.misses());
+		assertEquals("1", srq.getQuery().getMetadata(RuntimeProperty.CACHE_HITS));
+		
+		assertEquals(correct.size(), first.size());
+		assertEquals(correct.size(), second.size());
+		MatchingSetupTest.Compare(correct, first);
+		MatchingSetupTest.Compare(correct, second);
+		
+		// the term frequencies, weights and required flags do matter
+		cache.run(manager, new SearchRequest("3", "top top view"));
+		cache.run(manager, new SearchRequest("4", "top^2 view"));
+		cache.run(manager, new SearchRequest("5", "+top view"));
+		assertEquals(1, cache.hits());
+		assertEquals(4, cache.misses());
+	}
+	
+	@Test 
+	public void lruEviction()
+	{
+		final long size = ResultCache.size("a", results(10));
+		ResultCache cache = new LRUResultCache(2 * size, 0);
+		
+		cache.put("a", results(10));
+		cache.put("b", results(10));
+		assertNotNull(cache.get("a"));
+		cache.put("c", results(10));
+		
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("a"));
+		assertNotNull(cache.get("c"));
+		assertTrue(cache.used() <= 2 * size);
+	}
+
+	@Test 
+	public void lfuEviction()
+	{
+		final long size = ResultCache.size("a", results(10));
+		ResultCache cache = new LFUResultCache(2 * size, 0);
+		
+		cache.put("a", results(10));
+		cache.put("b", results(10));
+		assertNotNull(cache.get("b"));
+		assertNotNull(cache.get("b"));
+		assertNotNull(cache.get("a"));
+		cache.put("c", results(10));
+		
+		assertNull(cache.get("a"));
+		assertNotNull(cache.get("b"));
+		assertNotNull(cache.get("c"));
+		assertTrue(cache.used() <= 2 * size);
+	}
+	
+	@Test 
+	public void budget()
+	{
+		final long size = ResultCache.size("a", results(10));
+		ResultCache cache = new LRUResultCache(size, 0);
+		
+		// too large to be cached
+		cache.put("a", results(20));
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.used());
+	}
+}
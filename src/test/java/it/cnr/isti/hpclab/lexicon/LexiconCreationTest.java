@@ -0,0 +1,149 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.lexicon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+
+import it.cnr.isti.hpclab.ef.EliasFano;
+import it.cnr.isti.hpclab.ef.Generator;
+import it.cnr.isti.hpclab.lexicon.structures.MPHLexicon;
+import it.cnr.isti.hpclab.lexicon.structures.MinimalPerfectHash;
+import it.cnr.isti.hpclab.matching.MatchingSetupTest;
+
+public class LexiconCreationTest extends MatchingSetupTest
+{
+    protected static IndexOnDisk originalIndex = null;
+    protected static IndexOnDisk succinctIndex = null;
+    
+    @BeforeClass public static void createIndexesOnDisk() throws Exception
+    {
+        MatchingSetupTest.makeEnvironment();
+        MatchingSetupTest.doWT10GSampleIndexing();
+        
+        String args[] = {"-path", terrierEtc, 
+                         "-prefix", "data" + EliasFano.USUAL_EXTENSION, 
+                         "-index", terrierEtc + File.separator + "data.properties", 
+                         "-p", Integer.toString(3)};
+        System.setProperty(EliasFano.LOG2QUANTUM, "3");
+        Generator.main(args);
+        
+        LexiconGenerator.main(new String[] {"-index", terrierEtc + File.separator + "data.properties"});
+        LexiconGenerator.main(new String[] {"-index", terrierEtc + File.separator + "data" + EliasFano.USUAL_EXTENSION + ".properties"});
+    }
+    
+    @AfterClass public static void clean() 
+    {
+        deleteTerrierEtc();
+    }
+        
+    @Before public void openIndex() throws IOException
+    {
+        originalIndex = IndexOnDisk.createIndex();
+        succinctIndex = IndexOnDisk.createIndex(originalIndex.getPath(), originalIndex.getPrefix() + EliasFano.USUAL_EXTENSION);
+    }
+    
+    @After public void closeIndex() throws IOException
+    {
+        originalIndex.close();
+        succinctIndex.close();
+    }
+    
+    private static void checkLexicon(final IndexOnDisk index) throws IOException
+    {
+        assertTrue(index.hasIndexStructure("mphlexicon"));
+        MPHLexicon lexicon = (MPHLexicon) index.getIndexStructure("mphlexicon");
+        assertEquals(index.getLexicon().numberOfEntries(), lexicon.numberOfEntries());
+        
+        for (Map.Entry<String, LexiconEntry> entry: index.getLexicon()) {
+            LexiconEntry correct = entry.getValue();
+            LexiconEntry le = lexicon.getLexiconEntry(entry.getKey());
+            assertNotNull(le);
+            assertEquals(correct.getTermId(), le.getTermId());
+            assertEquals(correct.getDocumentFrequency(), le.getDocumentFrequency());
+            assertEquals(correct.getFrequency(), le.getFrequency());
+            
+            IterablePosting correct_ip = index.getInvertedIndex().getPostings(correct);
+            IterablePosting ip = index.getInvertedIndex().getPostings(le);
+            while (correct_ip.next() != IterablePosting.END_OF_LIST) {
+                assertEquals(correct_ip.getId(), ip.next());
+                assertEquals(correct_ip.getFrequency(), ip.getFrequency());
+            }
+            assertEquals(IterablePosting.END_OF_LIST, ip.next());
+            correct_ip.close();
+            ip.close();
+        }
+        
+        assertNull(lexicon.getLexiconEntry("notaterminthelexicon"));
+        assertNull(lexicon.getLexiconEntry(""));
+    }
+
+    @Test
+    public void testOriginal() throws IOException
+    {
+        checkLexicon(originalIndex);
+    }
+
+    @Test
+    public void testSuccinct() throws IOException
+    {
+        checkLexicon(succinctIndex);
+    }
+    
+    @Test
+    public void testHashFunction()
+    {
+        for (int n: new int[] {1, 2, 3, 10, 1000, 100000}) {
+            long[] hashes = new long[n];
+            for (int i = 0; i < n; ++i)
+                hashes[i] = MinimalPerfectHash.hash("term" + i, 0);
+            int[] displacements = MinimalPerfectHash.build(hashes);
+            assertNotNull(displacements);
+            assertEquals(MinimalPerfectHash.numBuckets(n), displacements.length);
+            
+            boolean[] taken = new boolean[n];
+            for (long hash: hashes) {
+                final int pos = MinimalPerfectHash.position(hash, displacements[MinimalPerfectHash.bucket(hash, displacements.length)], n);
+                assertTrue(pos >= 0 && pos < n);
+                assertTrue(!taken[pos]);
+                taken[pos] = true;
+            }
+        }
+        
+        // duplicated keys
+        assertNull(MinimalPerfectHash.build(new long[] {1, 2, 1}));
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.manager;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+
+import it.cnr.isti.hpclab.ef.EliasFano;
+import it.cnr.isti.hpclab.ef.Generator;
+import it.cnr.isti.hpclab.matching.MatchingSetupTest;
+
+public class PostingCursorTest extends MatchingSetupTest
+{
+	private IndexOnDisk efIndex = null;
+	
+	@BeforeClass public static void init() throws Exception
+	{
+		MatchingSetupTest.makeEnvironment();
+		MatchingSetupTest.doWT10GSampleIndexing();
+		
+		String args[] = {"-path", terrierEtc, 
+				 "-prefix", "data" + EliasFano.USUAL_EXTENSION, 
+				 "-index", terrierEtc + File.separator + "data.properties", 
+				 "-p", Integer.toString(3)};
+		System.setProperty(EliasFano.LOG2QUANTUM, "3");
+		Generator.main(args);
+	}
+	
+	@AfterClass public static void clean() 
+	{
+		MatchingSetupTest.deleteTerrierEtc();
+	}
+	
+	@Before public void openIndex() throws IOException
+	{
+		efIndex = IndexOnDisk.createIndex(terrierEtc, "data" + EliasFano.USUAL_EXTENSION);
+	}
+
+	@After public void closeIndex() throws IOException
+	{
+		efIndex.close();
+	}
+	
+	private IterablePosting open(final LexiconEntry le) throws IOException
+	{
+		IterablePosting p = efIndex.getInvertedIndex().getPostings((BitIndexPointer) le);
+		p.next();
+		return p;
+	}
+	
+	@Test
+	public void next() throws IOException
+	{
+		PostingCursor c = new PostingCursor();
+		for (int i = 0; i < efIndex.getCollectionStatistics().getNumberOfUniqueTerms(); i++) {
+			Map.Entry<String, LexiconEntry> mEntry = efIndex.getLexicon().getIthLexiconEntry(i);
+			IterablePosting p = open(mEntry.getValue());
+			c.reset(open(mEntry.getValue()));
+			
+			while (p.getId() != IterablePosting.END_OF_LIST) {
+				assertEquals(p.getId(), c.docid());
+				assertEquals(p.getFrequency(), c.tf());
+				assertEquals(p.getDocumentLength(), c.doclen());
+				p.next();
+				c.next();
+			}
+			assertEquals(IterablePosting.END_OF_LIST, c.docid());
+			assertEquals(IterablePosting.END_OF_LIST, c.next());
+			p.close();
+		}
+	}
+
+	@Test
+	public void nextGEQ() throws IOException
+	{
+		final int num_docs = efIndex.getCollectionStatistics().getNumberOfDocuments();
+		Random random = new Random(42);
+		PostingCursor c = new PostingCursor();
+		for (int i = 0; i < efIndex.getCollectionStatistics().getNumberOfUniqueTerms(); i++) {
+			Map.Entry<String, LexiconEntry> mEntry = efIndex.getLexicon().getIthLexiconEntry(i);
+			IterablePosting p = open(mEntry.getValue());
+			c.reset(open(mEntry.getValue()));
+
+			int target = 0;
+			while (p.getId() != IterablePosting.END_OF_LIST) {
+				target += random.nextInt(Math.max(1, 2 * num_docs / mEntry.getValue().getDocumentFrequency()));
+				p.next(target);
+				assertEquals(p.getId(), c.nextGEQ(target));
+				if (p.getId() != IterablePosting.END_OF_LIST) {
+					assertEquals(p.getFrequency(), c.tf());
+					assertEquals(p.getDocumentLength(), c.doclen());
+				}
+			}
+			assertEquals(IterablePosting.END_OF_LIST, c.nextGEQ(num_docs));
+			p.close();
+		}
+	}
+
+	@Test
+	public void interleaved() throws IOException
+	{
+		final int num_docs = efIndex.getCollectionStatistics().getNumberOfDocuments();
+		Random random = new Random(42);
+		PostingCursor c = new PostingCursor();
+		for (int i = 0; i < efIndex.getCollectionStatistics().getNumberOfUniqueTerms(); i++) {
+			Map.Entry<String, LexiconEntry> mEntry = efIndex.getLexicon().getIthLexiconEntry(i);
+			IterablePosting p = open(mEntry.getValue());
+			c.reset(open(mEntry.getValue()), false);
+
+			// skips and sequential moves, crossing the blocks in both states of the cursor
+			while (p.getId() != IterablePosting.END_OF_LIST) {
+				if (random.nextBoolean()) {
+					final int target = p.getId() + random.nextInt(Math.max(1, 2 * num_docs / mEntry.getValue().getDocumentFrequency()));
+					p.next(target);
+					assertEquals(p.getId(), c.nextGEQ(target));
+				} else {
+					for (int n = random.nextInt(2 * PostingCursor.BLOCK_SIZE); n > 0 && p.getId() != IterablePosting.END_OF_LIST; n--) {
+						p.next();
+						assertEquals(p.getId(), c.next());
+					}
+				}
+				if (p.getId() != IterablePosting.END_OF_LIST) {
+					assertEquals(p.getFrequency(), c.tf());
+					assertEquals(0, c.doclen());
+				}
+			}
+			assertEquals(IterablePosting.END_OF_LIST, c.docid());
+			assertEquals(IterablePosting.END_OF_LIST, c.next());
+			assertEquals(IterablePosting.END_OF_LIST, c.nextGEQ(num_docs));
+			p.close();
+		}
+	}
+}
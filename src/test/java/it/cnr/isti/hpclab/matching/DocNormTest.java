@@ -0,0 +1,201 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.matching;
+
+import it.cnr.isti.hpclab.MatchingConfiguration;
+import it.cnr.isti.hpclab.MatchingConfiguration.Property;
+import it.cnr.isti.hpclab.ef.EliasFano;
+import it.cnr.isti.hpclab.ef.Generator;
+import it.cnr.isti.hpclab.manager.Manager;
+import it.cnr.isti.hpclab.manager.MaxScoreManager;
+import it.cnr.isti.hpclab.manager.RankedManager;
+import it.cnr.isti.hpclab.manager.TermAtATimeManager;
+import it.cnr.isti.hpclab.manager.WandManager;
+import it.cnr.isti.hpclab.matching.structures.ResultSet;
+import it.cnr.isti.hpclab.matching.structures.SearchRequest;
+import it.cnr.isti.hpclab.maxscore.MSGenerator;
+import it.cnr.isti.hpclab.maxscore.structures.MaxScoreIndex;
+import it.cnr.isti.hpclab.norm.NormGenerator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+
+/**
+ * Checks the ranked algorithms with the document length normalisers on the BM25 models.
+ * The exact results are computed on the original index, which has no normaliser index.
+ */
+@RunWith(value = Parameterized.class)
+public class DocNormTest extends MatchingSetupTest
+{
+	private IndexOnDisk originalIndex = null;
+	private IndexOnDisk efIndex = null;
+	
+	private static final String query5 = "page new 1996 1 mail";
+	private static final String query4 = "page new 1996 1";
+	private static final String query3 = "page new 1996";
+	private static final String query1 = "view";
+	private static final String query2 = "top view";
+
+	private static final String query22 = "top top view view";
+	
+	private static final String query5w = "page^1.3 new^0.1 1996 1 mail^10";
+
+	private String query;
+	private String model;
+	
+	@Parameters(name = "{index}: query={0} model={1}")
+	public static Collection<Object[]> models_queries()
+	{
+		return Arrays.asList(new Object[][]	{ 
+			{query1,"BM25"},       {query2,"BM25"},       {query3,"BM25"},       {query4,"BM25"},       {query5,"BM25"},       {query22,"BM25"},       {query5w,"BM25"},
+			{query1,"LuceneBM25"}, {query2,"LuceneBM25"}, {query3,"LuceneBM25"}, {query4,"LuceneBM25"}, {query5,"LuceneBM25"}, {query22,"LuceneBM25"}, {query5w,"LuceneBM25"},
+			{query1,"CraigBM25"},  {query2,"CraigBM25"},  {query3,"CraigBM25"},  {query4,"CraigBM25"},  {query5,"CraigBM25"},  {query22,"CraigBM25"},  {query5w,"CraigBM25"}
+		});
+	}
+
+	public DocNormTest(String query, String model)
+	{
+		this.query = query;
+		this.model = model;
+	}
+	
+	@BeforeClass public static void init() throws Exception
+	{
+		MatchingSetupTest.makeEnvironment();
+		MatchingSetupTest.doWT10GSampleIndexing();
+		
+		String args[] = {"-path", terrierEtc, 
+				 "-prefix", "data" + EliasFano.USUAL_EXTENSION, 
+				 "-index", terrierEtc + File.separator + "data.properties", 
+				 "-p", Integer.toString(3)};
+		System.setProperty(EliasFano.LOG2QUANTUM, "3");
+		Generator.main(args);
+		
+		String argsNorm[] = {"-index", terrierEtc + File.separator + "data.ef.properties"};
+		NormGenerator.main(argsNorm);
+	}
+	
+	@AfterClass public static void clean() 
+	{
+		MatchingSetupTest.deleteTerrierEtc();
+	}
+	
+	@Before public void createMaxScoreIndex() throws IOException
+	{
+		Files.deleteIfExists(Paths.get(terrierEtc + File.separator + "data.ef" + MaxScoreIndex.USUAL_EXTENSION));
+
+		String argsMS[] = {"-index", terrierEtc + File.separator + "data.ef.properties",
+						 "-wm", model,
+				 		 "-p", Integer.toString(3)};
+
+		MSGenerator.main(argsMS);
+
+		// the index properties must be read after the generation
+		openIndex();
+	}
+
+	public void openIndex() throws IOException
+	{
+		originalIndex = IndexOnDisk.createIndex();	
+		efIndex = IndexOnDisk.createIndex(originalIndex.getPath(), originalIndex.getPrefix() + EliasFano.USUAL_EXTENSION);
+	}
+
+	@After public void closeIndex() throws IOException
+	{
+		originalIndex.close();
+		efIndex.close();
+	}
+	
+	private ResultSet getResults(final String algorithm, final Class<? extends Manager> managerClass, final Index index) throws Exception
+	{
+		MatchingConfiguration.set(Property.IGNORE_LOW_IDF_TERMS, "false");
+		MatchingConfiguration.set(Property.MATCHING_ALGORITHM_CLASSNAME, "it.cnr.isti.hpclab.matching." + algorithm);
+		MatchingConfiguration.set(Property.WEIGHTING_MODEL_CLASSNAME, model);
+		Manager manager = managerClass.getConstructor(Index.class).newInstance(index);
+		return manager.run(new SearchRequest("1", query));
+	}
+
+	private void check(final String algorithm, final Class<? extends Manager> managerClass) throws Exception
+	{
+		ResultSet correct = getResults("RankedOr", RankedManager.class, efIndex);
+		ResultSet current = getResults(algorithm, managerClass, efIndex);
+		
+		assertEquals(correct.size(), current.size());
+		MatchingSetupTest.Compare(correct, current);
+	}
+	
+	@Test 
+	public void normalisedScores() throws Exception
+	{
+		MatchingConfiguration.set(Property.TOP_K, "100");
+		
+		ResultSet exact = getResults("RankedOr", RankedManager.class, originalIndex);
+		ResultSet current = getResults("RankedOr", RankedManager.class, efIndex);
+		
+		// the normalisers are rounded up, the scores never exceed the exact ones
+		assertEquals(exact.size(), current.size());
+		final float[] exactScores = exact.scores();
+		final float[] scores = current.scores();
+		for (int i = 0; i < scores.length; ++i) {
+			assertTrue(scores[i] <= exactScores[i]);
+			assertEquals(exactScores[i], scores[i], 1e-4f * Math.abs(exactScores[i]));
+		}
+	}
+
+	@Test 
+	public void top10() throws Exception
+	{
+		MatchingConfiguration.set(Property.TOP_K, "10");
+		
+		check("TermAtATime", TermAtATimeManager.class);
+		check("MaxScore", MaxScoreManager.class);
+		check("Wand", WandManager.class);
+	}
+	
+	@Test 
+	public void top1000() throws Exception
+	{
+		MatchingConfiguration.set(Property.TOP_K, "1000");
+		
+		check("TermAtATime", TermAtATimeManager.class);
+		check("MaxScore", MaxScoreManager.class);
+		check("Wand", WandManager.class);
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.matching;
+
+import it.cnr.isti.hpclab.MatchingConfiguration;
+import it.cnr.isti.hpclab.MatchingConfiguration.Property;
+import it.cnr.isti.hpclab.Querying;
+import it.cnr.isti.hpclab.ef.EliasFano;
+import it.cnr.isti.hpclab.ef.Generator;
+import it.cnr.isti.hpclab.manager.Manager;
+import it.cnr.isti.hpclab.manager.RankedManager;
+import it.cnr.isti.hpclab.matching.structures.ResultSet;
+import it.cnr.isti.hpclab.matching.structures.SearchRequest;
+import it.cnr.isti.hpclab.matching.structures.query.QueryParserException;
+import it.cnr.isti.hpclab.maxscore.BMWGenerator;
+import it.cnr.isti.hpclab.maxscore.MSGenerator;
+import it.cnr.isti.hpclab.maxscore.structures.BlockMaxScoreIndex;
+import it.cnr.isti.hpclab.maxscore.structures.MaxScoreIndex;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import org.terrier.structures.IndexOnDisk;
+
+@RunWith(value = Parameterized.class)
+public class DocidRangesTest extends MatchingSetupTest
+{
+	private IndexOnDisk originalIndex = null;
+	private IndexOnDisk efIndex = null;
+	
+	private static final String query5 = "page new 1996 1 mail";
+	private static final String query3 = "page new 1996";
+	private static final String query2 = "top view";
+
+	private static final String query5w = "page^1.3 new^0.1 1996 1 mail^10";
+	private static final String query3r = "+page new 1996";
+
+	private String query;
+	private String model;
+	private String algorithm;
+	
+	@Parameters(name = "{index}: query={0} model={1} algorithm={2}")
+	public static Collection<Object[]> models_queries()
+	{
+		return Arrays.asList(new Object[][]	{ 
+			{query2,"BM25","RankedOr"},  {query3,"BM25","RankedOr"},  {query5,"BM25","RankedOr"},  {query5w,"BM25","RankedOr"},  {query3r,"BM25","RankedOr"},
+			{query2,"BM25","MaxScore"},  {query3,"BM25","MaxScore"},  {query5,"BM25","MaxScore"},  {query5w,"BM25","MaxScore"},  {query3r,"BM25","MaxScore"},
+			{query2,"BM25","Wand"},      {query3,"BM25","Wand"},      {query5,"BM25","Wand"},      {query5w,"BM25","Wand"},      {query3r,"BM25","Wand"},
+			{query2,"BM25","BlockMaxWand"}, {query3,"BM25","BlockMaxWand"}, {query5,"BM25","BlockMaxWand"}, {query5w,"BM25","BlockMaxWand"}, {query3r,"BM25","BlockMaxWand"},
+			{query2,"LM","MaxScore"},    {query5,"LM","Wand"},        {query5,"DLH13","BlockMaxWand"}
+		});
+	}
+
+	public DocidRangesTest(String query, String model, String algorithm)
+	{
+		this.query = query;
+		this.model = model;
+		this.algorithm = algorithm;
+	}
+	
+	@BeforeClass public static void init() throws Exception
+	{
+		MatchingSetupTest.makeEnvironment();
+		MatchingSetupTest.doWT10GSampleIndexing();
+		
+		String args[] = {"-path", terrierEtc, 
+				 "-prefix", "data" + EliasFano.USUAL_EXTENSION, 
+				 "-index", terrierEtc + File.separator + "data.properties", 
+				 "-p", Integer.toString(3)};
+		System.setProperty(EliasFano.LOG2QUANTUM, "3");
+		Generator.main(args);
+	}
+	
+	@AfterClass public static void clean() 
+	{
+		MatchingSetupTest.deleteTerrierEtc();
+	}
+	
+	@Before public void createMaxScoreIndex() throws IOException, InterruptedException
+	{
+		final String prefix = terrierEtc + File.separator + "data.ef";
+		Files.deleteIfExists(Paths.get(prefix + MaxScoreIndex.USUAL_EXTENSION));
+		Files.deleteIfExists(Paths.get(prefix + BlockMaxScoreIndex.STRUCTURE_NAME + BlockMaxScoreIndex.DOCID_EXT));
+		Files.deleteIfExists(Paths.get(prefix + BlockMaxScoreIndex.STRUCTURE_NAME + BlockMaxScoreIndex.SCORE_EXT));
+		Files.deleteIfExists(Paths.get(prefix + BlockMaxScoreIndex.STRUCTURE_NAME + BlockMaxScoreIndex.OFFSET_EXT));
+		
+		String argsMS[] = {"-index", terrierEtc + File.separator + "data.ef.properties",
+						 "-wm", model,
+				 		 "-p", Integer.toString(3)};
+		MSGenerator.main(argsMS);
+		
+		String argsBMW[] = {"-index", terrierEtc + File.separator + "data.ef.properties",
+				 		 "-p", Integer.toString(3),
+				 		 "-b", Integer.toString(4)};
+		BMWGenerator.main(argsBMW);
+	}
+
+	@Before public void openIndex() throws IOException
+	{
+		originalIndex = IndexOnDisk.createIndex();	
+		efIndex = IndexOnDisk.createIndex(originalIndex.getPath(), originalIndex.getPrefix() + EliasFano.USUAL_EXTENSION);
+	}
+
+	@After public void closeIndex() throws IOException
+	{
+		MatchingConfiguration.set(Property.DOCID_RANGES, "1");
+		originalIndex.close();
+		efIndex.close();
+	}
+	
+	private ResultSet getRankedResults() throws IOException, QueryParserException
+	{
+		MatchingConfiguration.set(Property.DOCID_RANGES, "1");
+		MatchingConfiguration.set(Property.IGNORE_LOW_IDF_TERMS, "false");
+		MatchingConfiguration.set(Property.MATCHING_ALGORITHM_CLASSNAME, "it.cnr.isti.hpclab.matching.RankedOr");
+		MatchingConfiguration.set(Property.WEIGHTING_MODEL_CLASSNAME, model);
+		SearchRequest srq = new SearchRequest("1", query);
+		Manager manager = new RankedManager(efIndex);
+		return manager.run(srq);
+	}
+
+	private ResultSet getRangeResults(final int num_ranges) throws IOException, QueryParserException
+	{
+		MatchingConfiguration.set(Property.DOCID_RANGES, Integer.toString(num_ranges));
+		MatchingConfiguration.set(Property.IGNORE_LOW_IDF_TERMS, "false");
+		MatchingConfiguration.set(Property.MATCHING_ALGORITHM_CLASSNAME, "it.cnr.isti.hpclab.matching." + algorithm);
+		MatchingConfiguration.set(Property.WEIGHTING_MODEL_CLASSNAME, model);
+		Manager manager = Querying.createManager(efIndex);
+		
+		// the same manager processes the same query twice, to check the range managers are correctly reused
+		manager.run(new SearchRequest("1", query));
+		return manager.run(new SearchRequest("1", query));
+	}
+
+	private void compare(final int k, final int num_ranges) throws IOException, QueryParserException
+	{
+		MatchingConfiguration.set(Property.TOP_K, Integer.toString(k));
+		
+		ResultSet correct = getRankedResults();
+		ResultSet current = getRangeResults(num_ranges);
+		
+		assertEquals(correct.size(), current.size());
+		MatchingSetupTest.Compare(correct, current);	
+	}
+	
+	@Test 
+	public void rankFull() throws IOException, QueryParserException
+	{
+		compare(10000, 4);
+	}
+
+	@Test 
+	public void top10() throws IOException, QueryParserException
+	{
+		compare(10, 3);
+	}
+
+	@Test
+	public void top3() throws IOException, QueryParserException
+	{
+		compare(3, 7);
+	}
+}
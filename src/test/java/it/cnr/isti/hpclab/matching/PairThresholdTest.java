@@ -0,0 +1,253 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.matching;
+
+import it.cnr.isti.hpclab.MatchingConfiguration;
+import it.cnr.isti.hpclab.MatchingConfiguration.Property;
+import it.cnr.isti.hpclab.ef.EliasFano;
+import it.cnr.isti.hpclab.ef.Generator;
+import it.cnr.isti.hpclab.manager.Manager;
+import it.cnr.isti.hpclab.manager.MaxScoreManager;
+import it.cnr.isti.hpclab.manager.RankedManager;
+import it.cnr.isti.hpclab.manager.WandManager;
+import it.cnr.isti.hpclab.matching.structures.ResultSet;
+import it.cnr.isti.hpclab.matching.structures.SearchRequest;
+import it.cnr.isti.hpclab.matching.structures.QueryProperties.RuntimeProperty;
+import it.cnr.isti.hpclab.matching.structures.query.QueryTerm;
+import it.cnr.isti.hpclab.maxscore.MSGenerator;
+import it.cnr.isti.hpclab.maxscore.PairGenerator;
+import it.cnr.isti.hpclab.maxscore.structures.KthScoreIndex;
+import it.cnr.isti.hpclab.maxscore.structures.MaxScoreIndex;
+import it.cnr.isti.hpclab.maxscore.structures.PairScoreIndex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+
+/**
+ * Checks the pair score index and that seeding the top queue with it does not change the results of the disjunctive algorithms.
+ * The correct results are computed on the original index, which has no pair score index.
+ */
+@RunWith(value = Parameterized.class)
+public class PairThresholdTest extends MatchingSetupTest
+{
+	private IndexOnDisk originalIndex = null;
+	private IndexOnDisk efIndex = null;
+	
+	private static final String query5 = "page new 1996 1 mail";
+	private static final String query3 = "page new 1996";
+	private static final String query2 = "top view";
+
+	private static final String query22 = "top top view view";
+	
+	private static final String query5w = "page^1.3 new^0.1 1996 1 mail^10";
+	private static final String query2w = "top^0.1 view^0.9";
+
+	// "agreed" is stemmed to "agre", and stemming "agre" again gives "agr"
+	private static final String restemmed = "agreed page";
+
+	private static final String[] query_log = {query2, query2, query3, query5, "page 1996", "new mail", restemmed};
+	
+	private String query;
+	private String model;
+	
+	@Parameters(name = "{index}: query={0} model={1}")
+	public static Collection<Object[]> models_queries()
+	{
+		return Arrays.asList(new Object[][]	{ 
+			{query2,"BM25"},  {query3,"BM25"},  {query5,"BM25"},  {query22,"BM25"},  {query2w,"BM25"},  {query5w,"BM25"},
+			{query2,"LM"},    {query3,"LM"},    {query5,"LM"},    {query22,"LM"},    {query2w,"LM"},    {query5w,"LM"},
+			{query2,"DLH13"}, {query3,"DLH13"}, {query5,"DLH13"}, {query22,"DLH13"}, {query2w,"DLH13"}, {query5w,"DLH13"}
+		});
+	}
+
+	public PairThresholdTest(String query, String model)
+	{
+		this.query = query;
+		this.model = model;
+	}
+	
+	@BeforeClass public static void init() throws Exception
+	{
+		MatchingSetupTest.makeEnvironment();
+		MatchingSetupTest.doWT10GSampleIndexing();
+		
+		String args[] = {"-path", terrierEtc, 
+				 "-prefix", "data" + EliasFano.USUAL_EXTENSION, 
+				 "-index", terrierEtc + File.separator + "data.properties", 
+				 "-p", Integer.toString(3)};
+		System.setProperty(EliasFano.LOG2QUANTUM, "3");
+		Generator.main(args);
+		
+		Files.write(Paths.get(terrierEtc + File.separator + "query_log.txt"), Arrays.asList(query_log));
+	}
+	
+	@AfterClass public static void clean() 
+	{
+		MatchingSetupTest.deleteTerrierEtc();
+	}
+	
+	@Before public void createPairScoreIndex() throws IOException
+	{
+		Files.deleteIfExists(Paths.get(terrierEtc + File.separator + "data.ef" + MaxScoreIndex.USUAL_EXTENSION));
+		Files.deleteIfExists(Paths.get(terrierEtc + File.separator + "data.ef" + PairScoreIndex.USUAL_EXTENSION));
+
+		String argsMS[] = {"-index", terrierEtc + File.separator + "data.ef.properties",
+						 "-wm", model,
+				 		 "-p", Integer.toString(3)};
+		MSGenerator.main(argsMS);
+
+		String argsPair[] = {"-index", terrierEtc + File.separator + "data.ef.properties",
+						 "-wm", model,
+						 "-queries", terrierEtc + File.separator + "query_log.txt",
+						 "-f", Integer.toString(1),
+				 		 "-p", Integer.toString(3)};
+		PairGenerator.main(argsPair);
+
+		// the index properties must be read after the generation
+		openIndex();
+	}
+
+	public void openIndex() throws IOException
+	{
+		originalIndex = IndexOnDisk.createIndex();	
+		efIndex = IndexOnDisk.createIndex(originalIndex.getPath(), originalIndex.getPrefix() + EliasFano.USUAL_EXTENSION);
+	}
+
+	@After public void closeIndex() throws IOException
+	{
+		originalIndex.close();
+		efIndex.close();
+	}
+	
+	private ResultSet getResults(final SearchRequest srq, final String algorithm, final Class<? extends Manager> managerClass, final Index index) throws Exception
+	{
+		MatchingConfiguration.set(Property.IGNORE_LOW_IDF_TERMS, "false");
+		MatchingConfiguration.set(Property.MATCHING_ALGORITHM_CLASSNAME, "it.cnr.isti.hpclab.matching." + algorithm);
+		MatchingConfiguration.set(Property.WEIGHTING_MODEL_CLASSNAME, model);
+		Manager manager = managerClass.getConstructor(Index.class).newInstance(index);
+		return manager.run(srq);
+	}
+
+	private void check(final String algorithm, final Class<? extends Manager> managerClass) throws Exception
+	{
+		SearchRequest reference = new SearchRequest("1", query);
+		ResultSet correct = getResults(reference, "RankedOr", RankedManager.class, originalIndex);
+		
+		SearchRequest srq = new SearchRequest("1", query);
+		ResultSet current = getResults(srq, algorithm, managerClass, efIndex);
+
+		// the seeded threshold never exceeds the k-th score of the query
+		final float seeded = Float.parseFloat(srq.getQuery().getMetadata(RuntimeProperty.INITIAL_THRESHOLD));
+		assertTrue(seeded <= Float.parseFloat(reference.getQuery().getMetadata(RuntimeProperty.FINAL_THRESHOLD)));
+		
+		assertEquals(correct.size(), current.size());
+		MatchingSetupTest.Compare(correct, current);
+	}
+	
+	@Test 
+	public void pairScores() throws Exception
+	{
+		MatchingConfiguration.set(Property.TOP_K, "10");
+		
+		PairScoreIndex pairScoreIndex = (PairScoreIndex) efIndex.getIndexStructure("pairscore");
+		assertTrue(pairScoreIndex.size() > 0);
+		
+		QueryTerm[] terms = new SearchRequest("1", query).getQueryTerms();
+		for (int i = 0; i < terms.length; i++) {
+			for (int j = i + 1; j < terms.length; j++) {
+				LexiconEntry le1 = efIndex.getLexicon().getLexiconEntry(terms[i].getQueryTerm());
+				LexiconEntry le2 = efIndex.getLexicon().getLexiconEntry(terms[j].getQueryTerm());
+				if (le1.getTermId() == le2.getTermId())
+					continue;
+				final int pos = pairScoreIndex.find(le1.getTermId(), le2.getTermId());
+				assertTrue(pos >= 0);
+				
+				ResultSet rs = getResults(new SearchRequest("1", new QueryTerm(terms[i].getQueryTerm()), new QueryTerm(terms[j].getQueryTerm())), "RankedAnd", RankedManager.class, originalIndex);
+				assertEquals((rs.size() == 10) ? rs.scores()[9] : 0.0f, pairScoreIndex.getKthScore(pos, 0), 1e-4);
+			}
+		}
+	}
+	
+	@Test 
+	public void restemmedPairScores() throws Exception
+	{
+		MatchingConfiguration.set(Property.TOP_K, Integer.toString(KthScoreIndex.RANKS[KthScoreIndex.RANKS.length - 1]));
+		
+		QueryTerm[] terms = new SearchRequest("1", restemmed).getQueryTerms();
+		assertEquals(2, terms.length);
+		// the pipeline is not idempotent on the stemmed term
+		assertTrue(Arrays.stream(terms).anyMatch(term -> term.getQueryTerm().equals("agre")));
+		assertNotEquals("agre", new SearchRequest("1", "agre").getQueryTerms()[0].getQueryTerm());
+		
+		PairScoreIndex pairScoreIndex = (PairScoreIndex) efIndex.getIndexStructure("pairscore");
+		LexiconEntry le1 = efIndex.getLexicon().getLexiconEntry(terms[0].getQueryTerm());
+		LexiconEntry le2 = efIndex.getLexicon().getLexiconEntry(terms[1].getQueryTerm());
+		final int pos = pairScoreIndex.find(le1.getTermId(), le2.getTermId());
+		assertTrue(pos >= 0);
+
+		// the k-th scores are the ones of the conjunction of the original query terms
+		ResultSet rs = getResults(new SearchRequest("1", restemmed), "RankedAnd", RankedManager.class, originalIndex);
+		assertTrue(rs.size() >= KthScoreIndex.RANKS[0]);
+		for (int r = 0; r < KthScoreIndex.RANKS.length; ++r)
+			assertEquals((rs.size() >= KthScoreIndex.RANKS[r]) ? rs.scores()[KthScoreIndex.RANKS[r] - 1] : 0.0f, pairScoreIndex.getKthScore(pos, r), 1e-4);
+	}
+	
+	@Test 
+	public void top10() throws Exception
+	{
+		MatchingConfiguration.set(Property.TOP_K, "10");
+		
+		check("RankedOr", RankedManager.class);
+		check("MaxScore", MaxScoreManager.class);
+		check("Wand", WandManager.class);
+	}
+	
+	@Test 
+	public void top100() throws Exception
+	{
+		MatchingConfiguration.set(Property.TOP_K, "100");
+		
+		check("RankedOr", RankedManager.class);
+		check("MaxScore", MaxScoreManager.class);
+		check("Wand", WandManager.class);
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.matching;
+
+import it.cnr.isti.hpclab.MatchingConfiguration;
+import it.cnr.isti.hpclab.MatchingConfiguration.Property;
+import it.cnr.isti.hpclab.ef.EliasFano;
+import it.cnr.isti.hpclab.ef.Generator;
+import it.cnr.isti.hpclab.impact.QuantizedGenerator;
+import it.cnr.isti.hpclab.impact.structures.QuantizedIndex;
+import it.cnr.isti.hpclab.manager.Manager;
+import it.cnr.isti.hpclab.manager.MaxScoreManager;
+import it.cnr.isti.hpclab.manager.RankedManager;
+import it.cnr.isti.hpclab.manager.TermAtATimeManager;
+import it.cnr.isti.hpclab.manager.WandManager;
+import it.cnr.isti.hpclab.matching.structures.Result;
+import it.cnr.isti.hpclab.matching.structures.ResultSet;
+import it.cnr.isti.hpclab.matching.structures.SearchRequest;
+import it.cnr.isti.hpclab.matching.structures.TopQueue;
+import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+import it.cnr.isti.hpclab.matching.structures.model.Quantized;
+import it.cnr.isti.hpclab.matching.structures.query.QueryParserException;
+import it.cnr.isti.hpclab.matching.structures.query.QueryTerm;
+import it.cnr.isti.hpclab.matching.structures.resultset.ScoredResultSet;
+import it.cnr.isti.hpclab.maxscore.MSGenerator;
+import it.cnr.isti.hpclab.maxscore.structures.MaxScoreIndex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.Index;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+
+/**
+ * Checks the ranked algorithms on the quantized postings, with the {@link Quantized} weighting model.
+ * The correct results are accumulated from the scores of the weighting model on the inverted index.
+ */
+@RunWith(value = Parameterized.class)
+public class QuantizedTest extends MatchingSetupTest
+{
+	private IndexOnDisk efIndex = null;
+	
+	private static final String query5 = "page new 1996 1 mail";
+	private static final String query4 = "page new 1996 1";
+	private static final String query3 = "page new 1996";
+	private static final String query1 = "view";
+	private static final String query2 = "top view";
+
+	private static final String query22 = "top top view view";
+	
+	private static final String query5w = "page^1.3 new^0.1 1996 1 mail^10";
+
+	private String query;
+	private String model;
+	
+	@Parameters(name = "{index}: query={0} model={1}")
+	public static Collection<Object[]> models_queries()
+	{
+		return Arrays.asList(new Object[][]	{ 
+			{query1,"BM25"},  {query2,"BM25"},  {query3,"BM25"},  {query4,"BM25"},  {query5,"BM25"},  {query22,"BM25"},  {query5w,"BM25"},
+			{query1,"LM"},    {query2,"LM"},    {query3,"LM"},    {query4,"LM"},    {query5,"LM"},    {query22,"LM"},    {query5w,"LM"},
+			{query1,"DLH13"}, {query2,"DLH13"}, {query3,"DLH13"}, {query4,"DLH13"}, {query5,"DLH13"}, {query22,"DLH13"}, {query5w,"DLH13"}
+		});
+	}
+
+	public QuantizedTest(String query, String model)
+	{
+		this.query = query;
+		this.model = model;
+	}
+	
+	@BeforeClass public static void init() throws Exception
+	{
+		MatchingSetupTest.makeEnvironment();
+		MatchingSetupTest.doWT10GSampleIndexing();
+		
+		String args[] = {"-path", terrierEtc, 
+				 "-prefix", "data" + EliasFano.USUAL_EXTENSION, 
+				 "-index", terrierEtc + File.separator + "data.properties", 
+				 "-p", Integer.toString(3)};
+		System.setProperty(EliasFano.LOG2QUANTUM, "3");
+		Generator.main(args);
+	}
+	
+	@AfterClass public static void clean() 
+	{
+		MatchingSetupTest.deleteTerrierEtc();
+	}
+	
+	@Before public void createQuantizedIndex() throws IOException
+	{
+		final String prefix = terrierEtc + File.separator + "data.ef";
+		Files.deleteIfExists(Paths.get(prefix + QuantizedIndex.USUAL_EXTENSION + QuantizedIndex.DOCID_EXT));
+		Files.deleteIfExists(Paths.get(prefix + QuantizedIndex.USUAL_EXTENSION + QuantizedIndex.IMPACT_EXT));
+		Files.deleteIfExists(Paths.get(prefix + QuantizedIndex.USUAL_EXTENSION + QuantizedIndex.OFFSET_EXT));
+		Files.deleteIfExists(Paths.get(prefix + MaxScoreIndex.USUAL_EXTENSION));
+
+		String argsQuantized[] = {"-index", terrierEtc + File.separator + "data.ef.properties",
+						 "-wm", model,
+				 		 "-p", Integer.toString(3)};
+		QuantizedGenerator.main(argsQuantized);
+
+		// the max scores are the maximum dequantized impacts
+		String argsMS[] = {"-index", terrierEtc + File.separator + "data.ef.properties",
+						 "-wm", "Quantized",
+				 		 "-p", Integer.toString(3)};
+		MSGenerator.main(argsMS);
+
+		// the index properties must be read after the generation
+		efIndex = IndexOnDisk.createIndex(terrierEtc, "data" + EliasFano.USUAL_EXTENSION);
+	}
+
+	@After public void closeIndex() throws IOException
+	{
+		efIndex.close();
+	}
+	
+	// Exhaustive accumulation of the scores of the quantized model on the inverted index
+	private ResultSet getQuantizedResults() throws IOException, QueryParserException
+	{
+		SearchRequest srq = new SearchRequest("1", query);
+		WeightingModel wm = new Quantized();
+		wm.setup(efIndex);
+		float[] acc = new float[efIndex.getCollectionStatistics().getNumberOfDocuments()];
+		boolean[] touched = new boolean[acc.length];
+		for (QueryTerm qt: srq.getQueryTerms()) {
+			LexiconEntry le = efIndex.getLexicon().getLexiconEntry(qt.getQueryTerm());
+			if (le == null)
+				continue;
+			IterablePosting p = efIndex.getInvertedIndex().getPostings((BitIndexPointer) le);
+			while (p.next() != IterablePosting.END_OF_LIST) {
+				acc[p.getId()] += wm.score(srq.getQueryTermFrequency(qt), p, le) * qt.getWeight();
+				touched[p.getId()] = true;
+			}
+			p.close();
+		}
+
+		TopQueue heap = new TopQueue(MatchingConfiguration.getInt(Property.TOP_K));
+		for (int docid = 0; docid < acc.length; ++docid)
+			if (touched[docid])
+				heap.insert(new Result(docid, acc[docid]));
+		return new ScoredResultSet(heap);
+	}
+
+	private ResultSet getResults(final String algorithm, final Class<? extends Manager> managerClass) throws Exception
+	{
+		MatchingConfiguration.set(Property.IGNORE_LOW_IDF_TERMS, "false");
+		MatchingConfiguration.set(Property.MATCHING_ALGORITHM_CLASSNAME, "it.cnr.isti.hpclab.matching." + algorithm);
+		MatchingConfiguration.set(Property.WEIGHTING_MODEL_CLASSNAME, "Quantized");
+		Manager manager = managerClass.getConstructor(Index.class).newInstance(efIndex);
+		return manager.run(new SearchRequest("1", query));
+	}
+
+	private void check(final String algorithm, final Class<? extends Manager> managerClass) throws Exception
+	{
+		ResultSet correct = getQuantizedResults();
+		ResultSet current = getResults(algorithm, managerClass);
+		
+		assertEquals(correct.size(), current.size());
+		MatchingSetupTest.Compare(correct, current);
+	}
+	
+	@Test
+	public void postings() throws IOException
+	{
+		QuantizedIndex quantizedIndex = (QuantizedIndex) efIndex.getIndexStructure("quantized");
+		for (int i = 0; i < efIndex.getCollectionStatistics().getNumberOfUniqueTerms(); i++) {
+			Map.Entry<String, LexiconEntry> mEntry = efIndex.getLexicon().getIthLexiconEntry(i);
+			IterablePosting p = efIndex.getInvertedIndex().getPostings((BitIndexPointer) mEntry.getValue());
+			IterablePosting q = quantizedIndex.getPostings(mEntry.getValue().getTermId());
+			while (p.next() != IterablePosting.END_OF_LIST) {
+				assertEquals(p.getId(), q.next());
+				assertTrue(q.getFrequency() >= 1 && q.getFrequency() <= 255);
+			}
+			assertEquals(IterablePosting.END_OF_LIST, q.next());
+			p.close();
+		}
+	}
+
+	@Test 
+	public void top10() throws Exception
+	{
+		MatchingConfiguration.set(Property.TOP_K, "10");
+		
+		check("RankedOr", RankedManager.class);
+		check("TermAtATime", TermAtATimeManager.class);
+		check("MaxScore", MaxScoreManager.class);
+		check("Wand", WandManager.class);
+	}
+	
+	@Test 
+	public void top1000() throws Exception
+	{
+		MatchingConfiguration.set(Property.TOP_K, "1000");
+		
+		check("RankedOr", RankedManager.class);
+		check("MaxScore", MaxScoreManager.class);
+		check("Wand", WandManager.class);
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.matching;
+
+import it.cnr.isti.hpclab.MatchingConfiguration;
+import it.cnr.isti.hpclab.MatchingConfiguration.Property;
+import it.cnr.isti.hpclab.ef.EliasFano;
+import it.cnr.isti.hpclab.ef.Generator;
+import it.cnr.isti.hpclab.impact.ImpactGenerator;
+import it.cnr.isti.hpclab.impact.structures.ImpactEnumerator;
+import it.cnr.isti.hpclab.impact.structures.ImpactIndex;
+import it.cnr.isti.hpclab.manager.ImpactManager;
+import it.cnr.isti.hpclab.manager.Manager;
+import it.cnr.isti.hpclab.matching.structures.Result;
+import it.cnr.isti.hpclab.matching.structures.ResultSet;
+import it.cnr.isti.hpclab.matching.structures.SearchRequest;
+import it.cnr.isti.hpclab.matching.structures.TopQueue;
+import it.cnr.isti.hpclab.matching.structures.QueryProperties.RuntimeProperty;
+import it.cnr.isti.hpclab.matching.structures.query.QueryParserException;
+import it.cnr.isti.hpclab.matching.structures.query.QueryTerm;
+import it.cnr.isti.hpclab.matching.structures.resultset.ScoredResultSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+
+@RunWith(value = Parameterized.class)
+public class ScoreAtATimeTest extends MatchingSetupTest
+{
+	private IndexOnDisk originalIndex = null;
+	private IndexOnDisk efIndex = null;
+
+	private static final String query5 = "page new 1996 1 mail";
+	private static final String query4 = "page new 1996 1";
+	private static final String query3 = "page new 1996";
+	private static final String query1 = "view";
+	private static final String query2 = "top view";
+
+	private static final String query22 = "top top view view";
+
+	private String query;
+	private String model;
+
+	@Parameters(name = "{index}: query={0} model={1}")
+	public static Collection<Object[]> models_queries()
+	{
+		return Arrays.asList(new Object[][]	{
+			{query1,"BM25"},  {query2,"BM25"},  {query3,"BM25"},  {query4,"BM25"},  {query5,"BM25"},  {query22,"BM25"},
+			{query1,"LM"},    {query2,"LM"},    {query3,"LM"},    {query4,"LM"},    {query5,"LM"},    {query22,"LM"},
+			{query1,"DLH13"}, {query2,"DLH13"}, {query3,"DLH13"}, {query4,"DLH13"}, {query5,"DLH13"}, {query22,"DLH13"}
+		});
+	}
+
+	public ScoreAtATimeTest(String query, String model)
+	{
+		this.query = query;
+		this.model = model;
+	}
+
+	@BeforeClass public static void init() throws Exception
+	{
+		MatchingSetupTest.makeEnvironment();
+		MatchingSetupTest.doWT10GSampleIndexing();
+
+		String args[] = {"-path", terrierEtc,
+				 "-prefix", "data" + EliasFano.USUAL_EXTENSION,
+				 "-index", terrierEtc + File.separator + "data.properties",
+				 "-p", Integer.toString(3)};
+		System.setProperty(EliasFano.LOG2QUANTUM, "3");
+		Generator.main(args);
+	}
+
+	@AfterClass public static void clean()
+	{
+		MatchingSetupTest.deleteTerrierEtc();
+	}
+
+	@Before public void createImpactIndex() throws IOException
+	{
+		final String prefix = terrierEtc + File.separator + "data.ef" + ImpactIndex.USUAL_EXTENSION;
+		Files.deleteIfExists(Paths.get(prefix + ImpactIndex.DOCID_EXT));
+		Files.deleteIfExists(Paths.get(prefix + ImpactIndex.SEGMENT_EXT));
+		Files.deleteIfExists(Paths.get(prefix + ImpactIndex.OFFSET_EXT));
+
+		String argsImpact[] = {"-index", terrierEtc + File.separator + "data.ef.properties",
+						 "-wm", model,
+				 		 "-p", Integer.toString(3)};
+
+		ImpactGenerator.main(argsImpact);
+
+		// the index properties must be read after the generation
+		openIndex();
+	}
+
+	public void openIndex() throws IOException
+	{
+		originalIndex = IndexOnDisk.createIndex();
+		efIndex = IndexOnDisk.createIndex(originalIndex.getPath(), originalIndex.getPrefix() + EliasFano.USUAL_EXTENSION);
+	}
+
+	@After public void closeIndex() throws IOException
+	{
+		originalIndex.close();
+		efIndex.close();
+
+		MatchingConfiguration.set(Property.IMPACT_POSTINGS_BUDGET, "0");
+		MatchingConfiguration.set(Property.DOCID_RANGES, "1");
+	}
+
+	// Exhaustive term-at-a-time accumulation of the impacts, with unit query term weights all sums are exact
+	private ResultSet getImpactResults() throws IOException, QueryParserException
+	{
+		SearchRequest srq = new SearchRequest("1", query);
+		ImpactIndex impactIndex = (ImpactIndex) efIndex.getIndexStructure("impact");
+		float[] acc = new float[efIndex.getCollectionStatistics().getNumberOfDocuments()];
+		for (QueryTerm qt: srq.getQueryTerms()) {
+			LexiconEntry le = efIndex.getLexicon().getLexiconEntry(qt.getQueryTerm());
+			if (le == null)
+				continue;
+			ImpactEnumerator e = impactIndex.get(le.getTermId());
+			while (e.hasNext()) {
+				e.next();
+				for (long p = e.begin(); p < e.end(); ++p)
+					acc[e.docid(p)] += srq.getQueryTermFrequency(qt) * qt.getWeight() * e.impact();
+			}
+		}
+
+		TopQueue heap = new TopQueue(MatchingConfiguration.getInt(Property.TOP_K));
+		for (int docid = 0; docid < acc.length; ++docid)
+			if (acc[docid] != 0.0f)
+				heap.insert(new Result(docid, acc[docid] * impactIndex.getScale()));
+		return new ScoredResultSet(heap);
+	}
+
+	private ResultSet getSaatResults(final SearchRequest srq) throws IOException
+	{
+		MatchingConfiguration.set(Property.IGNORE_LOW_IDF_TERMS, "false");
+		MatchingConfiguration.set(Property.MATCHING_ALGORITHM_CLASSNAME, "it.cnr.isti.hpclab.matching.ScoreAtATime");
+		MatchingConfiguration.set(Property.WEIGHTING_MODEL_CLASSNAME, model);
+		Manager manager = new ImpactManager(efIndex);
+		return manager.run(srq);
+	}
+
+	@Test
+	public void rankFull() throws IOException, QueryParserException
+	{
+		MatchingConfiguration.set(Property.TOP_K, "10000");
+
+		ResultSet correct = getImpactResults();
+		ResultSet current = getSaatResults(new SearchRequest("1", query));
+
+		assertEquals(correct.size(), current.size());
+		MatchingSetupTest.Compare(correct, current);
+	}
+
+	@Test
+	public void top10() throws IOException, QueryParserException
+	{
+		MatchingConfiguration.set(Property.TOP_K, "10");
+
+		ResultSet correct = getImpactResults();
+		ResultSet current = getSaatResults(new SearchRequest("1", query));
+
+		assertEquals(correct.size(), current.size());
+		MatchingSetupTest.Compare(correct, current);
+	}
+
+	@Test
+	public void postingsBudget() throws IOException, QueryParserException
+	{
+		MatchingConfiguration.set(Property.TOP_K, "10000");
+		MatchingConfiguration.set(Property.IMPACT_POSTINGS_BUDGET, "10");
+
+		SearchRequest srq = new SearchRequest("1", query);
+		ResultSet current = getSaatResults(srq);
+
+		assertTrue(Long.parseLong(srq.getQuery().getMetadata(RuntimeProperty.PROCESSED_POSTINGS)) <= 10);
+		assertTrue(current.size() <= 10);
+	}
+
+	@Test
+	public void postingsBudgetRanges() throws IOException, QueryParserException
+	{
+		MatchingConfiguration.set(Property.TOP_K, "10000");
+		MatchingConfiguration.set(Property.IMPACT_POSTINGS_BUDGET, "10");
+		MatchingConfiguration.set(Property.DOCID_RANGES, "4");
+
+		SearchRequest srq = new SearchRequest("1", query);
+		ResultSet current = getSaatResults(srq);
+
+		// the budget bounds the whole query, not every docid range
+		assertTrue(Long.parseLong(srq.getQuery().getMetadata(RuntimeProperty.PROCESSED_POSTINGS)) <= 10);
+		assertTrue(current.size() <= 10);
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.matching.structures;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+
+import it.cnr.isti.hpclab.matching.MatchingSetupTest;
+
+@RunWith(value = Parameterized.class)
+public class TermScorerTest extends MatchingSetupTest
+{
+	private IndexOnDisk index = null;
+	private WeightingModel wm = null;
+
+	private String model;
+
+	@Parameters(name = "{index}: model={0}")
+	public static Collection<Object[]> models()
+	{
+		return Arrays.asList(new Object[][] {
+			{"BM25"}, {"LuceneBM25"}, {"CraigBM25"}, {"LM"}, {"LMFast"}, {"DLH13"}, {"DLH13Fast"}
+		});
+	}
+
+	public TermScorerTest(String model)
+	{
+		this.model = model;
+	}
+
+	@BeforeClass public static void init() throws Exception
+	{
+		MatchingSetupTest.makeEnvironment();
+		MatchingSetupTest.doWT10GSampleIndexing();
+	}
+
+	@AfterClass public static void clean()
+	{
+		MatchingSetupTest.deleteTerrierEtc();
+	}
+
+	@Before public void openIndex() throws Exception
+	{
+		index = IndexOnDisk.createIndex();
+		wm = (WeightingModel) Class.forName("it.cnr.isti.hpclab.matching.structures.model." + model).getConstructor().newInstance();
+		wm.setup(index);
+	}
+
+	@After public void closeIndex() throws IOException
+	{
+		index.close();
+	}
+
+	@Test
+	public void sameScores() throws IOException
+	{
+		final int[] qtfs = {1, 2};
+		final float[] weights = {1.0f, 0.5f, 2.0f};
+		for (int i = 0; i < index.getCollectionStatistics().getNumberOfUniqueTerms(); i++) {
+			Map.Entry<String, LexiconEntry> mEntry = index.getLexicon().getIthLexiconEntry(i);
+			LexiconEntry le = mEntry.getValue();
+			for (int qtf: qtfs) {
+				for (float weight: weights) {
+					TermScorer scorer = wm.scorer(qtf, weight, le);
+					IterablePosting p = index.getInvertedIndex().getPostings((BitIndexPointer) le);
+					while (p.next() != IterablePosting.END_OF_LIST)
+						assertEquals(wm.score(qtf, p, le) * weight, scorer.score(p.getFrequency(), p.getDocumentLength()), 0.0f);
+					p.close();
+				}
+			}
+		}
+	}
+}
@@ -21,10 +21,13 @@
 package it.cnr.isti.hpclab.matching.structures;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -42,6 +45,53 @@ public class TopQueueTest
 		assertEquals(queue.threshold(), res1.getScore(), 0.00001);
 	}
 	
+	@Test public void primitive()
+	{
+		final int k = 1500;
+		final int n = 10000;
+		
+		TopQueue queue = new TopQueue(k);
+		float[] all_scores = new float[n];
+		Random random = new Random(42);
+		for (int docid = 0; docid < n; docid++) {
+			all_scores[docid] = random.nextFloat();
+			queue.insert(docid, all_scores[docid]);
+		}
+		assertEquals(k, queue.size());
+		
+		float[] sorted = Arrays.copyOf(all_scores, n);
+		Arrays.sort(sorted);
+		assertEquals(sorted[n - k], queue.threshold(), 0.0f);
+		assertEquals(sorted[n - k], queue.firstScore(), 0.0f);
+		
+		int[] docids = new int[k];
+		float[] scores = new float[k];
+		queue.copy().drain(docids, scores);
+		for (int i = 0; i < k; i++) {
+			assertEquals(sorted[n - 1 - i], scores[i], 0.0f);
+			assertEquals(all_scores[docids[i]], scores[i], 0.0f);
+		}
+		
+		TopQueue merged = new TopQueue(10);
+		merged.insertAll(queue);
+		assertEquals(10, merged.size());
+		assertEquals(sorted[n - 10], merged.threshold(), 0.0f);
+		assertEquals(k, queue.size());
+	}
+	
+	@Test public void sharedThreshold()
+	{
+		SharedThreshold shared = new SharedThreshold(0.0f);
+		TopQueue queue1 = new TopQueue(1, 0.0f, shared);
+		TopQueue queue2 = new TopQueue(1, 0.0f, shared);
+		
+		queue1.insert(1, 5.0f);
+		assertEquals(5.0f, queue2.threshold(), 0.0f);
+		assertFalse(queue2.insert(2, 4.0f));
+		assertTrue(queue2.insert(3, 6.0f));
+		assertEquals(6.0f, queue1.threshold(), 0.0f);
+	}
+
 	@Test public void serialization_0() throws IOException, ClassNotFoundException
 	{
 		TopQueue original_queue;
@@ -127,13 +177,11 @@ public class TopQueueTest
 		assertEquals(q1.threshold(), q2.threshold(), 1e-6);
 		assertEquals(q1.size(), q2.size());
 		
-		Result r1;
-		Result r2;
-		while (!q1.top().isEmpty() && ! q2.top().isEmpty()) {
-			r1 = q1.top().dequeue();
-			r2 = q2.top().dequeue();
-			assertEquals(r1.getDocId(), r2.getDocId());
-			assertEquals(r1.getScore(), r2.getScore(), 1e-6);
+		while (!q1.isEmpty() && ! q2.isEmpty()) {
+			assertEquals(q1.firstDocid(), q2.firstDocid());
+			assertEquals(q1.firstScore(), q2.firstScore(), 1e-6);
+			q1.dequeue();
+			q2.dequeue();
 		}
 		
 		assertTrue(q1.isEmpty());
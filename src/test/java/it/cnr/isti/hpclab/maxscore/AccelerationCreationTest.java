@@ -0,0 +1,152 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.maxscore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+
+import it.cnr.isti.hpclab.ef.EliasFano;
+import it.cnr.isti.hpclab.ef.Generator;
+import it.cnr.isti.hpclab.matching.MatchingSetupTest;
+import it.cnr.isti.hpclab.maxscore.structures.BlockEnumerator;
+import it.cnr.isti.hpclab.maxscore.structures.BlockMaxScoreIndex;
+import it.cnr.isti.hpclab.maxscore.structures.KthScoreIndex;
+import it.cnr.isti.hpclab.maxscore.structures.MaxScoreIndex;
+
+public class AccelerationCreationTest extends MatchingSetupTest
+{
+    protected static IndexOnDisk originalIndex = null;
+    protected static IndexOnDisk succinctIndex = null;
+    
+    @BeforeClass public static void createIndexesOnDisk() throws Exception
+    {
+        MatchingSetupTest.makeEnvironment();
+        MatchingSetupTest.doWT10GSampleIndexing();
+        
+        String args[] = {"-path", terrierEtc, 
+                         "-prefix", "data" + EliasFano.USUAL_EXTENSION, 
+                         "-index", terrierEtc + File.separator + "data.properties", 
+                         "-p", Integer.toString(3)};
+        System.setProperty(EliasFano.LOG2QUANTUM, "3");
+        Generator.main(args);
+        
+        // the separate generators on the succinct index
+        final String succinct = terrierEtc + File.separator + "data" + EliasFano.USUAL_EXTENSION + ".properties";
+        MSGenerator.main(new String[] {"-index", succinct, "-wm", "BM25", "-p", Integer.toString(2)});
+        BMWGenerator.main(new String[] {"-index", succinct, "-b", Integer.toString(64), "-p", Integer.toString(2)});
+        KthGenerator.main(new String[] {"-index", succinct, "-wm", "BM25", "-p", Integer.toString(2)});
+        
+        // the single-pass generator on the original index
+        AccelerationGenerator.main(new String[] {"-index", terrierEtc + File.separator + "data.properties", "-wm", "BM25", "-b", "64,32", "-kth", "-p", Integer.toString(3)});
+    }
+    
+    @AfterClass public static void clean() 
+    {
+        deleteTerrierEtc();
+    }
+        
+    @Before public void openIndex() throws IOException
+    {
+        originalIndex = IndexOnDisk.createIndex();
+        succinctIndex = IndexOnDisk.createIndex(originalIndex.getPath(), originalIndex.getPrefix() + EliasFano.USUAL_EXTENSION);
+    }
+    
+    @After public void closeIndex() throws IOException
+    {
+        originalIndex.close();
+        succinctIndex.close();
+    }
+    
+    private static void assertSameFile(final String extension) throws IOException
+    {
+        assertArrayEquals(extension, 
+                          Files.readAllBytes(Paths.get(succinctIndex.getPath(), succinctIndex.getPrefix() + extension)),
+                          Files.readAllBytes(Paths.get(originalIndex.getPath(), originalIndex.getPrefix() + extension)));
+    }
+
+    @Test
+    public void testMaxScores() throws IOException
+    {
+        assertSameFile(MaxScoreIndex.USUAL_EXTENSION);
+        assertEquals(succinctIndex.getIndexProperty("index.maxscore.weighting_model", ""), originalIndex.getIndexProperty("index.maxscore.weighting_model", ""));
+    }
+
+    @Test
+    public void testBlockMaxScores() throws IOException
+    {
+        assertSameFile(BlockMaxScoreIndex.STRUCTURE_NAME + BlockMaxScoreIndex.OFFSET_EXT);
+        assertSameFile(BlockMaxScoreIndex.STRUCTURE_NAME + BlockMaxScoreIndex.DOCID_EXT);
+        assertSameFile(BlockMaxScoreIndex.STRUCTURE_NAME + BlockMaxScoreIndex.SCORE_EXT);
+        assertEquals("64", originalIndex.getIndexProperty("index.blockmaxscore.block_size", ""));
+    }
+
+    @Test
+    public void testKthScores() throws IOException
+    {
+        assertSameFile(KthScoreIndex.USUAL_EXTENSION);
+        assertEquals(succinctIndex.getIndexProperty("index.kthscore.min_score", ""), originalIndex.getIndexProperty("index.kthscore.min_score", ""));
+    }
+
+    @Test
+    public void testAdditionalBlockSize() throws IOException
+    {
+        assertEquals("32", originalIndex.getIndexProperty("index.blockmaxscore-32.block_size", ""));
+        BlockMaxScoreIndex bmsi = (BlockMaxScoreIndex) originalIndex.getIndexStructure("blockmaxscore-32");
+        MaxScoreIndex msi = (MaxScoreIndex) originalIndex.getIndexStructure("maxscore");
+        assertEquals(32, bmsi.getBlockSize());
+        
+        for (int i = 0; i < originalIndex.getCollectionStatistics().getNumberOfUniqueTerms(); i++) {
+            Map.Entry<String, LexiconEntry> mEntry = originalIndex.getLexicon().getIthLexiconEntry(i);
+            final int termid = mEntry.getValue().getTermId();
+            final int df = mEntry.getValue().getDocumentFrequency();
+            
+            IterablePosting posting = originalIndex.getInvertedIndex().getPostings((BitIndexPointer) mEntry.getValue());
+            BlockEnumerator be = bmsi.get(termid);
+            float max_score = 0.0f;
+            int count = 0;
+            while (posting.next() != IterablePosting.END_OF_LIST) {
+                if (count++ % 32 == 0)
+                    be.next();
+                assertTrue(be.last() >= posting.getId());
+                max_score = Math.max(max_score, be.score());
+            }
+            assertEquals((df + 31) / 32, be.size());
+            assertEquals("Problems with termid " + termid, msi.getMaxScore(termid), max_score, 1e-4);
+        }
+    }
+}
@@ -29,6 +29,7 @@ import it.cnr.isti.hpclab.matching.MatchingSetupTest;
 import it.cnr.isti.hpclab.maxscore.structures.Block;
 import it.cnr.isti.hpclab.maxscore.structures.BlockEnumerator;
 import it.cnr.isti.hpclab.maxscore.structures.BlockMaxScoreIndex;
+import it.cnr.isti.hpclab.maxscore.structures.BlockMaxScoreIndex.Layout;
 import it.cnr.isti.hpclab.maxscore.structures.MaxScoreIndex;
 
 import java.io.File;
@@ -341,4 +342,127 @@ SCORES
 		assertEquals(benum.last(), block_docids[3][2]);
 		assertEquals(benum.score(), block_maxscores[3][2], 1e-6);
 	}
+
+	@Test 
+	public void testLayouts() throws IOException
+	{
+		for (IndexOnDisk index: new IndexOnDisk[] {originalIndex, efIndex}) {
+			BlockMaxScoreIndex array      = new BlockMaxScoreIndex(index, "blockmaxscore", Layout.ARRAY);
+			BlockMaxScoreIndex mapped     = new BlockMaxScoreIndex(index, "blockmaxscore", Layout.MAPPED);
+			BlockMaxScoreIndex compressed = new BlockMaxScoreIndex(index, "blockmaxscore", Layout.COMPRESSED);
+			
+			assertEquals(array.getBlockSize(), mapped.getBlockSize());
+			assertEquals(array.getBlockSize(), compressed.getBlockSize());
+			
+			final int num_terms = index.getCollectionStatistics().getNumberOfUniqueTerms();
+			for (int termid = 0; termid < num_terms; ++termid) {
+				BlockEnumerator a = array.get(termid);
+				BlockEnumerator m = mapped.get(termid);
+				BlockEnumerator c = compressed.get(termid);
+				assertEquals(a.size(), m.size());
+				assertEquals(a.size(), c.size());
+				
+				float max = 0.0f;
+				while (a.hasNext()) {
+					a.next();
+					max = Math.max(max, a.score());
+				}
+				a.reset();
+				while (a.hasNext()) {
+					a.next(); m.next(); c.next();
+					assertEquals(a.last(), m.last());
+					assertEquals(a.score(), m.score(), 0.0f);
+					assertEquals(a.last(), c.last());
+					assertTrue(c.score() >= a.score());
+					assertEquals(a.score(), c.score(), max / 255 + 1e-6);
+				}
+				
+				a.reset(); m.reset(); c.reset();
+				for (int docid = 0; docid <= 22; docid += 3) {
+					a.move(docid); m.move(docid); c.move(docid);
+					assertEquals(a.last(), m.last());
+					assertEquals(a.last(), c.last());
+				}
+			}
+		}
+	}
+
+	@Test 
+	public void testSuperBlocks() throws IOException
+	{
+		BlockMaxScoreIndex bmsi = new BlockMaxScoreIndex(originalIndex);
+		
+		final int num_terms = originalIndex.getCollectionStatistics().getNumberOfUniqueTerms();
+		for (int termid = 0; termid < num_terms; ++termid) {
+			BlockEnumerator b = bmsi.get(termid);
+			int[] lasts = new int[b.size()];
+			float[] scores = new float[b.size()];
+			for (int i = 0; b.hasNext(); ++i) {
+				b.next();
+				lasts[i] = b.last();
+				scores[i] = b.score();
+			}
+			
+			for (int docid = 0; docid <= lasts[lasts.length - 1] + 1; ++docid) {
+				BlockEnumerator s = bmsi.get(termid);
+				s.moveSuper(docid);
+				
+				int pos = 0;
+				while (pos < lasts.length && lasts[pos] < docid)
+					pos++;
+				if (pos == lasts.length) {
+					assertEquals(Block.END_OF_BLOCK, s.superLast());
+					continue;
+				}
+				final int begin = pos - pos % BlockEnumerator.SUPER_BLOCK_SIZE;
+				final int end = Math.min(lasts.length, begin + BlockEnumerator.SUPER_BLOCK_SIZE);
+				float max = 0.0f;
+				for (int i = begin; i < end; ++i)
+					max = Math.max(max, scores[i]);
+				assertEquals(lasts[end - 1], s.superLast());
+				assertEquals(max, s.superScore(), 0.0f);
+				
+				s.move(docid);
+				assertEquals(lasts[pos], s.last());
+			}
+		}
+	}
+
+	@Test 
+	public void testStoredSummary() throws IOException
+	{
+		assertTrue(Files.exists(Paths.get(originalIndex.getPath(), originalIndex.getPrefix() + BlockMaxScoreIndex.STRUCTURE_NAME + BlockMaxScoreIndex.SUPER_EXT + BlockMaxScoreIndex.OFFSET_EXT)));
+		
+		for (Layout layout: Layout.values()) {
+			BlockMaxScoreIndex bmsi = new BlockMaxScoreIndex(originalIndex, "blockmaxscore", layout);
+			for (int termid = 0; termid < originalIndex.getCollectionStatistics().getNumberOfUniqueTerms(); termid++) {
+				// the super-block summary of every block is the one of its BlockEnumerator.SUPER_BLOCK_SIZE consecutive blocks
+				BlockEnumerator blocks = bmsi.get(termid);
+				final int num_blocks = blocks.size();
+				final int[] lasts = new int[num_blocks];
+				final float[] scores = new float[num_blocks];
+				for (int b = 0; b < num_blocks; b++) {
+					blocks.next();
+					lasts[b] = blocks.last();
+					scores[b] = blocks.score();
+				}
+				
+				BlockEnumerator supers = bmsi.get(termid);
+				for (int b = 0; b < num_blocks; b++) {
+					supers.next();
+					final int begin = b - b % BlockEnumerator.SUPER_BLOCK_SIZE;
+					final int end = Math.min(num_blocks, begin + BlockEnumerator.SUPER_BLOCK_SIZE);
+					float max = scores[begin];
+					for (int i = begin + 1; i < end; i++)
+						max = Math.max(max, scores[i]);
+					assertEquals(lasts[end - 1], supers.superLast());
+					// the compressed layout quantizes the block max scores to upper bounds, but not the summary
+					if (layout == Layout.COMPRESSED)
+						assertTrue(supers.superScore() <= max);
+					else
+						assertEquals(max, supers.superScore(), 0.0f);
+				}
+			}
+		}
+	}
 }
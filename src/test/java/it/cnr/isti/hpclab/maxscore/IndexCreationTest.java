@@ -38,6 +38,7 @@ import org.terrier.structures.BitIndexPointer;
 import org.terrier.structures.IndexOnDisk;
 import org.terrier.structures.LexiconEntry;
 import org.terrier.structures.postings.IterablePosting;
+import org.terrier.utility.ApplicationSetup;
 
 import it.cnr.isti.hpclab.maxscore.structures.MaxScoreIndex;
 import it.cnr.isti.hpclab.ef.EliasFano;
@@ -159,4 +160,18 @@ public class IndexCreationTest extends MatchingSetupTest
         msi.close();
     }
 
+    @Test
+    public void testPreload() throws IOException
+    {
+        MaxScoreIndex mapped = new MaxScoreIndex(originalIndex);
+        ApplicationSetup.setProperty("preload.maxscore.index", "true");
+        MaxScoreIndex preloaded = new MaxScoreIndex(originalIndex);
+        ApplicationSetup.setProperty("preload.maxscore.index", "false");
+        
+        for (int i = 0; i < originalIndex.getCollectionStatistics().getNumberOfUniqueTerms(); i++)
+            assertEquals(mapped.getMaxScore(i), preloaded.getMaxScore(i), 0.0f);
+        
+        mapped.close();
+        preloaded.close();
+    }
 }
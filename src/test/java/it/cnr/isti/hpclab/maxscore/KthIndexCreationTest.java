@@ -0,0 +1,130 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.maxscore;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+
+import it.cnr.isti.hpclab.maxscore.structures.KthScoreIndex;
+import it.cnr.isti.hpclab.ef.EliasFano;
+import it.cnr.isti.hpclab.ef.Generator;
+import it.cnr.isti.hpclab.matching.MatchingSetupTest;
+import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+import it.cnr.isti.hpclab.matching.structures.model.BM25;
+
+public class KthIndexCreationTest extends MatchingSetupTest
+{
+    protected static IndexOnDisk succinctIndex = null;
+    
+    @BeforeClass public static void createIndexesOnDisk() throws Exception
+    {
+        MatchingSetupTest.makeEnvironment();
+        MatchingSetupTest.doWT10GSampleIndexing();
+        
+        String args[] = {"-path", terrierEtc, 
+                         "-prefix", "data" + EliasFano.USUAL_EXTENSION, 
+                         "-index", terrierEtc + File.separator + "data.properties", 
+                         "-p", Integer.toString(3)};
+        System.setProperty(EliasFano.LOG2QUANTUM, "3");
+        Generator.main(args);
+                
+        Files.deleteIfExists(Paths.get(terrierEtc + File.separator + "data.ef" + KthScoreIndex.USUAL_EXTENSION));
+        String argsKth[] = {"-index", terrierEtc + File.separator + "data.ef.properties",
+                            "-wm", "BM25",
+                            "-p", Integer.toString(2)};
+        KthGenerator.main(argsKth);
+    }
+    
+    @AfterClass public static void clean() 
+    {
+        deleteTerrierEtc();
+    }
+        
+    @Before public void openIndex() throws IOException
+    {
+        succinctIndex = IndexOnDisk.createIndex(terrierEtc, "data" + EliasFano.USUAL_EXTENSION);
+    }
+    
+    @After public void closeIndex() throws IOException
+    {
+        succinctIndex.close();
+    }
+
+    @Test
+    public void testSuccinct() throws Exception
+    {
+        IndexOnDisk index = succinctIndex;
+        KthScoreIndex ksi = (KthScoreIndex) index.getIndexStructure("kthscore");
+        assertEquals(BM25.class.getName(), ksi.getWeightingModel());
+        
+        WeightingModel wm_model = (WeightingModel) (Class.forName(BM25.class.getName()).asSubclass(WeightingModel.class).getConstructor().newInstance());
+        wm_model.setup(index);
+        
+        float min_score = Float.MAX_VALUE;
+        for (int i = 0; i < index.getCollectionStatistics().getNumberOfUniqueTerms(); i++) {
+            Map.Entry<String, LexiconEntry> mEntry = index.getLexicon().getIthLexiconEntry(i);
+            LexiconEntry le = mEntry.getValue();
+
+            IterablePosting posting = index.getInvertedIndex().getPostings((BitIndexPointer) le);
+            float[] scores = new float[le.getDocumentFrequency()];
+            int n = 0;
+            while (posting.next() != IterablePosting.END_OF_LIST)
+                scores[n++] = wm_model.score(1, posting.getFrequency(), posting.getDocumentLength(), le.getDocumentFrequency(), le.getFrequency());
+            posting.close();
+            Arrays.sort(scores, 0, n);
+            for (int s = 0; s < n; s++)
+                min_score = Math.min(min_score, scores[s]);
+            
+            for (int r = 0; r < KthScoreIndex.RANKS.length; r++) {
+                final int k = KthScoreIndex.RANKS[r];
+                final float kth_score = (k <= n) ? scores[n - k] : 0.0f;
+                assertEquals("Problems with termid " + le.getTermId() + " and k " + k, kth_score, ksi.getKthScore(le.getTermId(), r), 1e-6);
+            }
+        }
+        assertEquals(min_score, ksi.getMinScore(), 1e-6);
+    }
+    
+    @Test
+    public void testRank()
+    {
+        assertEquals(0, KthScoreIndex.rank(1));
+        assertEquals(0, KthScoreIndex.rank(10));
+        assertEquals(1, KthScoreIndex.rank(11));
+        assertEquals(2, KthScoreIndex.rank(1000));
+        assertEquals(-1, KthScoreIndex.rank(1001));
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package it.cnr.isti.hpclab.maxscore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.terrier.structures.BitIndexPointer;
+import org.terrier.structures.IndexOnDisk;
+import org.terrier.structures.LexiconEntry;
+import org.terrier.structures.postings.IterablePosting;
+
+import it.cnr.isti.hpclab.MatchingConfiguration;
+import it.cnr.isti.hpclab.MatchingConfiguration.Property;
+import it.cnr.isti.hpclab.manager.BlockMaxWandManager;
+import it.cnr.isti.hpclab.manager.Manager;
+import it.cnr.isti.hpclab.manager.MaxScoreManager;
+import it.cnr.isti.hpclab.manager.RankedManager;
+import it.cnr.isti.hpclab.matching.MatchingSetupTest;
+import it.cnr.isti.hpclab.matching.structures.ResultSet;
+import it.cnr.isti.hpclab.matching.structures.SearchRequest;
+import it.cnr.isti.hpclab.matching.structures.WeightingModel;
+import it.cnr.isti.hpclab.matching.structures.model.BM25;
+import it.cnr.isti.hpclab.maxscore.structures.MaxScoreIndex;
+import it.cnr.isti.hpclab.maxscore.structures.ModelStructures;
+
+public class MultiModelCreationTest extends MatchingSetupTest
+{
+    protected static IndexOnDisk originalIndex = null;
+    
+    private static final String[] MODELS = {"BM25", "BM25(b=0.4)"};
+    private static final String query = "page new 1996 1 mail";
+    
+    @BeforeClass public static void createIndexesOnDisk() throws Exception
+    {
+        MatchingSetupTest.makeEnvironment();
+        MatchingSetupTest.doWT10GSampleIndexing();
+        
+        AccelerationGenerator.main(new String[] {"-index", terrierEtc + File.separator + "data.properties", "-wm", String.join(",", MODELS), "-b", "64", "-kth", "-p", Integer.toString(3)});
+    }
+    
+    @AfterClass public static void clean() 
+    {
+        MatchingConfiguration.set(Property.WEIGHTING_MODEL_CLASSNAME, BM25.class.getName());
+        deleteTerrierEtc();
+    }
+        
+    @Before public void openIndex() throws IOException
+    {
+        originalIndex = IndexOnDisk.createIndex();
+    }
+    
+    @After public void closeIndex() throws IOException
+    {
+        originalIndex.close();
+    }
+    
+    @Test
+    public void testSignatures()
+    {
+        for (int m = 0; m < MODELS.length; ++m) {
+            final String signature = WeightingModel.create(MODELS[m]).signature();
+            assertEquals(signature, originalIndex.getIndexProperty("index." + ModelStructures.name("maxscore", m) + ".signature", ""));
+            assertEquals(signature, originalIndex.getIndexProperty("index." + ModelStructures.name("blockmaxscore", m) + ".signature", ""));
+            assertEquals(signature, originalIndex.getIndexProperty("index." + ModelStructures.name("kthscore", m) + ".signature", ""));
+            assertEquals(ModelStructures.name("maxscore", m), ModelStructures.select(originalIndex, "maxscore", WeightingModel.create(MODELS[m])));
+        }
+        assertEquals("it.cnr.isti.hpclab.matching.structures.model.BM25(k1=1.2,b=0.4)", WeightingModel.create("BM25(b=0.4)").signature());
+        assertNull(ModelStructures.find(originalIndex, "maxscore", WeightingModel.create("BM25(b=0.5)")));
+    }
+
+    @Test
+    public void testParameters()
+    {
+        // the parameters of a model do not change the other instances of the model
+        final WeightingModel lm = WeightingModel.create("LM");
+        final String signature = lm.signature();
+        assertEquals("it.cnr.isti.hpclab.matching.structures.model.LM(mu=1000.0)", WeightingModel.create("LM(mu=1000)").signature());
+        assertEquals(signature, lm.signature());
+        assertEquals(signature, WeightingModel.create("LM").signature());
+        assertNotEquals(WeightingModel.create("LMFast").signature(), WeightingModel.create("LMFast(mu=1000)").signature());
+        assertNotEquals(WeightingModel.create("LuceneBM25").signature(), WeightingModel.create("LuceneBM25(b=0.4)").signature());
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testStaticParameter()
+    {
+        WeightingModel.create("LMFast(flog=2)");
+    }
+
+    @Test
+    public void testMaxScores() throws IOException
+    {
+        for (int m = 0; m < MODELS.length; ++m) {
+            final WeightingModel wm = WeightingModel.create(MODELS[m]);
+            wm.setup(originalIndex);
+            MaxScoreIndex msi = (MaxScoreIndex) originalIndex.getIndexStructure(ModelStructures.name("maxscore", m));
+            
+            for (int i = 0; i < originalIndex.getCollectionStatistics().getNumberOfUniqueTerms(); i++) {
+                Map.Entry<String, LexiconEntry> mEntry = originalIndex.getLexicon().getIthLexiconEntry(i);
+                final LexiconEntry le = mEntry.getValue();
+                
+                IterablePosting posting = originalIndex.getInvertedIndex().getPostings((BitIndexPointer) le);
+                float max_score = 0.0f;
+                while (posting.next() != IterablePosting.END_OF_LIST)
+                    max_score = Math.max(max_score, wm.score(1, posting.getFrequency(), posting.getDocumentLength(), le.getDocumentFrequency(), le.getFrequency()));
+                posting.close();
+                
+                assertEquals(max_score, msi.getMaxScore(le.getTermId()), 0.0f);
+            }
+        }
+    }
+    
+    private ResultSet run(final Manager manager) throws Exception
+    {
+        return manager.run(new SearchRequest("1", query));
+    }
+    
+    @Test
+    public void testSelection() throws Exception
+    {
+        MatchingConfiguration.set(Property.IGNORE_LOW_IDF_TERMS, "false");
+        MatchingConfiguration.set(Property.TOP_K, "10");
+        MatchingConfiguration.set(Property.WEIGHTING_MODEL_CLASSNAME, MODELS[1]);
+        
+        MatchingConfiguration.set(Property.MATCHING_ALGORITHM_CLASSNAME, "it.cnr.isti.hpclab.matching.RankedOr");
+        ResultSet correct = run(new RankedManager(originalIndex));
+
+        MatchingConfiguration.set(Property.MATCHING_ALGORITHM_CLASSNAME, "it.cnr.isti.hpclab.matching.MaxScore");
+        ResultSet current = run(new MaxScoreManager(originalIndex));
+        assertEquals(correct.size(), current.size());
+        MatchingSetupTest.Compare(correct, current);
+        
+        MatchingConfiguration.set(Property.MATCHING_ALGORITHM_CLASSNAME, "it.cnr.isti.hpclab.matching.BlockMaxWand");
+        current = run(new BlockMaxWandManager(originalIndex));
+        assertEquals(correct.size(), current.size());
+        MatchingSetupTest.Compare(correct, current);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMismatch() throws Exception
+    {
+        MatchingConfiguration.set(Property.IGNORE_LOW_IDF_TERMS, "false");
+        MatchingConfiguration.set(Property.TOP_K, "10");
+        MatchingConfiguration.set(Property.WEIGHTING_MODEL_CLASSNAME, "BM25(b=0.5)");
+        MatchingConfiguration.set(Property.MATCHING_ALGORITHM_CLASSNAME, "it.cnr.isti.hpclab.matching.MaxScore");
+        run(new MaxScoreManager(originalIndex));
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Micro query processing framework for Terrier 5
+ *
+ * Copyright (C) 2018-2019 Nicola Tonellotto 
+ *
+ *  This library is free software; you can redistribute it and/or modify it
+ *  under the terms of the GNU Lesser General Public License as published by the Free
+ *  Software Foundation; either version 3 of the License, or (at your option)
+ *  any later version.
+ *
+ *  This library is distributed in the hope that it will be useful, but
+ *  WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ *  or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU Lesser General Public License
+ *  for more details.
+ *
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program; if not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package it.cnr.isti.hpclab.maxscore;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class VariableBlockPartitionerTest 
+{
+	private static double error(final float[] scores, final int[] lengths)
+	{
+		double error = 0.0;
+		int begin = 0;
+		for (int length: lengths) {
+			float max = Float.NEGATIVE_INFINITY;
+			for (int i = begin; i < begin + length; ++i)
+				max = Math.max(max, scores[i]);
+			for (int i = begin; i < begin + length; ++i)
+				error += max - scores[i];
+			begin += length;
+		}
+		return error;
+	}
+	
+	@Test public void testSteps()
+	{
+		VariableBlockPartitioner partitioner = new VariableBlockPartitioner();
+		
+		float[] scores = {1, 1, 1, 9, 9, 9};
+		assertArrayEquals(new int[] {3, 3}, partitioner.partition(scores, scores.length, 2));
+		
+		scores = new float[] {5, 1, 1, 1, 1, 1, 1, 1, 9};
+		assertArrayEquals(new int[] {1, 7, 1}, partitioner.partition(scores, scores.length, 3));
+	}
+
+	@Test public void testShortLists()
+	{
+		VariableBlockPartitioner partitioner = new VariableBlockPartitioner();
+		
+		assertArrayEquals(new int[] {1}, partitioner.partition(new float[] {2}, 1, 1));
+		assertArrayEquals(new int[] {1, 1}, partitioner.partition(new float[] {2, 3}, 2, 4));
+		assertArrayEquals(new int[] {2}, partitioner.partition(new float[] {2, 3}, 2, 1));
+	}
+
+	@Test public void testRandom()
+	{
+		Random rnd = new Random(42);
+		VariableBlockPartitioner partitioner = new VariableBlockPartitioner();
+		
+		for (int n: new int[] {10, 100, 1000, 10000}) {
+			final int block_size = 8;
+			final int num_blocks = (n + block_size - 1) / block_size;
+			
+			float[] scores = new float[n];
+			for (int i = 0; i < n; ++i)
+				scores[i] = rnd.nextFloat() * (rnd.nextInt(10) == 0 ? 10 : 1);
+			
+			int[] lengths = partitioner.partition(scores, n, num_blocks);
+			assertEquals(num_blocks, lengths.length);
+			assertEquals(n, Arrays.stream(lengths).sum());
+			for (int length: lengths)
+				assertTrue(length > 0);
+
+			int[] fixed = new int[num_blocks];
+			Arrays.fill(fixed, block_size);
+			fixed[num_blocks - 1] = n - block_size * (num_blocks - 1);
+			assertTrue(error(scores, lengths) <= error(scores, fixed));
+		}
+	}
+}